@@ -29,6 +29,10 @@ import org.sonar.core.issue.db.IssueDto;
 
 import java.util.List;
 
+/**
+ * Issues of the previous analysis that are not closed. They are stored on disk, grouped by component key,
+ * and removed from the cache as soon as the component is tracked.
+ */
 @InstantiationStrategy(InstantiationStrategy.PER_BATCH)
 public class InitialOpenIssuesStack implements BatchExtension {
 
@@ -44,11 +48,7 @@ public class InitialOpenIssuesStack implements BatchExtension {
   }
 
   public List<IssueDto> selectAndRemove(String componentKey) {
-    Iterable<IssueDto> issues = cache.values(componentKey);
-    List<IssueDto> result = Lists.newArrayList();
-    for (IssueDto issue : issues) {
-      result.add(issue);
-    }
+    List<IssueDto> result = Lists.newArrayList(cache.values(componentKey));
     cache.clear(componentKey);
     return result;
   }
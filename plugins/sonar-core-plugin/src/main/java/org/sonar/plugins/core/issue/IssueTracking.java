@@ -24,10 +24,13 @@ import org.sonar.plugins.core.issue.tracking.SourceChecksum;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Objects;
+import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.LinkedHashMultimap;
+import com.google.common.collect.LinkedListMultimap;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Multimap;
+import com.google.common.collect.Sets;
 import org.sonar.api.BatchExtension;
 import org.sonar.api.issue.internal.DefaultIssue;
 import org.sonar.api.rule.RuleKey;
@@ -35,21 +38,30 @@ import org.sonar.core.issue.db.IssueDto;
 import org.sonar.plugins.core.issue.tracking.HashedSequence;
 import org.sonar.plugins.core.issue.tracking.HashedSequenceComparator;
 import org.sonar.plugins.core.issue.tracking.IssueTrackingBlocksRecognizer;
+import org.sonar.plugins.core.issue.tracking.LineHashSequence;
+import org.sonar.plugins.core.issue.tracking.LineHashSequenceComparator;
 import org.sonar.plugins.core.issue.tracking.RollingHashSequence;
 import org.sonar.plugins.core.issue.tracking.RollingHashSequenceComparator;
-import org.sonar.plugins.core.issue.tracking.StringText;
-import org.sonar.plugins.core.issue.tracking.StringTextComparator;
 
+import javax.annotation.CheckForNull;
 import javax.annotation.Nullable;
 
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 public class IssueTracking implements BatchExtension {
 
+  /**
+   * Maximum number of pairs of lines compared when matching issues by blocks
+   */
+  private static final int MAX_LINE_PAIRS = 250000;
+
   public IssueTrackingResult track(SourceHashHolder sourceHashHolder, Collection<IssueDto> dbIssues, Collection<DefaultIssue> newIssues) {
     IssueTrackingResult result = new IssueTrackingResult();
 
@@ -92,29 +104,20 @@ public class IssueTracking implements BatchExtension {
     }
 
     // Match the key of the issue. (For manual issues)
-    for (DefaultIssue newIssue : newIssues) {
-      mapIssue(newIssue, findLastIssueWithSameKey(newIssue, result.unmatchedForRule(newIssue.ruleKey())), result);
-    }
+    mapIssuesWithSame(IssueKey.KEY, newIssues, result);
 
     // Try first to match issues on same rule with same line and with same checksum (but not necessarily with same message)
-    for (DefaultIssue newIssue : newIssues) {
-      if (isNotAlreadyMapped(newIssue, result)) {
-        mapIssue(
-          newIssue,
-          findLastIssueWithSameLineAndChecksum(newIssue, result.unmatchedForRule(newIssue.ruleKey())),
-          result);
-      }
-    }
+    mapIssuesWithSame(IssueKey.LINE_AND_CHECKSUM, newIssues, result);
   }
 
   private void mapNewissues(SourceHashHolder sourceHashHolder, Collection<DefaultIssue> newIssues, IssueTrackingResult result) {
 
-    HashedSequenceComparator<StringText> hashedComparator = new HashedSequenceComparator<StringText>(StringTextComparator.IGNORE_WHITESPACE);
+    HashedSequenceComparator<LineHashSequence> hashedComparator = new HashedSequenceComparator<LineHashSequence>(LineHashSequenceComparator.INSTANCE);
     IssueTrackingBlocksRecognizer rec = new IssueTrackingBlocksRecognizer(sourceHashHolder.getHashedReference(), sourceHashHolder.getHashedSource(), hashedComparator);
 
-    RollingHashSequence<HashedSequence<StringText>> a = RollingHashSequence.wrap(sourceHashHolder.getHashedReference(), hashedComparator, 5);
-    RollingHashSequence<HashedSequence<StringText>> b = RollingHashSequence.wrap(sourceHashHolder.getHashedSource(), hashedComparator, 5);
-    RollingHashSequenceComparator<HashedSequence<StringText>> cmp = new RollingHashSequenceComparator<HashedSequence<StringText>>(hashedComparator);
+    RollingHashSequence<HashedSequence<LineHashSequence>> a = RollingHashSequence.wrap(sourceHashHolder.getHashedReference(), hashedComparator, 5);
+    RollingHashSequence<HashedSequence<LineHashSequence>> b = RollingHashSequence.wrap(sourceHashHolder.getHashedSource(), hashedComparator, 5);
+    RollingHashSequenceComparator<HashedSequence<LineHashSequence>> cmp = new RollingHashSequenceComparator<HashedSequence<LineHashSequence>>(hashedComparator);
 
     Multimap<Integer, DefaultIssue> newIssuesByLines = newIssuesByLines(newIssues, rec, result);
     Multimap<Integer, IssueDto> lastIssuesByLines = lastIssuesByLines(result.unmatched(), rec);
@@ -153,52 +156,123 @@ public class IssueTracking implements BatchExtension {
       }
     }
 
-    // Check if remaining number of lines exceeds threshold
-    if (lastIssuesByLines.keySet().size() * newIssuesByLines.keySet().size() < 250000) {
+    // Lines share a block only if they are equal, so lines are paired by hash instead of comparing every old line to
+    // every new line. Pairs are then processed in the same order as if all the pairs were weighted and sorted.
+    List<LinePair> blockLinePairs = blockLinePairs(lastIssuesByLines, newIssuesByLines, sourceHashHolder, hashedComparator, rec);
+    if (blockLinePairs != null) {
+      Collections.sort(blockLinePairs, LINE_PAIR_COMPARATOR);
+      for (LinePair linePair : blockLinePairs) {
+        // High probability that lineA has been moved to lineB, so we can map all Issues on lineA to all Issues on lineB
+        map(newIssuesByLines.get(linePair.lineB), lastIssuesByLines.get(linePair.lineA), result);
+      }
+    }
+
+    // Remaining lines do not share any block, so they are paired by distance. Only lines with unmatched issues are kept.
+    List<Integer> oldLines = linesWithUnmatchedLastIssues(lastIssuesByLines, result);
+    List<Integer> newLines = linesWithUnmatchedNewIssues(newIssuesByLines, result);
+    if (blockLinePairs != null && oldLines.size() * newLines.size() < MAX_LINE_PAIRS) {
+      Set<Long> blockLines = Sets.newHashSet();
+      for (LinePair linePair : blockLinePairs) {
+        blockLines.add(linePair.key());
+      }
       List<LinePair> possibleLinePairs = Lists.newArrayList();
-      for (Integer oldLine : lastIssuesByLines.keySet()) {
-        for (Integer newLine : newIssuesByLines.keySet()) {
-          int weight = rec.computeLengthOfMaximalBlock(oldLine - 1, newLine - 1);
-          possibleLinePairs.add(new LinePair(oldLine, newLine, weight));
+      for (Integer oldLine : oldLines) {
+        for (Integer newLine : newLines) {
+          LinePair linePair = new LinePair(oldLine, newLine, 0);
+          if (!blockLines.contains(linePair.key())) {
+            possibleLinePairs.add(linePair);
+          }
         }
       }
       Collections.sort(possibleLinePairs, LINE_PAIR_COMPARATOR);
       for (LinePair linePair : possibleLinePairs) {
-        // High probability that lineA has been moved to lineB, so we can map all Issues on lineA to all Issues on lineB
         map(newIssuesByLines.get(linePair.lineB), lastIssuesByLines.get(linePair.lineA), result);
       }
     }
   }
 
-  private void mapIssuesOnSameRule(Collection<DefaultIssue> newIssues, IssueTrackingResult result) {
-    // Try then to match issues on same rule with same message and with same checksum
-    for (DefaultIssue newIssue : newIssues) {
-      if (isNotAlreadyMapped(newIssue, result)) {
-        mapIssue(
-          newIssue,
-          findLastIssueWithSameChecksumAndMessage(newIssue, result.unmatchedForRule(newIssue.ruleKey())),
-          result);
+  /**
+   * @return pairs of equal lines weighted by the length of their common block, or null if there are too many pairs
+   */
+  @CheckForNull
+  private List<LinePair> blockLinePairs(Multimap<Integer, IssueDto> lastIssuesByLines, Multimap<Integer, DefaultIssue> newIssuesByLines,
+    SourceHashHolder sourceHashHolder, HashedSequenceComparator<LineHashSequence> hashedComparator, IssueTrackingBlocksRecognizer rec) {
+    Multimap<Integer, Integer> newLinesByHash = ArrayListMultimap.create();
+    for (Integer newLine : newIssuesByLines.keySet()) {
+      newLinesByHash.put(hashedComparator.hash(sourceHashHolder.getHashedSource(), newLine - 1), newLine);
+    }
+    List<LinePair> linePairs = Lists.newArrayList();
+    for (Integer oldLine : lastIssuesByLines.keySet()) {
+      for (Integer newLine : newLinesByHash.get(hashedComparator.hash(sourceHashHolder.getHashedReference(), oldLine - 1))) {
+        int weight = rec.computeLengthOfMaximalBlock(oldLine - 1, newLine - 1);
+        if (weight > 0) {
+          if (linePairs.size() >= MAX_LINE_PAIRS) {
+            return null;
+          }
+          linePairs.add(new LinePair(oldLine, newLine, weight));
+        }
       }
     }
+    return linePairs;
+  }
 
-    // Try then to match issues on same rule with same line and with same message
-    for (DefaultIssue newIssue : newIssues) {
-      if (isNotAlreadyMapped(newIssue, result)) {
-        mapIssue(
-          newIssue,
-          findLastIssueWithSameLineAndMessage(newIssue, result.unmatchedForRule(newIssue.ruleKey())),
-          result);
+  private List<Integer> linesWithUnmatchedLastIssues(Multimap<Integer, IssueDto> lastIssuesByLines, IssueTrackingResult result) {
+    List<Integer> lines = Lists.newArrayList();
+    for (Map.Entry<Integer, Collection<IssueDto>> entry : lastIssuesByLines.asMap().entrySet()) {
+      for (IssueDto lastIssue : entry.getValue()) {
+        if (isNotAlreadyMapped(lastIssue, result)) {
+          lines.add(entry.getKey());
+          break;
+        }
+      }
+    }
+    return lines;
+  }
+
+  private List<Integer> linesWithUnmatchedNewIssues(Multimap<Integer, DefaultIssue> newIssuesByLines, IssueTrackingResult result) {
+    List<Integer> lines = Lists.newArrayList();
+    for (Map.Entry<Integer, Collection<DefaultIssue>> entry : newIssuesByLines.asMap().entrySet()) {
+      for (DefaultIssue newIssue : entry.getValue()) {
+        if (isNotAlreadyMapped(newIssue, result)) {
+          lines.add(entry.getKey());
+          break;
+        }
       }
     }
+    return lines;
+  }
+
+  private void mapIssuesOnSameRule(Collection<DefaultIssue> newIssues, IssueTrackingResult result) {
+    // Try then to match issues on same rule with same message and with same checksum
+    mapIssuesWithSame(IssueKey.CHECKSUM_AND_MESSAGE, newIssues, result);
+
+    // Try then to match issues on same rule with same line and with same message
+    mapIssuesWithSame(IssueKey.LINE_AND_MESSAGE, newIssues, result);
 
     // Last check: match issue if same rule and same checksum but different line and different message
     // See SONAR-2812
+    mapIssuesWithSame(IssueKey.CHECKSUM, newIssues, result);
+  }
+
+  /**
+   * Maps each new issue to the first unmatched issue having the same key. Unmatched issues are indexed once per pass, so
+   * that the pass is linear instead of comparing every new issue to every unmatched issue of the same rule.
+   */
+  private void mapIssuesWithSame(IssueKey issueKey, Collection<DefaultIssue> newIssues, IssueTrackingResult result) {
+    if (result.unmatched().isEmpty()) {
+      return;
+    }
+    Multimap<List<Object>, IssueDto> lastIssuesByKey = LinkedListMultimap.create();
+    for (IssueDto lastIssue : result.unmatchedInInsertionOrder()) {
+      lastIssuesByKey.put(issueKey.of(lastIssue), lastIssue);
+    }
     for (DefaultIssue newIssue : newIssues) {
       if (isNotAlreadyMapped(newIssue, result)) {
-        mapIssue(
-          newIssue,
-          findLastIssueWithSameChecksum(newIssue, result.unmatchedForRule(newIssue.ruleKey())),
-          result);
+        Iterator<IssueDto> candidates = lastIssuesByKey.get(issueKey.of(newIssue)).iterator();
+        if (candidates.hasNext()) {
+          mapIssue(newIssue, candidates.next(), result);
+          candidates.remove();
+        }
       }
     }
   }
@@ -236,84 +310,99 @@ public class IssueTracking implements BatchExtension {
     return lastIssuesByLines;
   }
 
-  private IssueDto findLastIssueWithSameChecksum(DefaultIssue newIssue, Collection<IssueDto> lastIssues) {
-    for (IssueDto pastIssue : lastIssues) {
-      if (isSameChecksum(newIssue, pastIssue)) {
-        return pastIssue;
-      }
-    }
-    return null;
+  private boolean isNotAlreadyMapped(IssueDto pastIssue, IssueTrackingResult result) {
+    return result.unmatched().contains(pastIssue);
   }
 
-  private IssueDto findLastIssueWithSameLineAndMessage(DefaultIssue newIssue, Collection<IssueDto> lastIssues) {
-    for (IssueDto pastIssue : lastIssues) {
-      if (isSameLine(newIssue, pastIssue) && isSameMessage(newIssue, pastIssue)) {
-        return pastIssue;
-      }
-    }
-    return null;
+  private boolean isNotAlreadyMapped(DefaultIssue newIssue, IssueTrackingResult result) {
+    return !result.isMatched(newIssue);
   }
 
-  private IssueDto findLastIssueWithSameChecksumAndMessage(DefaultIssue newIssue, Collection<IssueDto> lastIssues) {
-    for (IssueDto pastIssue : lastIssues) {
-      if (isSameChecksum(newIssue, pastIssue) && isSameMessage(newIssue, pastIssue)) {
-        return pastIssue;
-      }
+  private void mapIssue(DefaultIssue issue, @Nullable IssueDto ref, IssueTrackingResult result) {
+    if (ref != null) {
+      result.setMatch(issue, ref);
     }
-    return null;
   }
 
-  private IssueDto findLastIssueWithSameLineAndChecksum(DefaultIssue newIssue, Collection<IssueDto> lastIssues) {
-    for (IssueDto pastIssue : lastIssues) {
-      if (isSameLine(newIssue, pastIssue) && isSameChecksum(newIssue, pastIssue)) {
-        return pastIssue;
-      }
-    }
-    return null;
+  @Override
+  public String toString() {
+    return getClass().getSimpleName();
   }
 
-  private IssueDto findLastIssueWithSameKey(DefaultIssue newIssue, Collection<IssueDto> lastIssues) {
-    for (IssueDto pastIssue : lastIssues) {
-      if (isSameKey(newIssue, pastIssue)) {
-        return pastIssue;
+  /**
+   * Properties compared by a matching pass. The rule is always part of the key.
+   */
+  private enum IssueKey {
+    KEY {
+      @Override
+      List<Object> of(DefaultIssue issue) {
+        return key(issue.ruleKey(), issue.key());
       }
-    }
-    return null;
-  }
 
-  private boolean isNotAlreadyMapped(IssueDto pastIssue, IssueTrackingResult result) {
-    return result.unmatched().contains(pastIssue);
-  }
+      @Override
+      List<Object> of(IssueDto issue) {
+        return key(ruleKey(issue), issue.getKee());
+      }
+    },
+    LINE_AND_CHECKSUM {
+      @Override
+      List<Object> of(DefaultIssue issue) {
+        return key(issue.ruleKey(), issue.line(), issue.checksum());
+      }
 
-  private boolean isNotAlreadyMapped(DefaultIssue newIssue, IssueTrackingResult result) {
-    return !result.isMatched(newIssue);
-  }
+      @Override
+      List<Object> of(IssueDto issue) {
+        return key(ruleKey(issue), issue.getLine(), issue.getChecksum());
+      }
+    },
+    CHECKSUM_AND_MESSAGE {
+      @Override
+      List<Object> of(DefaultIssue issue) {
+        return key(issue.ruleKey(), issue.checksum(), issue.message());
+      }
 
-  private boolean isSameChecksum(DefaultIssue newIssue, IssueDto pastIssue) {
-    return Objects.equal(pastIssue.getChecksum(), newIssue.checksum());
-  }
+      @Override
+      List<Object> of(IssueDto issue) {
+        return key(ruleKey(issue), issue.getChecksum(), issue.getMessage());
+      }
+    },
+    LINE_AND_MESSAGE {
+      @Override
+      List<Object> of(DefaultIssue issue) {
+        return key(issue.ruleKey(), issue.line(), issue.message());
+      }
 
-  private boolean isSameLine(DefaultIssue newIssue, IssueDto pastIssue) {
-    return Objects.equal(pastIssue.getLine(), newIssue.line());
-  }
+      @Override
+      List<Object> of(IssueDto issue) {
+        return key(ruleKey(issue), issue.getLine(), issue.getMessage());
+      }
+    },
+    CHECKSUM {
+      @Override
+      List<Object> of(DefaultIssue issue) {
+        return key(issue.ruleKey(), issue.checksum());
+      }
 
-  private boolean isSameMessage(DefaultIssue newIssue, IssueDto pastIssue) {
-    return Objects.equal(newIssue.message(), pastIssue.getMessage());
-  }
+      @Override
+      List<Object> of(IssueDto issue) {
+        return key(ruleKey(issue), issue.getChecksum());
+      }
+    };
 
-  private boolean isSameKey(DefaultIssue newIssue, IssueDto pastIssue) {
-    return Objects.equal(newIssue.key(), pastIssue.getKee());
-  }
+    abstract List<Object> of(DefaultIssue issue);
 
-  private void mapIssue(DefaultIssue issue, @Nullable IssueDto ref, IssueTrackingResult result) {
-    if (ref != null) {
-      result.setMatch(issue, ref);
+    abstract List<Object> of(IssueDto issue);
+
+    private static RuleKey ruleKey(IssueDto issue) {
+      return RuleKey.of(issue.getRuleRepo(), issue.getRule());
     }
-  }
 
-  @Override
-  public String toString() {
-    return getClass().getSimpleName();
+    /**
+     * Lists compare their elements with equals(), null elements included, exactly like Objects.equal()
+     */
+    private static List<Object> key(Object... values) {
+      return Arrays.asList(values);
+    }
   }
 
   private static class LinePair {
@@ -326,6 +415,10 @@ public class IssueTracking implements BatchExtension {
       this.lineB = lineB;
       this.weight = weight;
     }
+
+    long key() {
+      return ((long) lineA << 32) | (lineB & 0xFFFFFFFFL);
+    }
   }
 
   private static class HashOccurrence {
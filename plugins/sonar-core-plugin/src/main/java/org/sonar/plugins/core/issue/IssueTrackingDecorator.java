@@ -44,11 +44,13 @@ import org.sonar.api.rules.ActiveRule;
 import org.sonar.api.rules.Rule;
 import org.sonar.api.rules.RuleFinder;
 import org.sonar.api.utils.KeyValueFormat;
+import org.sonar.batch.index.ComponentDataCache;
 import org.sonar.batch.issue.IssueCache;
 import org.sonar.batch.scan.LastSnapshots;
 import org.sonar.core.issue.IssueUpdater;
 import org.sonar.core.issue.db.IssueDto;
 import org.sonar.core.issue.workflow.IssueWorkflow;
+import org.sonar.core.source.SnapshotDataType;
 
 import java.util.Collection;
 
@@ -68,6 +70,7 @@ public class IssueTrackingDecorator implements Decorator {
   private final ResourcePerspectives perspectives;
   private final RulesProfile rulesProfile;
   private final RuleFinder ruleFinder;
+  private final ComponentDataCache componentDataCache;
 
   public IssueTrackingDecorator(IssueCache issueCache, InitialOpenIssuesStack initialOpenIssues, IssueTracking tracking,
       LastSnapshots lastSnapshots, SonarIndex index,
@@ -76,7 +79,8 @@ public class IssueTrackingDecorator implements Decorator {
       Project project,
       ResourcePerspectives perspectives,
       RulesProfile rulesProfile,
-      RuleFinder ruleFinder) {
+      RuleFinder ruleFinder,
+      ComponentDataCache componentDataCache) {
     this.issueCache = issueCache;
     this.initialOpenIssues = initialOpenIssues;
     this.tracking = tracking;
@@ -89,6 +93,7 @@ public class IssueTrackingDecorator implements Decorator {
     this.perspectives = perspectives;
     this.rulesProfile = rulesProfile;
     this.ruleFinder = ruleFinder;
+    this.componentDataCache = componentDataCache;
   }
 
   public boolean shouldExecuteOnProject(Project project) {
@@ -123,6 +128,11 @@ public class IssueTrackingDecorator implements Decorator {
 
     mergeMatched(trackingResult);
 
+    if (ResourceUtils.isFile(resource) && sourceHashHolder.getSource() != null) {
+      // line hashes are used instead of the whole source to track issues during next analysis
+      componentDataCache.setStringData(resource.getEffectiveKey(), SnapshotDataType.LINE_HASHES.getValue(), sourceHashHolder.getSourceLineHashes().format());
+    }
+
     if (ResourceUtils.isProject(resource)) {
       // issues that relate to deleted components
       addIssuesOnDeletedComponents(issues);
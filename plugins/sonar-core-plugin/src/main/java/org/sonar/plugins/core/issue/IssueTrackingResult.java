@@ -40,8 +40,11 @@ class IssueTrackingResult {
     return unmatched;
   }
 
-  Collection<IssueDto> unmatchedForRule(RuleKey ruleKey) {
-    return unmatchedByRule.get(ruleKey);
+  /**
+   * Unmatched issues, iterated in the order they were added
+   */
+  Collection<IssueDto> unmatchedInInsertionOrder() {
+    return unmatchedByRule.values();
   }
 
   Collection<DefaultIssue> matched() {
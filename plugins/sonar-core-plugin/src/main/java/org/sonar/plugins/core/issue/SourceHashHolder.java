@@ -25,8 +25,8 @@ import org.sonar.api.batch.SonarIndex;
 import org.sonar.api.resources.Resource;
 import org.sonar.batch.scan.LastSnapshots;
 import org.sonar.plugins.core.issue.tracking.HashedSequence;
-import org.sonar.plugins.core.issue.tracking.StringText;
-import org.sonar.plugins.core.issue.tracking.StringTextComparator;
+import org.sonar.plugins.core.issue.tracking.LineHashSequence;
+import org.sonar.plugins.core.issue.tracking.LineHashSequenceComparator;
 
 
 
@@ -40,9 +40,12 @@ public class SourceHashHolder {
   private boolean sourceInitialized;
   private String referenceSource;
   private boolean referenceSourceInitialized;
+  private int[] referenceLineHashes;
+  private boolean referenceLineHashesInitialized;
 
-  private HashedSequence<StringText> hashedReference;
-  private HashedSequence<StringText> hashedSource;
+  private HashedSequence<LineHashSequence> hashedReference;
+  private HashedSequence<LineHashSequence> hashedSource;
+  private LineHashSequence sourceLineHashes;
 
   public SourceHashHolder(SonarIndex index, LastSnapshots lastSnapshots, Resource resource) {
     this.index = index;
@@ -50,21 +53,33 @@ public class SourceHashHolder {
     this.resource = resource;
   }
 
-  private void initHashes() {
-    hashedReference = HashedSequence.wrap(new StringText(getReferenceSource()), StringTextComparator.IGNORE_WHITESPACE);
-    hashedSource = HashedSequence.wrap(new StringText(getSource()), StringTextComparator.IGNORE_WHITESPACE);
-  }
-
-  public HashedSequence<StringText> getHashedReference() {
-    initHashesIfNull(hashedReference);
+  public HashedSequence<LineHashSequence> getHashedReference() {
+    if (hashedReference == null) {
+      // line hashes stored by the previous analysis avoid loading and hashing the previous source
+      int[] lineHashes = getReferenceLineHashes();
+      LineHashSequence reference = lineHashes != null ? LineHashSequence.createForHashes(lineHashes) : LineHashSequence.createForSource(getReferenceSource());
+      hashedReference = HashedSequence.wrap(reference, LineHashSequenceComparator.INSTANCE);
+    }
     return hashedReference;
   }
 
-  public HashedSequence<StringText> getHashedSource() {
-    initHashesIfNull(hashedSource);
+  public HashedSequence<LineHashSequence> getHashedSource() {
+    if (hashedSource == null) {
+      hashedSource = HashedSequence.wrap(getSourceLineHashes(), LineHashSequenceComparator.INSTANCE);
+    }
     return hashedSource;
   }
 
+  /**
+   * Hashes of the lines of the current source, to be stored for the next analysis
+   */
+  public LineHashSequence getSourceLineHashes() {
+    if (sourceLineHashes == null) {
+      sourceLineHashes = LineHashSequence.createForSource(getSource());
+    }
+    return sourceLineHashes;
+  }
+
   public String getSource() {
     if (! sourceInitialized) {
       source = index.getSource(resource);
@@ -83,14 +98,21 @@ public class SourceHashHolder {
     return referenceSource;
   }
 
-  public boolean hasBothReferenceAndCurrentSource() {
-    return getSource() != null && getReferenceSource() != null;
+  private int[] getReferenceLineHashes() {
+    if (!referenceLineHashesInitialized) {
+      if (resource != null) {
+        String formattedLineHashes = lastSnapshots.getLineHashes(resource);
+        if (formattedLineHashes != null) {
+          referenceLineHashes = LineHashSequence.parse(formattedLineHashes);
+        }
+      }
+      referenceLineHashesInitialized = true;
+    }
+    return referenceLineHashes;
   }
 
-  private void initHashesIfNull(Object required) {
-    if(required == null) {
-      initHashes();
-    }
+  public boolean hasBothReferenceAndCurrentSource() {
+    return getSource() != null && (getReferenceLineHashes() != null || getReferenceSource() != null);
   }
 
   public Collection<Integer> getNewLinesMatching(Integer originLine) {
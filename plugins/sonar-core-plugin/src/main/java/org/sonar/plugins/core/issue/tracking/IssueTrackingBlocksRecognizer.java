@@ -20,27 +20,23 @@
 package org.sonar.plugins.core.issue.tracking;
 
 import com.google.common.annotations.VisibleForTesting;
-import org.sonar.plugins.core.issue.tracking.HashedSequence;
-import org.sonar.plugins.core.issue.tracking.HashedSequenceComparator;
-import org.sonar.plugins.core.issue.tracking.StringText;
-import org.sonar.plugins.core.issue.tracking.StringTextComparator;
 
 import javax.annotation.Nullable;
 
 public class IssueTrackingBlocksRecognizer {
 
-  private final HashedSequence<StringText> a;
-  private final HashedSequence<StringText> b;
-  private final HashedSequenceComparator<StringText> cmp;
+  private final HashedSequence<LineHashSequence> a;
+  private final HashedSequence<LineHashSequence> b;
+  private final HashedSequenceComparator<LineHashSequence> cmp;
 
   @VisibleForTesting
   public IssueTrackingBlocksRecognizer(String referenceSource, String source) {
-    this.a = HashedSequence.wrap(new StringText(referenceSource), StringTextComparator.IGNORE_WHITESPACE);
-    this.b = HashedSequence.wrap(new StringText(source), StringTextComparator.IGNORE_WHITESPACE);
-    this.cmp = new HashedSequenceComparator<StringText>(StringTextComparator.IGNORE_WHITESPACE);
+    this.a = HashedSequence.wrap(LineHashSequence.createForSource(referenceSource), LineHashSequenceComparator.INSTANCE);
+    this.b = HashedSequence.wrap(LineHashSequence.createForSource(source), LineHashSequenceComparator.INSTANCE);
+    this.cmp = new HashedSequenceComparator<LineHashSequence>(LineHashSequenceComparator.INSTANCE);
   }
 
-  public IssueTrackingBlocksRecognizer(HashedSequence<StringText> a, HashedSequence<StringText> b, HashedSequenceComparator<StringText> cmp) {
+  public IssueTrackingBlocksRecognizer(HashedSequence<LineHashSequence> a, HashedSequence<LineHashSequence> b, HashedSequenceComparator<LineHashSequence> cmp) {
     this.a = a;
     this.b = b;
     this.cmp = cmp;
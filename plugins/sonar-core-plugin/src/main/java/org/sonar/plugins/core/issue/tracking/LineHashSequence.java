@@ -0,0 +1,86 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2013 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.plugins.core.issue.tracking;
+
+import org.apache.commons.lang.StringUtils;
+
+/**
+ * Sequence of the whitespace-insensitive hashes of the lines of a text. Contrary to {@link StringText}, it does not
+ * keep the text itself, so that it can be stored and reloaded to track issues during next analysis.
+ *
+ * @since 4.0
+ */
+public final class LineHashSequence implements Sequence {
+
+  private static final char SEPARATOR = ',';
+
+  final int[] hashes;
+
+  private LineHashSequence(int[] hashes) {
+    this.hashes = hashes;
+  }
+
+  public static LineHashSequence createForSource(String source) {
+    StringText text = new StringText(source);
+    int[] hashes = new int[text.length()];
+    for (int i = 0; i < hashes.length; i++) {
+      hashes[i] = StringTextComparator.IGNORE_WHITESPACE.hash(text, i);
+    }
+    return new LineHashSequence(hashes);
+  }
+
+  public static LineHashSequence createForHashes(int[] hashes) {
+    return new LineHashSequence(hashes);
+  }
+
+  public int length() {
+    return hashes.length;
+  }
+
+  public int[] hashes() {
+    return hashes;
+  }
+
+  /**
+   * Compact representation of the hashes, read by {@link #parse(String)}
+   */
+  public String format() {
+    StringBuilder sb = new StringBuilder(hashes.length * 7);
+    for (int i = 0; i < hashes.length; i++) {
+      if (i > 0) {
+        sb.append(SEPARATOR);
+      }
+      sb.append(Integer.toString(hashes[i], Character.MAX_RADIX));
+    }
+    return sb.toString();
+  }
+
+  public static int[] parse(String formattedHashes) {
+    String[] values = StringUtils.split(formattedHashes, SEPARATOR);
+    if (values == null) {
+      return new int[0];
+    }
+    int[] hashes = new int[values.length];
+    for (int i = 0; i < hashes.length; i++) {
+      hashes[i] = Integer.parseInt(values[i], Character.MAX_RADIX);
+    }
+    return hashes;
+  }
+}
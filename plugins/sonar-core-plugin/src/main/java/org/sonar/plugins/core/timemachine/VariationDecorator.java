@@ -80,7 +80,7 @@ public class VariationDecorator implements Decorator {
   }
 
   private void computeVariation(Resource resource, DecoratorContext context, PastSnapshot pastSnapshot) {
-    List<Object[]> pastMeasures = pastMeasuresLoader.getPastMeasures(resource, pastSnapshot);
+    List<Object[]> pastMeasures = pastMeasuresLoader.pollPastMeasures(resource, pastSnapshot);
     compareWithPastMeasures(context, pastSnapshot.getIndex(), pastMeasures);
   }
 
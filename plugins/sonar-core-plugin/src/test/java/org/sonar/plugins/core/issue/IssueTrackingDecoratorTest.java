@@ -38,12 +38,15 @@ import org.sonar.api.resources.Resource;
 import org.sonar.api.rule.RuleKey;
 import org.sonar.api.rules.Rule;
 import org.sonar.api.rules.RuleFinder;
+import org.sonar.batch.index.ComponentDataCache;
 import org.sonar.batch.issue.IssueCache;
 import org.sonar.batch.scan.LastSnapshots;
 import org.sonar.core.issue.IssueUpdater;
 import org.sonar.core.issue.db.IssueDto;
 import org.sonar.core.issue.workflow.IssueWorkflow;
 import org.sonar.core.persistence.AbstractDaoTestCase;
+import org.sonar.core.source.SnapshotDataType;
+import org.sonar.plugins.core.issue.tracking.LineHashSequence;
 import org.sonar.java.api.JavaClass;
 
 import java.util.Arrays;
@@ -59,6 +62,7 @@ import static org.mockito.Matchers.eq;
 import static org.mockito.Matchers.isA;
 import static org.mockito.Mockito.RETURNS_MOCKS;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyZeroInteractions;
@@ -78,6 +82,7 @@ public class IssueTrackingDecoratorTest extends AbstractDaoTestCase {
   ResourcePerspectives perspectives = mock(ResourcePerspectives.class);
   RulesProfile profile = mock(RulesProfile.class);
   RuleFinder ruleFinder = mock(RuleFinder.class);
+  ComponentDataCache componentDataCache = mock(ComponentDataCache.class);
 
   @Before
   public void init() {
@@ -93,7 +98,8 @@ public class IssueTrackingDecoratorTest extends AbstractDaoTestCase {
       mock(Project.class),
       perspectives,
       profile,
-      ruleFinder);
+      ruleFinder,
+      componentDataCache);
   }
 
   @Test
@@ -207,6 +213,55 @@ public class IssueTrackingDecoratorTest extends AbstractDaoTestCase {
     assertThat(issue.isOnDisabledRule()).isFalse();
   }
 
+  @Test
+  public void manual_issues_should_be_moved_with_line_hashes_of_previous_analysis() throws Exception {
+    Resource file = new File("Action.java").setEffectiveKey("struts:Action.java").setId(123);
+
+    IssueDto unmatchedIssue = new IssueDto().setKee("ABCDE").setReporter("freddy").setLine(3).setStatus("OPEN").setRuleKey_unit_test_only("manual", "Performance");
+    when(ruleFinder.findByKey(RuleKey.of("manual", "Performance"))).thenReturn(new Rule("manual", "Performance"));
+    IssueTrackingResult trackingResult = new IssueTrackingResult();
+    trackingResult.addUnmatched(unmatchedIssue);
+
+    String originalSource = "public interface Action {\n"
+      + "   void method1();\n"
+      + "   void method2();\n" // Original issue here
+      + "}";
+    String newSource = "public interface Action {\n"
+      + "   void method2();\n" // New issue here
+      + "   void method1();\n"
+      + "}";
+    when(index.getSource(file)).thenReturn(newSource);
+    when(lastSnapshots.getLineHashes(file)).thenReturn(LineHashSequence.createForSource(originalSource).format());
+    when(tracking.track(isA(SourceHashHolder.class), anyCollection(), anyCollection())).thenReturn(trackingResult);
+
+    decorator.doDecorate(file);
+
+    ArgumentCaptor<DefaultIssue> argument = ArgumentCaptor.forClass(DefaultIssue.class);
+    verify(issueCache).put(argument.capture());
+    assertThat(argument.getValue().line()).isEqualTo(2);
+    verify(lastSnapshots, never()).getSource(file);
+  }
+
+  @Test
+  public void should_store_line_hashes_of_files() throws Exception {
+    Resource file = new File("Action.java").setEffectiveKey("struts:Action.java").setId(123);
+    String source = "public interface Action {\n}";
+    when(index.getSource(file)).thenReturn(source);
+
+    decorator.doDecorate(file);
+
+    verify(componentDataCache).setStringData("struts:Action.java", SnapshotDataType.LINE_HASHES.getValue(), LineHashSequence.createForSource(source).format());
+  }
+
+  @Test
+  public void should_not_store_line_hashes_of_files_without_source() throws Exception {
+    Resource file = new File("Action.java").setEffectiveKey("struts:Action.java").setId(123);
+
+    decorator.doDecorate(file);
+
+    verifyZeroInteractions(componentDataCache);
+  }
+
   @Test
   public void manual_issues_should_be_untouched_if_already_closed() throws Exception {
     Resource file = new File("Action.java").setEffectiveKey("struts:Action.java").setId(123);
@@ -36,6 +36,7 @@ import org.sonar.core.issue.db.IssueDto;
 
 import java.io.IOException;
 import java.util.Arrays;
+import java.util.List;
 
 import static com.google.common.collect.Lists.newArrayList;
 import static org.fest.assertions.Assertions.assertThat;
@@ -129,6 +130,23 @@ public class IssueTrackingTest {
     assertThat(result.matching(newIssue)).isSameAs(referenceIssue);
   }
 
+  @Test
+  public void match_reference_issues_in_order_when_several_have_same_checksum() {
+    sourceHashHolder = new SourceHashHolder(index, lastSnapshots, null);
+
+    DefaultIssue newIssue1 = newDefaultIssue("new message 1", 10, RuleKey.of("squid", "AvoidCycle"), "checksum1");
+    DefaultIssue newIssue2 = newDefaultIssue("new message 2", 20, RuleKey.of("squid", "AvoidCycle"), "checksum1");
+    IssueDto otherRuleIssue = newReferenceIssue("message", 1, "squid", "NullDeref", "checksum1");
+    IssueDto referenceIssue1 = newReferenceIssue("message 1", 1, "squid", "AvoidCycle", "checksum1");
+    IssueDto referenceIssue2 = newReferenceIssue("message 2", 2, "squid", "AvoidCycle", "checksum1");
+
+    IssueTrackingResult result = new IssueTrackingResult();
+    tracking.mapIssues(newArrayList(newIssue1, newIssue2), newArrayList(otherRuleIssue, referenceIssue1, referenceIssue2), sourceHashHolder, result);
+    assertThat(result.matching(newIssue1)).isSameAs(referenceIssue1);
+    assertThat(result.matching(newIssue2)).isSameAs(referenceIssue2);
+    assertThat(result.unmatched()).containsOnly(otherRuleIssue);
+  }
+
   @Test
   public void should_ignore_reference_measure_without_checksum() {
     sourceHashHolder = new SourceHashHolder(index, lastSnapshots, null);
@@ -340,6 +358,36 @@ public class IssueTrackingTest {
     assertThat(result.matching(newIssue5)).isSameAs(referenceIssue1);
   }
 
+  @Test
+  public void should_track_issues_based_on_blocks_recognition_when_many_lines_have_issues() throws Exception {
+    StringBuilder referenceSource = new StringBuilder();
+    StringBuilder source = new StringBuilder();
+    List<IssueDto> referenceIssues = newArrayList();
+    List<DefaultIssue> newIssues = newArrayList();
+    // lines with issues are different, except the last one, and are too many to compare every old line to every new line
+    for (int line = 1; line <= 600; line++) {
+      referenceSource.append("old").append(line).append("();\n");
+      source.append("new").append(line).append("();\n");
+      referenceIssues.add(newReferenceIssue("Old " + line, line, "squid", "Other", null));
+      newIssues.add(newDefaultIssue("New " + line, line, RuleKey.of("squid", "Other"), null));
+    }
+    referenceSource.append("moved();\n");
+    source.append("moved();\n");
+    IssueDto referenceIssue = newReferenceIssue("Before move", 601, "squid", "AvoidCycle", null);
+    referenceIssues.add(referenceIssue);
+    DefaultIssue newIssue = newDefaultIssue("After move", 601, RuleKey.of("squid", "AvoidCycle"), null);
+    newIssues.add(newIssue);
+
+    when(lastSnapshots.getSource(project)).thenReturn(referenceSource.toString());
+    when(index.getSource(project)).thenReturn(source.toString());
+    sourceHashHolder = new SourceHashHolder(index, lastSnapshots, project);
+
+    IssueTrackingResult result = new IssueTrackingResult();
+    tracking.mapIssues(newIssues, referenceIssues, sourceHashHolder, result);
+
+    assertThat(result.matching(newIssue)).isSameAs(referenceIssue);
+  }
+
   private static String load(String name) throws IOException {
     return Resources.toString(IssueTrackingTest.class.getResource("IssueTrackingTest/" + name + ".txt"), Charsets.UTF_8);
   }
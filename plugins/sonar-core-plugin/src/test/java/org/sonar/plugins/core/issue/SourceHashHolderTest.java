@@ -27,8 +27,11 @@ import org.junit.Test;
 import org.sonar.api.batch.SonarIndex;
 import org.sonar.api.resources.Resource;
 import org.sonar.batch.scan.LastSnapshots;
+import org.sonar.plugins.core.issue.tracking.LineHashSequence;
+
 import static org.fest.assertions.Assertions.assertThat;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.when;
 
 public class SourceHashHolderTest {
@@ -79,4 +82,16 @@ public class SourceHashHolderTest {
     assertThat(sourceHashHolder.getReferenceSource()).isNull();
     Mockito.verifyNoMoreInteractions(lastSnapshots);
   }
+
+  @Test
+  public void should_use_line_hashes_of_reference_instead_of_source() {
+    when(lastSnapshots.getLineHashes(resource)).thenReturn(LineHashSequence.createForSource("a\nb").format());
+    when(index.getSource(resource)).thenReturn("b\na\nc");
+
+    assertThat(sourceHashHolder.hasBothReferenceAndCurrentSource()).isTrue();
+    assertThat(sourceHashHolder.getHashedReference().length()).isEqualTo(2);
+    assertThat(sourceHashHolder.getNewLinesMatching(1)).containsOnly(2);
+    assertThat(sourceHashHolder.getNewLinesMatching(2)).containsOnly(1);
+    verify(lastSnapshots, never()).getSource(resource);
+  }
 }
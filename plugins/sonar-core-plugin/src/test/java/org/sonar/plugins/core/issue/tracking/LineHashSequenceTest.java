@@ -0,0 +1,63 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2013 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.plugins.core.issue.tracking;
+
+import org.junit.Test;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class LineHashSequenceTest {
+
+  @Test
+  public void should_hash_lines_ignoring_whitespaces() {
+    LineHashSequence sequence = LineHashSequence.createForSource("foo();\n  foo ( ) ;\nbar();");
+
+    assertThat(sequence.length()).isEqualTo(3);
+    assertThat(LineHashSequenceComparator.INSTANCE.equals(sequence, 0, sequence, 1)).isTrue();
+    assertThat(LineHashSequenceComparator.INSTANCE.equals(sequence, 0, sequence, 2)).isFalse();
+  }
+
+  @Test
+  public void should_have_same_hashes_as_string_text() {
+    StringText text = new StringText("foo();\nbar();\n");
+    LineHashSequence sequence = LineHashSequence.createForSource("foo();\nbar();\n");
+
+    assertThat(sequence.length()).isEqualTo(text.length());
+    for (int i = 0; i < text.length(); i++) {
+      assertThat(LineHashSequenceComparator.INSTANCE.hash(sequence, i)).isEqualTo(StringTextComparator.IGNORE_WHITESPACE.hash(text, i));
+    }
+  }
+
+  @Test
+  public void should_format_and_parse_hashes() {
+    int[] hashes = {0, -1, Integer.MAX_VALUE, Integer.MIN_VALUE, 123456};
+
+    String formatted = LineHashSequence.createForHashes(hashes).format();
+
+    assertThat(formatted).isEqualTo("0,-1,zik0zj,-zik0zk,2n9c");
+    assertThat(LineHashSequence.parse(formatted)).isEqualTo(hashes);
+  }
+
+  @Test
+  public void should_parse_empty_file() {
+    assertThat(LineHashSequence.createForSource("").format()).isEmpty();
+    assertThat(LineHashSequence.parse("")).isEmpty();
+  }
+}
@@ -68,12 +68,12 @@ public class VariationDecoratorTest extends AbstractDbUnitTestCase {
     PastSnapshot pastSnapshot3 = new PastSnapshot("days", new Date()).setIndex(3);
 
     // first past analysis
-    when(pastMeasuresLoader.getPastMeasures(javaPackage, pastSnapshot1)).thenReturn(Arrays.asList(
+    when(pastMeasuresLoader.pollPastMeasures(javaPackage, pastSnapshot1)).thenReturn(Arrays.asList(
       new Object[]{NCLOC_ID, null, null, null, 180.0},
       new Object[]{COVERAGE_ID, null, null, null, 75.0}));
 
     // second past analysis
-    when(pastMeasuresLoader.getPastMeasures(javaPackage, pastSnapshot3)).thenReturn(Arrays.<Object[]>asList(
+    when(pastMeasuresLoader.pollPastMeasures(javaPackage, pastSnapshot3)).thenReturn(Arrays.<Object[]>asList(
       new Object[]{NCLOC_ID, null, null, null, 240.0}));
 
     // current analysis
@@ -110,7 +110,7 @@ public class VariationDecoratorTest extends AbstractDbUnitTestCase {
     PastSnapshot pastSnapshot1 = new PastSnapshot("days", new Date()).setIndex(1);
 
     // first past analysis
-    when(pastMeasuresLoader.getPastMeasures(javaPackage, pastSnapshot1)).thenReturn(Arrays.asList(
+    when(pastMeasuresLoader.pollPastMeasures(javaPackage, pastSnapshot1)).thenReturn(Arrays.asList(
       new Object[]{VIOLATIONS_ID, null, null, null, 180.0},// total
       new Object[]{VIOLATIONS_ID, null, null, rule1.getId(), 100.0},// rule 1
       new Object[]{VIOLATIONS_ID, null, null, rule2.getId(), 80.0})); // rule 2
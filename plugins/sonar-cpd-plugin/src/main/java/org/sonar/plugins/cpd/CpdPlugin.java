@@ -63,6 +63,33 @@ public final class CpdPlugin extends SonarPlugin {
         .subCategory(CoreProperties.SUBCATEGORY_DUPLICATIONS_EXCLUSIONS)
         .multiValues(true)
         .build(),
+      PropertyDefinition.builder(CoreProperties.CPD_THREADS)
+        .defaultValue(CoreProperties.CPD_THREADS_DEFAULT_VALUE + "")
+        .name("Threads")
+        .description("Number of threads used to index files and to detect duplications.")
+        .hidden()
+        .category(CoreProperties.CATEGORY_GENERAL)
+        .subCategory(CoreProperties.SUBCATEGORY_DUPLICATIONS)
+        .type(PropertyType.INTEGER)
+        .build(),
+      PropertyDefinition.builder(CoreProperties.CPD_MAPPED_INDEX)
+        .defaultValue(CoreProperties.CPD_MAPPED_INDEX_DEFAULT_VALUE + "")
+        .name("Memory-mapped index")
+        .description("Store the blocks of the analysed module in a memory-mapped file instead of the heap.")
+        .hidden()
+        .category(CoreProperties.CATEGORY_GENERAL)
+        .subCategory(CoreProperties.SUBCATEGORY_DUPLICATIONS)
+        .type(PropertyType.BOOLEAN)
+        .build(),
+      PropertyDefinition.builder(CoreProperties.CPD_FLUSH_SIZE)
+        .defaultValue(CoreProperties.CPD_FLUSH_SIZE_DEFAULT_VALUE + "")
+        .name("Flush size")
+        .description("Number of blocks sent to the database in a single batch when cross-project detection is enabled.")
+        .hidden()
+        .category(CoreProperties.CATEGORY_GENERAL)
+        .subCategory(CoreProperties.SUBCATEGORY_DUPLICATIONS)
+        .type(PropertyType.INTEGER)
+        .build(),
 
       CpdSensor.class,
       SumDuplicationsDecorator.class,
@@ -37,8 +37,10 @@ import org.sonar.api.scan.filesystem.FileQuery;
 import org.sonar.api.scan.filesystem.ModuleFileSystem;
 import org.sonar.api.scan.filesystem.PathResolver;
 import org.sonar.api.utils.SonarException;
+import org.sonar.duplications.DuplicationsException;
 import org.sonar.duplications.block.Block;
 import org.sonar.duplications.block.BlockChunker;
+import org.sonar.duplications.block.ParallelFileChunker;
 import org.sonar.duplications.detector.suffixtree.SuffixTreeCloneDetectionAlgorithm;
 import org.sonar.duplications.index.CloneGroup;
 import org.sonar.duplications.index.CloneIndex;
@@ -54,8 +56,10 @@ import org.sonar.plugins.cpd.index.SonarDuplicationsIndex;
 import javax.annotation.Nullable;
 
 import java.io.File;
-import java.io.*;
+import java.io.Reader;
+import java.util.ArrayDeque;
 import java.util.Collection;
+import java.util.Deque;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -105,67 +109,103 @@ public class SonarEngine extends CpdEngine {
     if (sourceFiles.isEmpty()) {
       return;
     }
-    SonarDuplicationsIndex index = createIndex(project, sourceFiles);
-    detect(index, context, project, sourceFiles);
+    SonarDuplicationsIndex index = indexFactory.create(project);
+    try {
+      populateIndex(index, project, sourceFiles);
+      detect(index, context, project, sourceFiles);
+    } finally {
+      IOUtils.closeQuietly(index);
+    }
   }
 
-  private SonarDuplicationsIndex createIndex(Project project, List<File> sourceFiles) {
-    final SonarDuplicationsIndex index = indexFactory.create(project);
-
-    TokenChunker tokenChunker = JavaTokenProducer.build();
-    StatementChunker statementChunker = JavaStatementBuilder.build();
-    BlockChunker blockChunker = new BlockChunker(BLOCK_SIZE);
-
-    for (File file : sourceFiles) {
-      LOG.debug("Populating index from {}", file);
-      Resource resource = getResource(file);
-      String resourceKey = getFullKey(project, resource);
-
-      List<Statement> statements;
-
-      Reader reader = null;
-      try {
-        reader = new InputStreamReader(new FileInputStream(file), fileSystem.sourceCharset());
-        statements = statementChunker.chunk(tokenChunker.chunk(reader));
-      } catch (FileNotFoundException e) {
-        throw new SonarException("Cannot find file "+ file, e);
-      } finally {
-        IOUtils.closeQuietly(reader);
-      }
+  private void populateIndex(final SonarDuplicationsIndex index, final Project project, List<File> sourceFiles) {
+    ParallelFileChunker chunker = new ParallelFileChunker(new JavaChunkerFactory(), fileSystem.sourceCharset(), getThreads());
+    try {
+      chunker.chunk(sourceFiles, new ParallelFileChunker.Callback() {
+        public String getResourceId(File file) {
+          LOG.debug("Populating index from {}", file);
+          return getFullKey(project, getResource(file));
+        }
 
-      List<Block> blocks = blockChunker.chunk(resourceKey, statements);
-      index.insert(resource, blocks);
+        public void onBlocks(File file, List<Block> blocks) {
+          index.insert(getResource(file), blocks);
+        }
+      });
+    } catch (DuplicationsException e) {
+      throw new SonarException(e.getMessage(), e);
     }
+  }
 
-    return index;
+  private static class JavaChunkerFactory implements ParallelFileChunker.ChunkerFactory {
+    public ParallelFileChunker.Chunker create() {
+      final TokenChunker tokenChunker = JavaTokenProducer.build();
+      final StatementChunker statementChunker = JavaStatementBuilder.build();
+      final BlockChunker blockChunker = new BlockChunker(BLOCK_SIZE);
+      return new ParallelFileChunker.Chunker() {
+        public List<Block> chunk(String resourceId, Reader reader) {
+          List<Statement> statements = statementChunker.chunk(tokenChunker.chunk(reader));
+          return blockChunker.chunk(resourceId, statements);
+        }
+      };
+    }
   }
 
   private void detect(SonarDuplicationsIndex index, SensorContext context, Project project, List<File> sourceFiles) {
-    ExecutorService executorService = Executors.newSingleThreadExecutor();
+    int threads = getThreads();
+    LOG.debug("Detection of duplications on {} thread(s)", threads);
+    ExecutorService executorService = Executors.newFixedThreadPool(threads);
     try {
+      // results are saved in the order of files. The number of pending files is bounded to limit memory consumption.
+      Deque<DetectionResult> pending = new ArrayDeque<DetectionResult>();
       for (File file : sourceFiles) {
         LOG.debug("Detection of duplications for {}", file);
         Resource resource = getResource(file);
         String resourceKey = getFullKey(project, resource);
 
         Collection<Block> fileBlocks = index.getByResource(resource, resourceKey);
-
-        List<CloneGroup> clones;
-        try {
-          clones = executorService.submit(new Task(index, fileBlocks)).get(TIMEOUT, TimeUnit.SECONDS);
-        } catch (TimeoutException e) {
-          clones = null;
-          LOG.warn("Timeout during detection of duplications for " + file, e);
-        } catch (InterruptedException e) {
-          throw new SonarException("Fail during detection of duplication for "+ file, e);
-        } catch (ExecutionException e) {
-          throw new SonarException("Fail during detection of duplication for "+ file, e);
+        pending.addLast(new DetectionResult(file, resource, executorService.submit(new Task(index, fileBlocks))));
+        if (pending.size() >= 2 * threads) {
+          save(context, pending.removeFirst());
         }
-
-        save(context, resource, clones);
+      }
+      while (!pending.isEmpty()) {
+        save(context, pending.removeFirst());
       }
     } finally {
-      executorService.shutdown();
+      executorService.shutdownNow();
+    }
+  }
+
+  private int getThreads() {
+    return Math.max(1, settings.getInt(CoreProperties.CPD_THREADS));
+  }
+
+  private static void save(SensorContext context, DetectionResult result) {
+    List<CloneGroup> clones;
+    try {
+      clones = result.clones.get(TIMEOUT, TimeUnit.SECONDS);
+    } catch (TimeoutException e) {
+      clones = null;
+      result.clones.cancel(true);
+      LOG.warn("Timeout during detection of duplications for " + result.file, e);
+    } catch (InterruptedException e) {
+      throw new SonarException("Fail during detection of duplication for "+ result.file, e);
+    } catch (ExecutionException e) {
+      throw new SonarException("Fail during detection of duplication for "+ result.file, e);
+    }
+
+    save(context, result.resource, clones);
+  }
+
+  private static class DetectionResult {
+    private final File file;
+    private final Resource resource;
+    private final Future<List<CloneGroup>> clones;
+
+    DetectionResult(File file, Resource resource, Future<List<CloneGroup>> clones) {
+      this.file = file;
+      this.resource = resource;
+      this.clones = clones;
     }
   }
 
@@ -19,35 +19,79 @@
  */
 package org.sonar.plugins.cpd.index;
 
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ListMultimap;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import org.apache.ibatis.session.ResultContext;
+import org.apache.ibatis.session.ResultHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.sonar.api.database.model.Snapshot;
 import org.sonar.api.resources.Project;
 import org.sonar.api.resources.Resource;
 import org.sonar.batch.index.ResourcePersister;
 import org.sonar.core.duplication.DuplicationDao;
 import org.sonar.core.duplication.DuplicationUnitDto;
+import org.sonar.core.persistence.BatchSession;
+import org.sonar.core.persistence.MyBatis;
 import org.sonar.duplications.block.Block;
 import org.sonar.duplications.block.ByteArray;
+import org.sonar.duplications.index.DataUtils;
 
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
+/**
+ * Blocks of other projects which have same hash as blocks of the current module.
+ * <p>
+ * Blocks of the module are inserted in JDBC batches shared by all files, which are flushed every {@code flushSize} blocks.
+ * Candidates of all files of the module are then streamed by a single query, once blocks of the module have been inserted.
+ * In order to decrease memory consumption, they are packed in flat arrays sorted by hash, in the same way as
+ * {@link org.sonar.duplications.index.PackedMemoryCloneIndex}: hash is stored as a long and resource is referenced by its id.
+ * Hashes which do not fit in a long, for example when blocks were computed by another version of the engine, are kept unpacked.
+ * Queries do not modify the index, so they can be executed concurrently.
+ * </p>
+ */
 public class DbDuplicationsIndex {
 
-  private final Map<ByteArray, Collection<Block>> cache = Maps.newHashMap();
+  private static final Logger LOG = LoggerFactory.getLogger(DbDuplicationsIndex.class);
+
+  /**
+   * Length of the hexadecimal representation of the hashes that can be packed in a long
+   */
+  private static final int PACKED_HASH_LENGTH = 16;
+
+  /**
+   * Resource id, index in file, start line and end line
+   */
+  private static final int BLOCK_INTS = 4;
+
+  private static final int DEFAULT_CAPACITY = 1024;
 
   private final ResourcePersister resourcePersister;
   private final int currentProjectSnapshotId;
   private final Integer lastSnapshotId;
   private final String languageKey;
 
-  private DuplicationDao dao;
+  private final DuplicationDao dao;
+  private final MyBatis mybatis;
+  private final int flushSize;
+  private BatchSession insertSession;
 
-  public DbDuplicationsIndex(ResourcePersister resourcePersister, Project currentProject, DuplicationDao dao) {
+  private volatile boolean cacheLoaded = false;
+  private final Map<Integer, String> resourceKeysById = Maps.newHashMap();
+  private int size;
+  private long[] hashes;
+  private int[] blockData;
+  private final ListMultimap<ByteArray, DuplicationUnitDto> unpackedUnits = ArrayListMultimap.create();
+
+  public DbDuplicationsIndex(ResourcePersister resourcePersister, Project currentProject, DuplicationDao dao, MyBatis mybatis, int flushSize) {
     this.dao = dao;
+    this.mybatis = mybatis;
+    this.flushSize = flushSize;
     this.resourcePersister = resourcePersister;
     Snapshot currentSnapshot = resourcePersister.getSnapshotOrFail(currentProject);
     Snapshot lastSnapshot = resourcePersister.getLastSnapshot(currentSnapshot, false);
@@ -60,50 +104,118 @@ public class DbDuplicationsIndex {
     return resourcePersister.getSnapshotOrFail(resource).getId();
   }
 
-  public void prepareCache(Resource resource) {
-    int resourceSnapshotId = getSnapshotIdFor(resource);
-    List<DuplicationUnitDto> units = dao.selectCandidates(resourceSnapshotId, lastSnapshotId, languageKey);
-    cache.clear();
-    // TODO Godin: maybe remove conversion of units to blocks?
-    for (DuplicationUnitDto unit : units) {
-      String hash = unit.getHash();
-      String resourceKey = unit.getResourceKey();
-      int indexInFile = unit.getIndexInFile();
-      int startLine = unit.getStartLine();
-      int endLine = unit.getEndLine();
-
-      // TODO Godin: in fact we could work directly with id instead of key - this will allow to decrease memory consumption
-      Block block = Block.builder()
-          .setResourceId(resourceKey)
-          .setBlockHash(new ByteArray(hash))
-          .setIndexInFile(indexInFile)
-          .setLines(startLine, endLine)
-          .build();
+  /**
+   * Loads candidates of all the files of the module. Must be called after insertion of all the blocks of the module.
+   */
+  public void prepareCache() {
+    if (!cacheLoaded) {
+      loadCache();
+    }
+  }
 
-      // Group blocks by hash
-      Collection<Block> sameHash = cache.get(block.getBlockHash());
-      if (sameHash == null) {
-        sameHash = Lists.newArrayList();
-        cache.put(block.getBlockHash(), sameHash);
+  private synchronized void loadCache() {
+    if (cacheLoaded) {
+      return;
+    }
+    // candidates are searched among the blocks of the module, so they must be visible
+    close();
+
+    hashes = new long[DEFAULT_CAPACITY];
+    blockData = new int[DEFAULT_CAPACITY * BLOCK_INTS];
+    size = 0;
+    unpackedUnits.clear();
+    dao.selectCandidatesOfProject(currentProjectSnapshotId, lastSnapshotId, languageKey, new ResultHandler() {
+      public void handleResult(ResultContext context) {
+        add((DuplicationUnitDto) context.getResultObject());
       }
-      sameHash.add(block);
+    });
+    DataUtils.sort(byHash);
+    if (!unpackedUnits.isEmpty()) {
+      LOG.debug("{} candidate blocks have hashes which can not be packed", unpackedUnits.size());
+    }
+    cacheLoaded = true;
+  }
+
+  private void add(DuplicationUnitDto unit) {
+    if (unit.getHash().length() != PACKED_HASH_LENGTH) {
+      unpackedUnits.put(new ByteArray(unit.getHash()), unit);
+      return;
+    }
+    int[] hash = new ByteArray(unit.getHash()).toIntArray();
+    if (!resourceKeysById.containsKey(unit.getResourceId())) {
+      resourceKeysById.put(unit.getResourceId(), unit.getResourceKey());
+    }
+    ensureCapacity();
+    hashes[size] = toLong(hash);
+    int offset = size * BLOCK_INTS;
+    blockData[offset++] = unit.getResourceId();
+    blockData[offset++] = unit.getIndexInFile();
+    blockData[offset++] = unit.getStartLine();
+    blockData[offset] = unit.getEndLine();
+    size++;
+  }
+
+  private void ensureCapacity() {
+    if (size < hashes.length) {
+      return;
     }
+    int newCapacity = hashes.length * 3 / 2 + 1;
+    long[] newHashes = new long[newCapacity];
+    System.arraycopy(hashes, 0, newHashes, 0, size);
+    hashes = newHashes;
+    int[] newBlockData = new int[newCapacity * BLOCK_INTS];
+    System.arraycopy(blockData, 0, newBlockData, 0, size * BLOCK_INTS);
+    blockData = newBlockData;
   }
 
   public Collection<Block> getByHash(ByteArray hash) {
-    Collection<Block> result = cache.get(hash);
-    if (result != null) {
-      return result;
-    } else {
+    if (!cacheLoaded) {
       return Collections.emptyList();
     }
+    Block.Builder blockBuilder = Block.builder();
+    List<Block> result = Lists.newArrayList();
+    if (!unpackedUnits.isEmpty()) {
+      for (DuplicationUnitDto unit : unpackedUnits.get(hash)) {
+        result.add(blockBuilder
+            .setResourceId(unit.getResourceKey())
+            .setBlockHash(hash)
+            .setIndexInFile(unit.getIndexInFile())
+            .setLines(unit.getStartLine(), unit.getEndLine())
+            .build());
+      }
+    }
+    int[] ints = hash.toIntArray();
+    if (ints.length != 2) {
+      return result;
+    }
+    long value = toLong(ints);
+    int index = searchByHash(value);
+    while (index < size && hashes[index] == value) {
+      int offset = index * BLOCK_INTS;
+      String resourceKey = resourceKeysById.get(blockData[offset++]);
+      int indexInFile = blockData[offset++];
+      int startLine = blockData[offset++];
+      int endLine = blockData[offset];
+      Block block = blockBuilder
+          .setResourceId(resourceKey)
+          .setBlockHash(hash)
+          .setIndexInFile(indexInFile)
+          .setLines(startLine, endLine)
+          .build();
+      result.add(block);
+      index++;
+    }
+    return result;
   }
 
-  public void insert(Resource resource, Collection<Block> blocks) {
+  /**
+   * Blocks are sent to the database by batches of {@code flushSize} blocks, and remaining ones are flushed
+   * by {@link #prepareCache()} or {@link #close()}.
+   */
+  public synchronized void insert(Resource resource, Collection<Block> blocks) {
     int resourceSnapshotId = getSnapshotIdFor(resource);
 
-    // TODO Godin: maybe remove conversion of blocks to units?
-    List<DuplicationUnitDto> units = Lists.newArrayList();
+    List<DuplicationUnitDto> units = Lists.newArrayListWithCapacity(blocks.size());
     for (Block block : blocks) {
       DuplicationUnitDto unit = new DuplicationUnitDto(
           currentProjectSnapshotId,
@@ -115,7 +227,66 @@ public class DbDuplicationsIndex {
       units.add(unit);
     }
 
-    dao.insert(units);
+    if (insertSession == null) {
+      insertSession = mybatis.openBatchSession(flushSize);
+    }
+    dao.insert(insertSession, units);
   }
 
+  /**
+   * Flushes and commits the blocks which are not inserted yet.
+   */
+  public synchronized void close() {
+    if (insertSession != null) {
+      try {
+        insertSession.commit();
+      } finally {
+        MyBatis.closeQuietly(insertSession);
+        insertSession = null;
+      }
+    }
+  }
+
+  private int searchByHash(long hash) {
+    int lower = 0;
+    int upper = size;
+    while (lower < upper) {
+      int mid = (lower + upper) >>> 1;
+      if (hashes[mid] < hash) {
+        lower = mid + 1;
+      } else {
+        upper = mid;
+      }
+    }
+    return lower;
+  }
+
+  private static long toLong(int[] hash) {
+    return ((long) hash[0] << 32) | (hash[1] & 0xFFFFFFFFL);
+  }
+
+  private final DataUtils.Sortable byHash = new DataUtils.Sortable() {
+    public void swap(int i, int j) {
+      long hash = hashes[i];
+      hashes[i] = hashes[j];
+      hashes[j] = hash;
+
+      i *= BLOCK_INTS;
+      j *= BLOCK_INTS;
+      for (int k = 0; k < BLOCK_INTS; k++, i++, j++) {
+        int x = blockData[i];
+        blockData[i] = blockData[j];
+        blockData[j] = x;
+      }
+    }
+
+    public boolean isLess(int i, int j) {
+      return hashes[i] < hashes[j];
+    }
+
+    public int size() {
+      return size;
+    }
+  };
+
 }
@@ -27,8 +27,15 @@ import org.sonar.api.BatchExtension;
 import org.sonar.api.CoreProperties;
 import org.sonar.api.config.Settings;
 import org.sonar.api.resources.Project;
+import org.sonar.api.scan.filesystem.ModuleFileSystem;
 import org.sonar.batch.index.ResourcePersister;
 import org.sonar.core.duplication.DuplicationDao;
+import org.sonar.core.persistence.MyBatis;
+import org.sonar.duplications.index.CloneIndex;
+import org.sonar.duplications.index.MappedCloneIndex;
+import org.sonar.duplications.index.PackedMemoryCloneIndex;
+
+import java.io.File;
 
 public class IndexFactory implements BatchExtension {
 
@@ -37,18 +44,37 @@ public class IndexFactory implements BatchExtension {
   private final Settings settings;
   private final ResourcePersister resourcePersister;
   private final DuplicationDao dao;
+  private final MyBatis mybatis;
+  private final ModuleFileSystem fileSystem;
 
-  public IndexFactory(Settings settings, ResourcePersister resourcePersister, DuplicationDao dao) {
+  public IndexFactory(Settings settings, ResourcePersister resourcePersister, DuplicationDao dao, MyBatis mybatis, ModuleFileSystem fileSystem) {
     this.settings = settings;
     this.resourcePersister = resourcePersister;
     this.dao = dao;
+    this.mybatis = mybatis;
+    this.fileSystem = fileSystem;
   }
 
   public SonarDuplicationsIndex create(Project project) {
+    CloneIndex mem = createMemoryIndex();
     if (verifyCrossProject(project, LOG)) {
-      return new SonarDuplicationsIndex(new DbDuplicationsIndex(resourcePersister, project, dao));
+      return new SonarDuplicationsIndex(mem, new DbDuplicationsIndex(resourcePersister, project, dao, mybatis, getFlushSize()));
+    }
+    return new SonarDuplicationsIndex(mem, null);
+  }
+
+  private int getFlushSize() {
+    return Math.max(1, settings.getInt(CoreProperties.CPD_FLUSH_SIZE));
+  }
+
+  @VisibleForTesting
+  CloneIndex createMemoryIndex() {
+    if (settings.getBoolean(CoreProperties.CPD_MAPPED_INDEX)) {
+      File file = new File(fileSystem.workingDir(), "cpd/blocks.idx");
+      LOG.debug("Blocks are stored in memory-mapped file {}", file);
+      return new MappedCloneIndex(file);
     }
-    return new SonarDuplicationsIndex();
+    return new PackedMemoryCloneIndex();
   }
 
   @VisibleForTesting
@@ -27,19 +27,28 @@ import org.sonar.duplications.index.AbstractCloneIndex;
 import org.sonar.duplications.index.CloneIndex;
 import org.sonar.duplications.index.PackedMemoryCloneIndex;
 
+import javax.annotation.Nullable;
+
+import java.io.Closeable;
+import java.io.IOException;
 import java.util.Collection;
 import java.util.List;
 
-public class SonarDuplicationsIndex extends AbstractCloneIndex {
+public class SonarDuplicationsIndex extends AbstractCloneIndex implements Closeable {
 
-  private final CloneIndex mem = new PackedMemoryCloneIndex();
+  private final CloneIndex mem;
   private final DbDuplicationsIndex db;
 
   public SonarDuplicationsIndex() {
-    this.db = null;
+    this(null);
+  }
+
+  public SonarDuplicationsIndex(@Nullable DbDuplicationsIndex db) {
+    this(new PackedMemoryCloneIndex(), db);
   }
 
-  public SonarDuplicationsIndex(DbDuplicationsIndex db) {
+  public SonarDuplicationsIndex(CloneIndex mem, @Nullable DbDuplicationsIndex db) {
+    this.mem = mem;
     this.db = db;
   }
 
@@ -54,7 +63,7 @@ public class SonarDuplicationsIndex extends AbstractCloneIndex {
 
   public Collection<Block> getByResource(Resource resource, String resourceKey) {
     if (db != null) {
-      db.prepareCache(resource);
+      db.prepareCache();
     }
     return mem.getByResourceId(resourceKey);
   }
@@ -77,4 +86,17 @@ public class SonarDuplicationsIndex extends AbstractCloneIndex {
     throw new UnsupportedOperationException();
   }
 
+  /**
+   * Flushes the blocks which are not persisted yet and releases the storage of blocks of the analysed module,
+   * for example the file behind a memory-mapped index.
+   */
+  public void close() throws IOException {
+    if (db != null) {
+      db.close();
+    }
+    if (mem instanceof Closeable) {
+      ((Closeable) mem).close();
+    }
+  }
+
 }
@@ -0,0 +1,175 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2013 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.plugins.cpd.index;
+
+import org.apache.ibatis.session.ResultContext;
+import org.apache.ibatis.session.ResultHandler;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.sonar.api.database.model.Snapshot;
+import org.sonar.api.resources.Project;
+import org.sonar.batch.index.ResourcePersister;
+import org.sonar.core.duplication.DuplicationDao;
+import org.sonar.core.duplication.DuplicationUnitDto;
+import org.sonar.core.persistence.MyBatis;
+import org.sonar.duplications.block.Block;
+import org.sonar.duplications.block.ByteArray;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class DbDuplicationsIndexTest {
+
+  DuplicationDao dao;
+  DbDuplicationsIndex index;
+
+  @Before
+  public void setUp() {
+    Project project = mock(Project.class);
+    when(project.getLanguageKey()).thenReturn("java");
+    ResourcePersister resourcePersister = mock(ResourcePersister.class);
+    Snapshot snapshot = new Snapshot();
+    snapshot.setId(10);
+    Snapshot lastSnapshot = new Snapshot();
+    lastSnapshot.setId(7);
+    when(resourcePersister.getSnapshotOrFail(project)).thenReturn(snapshot);
+    when(resourcePersister.getLastSnapshot(snapshot, false)).thenReturn(lastSnapshot);
+    dao = mock(DuplicationDao.class);
+    index = new DbDuplicationsIndex(resourcePersister, project, dao, mock(MyBatis.class), 100);
+  }
+
+  @Test
+  public void should_load_candidates_of_project_once() {
+    final List<DuplicationUnitDto> units = Arrays.asList(
+        newUnit(2, "bar", "00000000000000ff", 3),
+        newUnit(3, "baz", "00000000000000aa", 1),
+        newUnit(2, "bar", "00000000000000aa", 0),
+        newUnit(4, "old", "ffffffffffffffff", 0));
+    doAnswer(new Answer<Void>() {
+      public Void answer(InvocationOnMock invocation) {
+        ResultHandler handler = (ResultHandler) invocation.getArguments()[3];
+        for (DuplicationUnitDto unit : units) {
+          ResultContext context = mock(ResultContext.class);
+          when(context.getResultObject()).thenReturn(unit);
+          handler.handleResult(context);
+        }
+        return null;
+      }
+    }).when(dao).selectCandidatesOfProject(eq(10), eq(7), eq("java"), any(ResultHandler.class));
+
+    index.prepareCache();
+    index.prepareCache();
+    verify(dao, times(1)).selectCandidatesOfProject(anyInt(), anyInt(), anyString(), any(ResultHandler.class));
+
+    ByteArray hash = new ByteArray("00000000000000aa");
+    Collection<Block> blocks = index.getByHash(hash);
+    assertThat(blocks).hasSize(2);
+    for (Block block : blocks) {
+      assertThat(block.getBlockHash()).isSameAs(hash);
+      assertThat(block.getResourceId()).isIn("bar", "baz");
+    }
+
+    blocks = index.getByHash(new ByteArray("00000000000000ff"));
+    assertThat(blocks).hasSize(1);
+    Block block = blocks.iterator().next();
+    assertThat(block.getResourceId()).isEqualTo("bar");
+    assertThat(block.getIndexInFile()).isEqualTo(3);
+    assertThat(block.getStartLine()).isEqualTo(5);
+    assertThat(block.getEndLine()).isEqualTo(15);
+
+    assertThat(index.getByHash(new ByteArray("ffffffffffffffff"))).hasSize(1);
+    assertThat(index.getByHash(new ByteArray("00000000000000bb"))).isEmpty();
+  }
+
+  @Test
+  public void should_grow_when_many_candidates() {
+    doAnswer(new Answer<Void>() {
+      public Void answer(InvocationOnMock invocation) {
+        ResultHandler handler = (ResultHandler) invocation.getArguments()[3];
+        for (int i = 0; i < 5000; i++) {
+          ResultContext context = mock(ResultContext.class);
+          when(context.getResultObject()).thenReturn(newUnit(2, "bar", String.format("%016x", i % 10), i));
+          handler.handleResult(context);
+        }
+        return null;
+      }
+    }).when(dao).selectCandidatesOfProject(eq(10), eq(7), eq("java"), any(ResultHandler.class));
+
+    index.prepareCache();
+
+    assertThat(index.getByHash(new ByteArray("0000000000000003"))).hasSize(500);
+  }
+
+  @Test
+  public void should_keep_candidates_with_hashes_which_can_not_be_packed() {
+    final List<DuplicationUnitDto> units = Arrays.asList(
+        newUnit(2, "bar", "00000000000000aa", 0),
+        newUnit(3, "baz", "000000aa", 1),
+        newUnit(4, "qux", "000000000000000000000000000000aa", 2));
+    doAnswer(new Answer<Void>() {
+      public Void answer(InvocationOnMock invocation) {
+        ResultHandler handler = (ResultHandler) invocation.getArguments()[3];
+        for (DuplicationUnitDto unit : units) {
+          ResultContext context = mock(ResultContext.class);
+          when(context.getResultObject()).thenReturn(unit);
+          handler.handleResult(context);
+        }
+        return null;
+      }
+    }).when(dao).selectCandidatesOfProject(eq(10), eq(7), eq("java"), any(ResultHandler.class));
+
+    index.prepareCache();
+
+    assertThat(index.getByHash(new ByteArray("00000000000000aa"))).hasSize(1);
+    Collection<Block> blocks = index.getByHash(new ByteArray("000000aa"));
+    assertThat(blocks).hasSize(1);
+    assertThat(blocks.iterator().next().getResourceId()).isEqualTo("baz");
+    blocks = index.getByHash(new ByteArray("000000000000000000000000000000aa"));
+    assertThat(blocks).hasSize(1);
+    assertThat(blocks.iterator().next().getIndexInFile()).isEqualTo(2);
+  }
+
+  @Test
+  public void should_return_nothing_if_cache_is_not_loaded() {
+    assertThat(index.getByHash(new ByteArray("00000000000000aa"))).isEmpty();
+  }
+
+  private static DuplicationUnitDto newUnit(int resourceId, String resourceKey, String hash, int indexInFile) {
+    DuplicationUnitDto unit = new DuplicationUnitDto(1, 2, hash, indexInFile, 5, 15);
+    unit.setResourceId(resourceId);
+    unit.setResourceKey(resourceKey);
+    return unit;
+  }
+
+}
@@ -20,17 +20,25 @@
 package org.sonar.plugins.cpd.index;
 
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.slf4j.Logger;
 import org.sonar.api.CoreProperties;
 import org.sonar.api.config.Settings;
 import org.sonar.api.resources.Project;
+import org.sonar.api.scan.filesystem.ModuleFileSystem;
 import org.sonar.batch.index.ResourcePersister;
 import org.sonar.core.duplication.DuplicationDao;
+import org.sonar.core.persistence.MyBatis;
+import org.sonar.duplications.index.CloneIndex;
+import org.sonar.duplications.index.MappedCloneIndex;
+import org.sonar.duplications.index.PackedMemoryCloneIndex;
 
 import static org.fest.assertions.Assertions.assertThat;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 public class IndexFactoryTest {
 
@@ -38,12 +46,17 @@ public class IndexFactoryTest {
   Settings settings;
   IndexFactory factory;
   Logger logger;
+  ModuleFileSystem fileSystem;
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
 
   @Before
   public void setUp() {
     project = new Project("foo");
     settings = new Settings();
-    factory = new IndexFactory(settings, mock(ResourcePersister.class), mock(DuplicationDao.class));
+    fileSystem = mock(ModuleFileSystem.class);
+    factory = new IndexFactory(settings, mock(ResourcePersister.class), mock(DuplicationDao.class), mock(MyBatis.class), fileSystem);
     logger = mock(Logger.class);
   }
 
@@ -77,4 +90,19 @@ public class IndexFactoryTest {
     verify(logger).info("Cross-project analysis disabled");
   }
 
+  @Test
+  public void should_store_blocks_on_heap_by_default() {
+    assertThat(factory.createMemoryIndex()).isInstanceOf(PackedMemoryCloneIndex.class);
+  }
+
+  @Test
+  public void should_store_blocks_in_mapped_file() throws Exception {
+    settings.setProperty(CoreProperties.CPD_MAPPED_INDEX, "true");
+    when(fileSystem.workingDir()).thenReturn(temp.getRoot());
+
+    CloneIndex index = factory.createMemoryIndex();
+    assertThat(index).isInstanceOf(MappedCloneIndex.class);
+    ((MappedCloneIndex) index).close();
+  }
+
 }
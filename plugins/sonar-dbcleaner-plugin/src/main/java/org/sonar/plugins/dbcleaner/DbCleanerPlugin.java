@@ -34,7 +34,8 @@ import java.util.List;
 public final class DbCleanerPlugin extends SonarPlugin {
 
   public List getExtensions() {
-    return ImmutableList.builder().add(DefaultPeriodCleaner.class, DefaultPurgeTask.class, ProjectPurgePostJob.class)
+    return ImmutableList.builder().add(DefaultPeriodCleaner.class, DefaultPurgeTask.class, ProjectPurgePostJob.class,
+      PurgeQueue.class, PurgeScheduler.class, PurgeStatusWebService.class)
       .addAll(propertyDefinitions()).build();
   }
 
@@ -107,6 +108,54 @@ public final class DbCleanerPlugin extends SonarPlugin {
         .category(CoreProperties.CATEGORY_GENERAL)
         .subCategory(CoreProperties.SUBCATEGORY_DATABASE_CLEANER)
         .index(6)
+        .build(),
+
+      PropertyDefinition.builder(DbCleanerConstants.THREADS)
+        .defaultValue("1")
+        .name("Threads")
+        .description("Number of groups of past analyses of a project that are purged concurrently, each one with its own database connection.")
+        .hidden()
+        .type(PropertyType.INTEGER)
+        .category(CoreProperties.CATEGORY_GENERAL)
+        .subCategory(CoreProperties.SUBCATEGORY_DATABASE_CLEANER)
+        .build(),
+
+      PropertyDefinition.builder(DbCleanerConstants.MAX_SNAPSHOTS_PER_SECOND)
+        .defaultValue("0")
+        .name("Maximum number of snapshots per second")
+        .description("Maximum number of snapshots cleaned per second by a purge. Zero means no limit.")
+        .hidden()
+        .type(PropertyType.INTEGER)
+        .category(CoreProperties.CATEGORY_GENERAL)
+        .subCategory(CoreProperties.SUBCATEGORY_DATABASE_CLEANER)
+        .build(),
+
+      PropertyDefinition.builder(DbCleanerConstants.BACKGROUND)
+        .defaultValue("false")
+        .name("Background purges")
+        .description("If set to true, analyses only queue their project and the purges are executed later by the server.")
+        .hidden()
+        .type(PropertyType.BOOLEAN)
+        .category(CoreProperties.CATEGORY_GENERAL)
+        .subCategory(CoreProperties.SUBCATEGORY_DATABASE_CLEANER)
+        .build(),
+
+      PropertyDefinition.builder(DbCleanerConstants.SCHEDULER_CONCURRENCY)
+        .defaultValue("1")
+        .name("Concurrent background purges")
+        .description("Maximum number of projects purged at the same time by the server.")
+        .hidden()
+        .type(PropertyType.INTEGER)
+        .category(CoreProperties.CATEGORY_GENERAL)
+        .subCategory(CoreProperties.SUBCATEGORY_DATABASE_CLEANER)
+        .build(),
+
+      PropertyDefinition.builder(DbCleanerConstants.SCHEDULER_WINDOW)
+        .name("Time window of background purges")
+        .description("Purges are started only during this daily window, for example 22:00-06:00. Empty means at any time.")
+        .hidden()
+        .category(CoreProperties.CATEGORY_GENERAL)
+        .subCategory(CoreProperties.SUBCATEGORY_DATABASE_CLEANER)
         .build()
     );
   }
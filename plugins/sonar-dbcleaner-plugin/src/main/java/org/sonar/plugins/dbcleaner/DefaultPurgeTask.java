@@ -92,6 +92,7 @@ public class DefaultPurgeTask implements PurgeTask {
     if (settings.getBoolean(DbCleanerConstants.PROPERTY_CLEAN_DIRECTORY)) {
       scopes = new String[] {Scopes.DIRECTORY, Scopes.FILE};
     }
-    return new PurgeConfiguration(resourceId, scopes, settings.getInt(DbCleanerConstants.DAYS_BEFORE_DELETING_CLOSED_ISSUES));
+    return new PurgeConfiguration(resourceId, scopes, settings.getInt(DbCleanerConstants.DAYS_BEFORE_DELETING_CLOSED_ISSUES),
+      settings.getInt(DbCleanerConstants.THREADS), settings.getInt(DbCleanerConstants.MAX_SNAPSHOTS_PER_SECOND));
   }
 }
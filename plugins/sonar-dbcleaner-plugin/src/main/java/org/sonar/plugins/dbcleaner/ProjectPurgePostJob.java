@@ -19,22 +19,48 @@
  */
 package org.sonar.plugins.dbcleaner;
 
+import com.google.common.collect.Maps;
 import org.sonar.api.batch.PostJob;
 import org.sonar.api.batch.SensorContext;
+import org.sonar.api.config.Settings;
 import org.sonar.api.resources.Project;
 import org.sonar.core.DryRunIncompatible;
+import org.sonar.plugins.dbcleaner.api.DbCleanerConstants;
 import org.sonar.plugins.dbcleaner.api.PurgeTask;
 
+import java.util.Map;
+
 @DryRunIncompatible
 public class ProjectPurgePostJob implements PostJob {
 
+  private static final String DB_CLEANER_PREFIX = "sonar.dbcleaner.";
+
   private PurgeTask purgeTask;
+  private PurgeQueue purgeQueue;
+  private Settings settings;
 
-  public ProjectPurgePostJob(PurgeTask purgeTask) {
+  public ProjectPurgePostJob(PurgeTask purgeTask, PurgeQueue purgeQueue, Settings settings) {
     this.purgeTask = purgeTask;
+    this.purgeQueue = purgeQueue;
+    this.settings = settings;
   }
 
   public void executeOn(final Project project, SensorContext context) {
-    purgeTask.purge(project.getId());
+    if (settings.getBoolean(DbCleanerConstants.BACKGROUND)) {
+      // executed later by the server, see PurgeScheduler
+      purgeQueue.add(project.getId(), dbCleanerSettings());
+    } else {
+      purgeTask.purge(project.getId());
+    }
+  }
+
+  private Map<String, String> dbCleanerSettings() {
+    Map<String, String> dbCleanerSettings = Maps.newHashMap();
+    for (Map.Entry<String, String> property : settings.getProperties().entrySet()) {
+      if (property.getKey().startsWith(DB_CLEANER_PREFIX)) {
+        dbCleanerSettings.put(property.getKey(), property.getValue());
+      }
+    }
+    return dbCleanerSettings;
   }
 }
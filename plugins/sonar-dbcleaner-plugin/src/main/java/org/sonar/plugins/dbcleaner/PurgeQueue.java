@@ -0,0 +1,164 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2013 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.plugins.dbcleaner;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.apache.commons.lang.StringUtils;
+import org.sonar.api.BatchExtension;
+import org.sonar.api.ServerExtension;
+import org.sonar.core.properties.PropertiesDao;
+import org.sonar.core.properties.PropertyDto;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Projects waiting for a background purge. The queue is stored in the table PROPERTIES, as a property of the root project
+ * whose value is the date of the request, so that it is shared by the batch and the server and survives server restarts.
+ * The value also contains the DbCleaner settings of the analysis, one "key=value" per line after the date, so that the
+ * settings defined in sonar-project.properties or on the command-line still apply to the purge executed by the server.
+ *
+ * @since 4.0
+ */
+public class PurgeQueue implements BatchExtension, ServerExtension {
+
+  static final String PROPERTY_KEY = "sonar.dbcleaner.purgeRequestedAt";
+
+  private final PropertiesDao propertiesDao;
+
+  public PurgeQueue(PropertiesDao propertiesDao) {
+    this.propertiesDao = propertiesDao;
+  }
+
+  /**
+   * Queues the project. If it is already queued, the date and the settings of the request are updated.
+   *
+   * @param settings the DbCleaner settings of the analysis
+   */
+  public void add(long projectId, Map<String, String> settings) {
+    StringBuilder value = new StringBuilder().append(System.currentTimeMillis());
+    for (Map.Entry<String, String> setting : settings.entrySet()) {
+      if (!PROPERTY_KEY.equals(setting.getKey()) && setting.getValue() != null) {
+        value.append('\n').append(setting.getKey()).append('=').append(StringUtils.replaceChars(setting.getValue(), "\r\n", "  "));
+      }
+    }
+    propertiesDao.setProperty(new PropertyDto()
+      .setKey(PROPERTY_KEY)
+      .setResourceId(projectId)
+      .setValue(value.toString()));
+  }
+
+  /**
+   * Queues again a request which could not be executed. Its date is updated, so that it does not prevent the other
+   * projects from being purged.
+   */
+  public void retry(Request request) {
+    add(request.getProjectId(), request.getSettings());
+  }
+
+  public void remove(long projectId) {
+    propertiesDao.deleteProjectProperty(PROPERTY_KEY, projectId);
+  }
+
+  /**
+   * @return the queued requests, oldest first
+   */
+  public List<Request> list() {
+    List<Request> requests = Lists.newArrayList();
+    for (PropertyDto property : propertiesDao.selectResourcePropertiesByKey(PROPERTY_KEY)) {
+      String[] lines = StringUtils.split(StringUtils.defaultString(property.getValue()), '\n');
+      Map<String, String> settings = Maps.newHashMap();
+      for (int i = 1; i < lines.length; i++) {
+        String key = StringUtils.substringBefore(lines[i], "=");
+        if (StringUtils.isNotBlank(key)) {
+          settings.put(key, StringUtils.substringAfter(lines[i], "="));
+        }
+      }
+      requests.add(new Request(property.getResourceId(), new Date(parseDate(lines.length > 0 ? lines[0] : "")), settings));
+    }
+    Collections.sort(requests);
+    return requests;
+  }
+
+  private static long parseDate(String value) {
+    try {
+      return Long.parseLong(value.trim());
+    } catch (NumberFormatException e) {
+      // value edited by hand, the project is purged first
+      return 0L;
+    }
+  }
+
+  public static class Request implements Comparable<Request> {
+    private final long projectId;
+    private final Date requestedAt;
+    private final Map<String, String> settings;
+
+    Request(long projectId, Date requestedAt) {
+      this(projectId, requestedAt, Collections.<String, String>emptyMap());
+    }
+
+    Request(long projectId, Date requestedAt, Map<String, String> settings) {
+      this.projectId = projectId;
+      this.requestedAt = requestedAt;
+      this.settings = ImmutableMap.copyOf(settings);
+    }
+
+    public long getProjectId() {
+      return projectId;
+    }
+
+    public Date getRequestedAt() {
+      return requestedAt;
+    }
+
+    /**
+     * @return the DbCleaner settings of the analysis which requested the purge
+     */
+    public Map<String, String> getSettings() {
+      return settings;
+    }
+
+    public int compareTo(Request other) {
+      return requestedAt.compareTo(other.requestedAt);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (o == null || getClass() != o.getClass()) {
+        return false;
+      }
+      Request request = (Request) o;
+      return projectId == request.projectId && requestedAt.equals(request.requestedAt);
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * (int) (projectId ^ (projectId >>> 32)) + requestedAt.hashCode();
+    }
+  }
+}
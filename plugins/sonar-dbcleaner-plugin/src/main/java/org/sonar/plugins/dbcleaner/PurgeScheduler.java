@@ -0,0 +1,274 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2013 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.plugins.dbcleaner;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sonar.api.ServerExtension;
+import org.sonar.api.config.Settings;
+import org.sonar.api.utils.Semaphores;
+import org.sonar.core.properties.PropertiesDao;
+import org.sonar.core.properties.PropertyDto;
+import org.sonar.core.purge.PurgeDao;
+import org.sonar.core.purge.PurgeProfiler;
+import org.sonar.core.purge.PurgeSnapshotQuery;
+import org.sonar.core.resource.ResourceDao;
+import org.sonar.core.resource.ResourceDto;
+import org.sonar.plugins.dbcleaner.api.DbCleanerConstants;
+import org.sonar.plugins.dbcleaner.period.DefaultPeriodCleaner;
+
+import javax.annotation.CheckForNull;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Drains the {@link PurgeQueue} when background purges are enabled. The queue is checked every minute, purges
+ * are only started during the configured time window and at most {@link DbCleanerConstants#SCHEDULER_CONCURRENCY}
+ * projects are purged at the same time. A project is postponed as long as one of its analyses is in progress: the purge
+ * holds the same lock as the analyses, so that an analysis can not start while its project is purged.
+ *
+ * @since 4.0
+ */
+public class PurgeScheduler implements ServerExtension {
+
+  private static final Logger LOG = LoggerFactory.getLogger(PurgeScheduler.class);
+  private static final long DEFAULT_PERIOD_MS = 60000L;
+  private static final int LOCK_MAX_AGE_SECONDS = 15;
+  private static final int LOCK_UPDATE_PERIOD_SECONDS = 10;
+
+  private final Settings settings;
+  private final PurgeQueue queue;
+  private final PurgeDao purgeDao;
+  private final ResourceDao resourceDao;
+  private final PropertiesDao propertiesDao;
+  private final Semaphores semaphores;
+  private final Set<Long> runningProjectIds = Collections.newSetFromMap(new ConcurrentHashMap<Long, Boolean>());
+  private final AtomicLong purgedProjects = new AtomicLong();
+  private final AtomicLong failedProjects = new AtomicLong();
+  private volatile Long lastPurgedProjectId = null;
+  private volatile Date lastPurgeDate = null;
+  private volatile long lastPurgeDurationMs = 0L;
+  private ScheduledExecutorService scheduler;
+  private ExecutorService workers;
+  private PurgeWindow window;
+  private int concurrency;
+
+  public PurgeScheduler(Settings settings, PurgeQueue queue, PurgeDao purgeDao, ResourceDao resourceDao, PropertiesDao propertiesDao,
+    Semaphores semaphores) {
+    this.settings = settings;
+    this.queue = queue;
+    this.purgeDao = purgeDao;
+    this.resourceDao = resourceDao;
+    this.propertiesDao = propertiesDao;
+    this.semaphores = semaphores;
+  }
+
+  public void start() {
+    window = PurgeWindow.parse(settings.getString(DbCleanerConstants.SCHEDULER_WINDOW));
+    concurrency = Math.max(1, settings.getInt(DbCleanerConstants.SCHEDULER_CONCURRENCY));
+    if (isEnabled()) {
+      LOG.info("Background purges enabled [concurrency=" + concurrency + ", window=" + window + "]");
+      workers = Executors.newFixedThreadPool(concurrency);
+      scheduler = Executors.newSingleThreadScheduledExecutor();
+      scheduler.scheduleWithFixedDelay(new Runnable() {
+        public void run() {
+          try {
+            schedule(new Date());
+          } catch (Exception e) {
+            // the next executions must not be cancelled
+            LOG.error("Fail to schedule background purges", e);
+          }
+        }
+      }, DEFAULT_PERIOD_MS, DEFAULT_PERIOD_MS, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  public void stop() {
+    if (scheduler != null) {
+      scheduler.shutdownNow();
+      scheduler = null;
+    }
+    if (workers != null) {
+      workers.shutdownNow();
+      workers = null;
+    }
+  }
+
+  public boolean isEnabled() {
+    return settings.getBoolean(DbCleanerConstants.BACKGROUND);
+  }
+
+  /**
+   * Starts the purges of the queued projects, within the limits of the window and of the concurrency.
+   */
+  @VisibleForTesting
+  void schedule(Date now) {
+    if (!window.contains(now)) {
+      return;
+    }
+    for (PurgeQueue.Request request : queue.list()) {
+      if (runningProjectIds.size() >= concurrency) {
+        return;
+      }
+      long projectId = request.getProjectId();
+      if (!runningProjectIds.contains(projectId) && !isAnalysisInProgress(request)) {
+        runningProjectIds.add(projectId);
+        workers.submit(newPurge(request));
+      }
+    }
+  }
+
+  private boolean isAnalysisInProgress(PurgeQueue.Request request) {
+    return !purgeDao.selectSnapshotIds(PurgeSnapshotQuery.create()
+      .setResourceId(request.getProjectId())
+      .setStatus(new String[] {"U"})
+      .setCreatedAfter(request.getRequestedAt())).isEmpty();
+  }
+
+  private Runnable newPurge(final PurgeQueue.Request request) {
+    return new Runnable() {
+      public void run() {
+        long projectId = request.getProjectId();
+        long start = System.currentTimeMillis();
+        try {
+          if (!purge(request)) {
+            return;
+          }
+          purgedProjects.incrementAndGet();
+        } catch (Exception e) {
+          failedProjects.incrementAndGet();
+          LOG.error("Fail to purge project [id=" + projectId + "]", e);
+        } finally {
+          runningProjectIds.remove(projectId);
+        }
+        lastPurgedProjectId = projectId;
+        lastPurgeDate = new Date();
+        lastPurgeDurationMs = System.currentTimeMillis() - start;
+      }
+    };
+  }
+
+  /**
+   * Purges the project while holding its analysis lock. The request is removed from the queue only when the purge succeeds,
+   * a failed purge is queued again.
+   *
+   * @return false if the purge is postponed because an analysis of the project is running
+   */
+  @VisibleForTesting
+  boolean purge(PurgeQueue.Request request) {
+    long projectId = request.getProjectId();
+    ResourceDto project = resourceDao.getResource(projectId);
+    if (project == null) {
+      // deleted since the request
+      queue.remove(projectId);
+      return false;
+    }
+    // same lock as org.sonar.batch.scan.ProjectLock
+    String lockName = "batch-" + project.getKey();
+    if (!semaphores.acquire(lockName, LOCK_MAX_AGE_SECONDS, LOCK_UPDATE_PERIOD_SECONDS).isLocked()) {
+      // the request stays in the queue
+      LOG.debug("Purge of project " + project.getKey() + " postponed, an analysis is running");
+      return false;
+    }
+    try {
+      Settings projectSettings = projectSettings(project, request);
+      // concurrent purges must not share the same profiler, else their durations are mixed and reset by each other
+      PurgeProfiler profiler = new PurgeProfiler();
+      PurgeDao dao = purgeDao.withProfiler(profiler);
+      new DefaultPurgeTask(dao, projectSettings, new DefaultPeriodCleaner(dao, projectSettings), profiler).purge(projectId);
+      queue.remove(projectId);
+      return true;
+    } catch (RuntimeException e) {
+      queue.retry(request);
+      throw e;
+    } finally {
+      semaphores.release(lockName);
+    }
+  }
+
+  /**
+   * Server settings overridden by the settings saved on the project, then by the DbCleaner settings of the analysis which
+   * requested the purge, for example those defined in sonar-project.properties.
+   */
+  private Settings projectSettings(ResourceDto project, PurgeQueue.Request request) {
+    Settings projectSettings = new Settings(settings);
+    Map<String, String> properties = Maps.newHashMap();
+    for (PropertyDto property : propertiesDao.selectProjectProperties(project.getKey())) {
+      properties.put(property.getKey(), property.getValue());
+    }
+    projectSettings.addProperties(properties);
+    projectSettings.addProperties(request.getSettings());
+    return projectSettings;
+  }
+
+  public int getConcurrency() {
+    return concurrency;
+  }
+
+  public String getWindow() {
+    return window.toString();
+  }
+
+  public boolean isInWindow() {
+    return window.contains(new Date());
+  }
+
+  public Set<Long> getRunningProjectIds() {
+    return Sets.newTreeSet(runningProjectIds);
+  }
+
+  public int getQueueSize() {
+    return queue.list().size();
+  }
+
+  public long getPurgedProjects() {
+    return purgedProjects.get();
+  }
+
+  public long getFailedProjects() {
+    return failedProjects.get();
+  }
+
+  @CheckForNull
+  public Long getLastPurgedProjectId() {
+    return lastPurgedProjectId;
+  }
+
+  @CheckForNull
+  public Date getLastPurgeDate() {
+    return lastPurgeDate;
+  }
+
+  public long getLastPurgeDurationMs() {
+    return lastPurgeDurationMs;
+  }
+}
@@ -0,0 +1,90 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2013 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.plugins.dbcleaner;
+
+import org.apache.commons.lang.StringUtils;
+import org.sonar.api.utils.SonarException;
+
+import javax.annotation.Nullable;
+
+import java.util.Calendar;
+import java.util.Date;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Daily time window, for example "22:00-06:00". The end is excluded and the window can span midnight.
+ *
+ * @since 4.0
+ */
+class PurgeWindow {
+
+  private static final Pattern PATTERN = Pattern.compile("(\\d{1,2}):(\\d{2})\\s*-\\s*(\\d{1,2}):(\\d{2})");
+  private static final int MINUTES_PER_DAY = 24 * 60;
+
+  private final String text;
+  private final int startMinute;
+  private final int endMinute;
+
+  private PurgeWindow(String text, int startMinute, int endMinute) {
+    this.text = text;
+    this.startMinute = startMinute;
+    this.endMinute = endMinute;
+  }
+
+  /**
+   * @param text the window, or an empty value to accept any time
+   */
+  static PurgeWindow parse(@Nullable String text) {
+    if (StringUtils.isBlank(text)) {
+      return new PurgeWindow("", 0, MINUTES_PER_DAY);
+    }
+    Matcher matcher = PATTERN.matcher(text.trim());
+    if (!matcher.matches()) {
+      throw new SonarException("Bad format of purge window, expected HH:mm-HH:mm: " + text);
+    }
+    return new PurgeWindow(text.trim(), minute(matcher.group(1), matcher.group(2), text), minute(matcher.group(3), matcher.group(4), text));
+  }
+
+  private static int minute(String hours, String minutes, String text) {
+    int h = Integer.parseInt(hours);
+    int m = Integer.parseInt(minutes);
+    if (h > 23 || m > 59) {
+      throw new SonarException("Bad time in purge window: " + text);
+    }
+    return h * 60 + m;
+  }
+
+  boolean contains(Date date) {
+    Calendar calendar = Calendar.getInstance();
+    calendar.setTime(date);
+    int minute = calendar.get(Calendar.HOUR_OF_DAY) * 60 + calendar.get(Calendar.MINUTE);
+    if (startMinute <= endMinute) {
+      return minute >= startMinute && minute < endMinute;
+    }
+    // spans midnight
+    return minute >= startMinute || minute < endMinute;
+  }
+
+  @Override
+  public String toString() {
+    return text;
+  }
+}
@@ -30,4 +30,31 @@ public interface DbCleanerConstants {
   String WEEKS_BEFORE_KEEPING_ONLY_ONE_SNAPSHOT_BY_MONTH = "sonar.dbcleaner.weeksBeforeKeepingOnlyOneSnapshotByMonth";
   String WEEKS_BEFORE_DELETING_ALL_SNAPSHOTS = "sonar.dbcleaner.weeksBeforeDeletingAllSnapshots";
   String DAYS_BEFORE_DELETING_CLOSED_ISSUES = "sonar.dbcleaner.daysBeforeDeletingClosedIssues";
+
+  /**
+   * @since 4.0
+   */
+  String THREADS = "sonar.dbcleaner.threads";
+
+  /**
+   * If true, the batch only queues the project and the purge is executed later by the server.
+   * @since 4.0
+   */
+  String BACKGROUND = "sonar.dbcleaner.background";
+
+  /**
+   * @since 4.0
+   */
+  String MAX_SNAPSHOTS_PER_SECOND = "sonar.dbcleaner.maxSnapshotsPerSecond";
+
+  /**
+   * @since 4.0
+   */
+  String SCHEDULER_CONCURRENCY = "sonar.dbcleaner.scheduler.concurrency";
+
+  /**
+   * Time window of background purges, for example "22:00-06:00". Empty means at any time.
+   * @since 4.0
+   */
+  String SCHEDULER_WINDOW = "sonar.dbcleaner.scheduler.window";
 }
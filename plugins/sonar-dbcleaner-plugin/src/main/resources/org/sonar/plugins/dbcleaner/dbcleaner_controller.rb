@@ -0,0 +1,56 @@
+#
+# SonarQube, open source software quality management tool.
+# Copyright (C) 2008-2013 SonarSource
+# mailto:contact AT sonarsource DOT com
+#
+# SonarQube is free software; you can redistribute it and/or
+# modify it under the terms of the GNU Lesser General Public
+# License as published by the Free Software Foundation; either
+# version 3 of the License, or (at your option) any later version.
+#
+# SonarQube is distributed in the hope that it will be useful,
+# but WITHOUT ANY WARRANTY; without even the implied warranty of
+# MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+# Lesser General Public License for more details.
+#
+# You should have received a copy of the GNU Lesser General Public License
+# along with this program; if not, write to the Free Software Foundation,
+# Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+#
+
+class Api::DbcleanerController < Api::ApiController
+
+  #
+  # GET /api/plugins/dbcleaner
+  # Status of the background purges. Requires the role 'admin'.
+  #
+  def index
+    access_denied unless has_role?(:admin)
+    scheduler = java_facade.getComponentByClassname('dbcleaner', 'org.sonar.plugins.dbcleaner.PurgeScheduler')
+
+    hash = {
+      :enabled => scheduler.isEnabled(),
+      :concurrency => scheduler.getConcurrency(),
+      :window => scheduler.getWindow(),
+      :inWindow => scheduler.isInWindow(),
+      :queued => scheduler.getQueueSize(),
+      :running => scheduler.getRunningProjectIds().to_a,
+      :purged => scheduler.getPurgedProjects(),
+      :failed => scheduler.getFailedProjects()
+    }
+    if scheduler.getLastPurgeDate()
+      hash[:lastPurge] = {
+        :projectId => scheduler.getLastPurgedProjectId(),
+        :date => Api::Utils.format_datetime(Api::Utils.java_to_ruby_datetime(scheduler.getLastPurgeDate())),
+        :durationMs => scheduler.getLastPurgeDurationMs()
+      }
+    end
+
+    respond_to do |format|
+      format.json { render :json => jsonp(hash) }
+      format.xml { render :xml => hash.to_xml(:skip_types => true, :root => 'purges') }
+      format.text { render :text => text_not_supported }
+    end
+  end
+
+end
@@ -0,0 +1,73 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2013 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.plugins.dbcleaner;
+
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.sonar.core.properties.PropertiesDao;
+import org.sonar.core.properties.PropertyDto;
+import org.sonar.plugins.dbcleaner.api.DbCleanerConstants;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class PurgeQueueTest {
+
+  PropertiesDao propertiesDao = mock(PropertiesDao.class);
+  PurgeQueue queue = new PurgeQueue(propertiesDao);
+
+  @Test
+  public void should_store_settings_of_the_analysis_with_the_request() {
+    queue.add(1L, Collections.singletonMap(DbCleanerConstants.THREADS, "4"));
+
+    ArgumentCaptor<PropertyDto> property = ArgumentCaptor.forClass(PropertyDto.class);
+    verify(propertiesDao).setProperty(property.capture());
+    assertThat(property.getValue().getKey()).isEqualTo(PurgeQueue.PROPERTY_KEY);
+    assertThat(property.getValue().getResourceId()).isEqualTo(1L);
+
+    when(propertiesDao.selectResourcePropertiesByKey(PurgeQueue.PROPERTY_KEY)).thenReturn(Arrays.asList(property.getValue()));
+    List<PurgeQueue.Request> requests = queue.list();
+    assertThat(requests).hasSize(1);
+    assertThat(requests.get(0).getProjectId()).isEqualTo(1L);
+    assertThat(requests.get(0).getSettings()).isEqualTo(Collections.singletonMap(DbCleanerConstants.THREADS, "4"));
+  }
+
+  @Test
+  public void should_list_oldest_requests_first() {
+    when(propertiesDao.selectResourcePropertiesByKey(PurgeQueue.PROPERTY_KEY)).thenReturn(Arrays.asList(
+      new PropertyDto().setKey(PurgeQueue.PROPERTY_KEY).setResourceId(1L).setValue("2000"),
+      new PropertyDto().setKey(PurgeQueue.PROPERTY_KEY).setResourceId(2L).setValue("1000\nsonar.dbcleaner.threads=2")));
+
+    List<PurgeQueue.Request> requests = queue.list();
+
+    assertThat(requests).hasSize(2);
+    assertThat(requests.get(0).getProjectId()).isEqualTo(2L);
+    assertThat(requests.get(0).getRequestedAt().getTime()).isEqualTo(1000L);
+    assertThat(requests.get(0).getSettings()).isEqualTo(Collections.singletonMap(DbCleanerConstants.THREADS, "2"));
+    assertThat(requests.get(1).getProjectId()).isEqualTo(1L);
+    assertThat(requests.get(1).getSettings()).isEmpty();
+  }
+}
@@ -0,0 +1,198 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2013 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.plugins.dbcleaner;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.ArgumentMatcher;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.sonar.api.config.PropertyDefinitions;
+import org.sonar.api.config.Settings;
+import org.sonar.api.utils.Semaphores;
+import org.sonar.core.properties.PropertiesDao;
+import org.sonar.core.purge.PurgeConfiguration;
+import org.sonar.core.purge.PurgeDao;
+import org.sonar.core.purge.PurgeProfiler;
+import org.sonar.core.purge.PurgeSnapshotQuery;
+import org.sonar.core.resource.ResourceDao;
+import org.sonar.core.resource.ResourceDto;
+import org.sonar.plugins.dbcleaner.api.DbCleanerConstants;
+
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Map;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.argThat;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class PurgeSchedulerTest {
+
+  Settings settings;
+  PurgeQueue queue = mock(PurgeQueue.class);
+  PurgeDao purgeDao = mock(PurgeDao.class);
+  ResourceDao resourceDao = mock(ResourceDao.class);
+  Semaphores semaphores = mock(Semaphores.class);
+  PurgeScheduler scheduler;
+
+  @Before
+  public void setUp() {
+    settings = new Settings(new PropertyDefinitions(DbCleanerPlugin.propertyDefinitions()));
+    settings.setProperty(DbCleanerConstants.BACKGROUND, true);
+    when(resourceDao.getResource(anyLong())).thenReturn(new ResourceDto().setKey("org.struts:struts"));
+    when(purgeDao.selectSnapshotIds(any(PurgeSnapshotQuery.class))).thenReturn(Collections.<Long>emptyList());
+    when(purgeDao.withProfiler(any(PurgeProfiler.class))).thenReturn(purgeDao);
+    when(semaphores.acquire(anyString(), anyInt(), anyInt())).thenReturn(new Semaphores.Semaphore().setLocked(true));
+    scheduler = new PurgeScheduler(settings, queue, purgeDao, resourceDao, mock(PropertiesDao.class), semaphores);
+  }
+
+  @After
+  public void tearDown() {
+    scheduler.stop();
+  }
+
+  @Test
+  public void should_be_disabled_by_default() {
+    settings.removeProperty(DbCleanerConstants.BACKGROUND);
+    scheduler.start();
+
+    assertThat(scheduler.isEnabled()).isFalse();
+  }
+
+  @Test
+  public void should_purge_queued_projects() {
+    when(queue.list()).thenReturn(Arrays.asList(new PurgeQueue.Request(1L, new Date())));
+    scheduler.start();
+
+    scheduler.schedule(new Date());
+
+    verify(purgeDao, timeout(5000)).purge(any(PurgeConfiguration.class));
+    verify(queue, timeout(5000)).remove(1L);
+    verify(semaphores, timeout(5000)).release("batch-org.struts:struts");
+  }
+
+  @Test
+  public void should_postpone_project_locked_by_an_analysis() {
+    when(semaphores.acquire(anyString(), anyInt(), anyInt())).thenReturn(new Semaphores.Semaphore().setLocked(false));
+
+    assertThat(scheduler.purge(new PurgeQueue.Request(1L, new Date()))).isFalse();
+
+    verify(semaphores).acquire("batch-org.struts:struts", 15, 10);
+    verify(purgeDao, never()).purge(any(PurgeConfiguration.class));
+    verify(queue, never()).remove(anyLong());
+    verify(semaphores, never()).release(anyString());
+  }
+
+  @Test
+  public void should_queue_again_failed_purge() {
+    PurgeQueue.Request request = new PurgeQueue.Request(1L, new Date());
+    doThrow(new IllegalStateException()).when(purgeDao).purge(any(PurgeConfiguration.class));
+
+    try {
+      scheduler.purge(request);
+    } catch (IllegalStateException e) {
+      // expected
+    }
+
+    verify(queue, never()).remove(anyLong());
+    verify(queue).retry(request);
+    verify(semaphores).release("batch-org.struts:struts");
+  }
+
+  @Test
+  public void should_purge_with_settings_of_the_analysis() {
+    Map<String, String> analysisSettings = Collections.singletonMap(DbCleanerConstants.PROPERTY_CLEAN_DIRECTORY, "false");
+
+    scheduler.purge(new PurgeQueue.Request(1L, new Date(), analysisSettings));
+
+    verify(purgeDao).purge(argThat(new ArgumentMatcher<PurgeConfiguration>() {
+      @Override
+      public boolean matches(Object o) {
+        return ((PurgeConfiguration) o).scopesWithoutHistoricalData().length == 1;
+      }
+    }));
+  }
+
+  @Test
+  public void should_profile_each_purge_separately() {
+    scheduler.purge(new PurgeQueue.Request(1L, new Date()));
+    scheduler.purge(new PurgeQueue.Request(2L, new Date()));
+
+    ArgumentCaptor<PurgeProfiler> profilers = ArgumentCaptor.forClass(PurgeProfiler.class);
+    verify(purgeDao, times(2)).withProfiler(profilers.capture());
+    assertThat(profilers.getAllValues().get(0)).isNotSameAs(profilers.getAllValues().get(1));
+  }
+
+  @Test
+  public void should_not_purge_outside_window() {
+    settings.setProperty(DbCleanerConstants.SCHEDULER_WINDOW, "22:00-06:00");
+    when(queue.list()).thenReturn(Arrays.asList(new PurgeQueue.Request(1L, new Date())));
+    scheduler.start();
+
+    Calendar noon = Calendar.getInstance();
+    noon.set(Calendar.HOUR_OF_DAY, 12);
+    scheduler.schedule(noon.getTime());
+
+    assertThat(scheduler.getRunningProjectIds()).isEmpty();
+  }
+
+  @Test
+  public void should_postpone_project_being_analyzed() {
+    when(queue.list()).thenReturn(Arrays.asList(new PurgeQueue.Request(1L, new Date())));
+    when(purgeDao.selectSnapshotIds(any(PurgeSnapshotQuery.class))).thenReturn(Arrays.asList(100L));
+    scheduler.start();
+
+    scheduler.schedule(new Date());
+
+    assertThat(scheduler.getRunningProjectIds()).isEmpty();
+  }
+
+  @Test
+  public void should_limit_concurrent_purges() {
+    when(queue.list()).thenReturn(Arrays.asList(new PurgeQueue.Request(1L, new Date()), new PurgeQueue.Request(2L, new Date())));
+    // the first purge never ends
+    when(resourceDao.getResource(1L)).thenAnswer(new Answer<ResourceDto>() {
+      public ResourceDto answer(InvocationOnMock invocation) throws Throwable {
+        Thread.sleep(Long.MAX_VALUE);
+        return null;
+      }
+    });
+    scheduler.start();
+
+    scheduler.schedule(new Date());
+
+    assertThat(scheduler.getRunningProjectIds()).containsOnly(1L);
+  }
+}
@@ -0,0 +1,80 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2013 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.plugins.dbcleaner;
+
+import org.junit.Test;
+import org.sonar.api.utils.SonarException;
+
+import Calendar;
+import Date;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class PurgeWindowTest {
+  @Test
+  public void should_accept_any_time_if_empty() {
+    PurgeWindow window = PurgeWindow.parse("");
+
+    assertThat(window.contains(time(0, 0))).isTrue();
+    assertThat(window.contains(time(23, 59))).isTrue();
+    assertThat(PurgeWindow.parse(null).contains(time(12, 0))).isTrue();
+  }
+
+  @Test
+  public void should_contain_times_of_the_day() {
+    PurgeWindow window = PurgeWindow.parse("08:30-12:00");
+
+    assertThat(window.contains(time(0, 0))).isFalse();
+    assertThat(window.contains(time(8, 29))).isFalse();
+    assertThat(window.contains(time(8, 30))).isTrue();
+    assertThat(window.contains(time(11, 59))).isTrue();
+    assertThat(window.contains(time(12, 0))).isFalse();
+  }
+
+  @Test
+  public void should_span_midnight() {
+    PurgeWindow window = PurgeWindow.parse(" 22:00 - 6:00 ");
+
+    assertThat(window.toString()).isEqualTo("22:00 - 6:00");
+    assertThat(window.contains(time(21, 59))).isFalse();
+    assertThat(window.contains(time(22, 0))).isTrue();
+    assertThat(window.contains(time(0, 0))).isTrue();
+    assertThat(window.contains(time(5, 59))).isTrue();
+    assertThat(window.contains(time(6, 0))).isFalse();
+    assertThat(window.contains(time(12, 0))).isFalse();
+  }
+
+  @Test(expected = SonarException.class)
+  public void should_fail_on_bad_format() {
+    PurgeWindow.parse("22h-6h");
+  }
+
+  @Test(expected = SonarException.class)
+  public void should_fail_on_bad_time() {
+    PurgeWindow.parse("22:00-25:00");
+  }
+
+  private static Date time(int hours, int minutes) {
+    Calendar calendar = Calendar.getInstance();
+    calendar.clear();
+    calendar.set(2013, Calendar.MAY, 18, hours, minutes);
+    return calendar.getTime();
+  }
+}
@@ -19,6 +19,7 @@
  */
 package org.sonar.batch.components;
 
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import org.apache.commons.lang.ObjectUtils;
 import org.sonar.api.BatchExtension;
@@ -28,7 +29,9 @@ import org.sonar.api.measures.Metric;
 import org.sonar.api.measures.MetricFinder;
 import org.sonar.api.resources.Qualifiers;
 import org.sonar.api.resources.Resource;
+import org.sonar.api.resources.Scopes;
 
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
@@ -36,9 +39,19 @@ import java.util.Map;
 
 public class PastMeasuresLoader implements BatchExtension {
 
+  /**
+   * Index of the column PROJECT_MEASURES.PROJECT_ID in rows loaded by {@link #loadPastMeasuresOfTree(Snapshot)}
+   */
+  private static final int RESOURCE_ID_COLUMN = 5;
+
   private Map<Integer, Metric> metricByIds;
   private DatabaseSession session;
 
+  /**
+   * Past measures of projects and directories, by resource id, for each period and past root snapshot id
+   */
+  private final Map<String, Map<Integer, List<Object[]>>> measuresByPeriod = Maps.newHashMap();
+
   public PastMeasuresLoader(DatabaseSession session, MetricFinder metricFinder) {
     this(session, metricFinder.findAll());
   }
@@ -64,6 +77,73 @@ public class PastMeasuresLoader implements BatchExtension {
     return Collections.emptyList();
   }
 
+  /**
+   * Same as {@link #getPastMeasures(Resource, PastSnapshot)}, but the past measures of all the projects and directories
+   * of the past analysis are loaded by a single query, then returned resource by resource. Measures of a resource are
+   * released once returned, so this method is expected to be called at most once per resource and period. Periods
+   * are polled independently, even when several of them refer to the same past analysis. The root project is decorated
+   * last, so all the measures of a period, including those of resources which do not exist anymore, are released once
+   * the root project is polled.
+   * Measures of files, or of resources which are not persisted yet, are loaded one by one.
+   *
+   * @since 4.0
+   */
+  public synchronized List<Object[]> pollPastMeasures(Resource resource, PastSnapshot projectPastSnapshot) {
+    if (projectPastSnapshot == null || projectPastSnapshot.getProjectSnapshot() == null) {
+      return Collections.emptyList();
+    }
+    if (resource.getId() == null || !Scopes.isHigherThan(resource, Scopes.FILE)) {
+      return getPastMeasures(resource, projectPastSnapshot);
+    }
+    Snapshot pastSnapshot = projectPastSnapshot.getProjectSnapshot();
+    String periodKey = projectPastSnapshot.getIndex() + "|" + getRootSnapshotId(pastSnapshot);
+    Map<Integer, List<Object[]>> measuresByResourceId = measuresByPeriod.get(periodKey);
+    if (measuresByResourceId == null) {
+      measuresByResourceId = loadPastMeasuresOfTree(pastSnapshot);
+      measuresByPeriod.put(periodKey, measuresByResourceId);
+    }
+    List<Object[]> measures = measuresByResourceId.remove(resource.getId());
+    if (resource.getId().equals(getRootProjectId(pastSnapshot))) {
+      measuresByPeriod.remove(periodKey);
+    }
+    return measures != null ? measures : Collections.<Object[]>emptyList();
+  }
+
+  private Map<Integer, List<Object[]>> loadPastMeasuresOfTree(Snapshot projectPastSnapshot) {
+    String sql = "select m.metric_id, m.characteristic_id, m.person_id, m.rule_id, m.value, s.project_id from project_measures m, snapshots s" +
+      " where m.snapshot_id=s.id and m.metric_id in (:metricIds) " +
+      "       and (s.root_snapshot_id=:rootSnapshotId or s.id=:rootSnapshotId) " +
+      "       and s.status=:status and s.scope in (:scopes) and s.qualifier<>:lib";
+    List<Object[]> rows = session.createNativeQuery(sql)
+      .setParameter("metricIds", metricByIds.keySet())
+      .setParameter("rootSnapshotId", getRootSnapshotId(projectPastSnapshot))
+      .setParameter("scopes", Arrays.asList(Scopes.PROJECT, Scopes.DIRECTORY))
+      .setParameter("lib", Qualifiers.LIBRARY)
+      .setParameter("status", Snapshot.STATUS_PROCESSED)
+      .getResultList();
+
+    Map<Integer, List<Object[]>> measuresByResourceId = Maps.newHashMap();
+    for (Object[] row : rows) {
+      // can be BigDecimal on Oracle
+      Integer resourceId = ((Number) row[RESOURCE_ID_COLUMN]).intValue();
+      List<Object[]> measures = measuresByResourceId.get(resourceId);
+      if (measures == null) {
+        measures = Lists.newArrayList();
+        measuresByResourceId.put(resourceId, measures);
+      }
+      measures.add(row);
+    }
+    return measuresByResourceId;
+  }
+
+  private static Integer getRootSnapshotId(Snapshot snapshot) {
+    return (Integer) ObjectUtils.defaultIfNull(snapshot.getRootId(), snapshot.getId());
+  }
+
+  private static Integer getRootProjectId(Snapshot snapshot) {
+    return (Integer) ObjectUtils.defaultIfNull(snapshot.getRootProjectId(), snapshot.getResourceId());
+  }
+
   public List<Object[]> getPastMeasures(String resourceKey, Snapshot projectPastSnapshot) {
     String sql = "select m.metric_id, m.characteristic_id, m.person_id, m.rule_id, m.value from project_measures m, snapshots s" +
       " where m.snapshot_id=s.id and m.metric_id in (:metricIds) " +
@@ -71,7 +151,7 @@ public class PastMeasuresLoader implements BatchExtension {
       "       and s.status=:status and s.project_id=(select p.id from projects p where p.kee=:resourceKey and p.qualifier<>:lib)";
     return session.createNativeQuery(sql)
       .setParameter("metricIds", metricByIds.keySet())
-      .setParameter("rootSnapshotId", ObjectUtils.defaultIfNull(projectPastSnapshot.getRootId(), projectPastSnapshot.getId()))
+      .setParameter("rootSnapshotId", getRootSnapshotId(projectPastSnapshot))
       .setParameter("resourceKey", resourceKey)
       .setParameter("lib", Qualifiers.LIBRARY)
       .setParameter("status", Snapshot.STATUS_PROCESSED)
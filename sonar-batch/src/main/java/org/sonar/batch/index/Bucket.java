@@ -36,12 +36,23 @@ public final class Bucket {
 
   private Resource resource;
   private ListMultimap<String, Measure> measuresByMetric = ArrayListMultimap.create();
+  private NumericMeasures numericMeasures;
 
   private Bucket parent;
   private List<Bucket> children;
 
   public Bucket(Resource resource) {
+    this(resource, false);
+  }
+
+  /**
+   * @param compactMeasures store the numeric measures as primitive values, see {@link NumericMeasures}
+   */
+  public Bucket(Resource resource, boolean compactMeasures) {
     this.resource = resource;
+    if (compactMeasures) {
+      this.numericMeasures = new NumericMeasures();
+    }
   }
 
   public Resource getResource() {
@@ -80,6 +91,9 @@ public final class Bucket {
 
   public void addMeasure(Measure measure) {
     List<Measure> metricMeasures = measuresByMetric.get(measure.getMetric().getKey());
+    if (numericMeasures != null && numericMeasures.add(measure, metricMeasures.contains(measure))) {
+      return;
+    }
 
     boolean add = true;
     if (metricMeasures != null) {
@@ -99,6 +113,7 @@ public final class Bucket {
 
   public void clear() {
     measuresByMetric = null;
+    numericMeasures = null;
     children = null;
     if (parent != null) {
       parent.removeChild(this);
@@ -109,7 +124,18 @@ public final class Bucket {
   public <M> M getMeasures(final MeasuresFilter<M> filter) {
     Collection<Measure> unfiltered;
     if (filter instanceof MeasuresFilters.MetricFilter) {
-      unfiltered = measuresByMetric.get(((MeasuresFilters.MetricFilter) filter).filterOnMetricKey());
+      String metricKey = ((MeasuresFilters.MetricFilter) filter).filterOnMetricKey();
+      unfiltered = measuresByMetric.get(metricKey);
+      Measure numericMeasure = numericMeasures != null ? numericMeasures.get(metricKey) : null;
+      if (numericMeasure != null) {
+        List<Measure> measures = Lists.newArrayList(unfiltered);
+        measures.add(numericMeasure);
+        unfiltered = measures;
+      }
+    } else if (numericMeasures != null && numericMeasures.size() > 0) {
+      List<Measure> measures = Lists.newArrayList(measuresByMetric.values());
+      numericMeasures.addTo(measures);
+      unfiltered = measures;
     } else {
       unfiltered = measuresByMetric.values();
     }
@@ -22,6 +22,8 @@ package org.sonar.batch.index;
 import com.google.common.collect.Sets;
 import com.persistit.Exchange;
 import com.persistit.Key;
+import com.persistit.Persistit;
+import com.persistit.Volume;
 import com.persistit.exception.PersistitException;
 import org.apache.commons.lang.builder.ToStringBuilder;
 
@@ -29,21 +31,47 @@ import javax.annotation.CheckForNull;
 import java.io.Serializable;
 import java.util.Iterator;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * <p>
- * This cache is not thread-safe, due to direct usage of {@link com.persistit.Exchange}
+ * This cache is thread-safe: as {@link com.persistit.Exchange} can not be shared between threads, each thread
+ * uses its own exchange on the underlying Persistit tree. Iterables must not be shared between threads.
  * </p>
  */
 public class Cache<K, V extends Serializable> {
 
   private static final String DEFAULT_GROUP = "_";
   private final String name;
-  private final Exchange exchange;
+  private final ThreadLocal<Exchange> exchanges;
+  private final Statistics statistics = new Statistics();
 
-  Cache(String name, Exchange exchange) {
+  Cache(final String name, final Persistit persistit, final Volume volume) {
     this.name = name;
-    this.exchange = exchange;
+    this.exchanges = new ThreadLocal<Exchange>() {
+      @Override
+      protected Exchange initialValue() {
+        try {
+          return persistit.getExchange(volume, name, true);
+        } catch (PersistitException e) {
+          throw new IllegalStateException("Fail to create exchange on cache " + name, e);
+        }
+      }
+    };
+    // fail fast if the tree can not be created
+    exchange();
+  }
+
+  private Exchange exchange() {
+    return exchanges.get();
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public Statistics statistics() {
+    return statistics;
   }
 
   public Cache put(K key, V value) {
@@ -51,11 +79,14 @@ public class Cache<K, V extends Serializable> {
   }
 
   public Cache put(String group, K key, V value) {
+    long start = System.nanoTime();
     try {
+      Exchange exchange = exchange();
       exchange.clear();
       exchange.append(group).append(key);
       exchange.getValue().put(value);
       exchange.store();
+      statistics.put(exchange.getKey().getEncodedSize() + exchange.getValue().getEncodedSize(), System.nanoTime() - start);
       return this;
     } catch (Exception e) {
       throw new IllegalStateException("Fail to put element in the cache " + name, e);
@@ -71,14 +102,19 @@ public class Cache<K, V extends Serializable> {
    */
   @SuppressWarnings("unchecked")
   public V get(String group, K key) {
+    long start = System.nanoTime();
     try {
+      Exchange exchange = exchange();
       exchange.clear();
       exchange.append(group).append(key);
       exchange.fetch();
       if (!exchange.getValue().isDefined()) {
+        statistics.get(false, System.nanoTime() - start);
         return null;
       }
-      return (V) exchange.getValue().get();
+      V value = (V) exchange.getValue().get();
+      statistics.get(true, System.nanoTime() - start);
+      return value;
     } catch (Exception e) {
       throw new IllegalStateException("Fail to get element from cache " + name, e);
     }
@@ -97,10 +133,14 @@ public class Cache<K, V extends Serializable> {
   }
 
   public boolean remove(String group, K key) {
+    long start = System.nanoTime();
     try {
+      Exchange exchange = exchange();
       exchange.clear();
       exchange.append(group).append(key);
-      return exchange.remove();
+      boolean removed = exchange.remove();
+      statistics.remove(System.nanoTime() - start);
+      return removed;
     } catch (Exception e) {
       throw new IllegalStateException("Fail to get element from cache " + name, e);
     }
@@ -117,6 +157,7 @@ public class Cache<K, V extends Serializable> {
    */
   public Cache clear(String group) {
     try {
+      Exchange exchange = exchange();
       exchange.clear();
       exchange.append(group);
       Key key = new Key(exchange.getKey());
@@ -141,6 +182,7 @@ public class Cache<K, V extends Serializable> {
    */
   public void clearAll() {
     try {
+      Exchange exchange = exchange();
       exchange.clear();
       exchange.removeAll();
     } catch (Exception e) {
@@ -158,6 +200,7 @@ public class Cache<K, V extends Serializable> {
   @SuppressWarnings("unchecked")
   public Set<K> keySet(String group) {
     try {
+      Exchange exchange = exchange();
       Set<K> keys = Sets.newLinkedHashSet();
       exchange.clear();
       Exchange iteratorExchange = new Exchange(exchange);
@@ -188,6 +231,7 @@ public class Cache<K, V extends Serializable> {
    */
   public Iterable<V> values(String group) {
     try {
+      Exchange exchange = exchange();
       exchange.clear();
       Exchange iteratorExchange = new Exchange(exchange);
       iteratorExchange.append(group).append(Key.BEFORE);
@@ -209,6 +253,7 @@ public class Cache<K, V extends Serializable> {
    */
   public Iterable<V> allValues() {
     try {
+      Exchange exchange = exchange();
       exchange.clear();
       Exchange iteratorExchange = new Exchange(exchange);
       iteratorExchange.append(Key.BEFORE);
@@ -220,6 +265,7 @@ public class Cache<K, V extends Serializable> {
 
   public Set<String> groups() {
     try {
+      Exchange exchange = exchange();
       Set<String> groups = Sets.newLinkedHashSet();
       exchange.clear();
       Exchange iteratorExchange = new Exchange(exchange);
@@ -234,11 +280,13 @@ public class Cache<K, V extends Serializable> {
   }
 
   public <T extends Serializable> Iterable<Entry<T>> entries() {
+    Exchange exchange = exchange();
     exchange.clear().to(Key.BEFORE);
     return new EntryIterable(new Exchange(exchange), true);
   }
 
   public <T extends Serializable> Iterable<Entry<T>> entries(String group) {
+    Exchange exchange = exchange();
     exchange.clear().append(group).append(Key.BEFORE);
     return new EntryIterable(new Exchange(exchange), false);
   }
@@ -368,4 +416,75 @@ public class Cache<K, V extends Serializable> {
       return ToStringBuilder.reflectionToString(this);
     }
   }
+
+  /**
+   * Counters of the accesses to a cache since its creation. Iterations over keys and values are not counted.
+   *
+   * @since 4.0
+   */
+  public static class Statistics {
+    private final AtomicLong gets = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong puts = new AtomicLong();
+    private final AtomicLong removes = new AtomicLong();
+    private final AtomicLong storedBytes = new AtomicLong();
+    private final AtomicLong nanos = new AtomicLong();
+
+    void get(boolean hit, long durationInNanos) {
+      gets.incrementAndGet();
+      if (hit) {
+        hits.incrementAndGet();
+      }
+      nanos.addAndGet(durationInNanos);
+    }
+
+    void put(int bytes, long durationInNanos) {
+      puts.incrementAndGet();
+      storedBytes.addAndGet(bytes);
+      nanos.addAndGet(durationInNanos);
+    }
+
+    void remove(long durationInNanos) {
+      removes.incrementAndGet();
+      nanos.addAndGet(durationInNanos);
+    }
+
+    public long gets() {
+      return gets.get();
+    }
+
+    /**
+     * Number of gets which returned a value
+     */
+    public long hits() {
+      return hits.get();
+    }
+
+    /**
+     * Percentage of gets which returned a value, or 0 if the cache was never read
+     */
+    public double hitRate() {
+      long count = gets.get();
+      return count == 0 ? 0.0 : (100.0 * hits.get()) / count;
+    }
+
+    public long puts() {
+      return puts.get();
+    }
+
+    public long removes() {
+      return removes.get();
+    }
+
+    /**
+     * Encoded size of all the keys and values stored so far, including the ones which have been replaced or removed since.
+     */
+    public long storedBytes() {
+      return storedBytes.get();
+    }
+
+    public long timeInMs() {
+      return nanos.get() / 1000000L;
+    }
+  }
 }
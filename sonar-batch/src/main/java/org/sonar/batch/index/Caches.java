@@ -19,10 +19,11 @@
  */
 package org.sonar.batch.index;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
-import com.google.common.collect.Sets;
+import com.google.common.collect.Maps;
 import com.google.common.io.Files;
-import com.persistit.Exchange;
+import com.persistit.Management;
 import com.persistit.Persistit;
 import com.persistit.Volume;
 import com.persistit.exception.PersistitException;
@@ -31,11 +32,14 @@ import org.apache.commons.io.FileUtils;
 import org.picocontainer.Startable;
 import org.slf4j.LoggerFactory;
 import org.sonar.api.BatchComponent;
+import org.sonar.api.CoreProperties;
+import org.sonar.api.config.Settings;
 
 import java.io.File;
 import java.io.Serializable;
+import java.rmi.RemoteException;
+import java.util.Map;
 import java.util.Properties;
-import java.util.Set;
 
 /**
  * Factory of caches
@@ -44,16 +48,38 @@ import java.util.Set;
  */
 public class Caches implements BatchComponent, Startable {
 
-  private final Set<String> cacheNames = Sets.newHashSet();
+  static final int PAGE_SIZE = 8192;
+  // buffers are pinned by each thread accessing the caches, so the pool must not be too small for concurrent access
+  static final int MIN_BUFFERS = 64;
+  private static final long MB = 1024L * 1024L;
+
+  private final Map<String, Cache<?, ?>> caches = Maps.newLinkedHashMap();
   private File tempDir;
   private Persistit persistit;
   private Volume volume;
 
   public Caches() {
-    initPersistit();
+    this(new Settings());
+  }
+
+  public Caches(Settings settings) {
+    initPersistit(bufferCount(settings, Runtime.getRuntime().maxMemory()), settings.getLong(CoreProperties.BATCH_CACHE_MAX_SIZE));
+  }
+
+  /**
+   * Number of pages of the buffer pool, either from the property {@link CoreProperties#BATCH_CACHE_MEMORY}
+   * or from a fraction of the heap.
+   */
+  @VisibleForTesting
+  static int bufferCount(Settings settings, long maxHeap) {
+    long memory = settings.getLong(CoreProperties.BATCH_CACHE_MEMORY) * MB;
+    if (memory <= 0L) {
+      memory = maxHeap / CoreProperties.BATCH_CACHE_MEMORY_DEFAULT_HEAP_RATIO;
+    }
+    return (int) Math.max(MIN_BUFFERS, memory / PAGE_SIZE);
   }
 
-  private void initPersistit() {
+  private void initPersistit(int bufferCount, long maxSizeInMb) {
     try {
       tempDir = Files.createTempDir();
       persistit = new Persistit();
@@ -62,10 +88,15 @@ public class Caches implements BatchComponent, Startable {
       props.setProperty("datapath", tempDir.getAbsolutePath());
       props.setProperty("logpath", "${datapath}/log");
       props.setProperty("logfile", "${logpath}/persistit_${timestamp}.log");
-      props.setProperty("buffer.count.8192", "10");
+      props.setProperty("buffer.count." + PAGE_SIZE, String.valueOf(bufferCount));
       props.setProperty("journalpath", "${datapath}/journal");
       props.setProperty("tmpvoldir", "${datapath}");
-      props.setProperty("volume.1", "${datapath}/persistit,create,pageSize:8192,initialPages:10,extensionPages:100,maximumPages:25000");
+      props.setProperty("tmpvolpagesize", String.valueOf(PAGE_SIZE));
+      if (maxSizeInMb > 0L) {
+        props.setProperty("tmpvolmaxsize", String.valueOf(maxSizeInMb * MB));
+      }
+      // system volume, which only stores the metadata of serialized classes. Cached data is stored in the temporary volume.
+      props.setProperty("volume.1", "${datapath}/persistit,create,pageSize:" + PAGE_SIZE + ",initialPages:10,extensionPages:100,maximumPages:25000");
       persistit.setProperties(props);
       persistit.initialize();
       volume = persistit.createTemporaryVolume();
@@ -77,11 +108,10 @@ public class Caches implements BatchComponent, Startable {
 
   public <K extends Serializable, V extends Serializable> Cache<K, V> createCache(String cacheName) {
     Preconditions.checkState(volume != null && volume.isOpened(), "Caches are not initialized");
-    Preconditions.checkState(!cacheNames.contains(cacheName), "Cache is already created: " + cacheName);
+    Preconditions.checkState(!caches.containsKey(cacheName), "Cache is already created: " + cacheName);
     try {
-      Exchange exchange = persistit.getExchange(volume, cacheName, true);
-      Cache<K, V> cache = new Cache<K, V>(cacheName, exchange);
-      cacheNames.add(cacheName);
+      Cache<K, V> cache = new Cache<K, V>(cacheName, persistit, volume);
+      caches.put(cacheName, cache);
       return cache;
     } catch (Exception e) {
       throw new IllegalStateException("Fail to create cache: " + cacheName, e);
@@ -105,7 +135,58 @@ public class Caches implements BatchComponent, Startable {
     }
     FileUtils.deleteQuietly(tempDir);
     tempDir = null;
-    cacheNames.clear();
+    caches.clear();
+  }
+
+  /**
+   * Statistics of the created caches, by cache name
+   *
+   * @since 4.0
+   */
+  public Map<String, Cache.Statistics> statistics() {
+    Map<String, Cache.Statistics> result = Maps.newLinkedHashMap();
+    for (Map.Entry<String, Cache<?, ?>> entry : caches.entrySet()) {
+      result.put(entry.getKey(), entry.getValue().statistics());
+    }
+    return result;
+  }
+
+  /**
+   * Size in bytes of the temporary volume shared by all the caches. It never shrinks.
+   *
+   * @since 4.0
+   */
+  public long diskSize() {
+    if (volume == null) {
+      return 0L;
+    }
+    return volume.getNextAvailablePage() * volume.getPageSize();
+  }
+
+  /**
+   * Percentage of the pages found in the buffer pool, the other ones being read from disk
+   *
+   * @since 4.0
+   */
+  public double bufferPoolHitRatio() {
+    return 100.0 * bufferPoolInfo().getHitRatio();
+  }
+
+  int bufferCount() {
+    return bufferPoolInfo().getBufferCount();
+  }
+
+  private Management.BufferPoolInfo bufferPoolInfo() {
+    try {
+      for (Management.BufferPoolInfo info : persistit.getManagement().getBufferPoolInfoArray()) {
+        if (info.getBufferSize() == PAGE_SIZE) {
+          return info;
+        }
+      }
+      throw new IllegalStateException("No buffer pool of " + PAGE_SIZE + " bytes");
+    } catch (RemoteException e) {
+      throw new IllegalStateException("Fail to get statistics of caches", e);
+    }
   }
 
   File tempDir() {
@@ -26,8 +26,10 @@ import org.apache.commons.lang.ObjectUtils;
 import org.apache.commons.lang.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.sonar.api.CoreProperties;
 import org.sonar.api.batch.Event;
 import org.sonar.api.batch.SonarIndex;
+import org.sonar.api.config.Settings;
 import org.sonar.api.database.model.Snapshot;
 import org.sonar.api.design.Dependency;
 import org.sonar.api.measures.Measure;
@@ -70,6 +72,7 @@ public class DefaultIndex extends SonarIndex {
   private DefaultResourceCreationLock lock;
   private MetricFinder metricFinder;
   private final ScanGraph graph;
+  private final boolean compactMeasures;
 
   // filters
   private ResourceFilters resourceFilters;
@@ -85,13 +88,14 @@ public class DefaultIndex extends SonarIndex {
   private ModuleIssues moduleIssues;
 
   public DefaultIndex(PersistenceManager persistence, DefaultResourceCreationLock lock, ProjectTree projectTree, MetricFinder metricFinder,
-                      ScanGraph graph, DeprecatedViolations deprecatedViolations) {
+                      ScanGraph graph, DeprecatedViolations deprecatedViolations, Settings settings) {
     this.persistence = persistence;
     this.lock = lock;
     this.projectTree = projectTree;
     this.metricFinder = metricFinder;
     this.graph = graph;
     this.deprecatedViolations = deprecatedViolations;
+    this.compactMeasures = settings.getBoolean(CoreProperties.INDEX_COMPACT_MEASURES);
   }
 
   public void start() {
@@ -102,7 +106,7 @@ public class DefaultIndex extends SonarIndex {
   }
 
   void doStart(Project rootProject) {
-    Bucket bucket = new Bucket(rootProject);
+    Bucket bucket = new Bucket(rootProject, compactMeasures);
     buckets.put(rootProject, bucket);
     persistence.saveProject(rootProject, null);
     currentProject = rootProject;
@@ -159,7 +163,7 @@ public class DefaultIndex extends SonarIndex {
   }
 
   @Override
-  public Measure getMeasure(Resource resource, Metric metric) {
+  public synchronized Measure getMeasure(Resource resource, Metric metric) {
     Bucket bucket = buckets.get(resource);
     if (bucket != null) {
       Measure measure = bucket.getMeasures(MeasuresFilters.metric(metric));
@@ -171,7 +175,7 @@ public class DefaultIndex extends SonarIndex {
   }
 
   @Override
-  public <M> M getMeasures(Resource resource, MeasuresFilter<M> filter) {
+  public synchronized <M> M getMeasures(Resource resource, MeasuresFilter<M> filter) {
     Bucket bucket = buckets.get(resource);
     if (bucket != null) {
       // TODO the data measures which are not kept in memory are not reloaded yet. Use getMeasure().
@@ -182,9 +186,11 @@ public class DefaultIndex extends SonarIndex {
 
   /**
    * the measure is updated if it's already registered.
+   * <p/>
+   * Measure methods are synchronized as they can be called by decorators executed concurrently.
    */
   @Override
-  public Measure addMeasure(Resource resource, Measure measure) {
+  public synchronized Measure addMeasure(Resource resource, Measure measure) {
     Bucket bucket = checkIndexed(resource);
     if (bucket != null && !bucket.isExcluded()) {
       Metric metric = metricFinder.findByKey(measure.getMetricKey());
@@ -192,11 +198,11 @@ public class DefaultIndex extends SonarIndex {
         throw new SonarException("Unknown metric: " + measure.getMetricKey());
       }
       measure.setMetric(metric);
-      bucket.addMeasure(measure);
-
       if (measure.getPersistenceMode().useDatabase()) {
         persistence.saveMeasure(resource, measure);
       }
+      // indexed after being persisted, so that a compact copy keeps the id of the measure
+      bucket.addMeasure(measure);
     }
     return measure;
   }
@@ -533,7 +539,7 @@ public class DefaultIndex extends SonarIndex {
     }
 
     resource.setEffectiveKey(ComponentKeys.createKey(currentProject, resource));
-    bucket = new Bucket(resource).setParent(parentBucket);
+    bucket = new Bucket(resource, compactMeasures).setParent(parentBucket);
     buckets.put(resource, bucket);
 
     boolean excluded = checkExclusion(resource, parentBucket);
@@ -22,9 +22,12 @@ package org.sonar.batch.index;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.LinkedHashMultimap;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.collect.SetMultimap;
 import org.apache.ibatis.session.SqlSession;
 import org.slf4j.LoggerFactory;
+import org.sonar.api.CoreProperties;
+import org.sonar.api.config.Settings;
 import org.sonar.api.database.model.MeasureMapper;
 import org.sonar.api.database.model.MeasureModel;
 import org.sonar.api.database.model.Snapshot;
@@ -47,13 +50,17 @@ public final class MeasurePersister {
   private final RuleFinder ruleFinder;
   private final MemoryOptimizer memoryOptimizer;
   private final SetMultimap<Resource, Measure> unsavedMeasuresByResource = LinkedHashMultimap.create();
+  private final Map<Resource, NumericMeasures> unsavedNumericMeasuresByResource = Maps.newLinkedHashMap();
+  private final boolean compactMeasures;
   private boolean delayedMode = false;
 
-  public MeasurePersister(MyBatis mybatis, ResourcePersister resourcePersister, RuleFinder ruleFinder, MemoryOptimizer memoryOptimizer) {
+  public MeasurePersister(MyBatis mybatis, ResourcePersister resourcePersister, RuleFinder ruleFinder, MemoryOptimizer memoryOptimizer,
+                          Settings settings) {
     this.mybatis = mybatis;
     this.resourcePersister = resourcePersister;
     this.ruleFinder = ruleFinder;
     this.memoryOptimizer = memoryOptimizer;
+    this.compactMeasures = settings.getBoolean(CoreProperties.INDEX_COMPACT_MEASURES);
   }
 
   public void setDelayedMode(boolean delayedMode) {
@@ -65,14 +72,24 @@ public final class MeasurePersister {
   }
 
   public void dump() {
-    LoggerFactory.getLogger(getClass()).debug("{} measures to dump", unsavedMeasuresByResource.size());
+    LoggerFactory.getLogger(getClass()).debug("{} measures to dump", unsavedMeasuresByResource.size() + numericMeasuresCount());
 
     insert(getMeasuresToSave());
   }
 
+  private int numericMeasuresCount() {
+    int count = 0;
+    for (NumericMeasures numericMeasures : unsavedNumericMeasuresByResource.values()) {
+      count += numericMeasures.size();
+    }
+    return count;
+  }
+
   public void saveMeasure(Resource resource, Measure measure) {
     if (shouldSaveLater(measure)) {
-      unsavedMeasuresByResource.put(resource, measure);
+      if (!compactMeasures || !saveNumericMeasureLater(resource, measure)) {
+        unsavedMeasuresByResource.put(resource, measure);
+      }
       return;
     }
     MeasureModel model;
@@ -87,6 +104,15 @@ public final class MeasurePersister {
     }
   }
 
+  private boolean saveNumericMeasureLater(Resource resource, Measure measure) {
+    NumericMeasures numericMeasures = unsavedNumericMeasuresByResource.get(resource);
+    if (numericMeasures == null) {
+      numericMeasures = new NumericMeasures();
+      unsavedNumericMeasuresByResource.put(resource, numericMeasures);
+    }
+    return numericMeasures.add(measure, unsavedMeasuresByResource.containsEntry(resource, measure));
+  }
+
   private MeasureModel insertOrUpdate(Resource resource, Measure measure) {
     Snapshot snapshot = resourcePersister.getSnapshotOrFail(resource);
     if (measure.getId() != null) {
@@ -133,7 +159,20 @@ public final class MeasurePersister {
       }
     }
 
+    for (Map.Entry<Resource, NumericMeasures> entry : unsavedNumericMeasuresByResource.entrySet()) {
+      Resource resource = entry.getKey();
+      Snapshot snapshot = resourcePersister.getSnapshot(resource);
+      List<Measure> numericMeasures = Lists.newArrayList();
+      entry.getValue().addTo(numericMeasures);
+      for (Measure measure : numericMeasures) {
+        if (shouldPersistMeasure(resource, measure)) {
+          measures.add(new MeasureModelAndDetails(model(measure).setSnapshotId(snapshot.getId()), resource.getKey(), measure.getMetricKey()));
+        }
+      }
+    }
+
     unsavedMeasuresByResource.clear();
+    unsavedNumericMeasuresByResource.clear();
     return measures;
   }
 
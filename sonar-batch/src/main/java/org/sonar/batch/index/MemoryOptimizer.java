@@ -32,6 +32,7 @@ import org.sonar.api.database.model.MeasureModel;
 import org.sonar.api.measures.Measure;
 import org.sonar.api.measures.PersistenceMode;
 
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -42,7 +43,14 @@ public class MemoryOptimizer implements SensorExecutionHandler, DecoratorExecuti
 
   private static final Logger LOG = LoggerFactory.getLogger(MemoryOptimizer.class);
 
-  private List<Measure> loadedMeasures = Lists.newArrayList();
+  // data measures can be reloaded by decorators executed concurrently. The data is unset when no more thread uses it.
+  private Map<Measure, Integer> loadedMeasures = new IdentityHashMap<Measure, Integer>();
+  private ThreadLocal<List<Measure>> measuresLoadedByThread = new ThreadLocal<List<Measure>>() {
+    @Override
+    protected List<Measure> initialValue() {
+      return Lists.newArrayList();
+    }
+  };
   private Map<Long, Integer> dataIdByMeasureId = Maps.newHashMap();
   private DatabaseSession session;
 
@@ -53,7 +61,7 @@ public class MemoryOptimizer implements SensorExecutionHandler, DecoratorExecuti
   /**
    * Remove data of a database measure from memory.
    */
-  public void evictDataMeasure(Measure measure, MeasureModel model) {
+  public synchronized void evictDataMeasure(Measure measure, MeasureModel model) {
     if (PersistenceMode.DATABASE.equals(measure.getPersistenceMode())) {
       MeasureData data = model.getMeasureData();
       if (data != null && data.getId() != null) {
@@ -66,35 +74,56 @@ public class MemoryOptimizer implements SensorExecutionHandler, DecoratorExecuti
     }
   }
 
-  public Measure reloadMeasure(Measure measure) {
-    if (measure.getId() != null && dataIdByMeasureId.containsKey(measure.getId()) && !measure.hasData()) {
-      Integer dataId = dataIdByMeasureId.get(measure.getId());
-      MeasureData data = session.getSingleResult(MeasureData.class, "id", dataId);
-      if (data == null) {
-        LOG.error("The MEASURE_DATA row with id {} is lost", dataId);
+  public synchronized Measure reloadMeasure(Measure measure) {
+    if (measure.getId() != null && dataIdByMeasureId.containsKey(measure.getId())) {
+      if (loadedMeasures.containsKey(measure)) {
+        track(measure);
 
-      } else {
-        if (LOG.isDebugEnabled()) {
-          LOG.debug("Reload the data measure: {}, id={}", measure.getMetricKey(), measure.getId());
+      } else if (!measure.hasData()) {
+        Integer dataId = dataIdByMeasureId.get(measure.getId());
+        MeasureData data = session.getSingleResult(MeasureData.class, "id", dataId);
+        if (data == null) {
+          LOG.error("The MEASURE_DATA row with id {} is lost", dataId);
+
+        } else {
+          if (LOG.isDebugEnabled()) {
+            LOG.debug("Reload the data measure: {}, id={}", measure.getMetricKey(), measure.getId());
+          }
+          measure.setData(data.getText());
+          track(measure);
         }
-        measure.setData(data.getText());
-        loadedMeasures.add(measure);
       }
     }
     return measure;
   }
 
-  public void flushMemory() {
-    if (LOG.isDebugEnabled() && !loadedMeasures.isEmpty()) {
-      LOG.debug("Flush {} data measures from memory: ", loadedMeasures.size());
+  private void track(Measure measure) {
+    Integer users = loadedMeasures.get(measure);
+    loadedMeasures.put(measure, users == null ? 1 : users + 1);
+    measuresLoadedByThread.get().add(measure);
+  }
+
+  /**
+   * Remove from memory the data measures reloaded by the current thread.
+   */
+  public synchronized void flushMemory() {
+    List<Measure> measures = measuresLoadedByThread.get();
+    if (LOG.isDebugEnabled() && !measures.isEmpty()) {
+      LOG.debug("Flush {} data measures from memory: ", measures.size());
     }
-    for (Measure measure : loadedMeasures) {
-      measure.unsetData();
+    for (Measure measure : measures) {
+      Integer users = loadedMeasures.get(measure);
+      if (users == null || users <= 1) {
+        loadedMeasures.remove(measure);
+        measure.unsetData();
+      } else {
+        loadedMeasures.put(measure, users - 1);
+      }
     }
-    loadedMeasures.clear();
+    measures.clear();
   }
 
-  boolean isTracked(Long measureId) {
+  synchronized boolean isTracked(Long measureId) {
     return dataIdByMeasureId.get(measureId) != null;
   }
 
@@ -0,0 +1,174 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2013 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.batch.index;
+
+import org.sonar.api.measures.Measure;
+import org.sonar.api.measures.Metric;
+import org.sonar.api.measures.PersistenceMode;
+
+import javax.annotation.CheckForNull;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Compact storage of the numeric measures of a resource, as a column of primitive values by metric.
+ * Only measures which can be fully restored from their metric and their value are accepted, see {@link #accept(Measure)}.
+ * {@link Measure} objects are created on demand and are not kept, so modifications of these objects
+ * must be saved again in order to be taken into account.
+ *
+ * @since 4.0
+ */
+final class NumericMeasures {
+
+  private static final int DEFAULT_CAPACITY = 4;
+
+  private Metric[] metrics = new Metric[DEFAULT_CAPACITY];
+  private double[] values = new double[DEFAULT_CAPACITY];
+  // ids of the measures already persisted, so that they are updated instead of being inserted again
+  private Long[] ids = new Long[DEFAULT_CAPACITY];
+  private int size = 0;
+
+  /**
+   * Measures with a value and without rule, characteristic, person, variations, data or any other field.
+   */
+  static boolean accept(Measure measure) {
+    Double value = measure.getValue();
+    return isPlain(measure)
+      && measure.getMetric() != null
+      && value != null
+      && measure.getPersistenceMode() == PersistenceMode.FULL
+      && measure.getData() == null
+      && measure.getDescription() == null
+      && measure.getAlertStatus() == null
+      && measure.getAlertText() == null
+      && measure.getTendency() == null
+      && measure.getDate() == null
+      && measure.getUrl() == null
+      && measure.getVariation1() == null
+      && measure.getVariation2() == null
+      && measure.getVariation3() == null
+      && measure.getVariation4() == null
+      && measure.getVariation5() == null;
+  }
+
+  /**
+   * Stores the measure as a primitive value when possible. A measure which was stored as a primitive value but which
+   * does not fit anymore, for example because variations have been set, is removed so that the caller stores it as an object.
+   *
+   * @param storedAsObject whether an equal measure is already stored by the caller as an object
+   * @return true if the measure is stored as a primitive value
+   */
+  boolean add(Measure measure, boolean storedAsObject) {
+    String metricKey = measure.getMetricKey();
+    if (contains(metricKey)) {
+      if (accept(measure)) {
+        put(measure);
+        return true;
+      }
+      if (isPlain(measure)) {
+        remove(metricKey);
+      }
+      return false;
+    }
+    if (!storedAsObject && accept(measure)) {
+      put(measure);
+      return true;
+    }
+    return false;
+  }
+
+  private static boolean isPlain(Measure measure) {
+    return measure.getClass().equals(Measure.class) && measure.getCharacteristic() == null && measure.getPersonId() == null;
+  }
+
+  /**
+   * Adds the value, or updates it if the metric is already registered.
+   */
+  private void put(Measure measure) {
+    int index = indexOf(measure.getMetricKey());
+    if (index < 0) {
+      if (size == metrics.length) {
+        int newCapacity = size * 2;
+        metrics = Arrays.copyOf(metrics, newCapacity);
+        values = Arrays.copyOf(values, newCapacity);
+        ids = Arrays.copyOf(ids, newCapacity);
+      }
+      index = size;
+      metrics[index] = measure.getMetric();
+      size++;
+    }
+    values[index] = measure.getValue();
+    ids[index] = measure.getId();
+  }
+
+  private boolean contains(String metricKey) {
+    return indexOf(metricKey) >= 0;
+  }
+
+  private void remove(String metricKey) {
+    int index = indexOf(metricKey);
+    if (index >= 0) {
+      size--;
+      metrics[index] = metrics[size];
+      values[index] = values[size];
+      ids[index] = ids[size];
+      metrics[size] = null;
+      ids[size] = null;
+    }
+  }
+
+  @CheckForNull
+  Measure get(String metricKey) {
+    int index = indexOf(metricKey);
+    return index < 0 ? null : toMeasure(index);
+  }
+
+  /**
+   * Creates the measures and adds them to the given list
+   */
+  void addTo(List<Measure> measures) {
+    for (int i = 0; i < size; i++) {
+      measures.add(toMeasure(i));
+    }
+  }
+
+  int size() {
+    return size;
+  }
+
+  private Measure toMeasure(int index) {
+    double value = values[index];
+    // the value has already been rounded when it was set on the original measure, it must not be rounded again
+    return new Measure(metrics[index])
+      .setValue(value, Math.max(0, BigDecimal.valueOf(value).scale()))
+      .setId(ids[index]);
+  }
+
+  private int indexOf(String metricKey) {
+    for (int i = 0; i < size; i++) {
+      if (metrics[i].getKey().equals(metricKey)) {
+        return i;
+      }
+    }
+    return -1;
+  }
+}
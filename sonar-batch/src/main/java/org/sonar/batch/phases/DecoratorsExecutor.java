@@ -19,24 +19,33 @@
  */
 package org.sonar.batch.phases;
 
-import org.sonar.core.measure.MeasurementFilters;
-
 import com.google.common.collect.Lists;
 import org.sonar.api.BatchComponent;
+import org.sonar.api.CoreProperties;
 import org.sonar.api.batch.BatchExtensionDictionnary;
+import org.sonar.api.batch.ConcurrentDecorator;
 import org.sonar.api.batch.Decorator;
 import org.sonar.api.batch.DecoratorContext;
 import org.sonar.api.batch.SonarIndex;
+import org.sonar.api.config.Settings;
 import org.sonar.api.resources.Project;
 import org.sonar.api.resources.Resource;
+import org.sonar.api.utils.AnnotationUtils;
 import org.sonar.api.utils.MessageException;
 import org.sonar.api.utils.SonarException;
 import org.sonar.batch.DecoratorsSelector;
 import org.sonar.batch.DefaultDecoratorContext;
 import org.sonar.batch.events.EventBus;
+import org.sonar.core.measure.MeasurementFilters;
 
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class DecoratorsExecutor implements BatchComponent {
 
@@ -45,20 +54,27 @@ public class DecoratorsExecutor implements BatchComponent {
   private EventBus eventBus;
   private Project project;
   private MeasurementFilters measurementFilters;
+  private Settings settings;
 
   public DecoratorsExecutor(BatchExtensionDictionnary batchExtDictionnary,
-      Project project, SonarIndex index, EventBus eventBus, MeasurementFilters measurementFilters) {
+      Project project, SonarIndex index, EventBus eventBus, MeasurementFilters measurementFilters, Settings settings) {
     this.decoratorsSelector = new DecoratorsSelector(batchExtDictionnary);
     this.index = index;
     this.eventBus = eventBus;
     this.project = project;
     this.measurementFilters = measurementFilters;
+    this.settings = settings;
   }
 
   public void execute() {
     Collection<Decorator> decorators = decoratorsSelector.select(project);
     eventBus.fireEvent(new DecoratorsPhaseEvent(Lists.newArrayList(decorators), true));
-    decorateResource(project, decorators, true);
+    int threads = settings.getInt(CoreProperties.DECORATORS_THREADS);
+    if (threads > 1) {
+      decorateInParallel(project, decorators, threads);
+    } else {
+      decorateResource(project, decorators, true);
+    }
     eventBus.fireEvent(new DecoratorsPhaseEvent(Lists.newArrayList(decorators), false));
   }
 
@@ -79,6 +95,19 @@ public class DecoratorsExecutor implements BatchComponent {
     return context;
   }
 
+  /**
+   * Sibling subtrees are decorated concurrently. A resource is submitted to the pool only when all its children
+   * have been decorated, so that workers never wait for each other.
+   */
+  DecoratorContext decorateInParallel(Resource resource, Collection<Decorator> decorators, int threads) {
+    ParallelDecoration decoration = new ParallelDecoration(decorators, threads);
+    try {
+      return decoration.execute(resource);
+    } finally {
+      decoration.shutdown();
+    }
+  }
+
   void executeDecorator(Decorator decorator, DefaultDecoratorContext context, Resource resource) {
     try {
       eventBus.fireEvent(new DecoratorExecutionEvent(decorator, true));
@@ -94,4 +123,126 @@ public class DecoratorsExecutor implements BatchComponent {
     }
   }
 
+  static boolean isConcurrent(Decorator decorator) {
+    return AnnotationUtils.getAnnotation(decorator, ConcurrentDecorator.class) != null;
+  }
+
+  private class ParallelDecoration {
+    private final Decorator[] decorators;
+    // computed once, as the annotation lookup is too slow to be done for each resource
+    private final boolean[] concurrent;
+    private final ExecutorService executorService;
+    private final CountDownLatch done = new CountDownLatch(1);
+    private final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+    private volatile DecoratorContext rootContext;
+
+    ParallelDecoration(Collection<Decorator> decorators, int threads) {
+      this.decorators = decorators.toArray(new Decorator[decorators.size()]);
+      this.concurrent = new boolean[this.decorators.length];
+      for (int i = 0; i < this.decorators.length; i++) {
+        concurrent[i] = isConcurrent(this.decorators[i]);
+      }
+      this.executorService = Executors.newFixedThreadPool(threads);
+    }
+
+    DecoratorContext execute(Resource resource) {
+      List<Node> leaves = Lists.newArrayList();
+      createNode(resource, null, 0, true, leaves);
+      for (Node leaf : leaves) {
+        submit(leaf);
+      }
+      try {
+        done.await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new SonarException("Interrupted while decorating " + resource, e);
+      }
+      Throwable e = failure.get();
+      if (e instanceof RuntimeException) {
+        throw (RuntimeException) e;
+      }
+      if (e != null) {
+        throw new SonarException("Fail to decorate " + resource, e);
+      }
+      return rootContext;
+    }
+
+    void shutdown() {
+      executorService.shutdownNow();
+    }
+
+    private Node createNode(Resource resource, Node parent, int position, boolean executeDecorators, List<Node> leaves) {
+      List<Resource> children = Lists.newArrayList(index.getChildren(resource));
+      Node node = new Node(resource, parent, position, executeDecorators, children.size());
+      for (int i = 0; i < children.size(); i++) {
+        Resource child = children.get(i);
+        createNode(child, node, i, !(child instanceof Project), leaves);
+      }
+      if (children.isEmpty()) {
+        leaves.add(node);
+      }
+      return node;
+    }
+
+    private void submit(final Node node) {
+      executorService.execute(new Runnable() {
+        public void run() {
+          try {
+            decorate(node);
+          } catch (Throwable e) {
+            // errors must also release the calling thread, else the analysis would hang
+            failure.compareAndSet(null, e);
+            done.countDown();
+          }
+        }
+      });
+    }
+
+    private void decorate(Node node) {
+      if (failure.get() != null) {
+        return;
+      }
+      DefaultDecoratorContext context = new DefaultDecoratorContext(node.resource, index, Arrays.asList(node.childrenContexts), measurementFilters);
+      if (node.executeDecorators) {
+        for (int i = 0; i < decorators.length; i++) {
+          if (concurrent[i]) {
+            executeDecorator(decorators[i], context, node.resource);
+          } else {
+            // the index is also the monitor of measure reads and writes
+            synchronized (index) {
+              executeDecorator(decorators[i], context, node.resource);
+            }
+          }
+        }
+      }
+      if (node.parent == null) {
+        rootContext = context;
+        done.countDown();
+      } else {
+        node.parent.childrenContexts[node.position] = context.setReadOnly(true);
+        if (node.parent.pendingChildren.decrementAndGet() == 0) {
+          submit(node.parent);
+        }
+      }
+    }
+  }
+
+  private static class Node {
+    private final Resource resource;
+    private final Node parent;
+    private final int position;
+    private final boolean executeDecorators;
+    private final DecoratorContext[] childrenContexts;
+    private final AtomicInteger pendingChildren;
+
+    Node(Resource resource, Node parent, int position, boolean executeDecorators, int childrenCount) {
+      this.resource = resource;
+      this.parent = parent;
+      this.position = position;
+      this.executeDecorators = executeDecorators;
+      this.childrenContexts = new DecoratorContext[childrenCount];
+      this.pendingChildren = new AtomicInteger(childrenCount);
+    }
+  }
+
 }
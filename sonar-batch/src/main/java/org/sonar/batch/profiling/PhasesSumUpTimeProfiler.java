@@ -29,12 +29,15 @@ import org.sonar.api.batch.events.*;
 import org.sonar.api.resources.Project;
 import org.sonar.api.utils.TimeUtils;
 import org.sonar.batch.events.BatchStepHandler;
+import org.sonar.batch.index.Cache;
+import org.sonar.batch.index.Caches;
 import org.sonar.batch.phases.Phases;
 
 import javax.annotation.Nullable;
 
 import java.util.HashMap;
 import java.util.IdentityHashMap;
+import java.util.Locale;
 import java.util.List;
 import java.util.Map;
 
@@ -56,9 +59,10 @@ public class PhasesSumUpTimeProfiler implements ProjectAnalysisHandler, SensorEx
   private DecoratorsProfiler decoratorsProfiler;
 
   private Clock clock;
+  private Caches caches;
 
-  public PhasesSumUpTimeProfiler() {
-    this(new Clock());
+  public PhasesSumUpTimeProfiler(Caches caches) {
+    this(new Clock(), caches);
   }
 
   static void println(String msg) {
@@ -76,7 +80,13 @@ public class PhasesSumUpTimeProfiler implements ProjectAnalysisHandler, SensorEx
 
   @VisibleForTesting
   PhasesSumUpTimeProfiler(Clock clock) {
+    this(clock, null);
+  }
+
+  @VisibleForTesting
+  PhasesSumUpTimeProfiler(Clock clock, @Nullable Caches caches) {
     this.clock = clock;
+    this.caches = caches;
     totalProfiling = new ModuleProfiling(null, clock);
   }
 
@@ -101,7 +111,24 @@ public class PhasesSumUpTimeProfiler implements ProjectAnalysisHandler, SensorEx
       if (module.isRoot() && !module.getModules().isEmpty()) {
         dumpTotalExecutionSummary();
       }
+      if (module.isRoot() && caches != null) {
+        dumpCachesStatistics();
+      }
+    }
+  }
+
+  private void dumpCachesStatistics() {
+    println(" -------- Caches --------");
+    println("");
+    println(String.format(Locale.ENGLISH, " * Disk size: %d KB, buffer pool hit ratio: %.1f%%", caches.diskSize() / 1024, caches.bufferPoolHitRatio()));
+    for (Map.Entry<String, Cache.Statistics> entry : caches.statistics().entrySet()) {
+      Cache.Statistics stats = entry.getValue();
+      println(String.format(Locale.ENGLISH, "   o %s: %d gets (%.1f%% hits), %d puts, %d removes, %d KB stored, %s",
+        entry.getKey(), stats.gets(), stats.hitRate(), stats.puts(), stats.removes(), stats.storedBytes() / 1024, TimeUtils.formatDuration(stats.timeInMs())));
     }
+    println("");
+    println(" -------- End of caches --------");
+    println("");
   }
 
   private void dumpTotalExecutionSummary() {
@@ -139,7 +166,7 @@ public class PhasesSumUpTimeProfiler implements ProjectAnalysisHandler, SensorEx
     }
   }
 
-  public void onDecoratorExecution(DecoratorExecutionEvent event) {
+  public synchronized void onDecoratorExecution(DecoratorExecutionEvent event) {
     PhaseProfiling profiling = currentModuleProfiling.getProfilingPerPhase(Phases.Phase.DECORATOR);
     if (event.isStart()) {
       if (profiling.getProfilingPerItem(event.getDecorator()) == null) {
@@ -220,18 +247,20 @@ public class PhasesSumUpTimeProfiler implements ProjectAnalysisHandler, SensorEx
   class DecoratorsProfiler {
     private List<Decorator> decorators = Lists.newArrayList();
     private Map<Decorator, Long> durations = new IdentityHashMap<Decorator, Long>();
-    private long startTime;
-    private Decorator currentDecorator;
+    // decorators can be executed concurrently, see DecoratorsExecutor
+    private ThreadLocal<Long> startTime = new ThreadLocal<Long>();
+    private ThreadLocal<Decorator> currentDecorator = new ThreadLocal<Decorator>();
 
     DecoratorsProfiler() {
     }
 
     void start(Decorator decorator) {
-      this.startTime = clock.now();
-      this.currentDecorator = decorator;
+      this.startTime.set(clock.now());
+      this.currentDecorator.set(decorator);
     }
 
     void stop() {
+      Decorator currentDecorator = this.currentDecorator.get();
       final Long cumulatedDuration;
       if (durations.containsKey(currentDecorator)) {
         cumulatedDuration = durations.get(currentDecorator);
@@ -239,7 +268,7 @@ public class PhasesSumUpTimeProfiler implements ProjectAnalysisHandler, SensorEx
         decorators.add(currentDecorator);
         cumulatedDuration = 0L;
       }
-      durations.put(currentDecorator, cumulatedDuration + (clock.now() - startTime));
+      durations.put(currentDecorator, cumulatedDuration + (clock.now() - startTime.get()));
     }
 
     public Map<Decorator, Long> getDurations() {
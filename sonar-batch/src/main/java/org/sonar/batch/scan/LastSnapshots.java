@@ -19,44 +19,97 @@
  */
 package org.sonar.batch.scan;
 
+import com.google.common.base.Charsets;
+import org.apache.commons.io.IOUtils;
+import org.apache.ibatis.session.ResultContext;
+import org.apache.ibatis.session.ResultHandler;
 import org.sonar.api.BatchComponent;
 import org.sonar.api.CoreProperties;
 import org.sonar.api.config.Settings;
-import org.sonar.api.database.DatabaseSession;
-import org.sonar.api.database.model.ResourceModel;
-import org.sonar.api.database.model.Snapshot;
-import org.sonar.api.database.model.SnapshotSource;
 import org.sonar.api.resources.Resource;
 import org.sonar.api.resources.ResourceUtils;
 import org.sonar.api.utils.HttpDownloader;
+import org.sonar.batch.ProjectTree;
 import org.sonar.batch.bootstrap.ServerClient;
+import org.sonar.batch.index.Cache;
+import org.sonar.batch.index.Caches;
+import org.sonar.core.source.SnapshotDataType;
+import org.sonar.core.source.jdbc.SnapshotDataDao;
+import org.sonar.core.source.jdbc.SnapshotDataDto;
+import org.sonar.core.source.jdbc.SnapshotSourceDao;
+import org.sonar.core.source.jdbc.SnapshotSourceDto;
 
-import javax.persistence.Query;
+import javax.annotation.CheckForNull;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Sources and line hashes of the last analysis of files. The line hashes of all the files of the project are loaded
+ * at once with the first request. When connected to the database, so are the sources of the files which have no line hashes.
+ * They are kept compressed in a cache.
+ */
 public class LastSnapshots implements BatchComponent {
 
   private final Settings settings;
-  private final DatabaseSession session;
+  private final SnapshotSourceDao sourceDao;
+  private final SnapshotDataDao dataDao;
   private final ServerClient server;
+  private final Caches caches;
+  private final ProjectTree projectTree;
+  private Cache<String, byte[]> sources;
+  private Cache<Integer, String> lineHashes;
+  private volatile boolean prefetched = false;
 
-  public LastSnapshots(Settings settings, DatabaseSession session, ServerClient server) {
+  public LastSnapshots(Settings settings, SnapshotSourceDao sourceDao, SnapshotDataDao dataDao, ServerClient server, Caches caches, ProjectTree projectTree) {
     this.settings = settings;
-    this.session = session;
+    this.sourceDao = sourceDao;
+    this.dataDao = dataDao;
     this.server = server;
+    this.caches = caches;
+    this.projectTree = projectTree;
   }
 
+  /**
+   * Source of the last analysis of the file. When connected to the database, it is empty if the file has line hashes,
+   * see {@link #getLineHashes(Resource)}.
+   */
   public String getSource(Resource resource) {
     String source = "";
     if (ResourceUtils.isFile(resource)) {
-      if (settings.getBoolean(CoreProperties.DRY_RUN)) {
+      if (isDryRun()) {
         source = loadSourceFromWs(resource);
       } else {
-        source = loadSourceFromDb(resource);
+        source = loadSourceFromCache(resource);
       }
     }
     return source;
   }
 
+  /**
+   * Whitespace-insensitive hashes of the lines of the file, as stored by issue tracking in the snapshot data
+   * {@link SnapshotDataType#LINE_HASHES}. Files analysed with previous versions have no line hashes.
+   *
+   * @since 4.0
+   */
+  @CheckForNull
+  public String getLineHashes(Resource resource) {
+    if (ResourceUtils.isFile(resource) && resource.getId() != null) {
+      prefetch();
+      return lineHashes.get(resource.getId());
+    }
+    return null;
+  }
+
+  private boolean isDryRun() {
+    return settings.getBoolean(CoreProperties.DRY_RUN);
+  }
+
   private String loadSourceFromWs(Resource resource) {
     try {
       return server.request("/api/sources?resource=" + resource.getEffectiveKey() + "&format=txt", false);
@@ -68,22 +121,70 @@ public class LastSnapshots implements BatchComponent {
     }
   }
 
-  private String loadSourceFromDb(Resource resource) {
-    Snapshot snapshot = getSnapshot(resource);
-    if (snapshot != null) {
-      SnapshotSource source = session.getSingleResult(SnapshotSource.class, "snapshotId", snapshot.getId());
-      if (source != null) {
-        return source.getData();
-      }
+  private String loadSourceFromCache(Resource resource) {
+    prefetch();
+    byte[] compressed = sources.get(resource.getEffectiveKey());
+    if (compressed != null) {
+      return uncompress(compressed);
     }
     return "";
   }
 
-  private Snapshot getSnapshot(Resource resource) {
-    Query query = session.createQuery("from " + Snapshot.class.getSimpleName() + " s where s.last=:last and s.resourceId=(select r.id from "
-      + ResourceModel.class.getSimpleName() + " r where r.key=:key)");
-    query.setParameter("key", resource.getEffectiveKey());
-    query.setParameter("last", Boolean.TRUE);
-    return session.getSingleResult(query, null);
+  private void prefetch() {
+    if (!prefetched) {
+      doPrefetch();
+    }
+  }
+
+  private synchronized void doPrefetch() {
+    if (prefetched) {
+      return;
+    }
+    sources = caches.createCache("lastSnapshotSources");
+    lineHashes = caches.createCache("lastSnapshotLineHashes");
+    Integer projectId = projectTree.getRootProject().getId();
+    if (projectId != null) {
+      dataDao.selectLastSnapshotDataOfProject(projectId, SnapshotDataType.LINE_HASHES.getValue(), new ResultHandler() {
+        public void handleResult(ResultContext context) {
+          SnapshotDataDto dto = (SnapshotDataDto) context.getResultObject();
+          lineHashes.put((int) dto.getResourceId(), dto.getData());
+        }
+      });
+      if (!isDryRun()) {
+        // sources are required only by the files analysed with previous versions, which have no line hashes
+        sourceDao.selectLastSnapshotSourcesOfProject(projectId, SnapshotDataType.LINE_HASHES.getValue(), new ResultHandler() {
+          public void handleResult(ResultContext context) {
+            SnapshotSourceDto dto = (SnapshotSourceDto) context.getResultObject();
+            if (dto.getData() != null) {
+              sources.put(dto.getResourceKey(), compress(dto.getData()));
+            }
+          }
+        });
+      }
+    }
+    prefetched = true;
+  }
+
+  static byte[] compress(String source) {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    OutputStream output = new DeflaterOutputStream(bytes);
+    try {
+      output.write(source.getBytes(Charsets.UTF_8));
+      output.close();
+      return bytes.toByteArray();
+    } catch (IOException e) {
+      throw new IllegalStateException("Fail to compress source", e);
+    }
+  }
+
+  static String uncompress(byte[] compressed) {
+    InputStream input = new InflaterInputStream(new ByteArrayInputStream(compressed));
+    try {
+      return IOUtils.toString(input, Charsets.UTF_8.name());
+    } catch (IOException e) {
+      throw new IllegalStateException("Fail to uncompress source", e);
+    } finally {
+      IOUtils.closeQuietly(input);
+    }
   }
 }
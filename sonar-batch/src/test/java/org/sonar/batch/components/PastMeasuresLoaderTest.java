@@ -22,9 +22,14 @@ package org.sonar.batch.components;
 import org.junit.Test;
 import org.sonar.api.database.model.Snapshot;
 import org.sonar.api.measures.Metric;
+import org.sonar.api.resources.JavaFile;
+import org.sonar.api.resources.JavaPackage;
+import org.sonar.api.resources.Project;
 import org.sonar.jpa.test.AbstractDbUnitTestCase;
 
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
 import java.util.List;
 
 import static org.hamcrest.CoreMatchers.is;
@@ -86,6 +91,95 @@ public class PastMeasuresLoaderTest extends AbstractDbUnitTestCase {
     assertThat(PastMeasuresLoader.getValue(pastMeasure), is(80.0));
   }
 
+  @Test
+  public void should_poll_past_measures_of_projects_and_directories() {
+    setupData("shared");
+
+    Snapshot projectSnapshot = getSession().getSingleResult(Snapshot.class, "id", PROJECT_SNAPSHOT_ID);
+    PastSnapshot pastSnapshot = new PastSnapshot("days", new Date(), projectSnapshot);
+    PastMeasuresLoader loader = new PastMeasuresLoader(getSession(), selectMetrics());
+
+    Project project = new Project(PROJECT_KEY);
+    project.setId(1);
+    JavaPackage javaPackage = new JavaPackage("org.foo");
+    javaPackage.setId(2);
+
+    List<Object[]> measures = loader.pollPastMeasures(javaPackage, pastSnapshot);
+    assertThat(measures.size(), is(2));
+    assertThat(PastMeasuresLoader.getMetricId(measures.get(0)) + PastMeasuresLoader.getMetricId(measures.get(1)), is(3));
+    assertThat(PastMeasuresLoader.getValue(measures.get(0)) + PastMeasuresLoader.getValue(measures.get(1)), is(90.0));
+
+    // measures are released once returned
+    assertThat(loader.pollPastMeasures(javaPackage, pastSnapshot).size(), is(0));
+
+    measures = loader.pollPastMeasures(project, pastSnapshot);
+    assertThat(measures.size(), is(2));
+  }
+
+  @Test
+  public void should_release_past_measures_of_period_when_root_project_is_polled() {
+    setupData("shared");
+
+    Snapshot projectSnapshot = getSession().getSingleResult(Snapshot.class, "id", PROJECT_SNAPSHOT_ID);
+    PastSnapshot pastSnapshot = new PastSnapshot("days", new Date(), projectSnapshot);
+    PastMeasuresLoader loader = new PastMeasuresLoader(getSession(), selectMetrics());
+
+    Project project = new Project(PROJECT_KEY);
+    project.setId(1);
+    JavaPackage javaPackage = new JavaPackage("org.foo");
+    javaPackage.setId(2);
+
+    // the measures of the package are never polled
+    assertThat(loader.pollPastMeasures(project, pastSnapshot).size(), is(2));
+
+    // released with the whole period, so they are loaded again
+    assertThat(loader.pollPastMeasures(javaPackage, pastSnapshot).size(), is(2));
+  }
+
+  @Test
+  public void should_poll_past_measures_of_each_period_on_the_same_past_snapshot() {
+    setupData("shared");
+
+    Snapshot projectSnapshot = getSession().getSingleResult(Snapshot.class, "id", PROJECT_SNAPSHOT_ID);
+    PastSnapshot previousAnalysis = new PastSnapshot("previous_analysis", new Date(), projectSnapshot).setIndex(1);
+    PastSnapshot previousVersion = new PastSnapshot("previous_version", new Date(), projectSnapshot).setIndex(2);
+    PastMeasuresLoader loader = new PastMeasuresLoader(getSession(), selectMetrics());
+
+    JavaPackage javaPackage = new JavaPackage("org.foo");
+    javaPackage.setId(2);
+
+    assertThat(loader.pollPastMeasures(javaPackage, previousAnalysis).size(), is(2));
+    assertThat(loader.pollPastMeasures(javaPackage, previousVersion).size(), is(2));
+
+    assertThat(loader.pollPastMeasures(javaPackage, previousAnalysis).size(), is(0));
+    assertThat(loader.pollPastMeasures(javaPackage, previousVersion).size(), is(0));
+  }
+
+  @Test
+  public void should_poll_past_measures_of_files_one_by_one() {
+    setupData("shared");
+
+    Snapshot projectSnapshot = getSession().getSingleResult(Snapshot.class, "id", PROJECT_SNAPSHOT_ID);
+    PastSnapshot pastSnapshot = new PastSnapshot("days", new Date(), projectSnapshot);
+    PastMeasuresLoader loader = new PastMeasuresLoader(getSession(), selectMetrics());
+
+    JavaFile file = new JavaFile("org.foo.Bar");
+    file.setId(3);
+    file.setEffectiveKey(FILE_KEY);
+
+    List<Object[]> measures = loader.pollPastMeasures(file, pastSnapshot);
+    assertThat(measures.size(), is(2));
+    assertThat(loader.pollPastMeasures(file, pastSnapshot).size(), is(2));
+  }
+
+  @Test
+  public void should_not_poll_past_measures_without_past_snapshot() {
+    PastMeasuresLoader loader = new PastMeasuresLoader(getSession(), Collections.<Metric>emptyList());
+
+    assertThat(loader.pollPastMeasures(new Project(PROJECT_KEY), null).size(), is(0));
+    assertThat(loader.pollPastMeasures(new Project(PROJECT_KEY), new PastSnapshot("days", new Date())).size(), is(0));
+  }
+
   @Test
   public void shouldKeepOnlyNumericalMetrics() {
     Metric ncloc = new Metric("ncloc", Metric.ValueType.INT);
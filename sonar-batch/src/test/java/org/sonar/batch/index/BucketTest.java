@@ -23,6 +23,7 @@ import org.junit.Test;
 import org.sonar.api.measures.Measure;
 import org.sonar.api.measures.MeasuresFilters;
 import org.sonar.api.measures.Metric;
+import org.sonar.api.measures.RuleMeasure;
 import org.sonar.api.resources.JavaFile;
 import org.sonar.api.resources.JavaPackage;
 import org.sonar.api.rules.Rule;
@@ -30,6 +31,7 @@ import org.sonar.api.rules.Violation;
 import org.sonar.api.utils.SonarException;
 
 import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
 import static org.hamcrest.core.IsNot.not;
 import static org.junit.Assert.*;
 import static org.junit.internal.matchers.IsCollectionContaining.hasItem;
@@ -39,6 +41,7 @@ public class BucketTest {
   JavaPackage javaPackage = new JavaPackage("org.foo");
   JavaFile javaFile = new JavaFile("org.foo.Bar");
   Metric ncloc = new Metric("ncloc");
+  Metric coverage = new Metric("coverage");
 
   @Test
   public void shouldManageRelationships() {
@@ -87,6 +90,64 @@ public class BucketTest {
     fileBucket.addMeasure(measure);
   }
 
+  @Test
+  public void should_store_numeric_measures_as_primitive_values() {
+    Bucket fileBucket = new Bucket(javaFile, true);
+    fileBucket.addMeasure(new Measure(ncloc).setValue(1200.0));
+    fileBucket.addMeasure(new Measure(coverage).setValue(83.3));
+
+    Measure measure = fileBucket.getMeasures(MeasuresFilters.metric(ncloc));
+    assertThat(measure.getValue(), is(1200.0));
+    assertThat(measure.getMetric(), is(ncloc));
+    assertThat(fileBucket.getMeasures(MeasuresFilters.metric(coverage)).getValue(), is(83.3));
+    assertThat(fileBucket.getMeasures(MeasuresFilters.all()).size(), is(2));
+
+    // measures are created on demand
+    assertThat(fileBucket.getMeasures(MeasuresFilters.metric(ncloc)), not(sameInstance(measure)));
+  }
+
+  @Test
+  public void should_update_numeric_measure() {
+    Bucket fileBucket = new Bucket(javaFile, true);
+    fileBucket.addMeasure(new Measure(ncloc).setValue(1200.0));
+
+    Measure measure = fileBucket.getMeasures(MeasuresFilters.metric(ncloc));
+    fileBucket.addMeasure(measure.setValue(500.0));
+    assertThat(fileBucket.getMeasures(MeasuresFilters.metric(ncloc)).getValue(), is(500.0));
+
+    // variations can not be stored as primitive values
+    measure = fileBucket.getMeasures(MeasuresFilters.metric(ncloc));
+    fileBucket.addMeasure(measure.setVariation1(20.0));
+    assertThat(fileBucket.getMeasures(MeasuresFilters.all()).size(), is(1));
+    assertThat(fileBucket.getMeasures(MeasuresFilters.metric(ncloc)), sameInstance(measure));
+
+    fileBucket.addMeasure(measure.setValue(600.0));
+    assertThat(fileBucket.getMeasures(MeasuresFilters.metric(ncloc)).getValue(), is(600.0));
+    assertThat(fileBucket.getMeasures(MeasuresFilters.metric(ncloc)).getVariation1(), is(20.0));
+  }
+
+  @Test
+  public void should_keep_id_and_precision_of_numeric_measures() {
+    Bucket fileBucket = new Bucket(javaFile, true);
+    fileBucket.addMeasure(new Measure(coverage).setValue(83.3456, 4).setId(10L));
+
+    Measure measure = fileBucket.getMeasures(MeasuresFilters.metric(coverage));
+    assertThat(measure.getValue(), is(83.3456));
+    assertThat(measure.getId(), is(10L));
+  }
+
+  @Test
+  public void should_keep_rule_measures_besides_numeric_measures() {
+    Bucket fileBucket = new Bucket(javaFile, true);
+    Rule rule = Rule.create("repo", "key");
+    fileBucket.addMeasure(new Measure(ncloc).setValue(1200.0));
+    fileBucket.addMeasure(RuleMeasure.createForRule(ncloc, rule, 3.0));
+
+    assertThat(fileBucket.getMeasures(MeasuresFilters.metric(ncloc)).getValue(), is(1200.0));
+    assertThat(fileBucket.getMeasures(MeasuresFilters.rule(ncloc, rule)).getValue(), is(3.0));
+    assertThat(fileBucket.getMeasures(MeasuresFilters.all()).size(), is(2));
+  }
+
   @Test
   public void shouldBeEquals() {
     assertEquals(new Bucket(javaPackage), new Bucket(javaPackage));
@@ -20,11 +20,18 @@
 package org.sonar.batch.index;
 
 import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
 import com.persistit.exception.PersistitException;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
 import static org.fest.assertions.Assertions.assertThat;
 
 public class CacheTest {
@@ -205,4 +212,36 @@ public class CacheTest {
     assertThat(entries[1].key()).isEqualTo("ncloc");
     assertThat(entries[1].value()).isEqualTo(123f);
   }
+  @Test
+  public void should_support_concurrent_access() throws Exception {
+    final Cache<String, Integer> cache = caches.createCache("concurrent");
+    int threads = 4;
+    final int count = 2000;
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    List<Future<Boolean>> results = Lists.newArrayList();
+    for (int t = 0; t < threads; t++) {
+      final String group = "thread" + t;
+      results.add(executor.submit(new Callable<Boolean>() {
+        public Boolean call() {
+          for (int i = 0; i < count; i++) {
+            cache.put(group, "key" + i, i);
+          }
+          for (int i = 0; i < count; i++) {
+            if (!Integer.valueOf(i).equals(cache.get(group, "key" + i))) {
+              return false;
+            }
+          }
+          return Iterables.size(cache.values(group)) == count;
+        }
+      }));
+    }
+    for (Future<Boolean> result : results) {
+      assertThat(result.get()).isTrue();
+    }
+    executor.shutdown();
+
+    assertThat(cache.groups()).hasSize(threads);
+    assertThat(Iterables.size(cache.allValues())).isEqualTo(threads * count);
+  }
+
 }
@@ -21,6 +21,8 @@ package org.sonar.batch.index;
 
 import org.junit.After;
 import org.junit.Test;
+import org.sonar.api.CoreProperties;
+import org.sonar.api.config.Settings;
 
 import java.io.File;
 import java.io.Serializable;
@@ -69,6 +71,44 @@ public class CachesTest {
     }
   }
 
+  @Test
+  public void should_size_buffer_pool_from_heap_by_default() throws Exception {
+    Settings settings = new Settings();
+    long mb = 1024L * 1024L;
+
+    assertThat(Caches.bufferCount(settings, 1024 * mb)).isEqualTo(64 * 128);
+    // never less than the minimum required by concurrent accesses
+    assertThat(Caches.bufferCount(settings, 4 * mb)).isEqualTo(Caches.MIN_BUFFERS);
+  }
+
+  @Test
+  public void should_size_buffer_pool_from_settings() throws Exception {
+    Settings settings = new Settings().setProperty(CoreProperties.BATCH_CACHE_MEMORY, "10");
+    caches.stop();
+    caches = new Caches(settings);
+
+    assertThat(caches.bufferCount()).isEqualTo(1280);
+  }
+
+  @Test
+  public void should_give_statistics_of_caches() throws Exception {
+    caches.start();
+    Cache<String, String> cache = caches.createCache("foo");
+    cache.put("key", "value");
+    cache.get("key");
+    cache.get("other");
+
+    assertThat(caches.statistics()).hasSize(1);
+    Cache.Statistics stats = caches.statistics().get("foo");
+    assertThat(stats.puts()).isEqualTo(1);
+    assertThat(stats.gets()).isEqualTo(2);
+    assertThat(stats.hits()).isEqualTo(1);
+    assertThat(stats.hitRate()).isEqualTo(50.0);
+    assertThat(stats.storedBytes()).isGreaterThan(0);
+    assertThat(caches.diskSize()).isGreaterThan(0);
+    assertThat(caches.bufferPoolHitRatio()).isGreaterThanOrEqualTo(0.0);
+  }
+
   static class Element implements Serializable {
 
   }
@@ -22,6 +22,9 @@ package org.sonar.batch.index;
 import org.apache.commons.lang.StringUtils;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.sonar.api.CoreProperties;
 import org.sonar.api.batch.ResourceFilter;
 import org.sonar.api.config.Settings;
 import org.sonar.api.measures.CoreMetrics;
@@ -44,7 +47,9 @@ import org.sonar.core.component.ScanGraph;
 
 import static com.google.common.collect.Lists.newArrayList;
 import static org.fest.assertions.Assertions.assertThat;
+import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
@@ -64,7 +69,7 @@ public class DefaultIndexTest {
     when(metricFinder.findByKey("ncloc")).thenReturn(CoreMetrics.NCLOC);
     ruleFinder = mock(RuleFinder.class);
 
-    index = new DefaultIndex(mock(PersistenceManager.class), lock, mock(ProjectTree.class), metricFinder, mock(ScanGraph.class), deprecatedViolations);
+    index = new DefaultIndex(mock(PersistenceManager.class), lock, mock(ProjectTree.class), metricFinder, mock(ScanGraph.class), deprecatedViolations, new Settings());
     Project project = new Project("project");
 
     ResourceFilter filter = new ResourceFilter() {
@@ -177,6 +182,30 @@ public class DefaultIndexTest {
     assertThat(index.getMeasures(dir, MeasuresFilters.metric("ncloc")).getIntValue()).isEqualTo(50);
   }
 
+  @Test
+  public void should_keep_id_of_persisted_compact_measures() {
+    MetricFinder metricFinder = mock(MetricFinder.class);
+    when(metricFinder.findByKey("ncloc")).thenReturn(CoreMetrics.NCLOC);
+    PersistenceManager persistence = mock(PersistenceManager.class);
+    doAnswer(new Answer<Object>() {
+      public Object answer(InvocationOnMock invocation) {
+        ((Measure) invocation.getArguments()[1]).setId(123L);
+        return null;
+      }
+    }).when(persistence).saveMeasure(any(Resource.class), any(Measure.class));
+    Settings settings = new Settings().setProperty(CoreProperties.INDEX_COMPACT_MEASURES, true);
+    index = new DefaultIndex(persistence, lock, mock(ProjectTree.class), metricFinder, mock(ScanGraph.class), deprecatedViolations, settings);
+    Project project = new Project("project");
+    index.setCurrentProject(project, new ResourceFilters(new ResourceFilter[0]), mock(ModuleIssues.class));
+    index.doStart(project);
+
+    Resource dir = new Directory("org/foo");
+    index.addMeasure(dir, new Measure("ncloc").setValue(50.0));
+
+    // saved again as an update
+    assertThat(index.getMeasures(dir, MeasuresFilters.metric("ncloc")).getId()).isEqualTo(123L);
+  }
+
   /**
    * See http://jira.codehaus.org/browse/SONAR-2107
    */
@@ -24,6 +24,8 @@ import org.junit.Before;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
 import org.mockito.ArgumentCaptor;
+import org.sonar.api.CoreProperties;
+import org.sonar.api.config.Settings;
 import org.sonar.api.database.model.MeasureModel;
 import org.sonar.api.database.model.Snapshot;
 import org.sonar.api.measures.*;
@@ -59,6 +61,7 @@ public class MeasurePersisterTest extends AbstractDaoTestCase {
   private RuleFinder ruleFinder = mock(RuleFinder.class);
   private ResourcePersister resourcePersister = mock(ResourcePersister.class);
   private MemoryOptimizer memoryOptimizer = mock(MemoryOptimizer.class);
+  private Settings settings = new Settings();
   private Project project = new Project("foo");
   private JavaPackage aPackage = new JavaPackage("org.foo");
   private JavaFile aFile = new JavaFile("org.foo.Bar");
@@ -72,7 +75,7 @@ public class MeasurePersisterTest extends AbstractDaoTestCase {
     when(resourcePersister.getSnapshot(project)).thenReturn(projectSnapshot);
     when(resourcePersister.getSnapshot(aPackage)).thenReturn(packageSnapshot);
 
-    measurePersister = new MeasurePersister(getMyBatis(), resourcePersister, ruleFinder, memoryOptimizer);
+    measurePersister = new MeasurePersister(getMyBatis(), resourcePersister, ruleFinder, memoryOptimizer, settings);
   }
 
   @Test
@@ -190,6 +193,39 @@ public class MeasurePersisterTest extends AbstractDaoTestCase {
     checkTables("shouldAddDelayedMeasureSeveralTimes", "project_measures");
   }
 
+  @Test
+  public void should_add_delayed_compact_measure_several_times() {
+    setupData("empty");
+    settings.setProperty(CoreProperties.INDEX_COMPACT_MEASURES, true);
+    measurePersister = new MeasurePersister(getMyBatis(), resourcePersister, ruleFinder, memoryOptimizer, settings);
+
+    Measure measure = new Measure(ncloc());
+
+    measurePersister.setDelayedMode(true);
+    measurePersister.saveMeasure(project, measure.setValue(200.0));
+    measurePersister.saveMeasure(project, measure.setValue(300.0));
+    measurePersister.dump();
+
+    checkTables("shouldAddDelayedMeasureSeveralTimes", "project_measures");
+  }
+
+  @Test
+  public void should_delay_saving_of_compact_measures() {
+    setupData("empty");
+    settings.setProperty(CoreProperties.INDEX_COMPACT_MEASURES, true);
+    measurePersister = new MeasurePersister(getMyBatis(), resourcePersister, ruleFinder, memoryOptimizer, settings);
+
+    measurePersister.setDelayedMode(true);
+    measurePersister.saveMeasure(project, new Measure(ncloc()).setValue(1234.0).setData(SHORT));
+    measurePersister.saveMeasure(aPackage, new Measure(ncloc()).setValue(50.0).setData(LONG));
+    measurePersister.saveMeasure(aFile, new Measure(coverage()).setValue(100.0));
+
+    assertEmptyTables("project_measures");
+
+    measurePersister.dump();
+    checkTables("shouldDelaySaving", "project_measures", "measure_data");
+  }
+
   @Test
   public void should_delay_saving() {
     setupData("empty");
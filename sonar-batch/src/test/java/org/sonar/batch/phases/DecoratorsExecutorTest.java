@@ -19,27 +19,38 @@
  */
 package org.sonar.batch.phases;
 
+import com.google.common.collect.Lists;
 import org.sonar.core.measure.MeasurementFilters;
 
 import org.junit.Test;
 import org.sonar.api.batch.BatchExtensionDictionnary;
+import org.sonar.api.batch.ConcurrentDecorator;
 import org.sonar.api.batch.Decorator;
 import org.sonar.api.batch.DecoratorContext;
 import org.sonar.api.batch.SonarIndex;
+import org.sonar.api.config.Settings;
+import org.sonar.api.resources.Directory;
 import org.sonar.api.resources.File;
 import org.sonar.api.resources.Project;
 import org.sonar.api.resources.Resource;
 import org.sonar.api.utils.SonarException;
 import org.sonar.batch.DefaultDecoratorContext;
 import org.sonar.batch.events.EventBus;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
 import static org.hamcrest.number.OrderingComparisons.greaterThanOrEqualTo;
 import static org.hamcrest.number.OrderingComparisons.lessThan;
+import static org.fest.assertions.Assertions.assertThat;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.fail;
 import static org.junit.matchers.JUnitMatchers.containsString;
 import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
 
 public class DecoratorsExecutorTest {
 
@@ -67,7 +78,7 @@ public class DecoratorsExecutorTest {
     doThrow(new SonarException()).when(decorator).decorate(any(Resource.class), any(DecoratorContext.class));
 
     DecoratorsExecutor executor = new DecoratorsExecutor(mock(BatchExtensionDictionnary.class), new Project("key"), mock(SonarIndex.class),
-        mock(EventBus.class), mock(MeasurementFilters.class));
+        mock(EventBus.class), mock(MeasurementFilters.class), new Settings());
     try {
       executor.executeDecorator(decorator, mock(DefaultDecoratorContext.class), new File("org/foo/Bar.java"));
       fail("Exception has not been thrown");
@@ -77,6 +88,115 @@ public class DecoratorsExecutorTest {
     }
   }
 
+  @Test
+  public void should_decorate_children_before_parents_in_parallel() {
+    Project project = new Project("key");
+    Directory dir1 = new Directory("org/foo");
+    Directory dir2 = new Directory("org/bar");
+    File file1 = new File("org/foo/Foo.java");
+    File file2 = new File("org/foo/Foo2.java");
+    File file3 = new File("org/bar/Bar.java");
+    SonarIndex index = mock(SonarIndex.class);
+    when(index.getChildren(project)).thenReturn(Arrays.<Resource>asList(dir1, dir2));
+    when(index.getChildren(dir1)).thenReturn(Arrays.<Resource>asList(file1, file2));
+    when(index.getChildren(dir2)).thenReturn(Arrays.<Resource>asList(file3));
+    when(index.getChildren(file1)).thenReturn(Collections.<Resource>emptyList());
+    when(index.getChildren(file2)).thenReturn(Collections.<Resource>emptyList());
+    when(index.getChildren(file3)).thenReturn(Collections.<Resource>emptyList());
+
+    DecoratorsExecutor executor = new DecoratorsExecutor(mock(BatchExtensionDictionnary.class), project, index,
+        mock(EventBus.class), mock(MeasurementFilters.class), new Settings());
+    RecordingDecorator concurrent = new RecordingDecorator();
+    SequentialRecordingDecorator sequential = new SequentialRecordingDecorator();
+    DecoratorContext context = executor.decorateInParallel(project, Arrays.<Decorator>asList(concurrent, sequential), 4);
+
+    assertThat(context.getResource()).isEqualTo(project);
+    assertThat(context.getChildren()).hasSize(2);
+    assertThat(context.getChildren().get(0).getResource()).isEqualTo(dir1);
+    assertThat(context.getChildren().get(1).getResource()).isEqualTo(dir2);
+    for (List<Resource> decorated : Arrays.asList(concurrent.resources, sequential.resources)) {
+      assertThat(decorated).hasSize(6);
+      assertThat(decorated.get(5)).isEqualTo(project);
+      assertThat(decorated.indexOf(file1)).isLessThan(decorated.indexOf(dir1));
+      assertThat(decorated.indexOf(file2)).isLessThan(decorated.indexOf(dir1));
+      assertThat(decorated.indexOf(file3)).isLessThan(decorated.indexOf(dir2));
+    }
+  }
+
+  @Test
+  public void should_fail_parallel_decoration_if_a_decorator_fails() {
+    Project project = new Project("key");
+    File file = new File("org/foo/Bar.java");
+    SonarIndex index = mock(SonarIndex.class);
+    when(index.getChildren(project)).thenReturn(Arrays.<Resource>asList(file));
+    when(index.getChildren(file)).thenReturn(Collections.<Resource>emptyList());
+    Decorator decorator = mock(Decorator.class);
+    doThrow(new IllegalStateException()).when(decorator).decorate(any(Resource.class), any(DecoratorContext.class));
+
+    DecoratorsExecutor executor = new DecoratorsExecutor(mock(BatchExtensionDictionnary.class), project, index,
+        mock(EventBus.class), mock(MeasurementFilters.class), new Settings());
+    try {
+      executor.decorateInParallel(project, Arrays.asList(decorator), 2);
+      fail("Exception has not been thrown");
+
+    } catch (SonarException e) {
+      assertThat(e.getMessage(), containsString("org/foo/Bar.java"));
+    }
+  }
+
+  @Test
+  public void should_fail_parallel_decoration_if_a_decorator_throws_an_error() {
+    Project project = new Project("key");
+    File file = new File("org/foo/Bar.java");
+    SonarIndex index = mock(SonarIndex.class);
+    when(index.getChildren(project)).thenReturn(Arrays.<Resource>asList(file));
+    when(index.getChildren(file)).thenReturn(Collections.<Resource>emptyList());
+    Decorator decorator = mock(Decorator.class);
+    AssertionError error = new AssertionError();
+    doThrow(error).when(decorator).decorate(any(Resource.class), any(DecoratorContext.class));
+
+    DecoratorsExecutor executor = new DecoratorsExecutor(mock(BatchExtensionDictionnary.class), project, index,
+        mock(EventBus.class), mock(MeasurementFilters.class), new Settings());
+    try {
+      executor.decorateInParallel(project, Arrays.asList(decorator), 2);
+      fail("Exception has not been thrown");
+
+    } catch (SonarException e) {
+      assertThat(e.getCause()).isSameAs(error);
+    }
+  }
+
+  @Test
+  public void should_detect_concurrent_decorators() {
+    assertThat(DecoratorsExecutor.isConcurrent(new RecordingDecorator())).isTrue();
+    assertThat(DecoratorsExecutor.isConcurrent(new Decorator1())).isFalse();
+  }
+
+  @ConcurrentDecorator
+  static class RecordingDecorator implements Decorator {
+    List<Resource> resources = Collections.synchronizedList(Lists.<Resource>newArrayList());
+
+    public void decorate(Resource resource, DecoratorContext context) {
+      resources.add(resource);
+    }
+
+    public boolean shouldExecuteOnProject(Project project) {
+      return true;
+    }
+  }
+
+  static class SequentialRecordingDecorator implements Decorator {
+    List<Resource> resources = Lists.newArrayList();
+
+    public void decorate(Resource resource, DecoratorContext context) {
+      resources.add(resource);
+    }
+
+    public boolean shouldExecuteOnProject(Project project) {
+      return true;
+    }
+  }
+
   static class Decorator1 implements Decorator {
     public void decorate(Resource resource, DecoratorContext context) {
     }
@@ -19,6 +19,7 @@
  */
 package org.sonar.batch.profiling;
 
+import com.google.common.collect.ImmutableMap;
 import org.junit.Before;
 import org.junit.Test;
 import org.sonar.api.batch.Decorator;
@@ -43,6 +44,8 @@ import org.sonar.api.batch.events.SensorsPhaseHandler.SensorsPhaseEvent;
 import org.sonar.api.resources.Project;
 import org.sonar.api.resources.Resource;
 import org.sonar.batch.events.BatchStepEvent;
+import org.sonar.batch.index.Cache;
+import org.sonar.batch.index.Caches;
 import org.sonar.batch.phases.Phases.Phase;
 
 import java.util.Arrays;
@@ -51,6 +54,8 @@ import java.util.List;
 
 import static org.fest.assertions.Assertions.assertThat;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
 import static org.mockito.Mockito.when;
 
 public class PhasesSumUpTimeProfilerTest {
@@ -107,6 +112,23 @@ public class PhasesSumUpTimeProfilerTest {
     assertThat(profiler.totalProfiling.getProfilingPerPhase(Phase.POSTJOB).getProfilingPerItem(new FakePostJob()).totalTime()).isEqualTo(90L);
   }
 
+  @Test
+  public void should_dump_caches_statistics_at_the_end_of_root_module() throws InterruptedException {
+    Caches caches = mock(Caches.class);
+    when(caches.statistics()).thenReturn(ImmutableMap.of("issues", new Cache.Statistics()));
+    profiler = new PhasesSumUpTimeProfiler(clock, caches);
+    final Project project = mockProject("project root", true);
+    final Project moduleA = mockProject("moduleA", false);
+    when(project.getModules()).thenReturn(Arrays.asList(moduleA));
+
+    fakeAnalysis(profiler, moduleA);
+    verifyZeroInteractions(caches);
+
+    fakeAnalysis(profiler, project);
+    verify(caches).statistics();
+    verify(caches).diskSize();
+  }
+
   @Test
   public void testDisplayTimings() {
     AbstractTimeProfiling profiling = new AbstractTimeProfiling(new Clock()) {
@@ -19,6 +19,9 @@
  */
 package org.sonar.batch.scan;
 
+import org.apache.ibatis.session.ResultHandler;
+import org.junit.After;
+import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
@@ -27,28 +30,53 @@ import org.sonar.api.config.Settings;
 import org.sonar.api.resources.File;
 import org.sonar.api.resources.Project;
 import org.sonar.api.utils.HttpDownloader;
+import org.sonar.batch.ProjectTree;
 import org.sonar.batch.bootstrap.ServerClient;
-import org.sonar.jpa.test.AbstractDbUnitTestCase;
+import org.sonar.batch.index.Caches;
+import org.sonar.core.persistence.AbstractDaoTestCase;
+import org.sonar.core.source.jdbc.SnapshotDataDao;
+import org.sonar.core.source.jdbc.SnapshotSourceDao;
 
 import java.net.URI;
 import java.net.URISyntaxException;
 
 import static org.fest.assertions.Assertions.assertThat;
+import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.*;
 
-public class LastSnapshotsTest extends AbstractDbUnitTestCase {
+public class LastSnapshotsTest extends AbstractDaoTestCase {
 
   @Rule
   public ExpectedException thrown = ExpectedException.none();
 
+  Caches caches = new Caches();
+  ProjectTree projectTree = mock(ProjectTree.class);
+  SnapshotSourceDao sourceDao;
+  SnapshotDataDao dataDao;
+
+  @Before
+  public void setUp() {
+    caches.start();
+    sourceDao = new SnapshotSourceDao(getMyBatis());
+    dataDao = new SnapshotDataDao(getMyBatis());
+    Project project = new Project("myproject");
+    project.setId(1);
+    when(projectTree.getRootProject()).thenReturn(project);
+  }
+
+  @After
+  public void tearDown() {
+    caches.stop();
+  }
+
   @Test
   public void should_get_source_of_last_snapshot() {
     setupData("last_snapshot");
     ServerClient server = mock(ServerClient.class);
 
-    LastSnapshots lastSnapshots = new LastSnapshots(new Settings(), getSession(), server);
+    LastSnapshots lastSnapshots = newLastSnapshots(new Settings(), server);
 
     assertThat(lastSnapshots.getSource(newFile())).isEqualTo("this is bar");
     verifyZeroInteractions(server);
@@ -59,7 +87,7 @@ public class LastSnapshotsTest extends AbstractDbUnitTestCase {
     setupData("no_last_snapshot");
     ServerClient server = mock(ServerClient.class);
 
-    LastSnapshots lastSnapshots = new LastSnapshots(new Settings(), getSession(), server);
+    LastSnapshots lastSnapshots = newLastSnapshots(new Settings(), server);
 
     assertThat(lastSnapshots.getSource(newFile())).isEqualTo("");
     verifyZeroInteractions(server);
@@ -73,7 +101,7 @@ public class LastSnapshotsTest extends AbstractDbUnitTestCase {
 
     Settings settings = new Settings();
     settings.setProperty(CoreProperties.DRY_RUN, true);
-    LastSnapshots lastSnapshots = new LastSnapshots(settings, getSession(), server);
+    LastSnapshots lastSnapshots = newLastSnapshots(settings, server);
 
     String source = lastSnapshots.getSource(newFile());
     assertThat(source).isEqualTo("downloaded source of Bar.c");
@@ -88,7 +116,7 @@ public class LastSnapshotsTest extends AbstractDbUnitTestCase {
 
     Settings settings = new Settings();
     settings.setProperty(CoreProperties.DRY_RUN, true);
-    LastSnapshots lastSnapshots = new LastSnapshots(settings, getSession(), server);
+    LastSnapshots lastSnapshots = newLastSnapshots(settings, server);
 
     thrown.expect(HttpDownloader.HttpException.class);
     lastSnapshots.getSource(newFile());
@@ -102,7 +130,7 @@ public class LastSnapshotsTest extends AbstractDbUnitTestCase {
 
     Settings settings = new Settings();
     settings.setProperty(CoreProperties.DRY_RUN, true);
-    LastSnapshots lastSnapshots = new LastSnapshots(settings, getSession(), server);
+    LastSnapshots lastSnapshots = newLastSnapshots(settings, server);
 
     String source = lastSnapshots.getSource(newFile());
     assertThat(source).isEqualTo("");
@@ -114,15 +142,86 @@ public class LastSnapshotsTest extends AbstractDbUnitTestCase {
     setupData("last_snapshot");
     ServerClient server = mock(ServerClient.class);
 
-    LastSnapshots lastSnapshots = new LastSnapshots(new Settings(), getSession(), server);
+    LastSnapshots lastSnapshots = newLastSnapshots(new Settings(), server);
 
     String source = lastSnapshots.getSource(new Project("my-project"));
     assertThat(source).isEqualTo("");
   }
 
+  @Test
+  public void should_load_sources_of_all_files_at_once() {
+    setupData("last_snapshot");
+    SnapshotSourceDao sourceDao = spy(this.sourceDao);
+    LastSnapshots lastSnapshots = new LastSnapshots(new Settings(), sourceDao, dataDao, mock(ServerClient.class), caches, projectTree);
+
+    assertThat(lastSnapshots.getSource(newFile())).isEqualTo("this is bar");
+    assertThat(lastSnapshots.getSource(newFile("Baz.c"))).isEqualTo("this is baz");
+    assertThat(lastSnapshots.getLineHashes(newFile("Baz.c"))).isNull();
+    assertThat(lastSnapshots.getSource(newFile("Unknown.c"))).isEqualTo("");
+    verify(sourceDao, times(1)).selectLastSnapshotSourcesOfProject(eq(1L), eq("line_hashes"), any(ResultHandler.class));
+  }
+
+  @Test
+  public void should_load_line_hashes_instead_of_source() {
+    setupData("last_snapshot");
+    LastSnapshots lastSnapshots = newLastSnapshots(new Settings(), mock(ServerClient.class));
+
+    assertThat(lastSnapshots.getLineHashes(newFile("Qux.c", 300))).isEqualTo("a,b,c");
+    assertThat(lastSnapshots.getSource(newFile("Qux.c", 300))).isEqualTo("");
+
+    assertThat(lastSnapshots.getLineHashes(newFile("Bar.c", 100))).isNull();
+    assertThat(lastSnapshots.getSource(newFile("Bar.c", 100))).isEqualTo("this is bar");
+  }
+
+  @Test
+  public void should_load_line_hashes_from_db_if_dry_run() {
+    setupData("last_snapshot");
+    ServerClient server = mock(ServerClient.class);
+    Settings settings = new Settings();
+    settings.setProperty(CoreProperties.DRY_RUN, true);
+    SnapshotSourceDao sourceDao = spy(this.sourceDao);
+    LastSnapshots lastSnapshots = new LastSnapshots(settings, sourceDao, dataDao, server, caches, projectTree);
+
+    assertThat(lastSnapshots.getLineHashes(newFile("Qux.c", 300))).isEqualTo("a,b,c");
+    verifyZeroInteractions(server, sourceDao);
+  }
+
+  @Test
+  public void should_not_load_sources_if_project_is_new() {
+    setupData("last_snapshot");
+    when(projectTree.getRootProject()).thenReturn(new Project("myproject"));
+    SnapshotSourceDao sourceDao = spy(this.sourceDao);
+    LastSnapshots lastSnapshots = new LastSnapshots(new Settings(), sourceDao, dataDao, mock(ServerClient.class), caches, projectTree);
+
+    assertThat(lastSnapshots.getSource(newFile())).isEqualTo("");
+    verifyZeroInteractions(sourceDao);
+  }
+
+  @Test
+  public void should_compress_sources() {
+    String source = "public class Foo {\n  // \u00e9t\u00e9\n}";
+
+    byte[] compressed = LastSnapshots.compress(source);
+    assertThat(LastSnapshots.uncompress(compressed)).isEqualTo(source);
+  }
+
+  private LastSnapshots newLastSnapshots(Settings settings, ServerClient server) {
+    return new LastSnapshots(settings, sourceDao, dataDao, server, caches, projectTree);
+  }
+
   private File newFile() {
-    File file = new File("org/foo", "Bar.c");
-    file.setEffectiveKey("myproject:org/foo/Bar.c");
+    return newFile("Bar.c");
+  }
+
+  private File newFile(String name) {
+    File file = new File("org/foo", name);
+    file.setEffectiveKey("myproject:org/foo/" + name);
+    return file;
+  }
+
+  private File newFile(String name, int id) {
+    File file = newFile(name);
+    file.setId(id);
     return file;
   }
 }
@@ -21,6 +21,7 @@ package org.sonar.core.dryrun;
 
 import com.google.common.io.Files;
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.sonar.api.ServerExtension;
@@ -34,12 +35,20 @@ import org.sonar.core.resource.ResourceDto;
 
 import javax.annotation.Nullable;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.GZIPOutputStream;
 
 /**
  * @since 3.7.1
@@ -50,12 +59,15 @@ public class DryRunCache implements ServerExtension {
 
   public static final String SONAR_DRY_RUN_CACHE_LAST_UPDATE_KEY = "sonar.dryRun.cache.lastUpdate";
 
+  private static final String GZIP_FILE_SUFFIX = ".gz";
+  private static final int BUFFER_SIZE = 64 * 1024;
+
   private ServerFileSystem serverFileSystem;
   private PropertiesDao propertiesDao;
   private ResourceDao resourceDao;
 
   private Map<Long, ReadWriteLock> lockPerProject = new HashMap<Long, ReadWriteLock>();
-  private Map<Long, Long> lastTimestampPerProject = new HashMap<Long, Long>();
+  private Map<Long, Long> lastTimestampPerProject = new ConcurrentHashMap<Long, Long>();
 
   private DryRunDatabaseFactory dryRunDatabaseFactory;
 
@@ -66,16 +78,37 @@ public class DryRunCache implements ServerExtension {
     this.dryRunDatabaseFactory = dryRunDatabaseFactory;
   }
 
-  public byte[] getDatabaseForDryRun(@Nullable Long projectId) {
+  /**
+   * Opens the database used by dryRun analysis of the given project. The database is generated if missing or outdated.
+   * The returned stream must be closed by the caller. It can still be read if the database is regenerated meanwhile.
+   *
+   * @param gzip if true, then the stream is the gzip-compressed database
+   * @since 4.0
+   */
+  public InputStream openDatabaseForDryRun(@Nullable Long projectId, boolean gzip) {
+    ReadWriteLock rwl = lockValidDatabase(projectId);
+    try {
+      File dbFile = getDatabaseFile(projectId);
+      return openStream(gzip ? gzipFile(dbFile) : dbFile);
+    } finally {
+      rwl.readLock().unlock();
+    }
+  }
+
+  /**
+   * Generates the database if it's outdated, then returns with the read lock held, so that the database
+   * can't be regenerated until the lock is released.
+   */
+  private ReadWriteLock lockValidDatabase(@Nullable Long projectId) {
     long notNullProjectId = projectId != null ? projectId.longValue() : 0L;
     ReadWriteLock rwl = getLock(notNullProjectId);
-    try {
-      rwl.readLock().lock();
-      if (!isCacheValid(projectId)) {
-        // upgrade lock manually
-        // must unlock first to obtain writelock
-        rwl.readLock().unlock();
-        rwl.writeLock().lock();
+    rwl.readLock().lock();
+    if (!isCacheValid(projectId)) {
+      // upgrade lock manually
+      // must unlock first to obtain writelock
+      rwl.readLock().unlock();
+      rwl.writeLock().lock();
+      try {
         // recheck
         if (!isCacheValid(projectId)) {
           generateNewDB(projectId);
@@ -83,14 +116,17 @@ public class DryRunCache implements ServerExtension {
         // downgrade lock
         // reacquire read without giving up write lock
         rwl.readLock().lock();
+      } finally {
         // unlock write, still hold read
         rwl.writeLock().unlock();
       }
-      File dbFile = new File(getCacheLocation(projectId), lastTimestampPerProject.get(notNullProjectId) + DryRunDatabaseFactory.H2_FILE_SUFFIX);
-      return fileToByte(dbFile);
-    } finally {
-      rwl.readLock().unlock();
     }
+    return rwl;
+  }
+
+  private File getDatabaseFile(@Nullable Long projectId) {
+    long notNullProjectId = projectId != null ? projectId.longValue() : 0L;
+    return new File(getCacheLocation(projectId), lastTimestampPerProject.get(notNullProjectId) + DryRunDatabaseFactory.H2_FILE_SUFFIX);
   }
 
   private boolean isCacheValid(@Nullable Long projectId) {
@@ -118,16 +154,47 @@ public class DryRunCache implements ServerExtension {
     long newTimestamp = System.currentTimeMillis();
     File cacheLocation = getCacheLocation(projectId);
     FileUtils.deleteQuietly(cacheLocation);
-    File dbFile = dryRunDatabaseFactory.createNewDatabaseForDryRun(projectId, cacheLocation, String.valueOf(newTimestamp));
+    File dbFile;
+    if (projectId == null) {
+      dbFile = dryRunDatabaseFactory.createNewDatabaseForDryRun(null, cacheLocation, String.valueOf(newTimestamp));
+    } else {
+      // Global tables are copied from the database without project, which is regenerated only on global modifications
+      ReadWriteLock globalLock = lockValidDatabase(null);
+      try {
+        dbFile = dryRunDatabaseFactory.createNewDatabaseForDryRun(projectId, getDatabaseFile(null), cacheLocation, String.valueOf(newTimestamp));
+      } finally {
+        globalLock.readLock().unlock();
+      }
+    }
+    compress(dbFile);
     LOG.debug("Cached DB at {}", dbFile);
     lastTimestampPerProject.put(notNullProjectId, newTimestamp);
   }
 
-  private byte[] fileToByte(File dbFile) {
+  /**
+   * Most clients accept gzip, so the database is compressed once when generated rather than on each request
+   */
+  private void compress(File dbFile) {
+    OutputStream output = null;
+    try {
+      output = new GZIPOutputStream(new BufferedOutputStream(new FileOutputStream(gzipFile(dbFile))), BUFFER_SIZE);
+      Files.copy(dbFile, output);
+    } catch (IOException e) {
+      throw new SonarException("Unable to compress h2 database file", e);
+    } finally {
+      IOUtils.closeQuietly(output);
+    }
+  }
+
+  private static File gzipFile(File dbFile) {
+    return new File(dbFile.getParentFile(), dbFile.getName() + GZIP_FILE_SUFFIX);
+  }
+
+  private InputStream openStream(File file) {
     try {
-      return Files.toByteArray(dbFile);
+      return new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE);
     } catch (IOException e) {
-      throw new SonarException("Unable to create h2 database file", e);
+      throw new SonarException("Unable to read h2 database file", e);
     }
   }
 
@@ -19,13 +19,17 @@
  */
 package org.sonar.core.duplication;
 
+import com.google.common.collect.Maps;
+import org.apache.ibatis.session.ResultHandler;
 import org.apache.ibatis.session.SqlSession;
 import org.sonar.api.BatchComponent;
 import org.sonar.api.ServerComponent;
 import org.sonar.core.persistence.MyBatis;
 
+import javax.annotation.Nullable;
+
 import java.util.Collection;
-import java.util.List;
+import java.util.Map;
 
 public class DuplicationDao implements BatchComponent, ServerComponent {
 
@@ -35,31 +39,35 @@ public class DuplicationDao implements BatchComponent, ServerComponent {
     this.mybatis = mybatis;
   }
 
-  public List<DuplicationUnitDto> selectCandidates(int resourceSnapshotId, Integer lastSnapshotId, String language) {
+  /**
+   * Blocks of the last analyses of other projects which have the same hash as the blocks of the given project (or module).
+   * Rows are streamed to the handler as {@link DuplicationUnitDto} instead of being loaded in a list.
+   * @since 4.0
+   */
+  public void selectCandidatesOfProject(int projectSnapshotId, @Nullable Integer lastSnapshotId, String language, ResultHandler handler) {
+    Map<String, Object> params = Maps.newHashMap();
+    params.put("project_snapshot_id", projectSnapshotId);
+    params.put("last_project_snapshot_id", lastSnapshotId);
+    params.put("language", language);
     SqlSession session = mybatis.openSession();
     try {
-      DuplicationMapper mapper = session.getMapper(DuplicationMapper.class);
-      return mapper.selectCandidates(resourceSnapshotId, lastSnapshotId, language);
+      session.select("org.sonar.core.duplication.DuplicationMapper.selectCandidatesOfProject", params, handler);
     } finally {
       MyBatis.closeQuietly(session);
     }
   }
 
   /**
-   * Insert rows in the table DUPLICATIONS_INDEX.
+   * Insert rows in the table DUPLICATIONS_INDEX within the given session, which is neither committed nor closed.
    * Note that generated ids are not returned.
+   * When the session is a {@link org.sonar.core.persistence.BatchSession}, rows of several files can be sent to the
+   * database in the same JDBC batches.
+   * @since 4.0
    */
-  public void insert(Collection<DuplicationUnitDto> units) {
-    SqlSession session = mybatis.openBatchSession();
-    try {
-      DuplicationMapper mapper = session.getMapper(DuplicationMapper.class);
-      for (DuplicationUnitDto unit : units) {
-        mapper.batchInsert(unit);
-      }
-      session.commit();
-
-    } finally {
-      MyBatis.closeQuietly(session);
+  public void insert(SqlSession session, Collection<DuplicationUnitDto> units) {
+    DuplicationMapper mapper = session.getMapper(DuplicationMapper.class);
+    for (DuplicationUnitDto unit : units) {
+      mapper.batchInsert(unit);
     }
   }
 
@@ -19,17 +19,8 @@
  */
 package org.sonar.core.duplication;
 
-import org.apache.ibatis.annotations.Param;
-
-import java.util.List;
-
 public interface DuplicationMapper {
 
-  List<DuplicationUnitDto> selectCandidates(
-      @Param("resource_snapshot_id") int resourceSnapshotId,
-      @Param("last_project_snapshot_id") Integer lastSnapshotId,
-      @Param("language") String language);
-
   void batchInsert(DuplicationUnitDto unit);
 
 }
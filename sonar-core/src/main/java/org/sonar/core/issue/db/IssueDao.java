@@ -70,38 +70,43 @@ public class IssueDao implements BatchComponent, ServerComponent {
     }
   }
 
+  /**
+   * Number of authorized issues matching the query
+   */
+  public int countIssues(IssueQuery query, @Nullable Integer userId, SqlSession session) {
+    IssueMapper mapper = session.getMapper(IssueMapper.class);
+    return mapper.countIssues(query, query.componentRoots(), userId, query.requiredRole());
+  }
+
+  /**
+   * Ids of a page of the authorized issues matching the query. Issues are sorted by the database, according
+   * to {@link IssueQuery#sort()} and {@link IssueQuery#asc()}. The returned IssueDto list contains only the issue id.
+   */
+  public List<IssueDto> selectSortedIssueIds(IssueQuery query, @Nullable Integer userId, int offset, int pageSize, SqlSession session) {
+    IssueMapper mapper = session.getMapper(IssueMapper.class);
+    return mapper.selectSortedIssueIds(query, query.componentRoots(), userId, query.requiredRole(), offset, pageSize);
+  }
+
   @VisibleForTesting
-  List<IssueDto> selectIssueIds(IssueQuery query, @Nullable Integer userId, Integer maxResult) {
+  List<IssueDto> selectSortedIssueIds(IssueQuery query, int offset, int pageSize) {
     SqlSession session = mybatis.openSession();
     try {
-      return selectIssueIds(query, userId, maxResult, session);
+      return selectSortedIssueIds(query, null, offset, pageSize, session);
     } finally {
       MyBatis.closeQuietly(session);
     }
   }
 
   @VisibleForTesting
-  List<IssueDto> selectIssueIds(IssueQuery query) {
+  int countIssues(IssueQuery query) {
     SqlSession session = mybatis.openSession();
     try {
-      return selectIssueIds(query, null, Integer.MAX_VALUE, session);
+      return countIssues(query, null, session);
     } finally {
       MyBatis.closeQuietly(session);
     }
   }
 
-  /**
-   * The returned IssueDto list contains only the issue id and the sort column
-   */
-  public List<IssueDto> selectIssueIds(IssueQuery query, @Nullable Integer userId, SqlSession session){
-    return selectIssueIds(query, userId, query.maxResults(), session);
-  }
-
-  private List<IssueDto> selectIssueIds(IssueQuery query, @Nullable Integer userId, Integer maxResults, SqlSession session){
-    IssueMapper mapper = session.getMapper(IssueMapper.class);
-    return mapper.selectIssueIds(query, query.componentRoots(), userId, query.requiredRole(), maxResults);
-  }
-
   public List<IssueDto> selectIssues(IssueQuery query) {
     SqlSession session = mybatis.openSession();
     try {
@@ -25,6 +25,7 @@ import org.sonar.api.issue.IssueQuery;
 import javax.annotation.Nullable;
 
 import java.util.Collection;
+import java.util.Date;
 import java.util.List;
 
 public interface IssueMapper {
@@ -33,14 +34,6 @@ public interface IssueMapper {
 
   List<IssueDto> selectNonClosedIssuesByModule(int rootComponentId);
 
-  /**
-   * Return a paginated list of authorized issue ids for a user.
-   * If the role is null, then the authorisation check is disabled.
-   */
-  List<IssueDto> selectIssueIds(@Param("query") IssueQuery query, @Param("componentRootKeys") Collection<String> componentRootKeys,
-                                @Nullable @Param("userId") Integer userId, @Nullable @Param("role") String role,
-                                @Param("maxResults") Integer maxResult);
-
   /**
    * Return a none paginated list of authorized issues for a user.
    * If the role is null, then the authorisation check is disabled.
@@ -49,9 +42,25 @@ public interface IssueMapper {
                                 @Nullable @Param("userId") Integer userId, @Nullable @Param("role") String role);
 
 
+  int countIssues(@Param("query") IssueQuery query, @Param("componentRootKeys") Collection<String> componentRootKeys,
+                  @Nullable @Param("userId") Integer userId, @Nullable @Param("role") String role);
+
+  /**
+   * Return a page of sorted authorized issue ids for a user.
+   * If the role is null, then the authorisation check is disabled.
+   */
+  List<IssueDto> selectSortedIssueIds(@Param("query") IssueQuery query, @Param("componentRootKeys") Collection<String> componentRootKeys,
+                                      @Nullable @Param("userId") Integer userId, @Nullable @Param("role") String role,
+                                      @Param("offset") int offset, @Param("pageSize") int pageSize);
+
   void insert(IssueDto issue);
 
   int update(IssueDto issue);
 
   int updateIfBeforeSelectedDate(IssueDto issue);
+
+  /**
+   * Keys of the given issues whose last update is not between the given dates, both included
+   */
+  List<String> selectKeysNotUpdatedBetween(@Param("keys") Collection<String> keys, @Param("from") Date from, @Param("to") Date to);
 }
@@ -20,6 +20,9 @@
 package org.sonar.core.issue.db;
 
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.apache.commons.lang.time.DateUtils;
+import org.apache.ibatis.executor.BatchResult;
 import org.apache.ibatis.session.SqlSession;
 import org.sonar.api.issue.Issue;
 import org.sonar.api.issue.IssueComment;
@@ -31,9 +34,12 @@ import org.sonar.api.rules.RuleFinder;
 import org.sonar.core.persistence.BatchSession;
 import org.sonar.core.persistence.MyBatis;
 
+import java.sql.Statement;
 import java.util.Arrays;
+import java.util.Calendar;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Save issues into database. It is executed :
@@ -46,6 +52,12 @@ import java.util.List;
  */
 public abstract class IssueStorage {
 
+  /**
+   * Lower than {@link BatchSession#MAX_BATCH_SIZE}, so that updates are flushed, and their counts read, before
+   * being committed by the batch session.
+   */
+  private static final int UPDATE_BATCH_SIZE = 200;
+
   private final MyBatis mybatis;
   private final RuleFinder ruleFinder;
   private final UpdateConflictResolver conflictResolver = new UpdateConflictResolver();
@@ -60,8 +72,6 @@ public abstract class IssueStorage {
   }
 
   public void save(Iterable<DefaultIssue> issues) {
-    // Batch session can not be used for updates. It does not return the number of updated rows,
-    // required for detecting conflicts.
     Date now = new Date();
     List<DefaultIssue> toBeUpdated = batchInsert(issues, now);
     update(toBeUpdated, now);
@@ -82,6 +92,7 @@ public abstract class IssueStorage {
             batchSession.commit();
           }
         } else if (issue.isChanged()) {
+          insertChanges(issueChangeMapper, issue);
           toBeUpdated.add(issue);
         }
       }
@@ -102,13 +113,86 @@ public abstract class IssueStorage {
 
   private void update(List<DefaultIssue> toBeUpdated, Date now) {
     if (!toBeUpdated.isEmpty()) {
+      List<DefaultIssue> conflicts = batchUpdate(toBeUpdated, now);
+      resolveConflicts(conflicts);
+    }
+  }
+
+  /**
+   * Updates are executed in JDBC batches. The number of rows updated by each statement, as returned by the driver,
+   * is used to detect the issues changed by end-users since the beginning of the scan.
+   *
+   * @return the issues in conflict
+   */
+  private List<DefaultIssue> batchUpdate(List<DefaultIssue> toBeUpdated, Date now) {
+    List<DefaultIssue> conflicts = Lists.newArrayList();
+    SqlSession batchSession = mybatis.openBatchSession();
+    try {
+      IssueMapper issueMapper = batchSession.getMapper(IssueMapper.class);
+      Map<IssueDto, DefaultIssue> checkedIssues = Maps.newIdentityHashMap();
+      int count = 0;
+      for (DefaultIssue issue : toBeUpdated) {
+        IssueDto dto = IssueDto.toDtoForUpdate(issue, now);
+        if (Issue.STATUS_CLOSED.equals(issue.status()) || issue.selectedAt() == null) {
+          // Issue is closed by scan or changed by end-user
+          issueMapper.update(dto);
+        } else {
+          issueMapper.updateIfBeforeSelectedDate(dto);
+          checkedIssues.put(dto, issue);
+        }
+        count++;
+        if (count % UPDATE_BATCH_SIZE == 0) {
+          conflicts.addAll(flushUpdates(batchSession, checkedIssues, now));
+        }
+      }
+      conflicts.addAll(flushUpdates(batchSession, checkedIssues, now));
+      batchSession.commit();
+    } finally {
+      MyBatis.closeQuietly(batchSession);
+    }
+    return conflicts;
+  }
+
+  private List<DefaultIssue> flushUpdates(SqlSession batchSession, Map<IssueDto, DefaultIssue> checkedIssues, Date now) {
+    List<DefaultIssue> conflicts = Lists.newArrayList();
+    Map<String, DefaultIssue> unknownUpdateCounts = Maps.newHashMap();
+    for (BatchResult batchResult : batchSession.flushStatements()) {
+      int[] updateCounts = batchResult.getUpdateCounts();
+      List<Object> dtos = batchResult.getParameterObjects();
+      for (int i = 0; i < updateCounts.length; i++) {
+        DefaultIssue issue = checkedIssues.get(dtos.get(i));
+        if (issue != null) {
+          if (updateCounts[i] == 0) {
+            // End-user and scan changed the issue at the same time.
+            // See https://jira.codehaus.org/browse/SONAR-4309
+            conflicts.add(issue);
+          } else if (updateCounts[i] == Statement.SUCCESS_NO_INFO) {
+            unknownUpdateCounts.put(issue.key(), issue);
+          }
+        }
+      }
+    }
+    if (!unknownUpdateCounts.isEmpty()) {
+      // Some drivers, for example Oracle before 12c, do not return the number of rows updated in a batch.
+      // Dates are compared to the second, as some databases truncate or round the milliseconds, for example MySQL before 5.6
+      Date from = DateUtils.truncate(now, Calendar.SECOND);
+      Date to = DateUtils.addSeconds(from, 1);
+      List<String> notUpdatedKeys = batchSession.getMapper(IssueMapper.class).selectKeysNotUpdatedBetween(unknownUpdateCounts.keySet(), from, to);
+      for (String notUpdatedKey : notUpdatedKeys) {
+        conflicts.add(unknownUpdateCounts.get(notUpdatedKey));
+      }
+    }
+    checkedIssues.clear();
+    return conflicts;
+  }
+
+  private void resolveConflicts(List<DefaultIssue> conflicts) {
+    if (!conflicts.isEmpty()) {
       SqlSession session = mybatis.openSession();
       try {
         IssueMapper issueMapper = session.getMapper(IssueMapper.class);
-        IssueChangeMapper issueChangeMapper = session.getMapper(IssueChangeMapper.class);
-        for (DefaultIssue issue : toBeUpdated) {
-          update(issueMapper, now, issue);
-          insertChanges(issueChangeMapper, issue);
+        for (DefaultIssue conflict : conflicts) {
+          conflictResolver.resolve(conflict, issueMapper);
         }
         session.commit();
       } finally {
@@ -117,22 +201,6 @@ public abstract class IssueStorage {
     }
   }
 
-  private void update(IssueMapper issueMapper, Date now, DefaultIssue issue) {
-    IssueDto dto = IssueDto.toDtoForUpdate(issue, now);
-    if (Issue.STATUS_CLOSED.equals(issue.status()) || issue.selectedAt() == null) {
-      // Issue is closed by scan or changed by end-user
-      issueMapper.update(dto);
-
-    } else {
-      int count = issueMapper.updateIfBeforeSelectedDate(dto);
-      if (count == 0) {
-        // End-user and scan changed the issue at the same time.
-        // See https://jira.codehaus.org/browse/SONAR-4309
-        conflictResolver.resolve(issue, issueMapper);
-      }
-    }
-  }
-
   private void insertChanges(IssueChangeMapper mapper, DefaultIssue issue) {
     for (IssueComment comment : issue.comments()) {
       DefaultIssueComment c = (DefaultIssueComment) comment;
@@ -0,0 +1,190 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2013 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.core.measure;
+
+import com.google.common.annotations.VisibleForTesting;
+import org.sonar.api.CoreProperties;
+import org.sonar.api.ServerComponent;
+import org.sonar.api.config.Settings;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Rows of the last executed measure filters. Rows only change when an analysis is completed or when a project
+ * is deleted, so all the entries are dropped as soon as the version of the last analyses changes. This version is
+ * read from database at most once per {@link #DEFAULT_VERSION_CHECK_INTERVAL_MS}.
+ * <p/>
+ * Rows are not filtered by permissions, so they can be shared by all the users.
+ *
+ * @since 4.0
+ */
+public class MeasureFilterCache implements ServerComponent {
+
+  static final long DEFAULT_VERSION_CHECK_INTERVAL_MS = 5000L;
+
+  private final MeasureFilterDao dao;
+  private final int maxSize;
+  private final long versionCheckIntervalMs;
+  private final Map<String, List<MeasureFilterRow>> entries;
+  private final Statistics statistics = new Statistics();
+  private String version = null;
+  private long versionCheckedAt = 0L;
+
+  public MeasureFilterCache(Settings settings, MeasureFilterDao dao) {
+    this(dao, maxSize(settings), DEFAULT_VERSION_CHECK_INTERVAL_MS);
+  }
+
+  @VisibleForTesting
+  MeasureFilterCache(MeasureFilterDao dao, int maxSize, long versionCheckIntervalMs) {
+    this.dao = dao;
+    this.maxSize = maxSize;
+    this.versionCheckIntervalMs = versionCheckIntervalMs;
+    this.entries = new LinkedHashMap<String, List<MeasureFilterRow>>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, List<MeasureFilterRow>> eldest) {
+        boolean evict = size() > MeasureFilterCache.this.maxSize;
+        if (evict) {
+          statistics.evictions.incrementAndGet();
+        }
+        return evict;
+      }
+    };
+  }
+
+  private static int maxSize(Settings settings) {
+    if (settings.hasKey(CoreProperties.MEASURE_FILTER_CACHE_SIZE)) {
+      return Math.max(0, settings.getInt(CoreProperties.MEASURE_FILTER_CACHE_SIZE));
+    }
+    return CoreProperties.MEASURE_FILTER_CACHE_SIZE_DEFAULT_VALUE;
+  }
+
+  /**
+   * Filters on favourites are not cached because favourites can change at any time. Other filters are identified by
+   * their properties and by the dates of their conditions, as these dates can be relative to the current day.
+   *
+   * @return null if the filter must not be cached
+   */
+  @CheckForNull
+  static String key(Map<String, Object> filterMap, MeasureFilter filter) {
+    if (filter.isOnFavourites()) {
+      return null;
+    }
+    StringBuilder sb = new StringBuilder();
+    sb.append(new TreeMap<String, Object>(filterMap));
+    sb.append("|from=").append(filter.getFromDate() != null ? filter.getFromDate().getTime() : "");
+    sb.append("|to=").append(filter.getToDate() != null ? filter.getToDate().getTime() : "");
+    return sb.toString();
+  }
+
+  boolean isEnabled() {
+    return maxSize > 0;
+  }
+
+  @CheckForNull
+  synchronized List<MeasureFilterRow> get(@Nullable String key) {
+    if (key == null || !isEnabled()) {
+      return null;
+    }
+    checkVersion();
+    List<MeasureFilterRow> rows = entries.get(key);
+    if (rows == null) {
+      statistics.misses.incrementAndGet();
+    } else {
+      statistics.hits.incrementAndGet();
+    }
+    return rows;
+  }
+
+  synchronized void put(@Nullable String key, List<MeasureFilterRow> rows) {
+    if (key != null && isEnabled()) {
+      checkVersion();
+      entries.put(key, Collections.unmodifiableList(rows));
+    }
+  }
+
+  public synchronized void clear() {
+    if (!entries.isEmpty()) {
+      statistics.invalidations.incrementAndGet();
+      entries.clear();
+    }
+  }
+
+  public synchronized int size() {
+    return entries.size();
+  }
+
+  public Statistics statistics() {
+    return statistics;
+  }
+
+  private void checkVersion() {
+    long now = System.currentTimeMillis();
+    if (version == null || now - versionCheckedAt >= versionCheckIntervalMs) {
+      String lastVersion = dao.selectLastAnalysesVersion();
+      if (!lastVersion.equals(version)) {
+        clear();
+        version = lastVersion;
+      }
+      versionCheckedAt = now;
+    }
+  }
+
+  public static class Statistics {
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    public long hits() {
+      return hits.get();
+    }
+
+    public long misses() {
+      return misses.get();
+    }
+
+    /**
+     * Number of entries removed because the maximum size was reached
+     */
+    public long evictions() {
+      return evictions.get();
+    }
+
+    /**
+     * Number of times the whole cache was dropped, usually because of new analyses
+     */
+    public long invalidations() {
+      return invalidations.get();
+    }
+
+    @Override
+    public String toString() {
+      return String.format("hits=%d, misses=%d, evictions=%d, invalidations=%d", hits(), misses(), evictions(), invalidations());
+    }
+  }
+}
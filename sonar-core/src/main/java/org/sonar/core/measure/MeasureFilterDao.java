@@ -54,4 +54,20 @@ public class MeasureFilterDao implements BatchComponent, ServerComponent {
       MyBatis.closeQuietly(session);
     }
   }
+
+  /**
+   * Identifies the state of the last analyses. The returned value changes when an analysis
+   * is completed or when a project is deleted.
+   *
+   * @since 4.0
+   */
+  public String selectLastAnalysesVersion() {
+    SqlSession session = mybatis.openSession();
+    try {
+      MeasureFilterMapper mapper = session.getMapper(MeasureFilterMapper.class);
+      return mapper.selectLastRootSnapshotMaxId() + "-" + mapper.countLastRootSnapshots();
+    } finally {
+      MyBatis.closeQuietly(session);
+    }
+  }
 }
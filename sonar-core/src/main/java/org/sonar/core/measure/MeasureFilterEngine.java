@@ -35,11 +35,12 @@ public class MeasureFilterEngine implements ServerComponent {
 
   private final MeasureFilterFactory factory;
   private final MeasureFilterExecutor executor;
+  private final MeasureFilterCache cache;
 
-
-  public MeasureFilterEngine(MeasureFilterFactory factory, MeasureFilterExecutor executor) {
+  public MeasureFilterEngine(MeasureFilterFactory factory, MeasureFilterExecutor executor, MeasureFilterCache cache) {
     this.executor = executor;
     this.factory = factory;
+    this.cache = cache;
   }
 
   public MeasureFilterResult execute(Map<String, Object> filterMap, @Nullable Long userId) {
@@ -55,7 +56,12 @@ public class MeasureFilterEngine implements ServerComponent {
     context.setData(String.format("{%s}", Joiner.on('|').withKeyValueSeparator("=").join(filterMap)));
     try {
       MeasureFilter filter = factory.create(filterMap);
-      List<MeasureFilterRow> rows = executor.execute(filter, context);
+      String cacheKey = MeasureFilterCache.key(filterMap, filter);
+      List<MeasureFilterRow> rows = cache.get(cacheKey);
+      if (rows == null) {
+        rows = executor.execute(filter, context);
+        cache.put(cacheKey, rows);
+      }
       result.setRows(rows);
       log(context, result, logger);
 
@@ -75,6 +81,7 @@ public class MeasureFilterEngine implements ServerComponent {
       log.append("request: ").append(context.getData()).append(SystemUtils.LINE_SEPARATOR);
       log.append(" result: ").append(result.toString()).append(SystemUtils.LINE_SEPARATOR);
       log.append("    sql: ").append(context.getSql()).append(SystemUtils.LINE_SEPARATOR);
+      log.append("  cache: ").append(cache.statistics()).append(SystemUtils.LINE_SEPARATOR);
       logger.debug(log.toString());
     }
   }
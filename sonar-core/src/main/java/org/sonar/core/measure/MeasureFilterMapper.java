@@ -26,4 +26,8 @@ public interface MeasureFilterMapper {
   MeasureFilterDto findSystemFilterByName(String name);
 
   void insert(MeasureFilterDto filter);
+
+  Long selectLastRootSnapshotMaxId();
+
+  long countLastRootSnapshots();
 }
@@ -36,16 +36,27 @@ import org.sonar.core.properties.PropertiesDao;
 import javax.annotation.Nullable;
 
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
+ * Subscribers are cached because the same dispatchers are executed for many notifications of the same project, for example
+ * after an analysis. The cache must be cleared with {@link #clearSubscribersCache()} when notification properties are
+ * changed. Entries also expire after {@link #SUBSCRIBERS_CACHE_TTL_MS}, as some changes may not be reported. Clearing
+ * replaces the whole cache, so that subscribers loaded before the clear can not be put back into the new cache.
+ *
  * @since 2.10
  */
 public class DefaultNotificationManager implements NotificationManager {
 
+  static final long SUBSCRIBERS_CACHE_TTL_MS = 60000L;
+
   private NotificationChannel[] notificationChannels;
   private NotificationQueueDao notificationQueueDao;
   private PropertiesDao propertiesDao;
+  private volatile SubscribersCache subscribersCache = new SubscribersCache(0L);
 
   /**
    * Default constructor used by Pico
@@ -84,15 +95,27 @@ public class DefaultNotificationManager implements NotificationManager {
    * Give the notification queue so that it can be processed
    */
   public Notification getFromQueue() {
-    int batchSize = 1;
-    List<NotificationQueueDto> notifications = notificationQueueDao.findOldest(batchSize);
-    if (notifications.isEmpty()) {
-      return null;
+    List<Notification> notifications = getFromQueue(1);
+    return notifications.isEmpty() ? null : notifications.get(0);
+  }
+
+  /**
+   * Removes the oldest notifications from the queue, with a single query for reading and a single batch for deleting.
+   *
+   * @since 4.0
+   */
+  public List<Notification> getFromQueue(int count) {
+    List<NotificationQueueDto> dtos = notificationQueueDao.findOldest(count);
+    if (dtos.isEmpty()) {
+      return Collections.emptyList();
     }
-    notificationQueueDao.delete(notifications);
+    notificationQueueDao.delete(dtos);
 
-    // If batchSize is increased then we should return a list instead of a single element
-    return notifications.get(0).toNotification();
+    List<Notification> notifications = Lists.newArrayListWithCapacity(dtos.size());
+    for (NotificationQueueDto dto : dtos) {
+      notifications.add(dto.toNotification());
+    }
+    return notifications;
   }
 
   public long count() {
@@ -110,11 +133,11 @@ public class DefaultNotificationManager implements NotificationManager {
       String channelKey = channel.getKey();
 
       // Find users subscribed globally to the dispatcher (i.e. not on a specific project)
-      addUsersToRecipientListForChannel(propertiesDao.findUsersForNotification(dispatcherKey, channelKey, null), recipients, channel);
+      addUsersToRecipientListForChannel(findUsersForNotification(dispatcherKey, channelKey, null), recipients, channel);
 
       if (resourceId != null) {
         // Find users subscribed to the dispatcher specifically for the resource
-        addUsersToRecipientListForChannel(propertiesDao.findUsersForNotification(dispatcherKey, channelKey, resourceId.longValue()), recipients, channel);
+        addUsersToRecipientListForChannel(findUsersForNotification(dispatcherKey, channelKey, resourceId.longValue()), recipients, channel);
       }
     }
 
@@ -127,12 +150,62 @@ public class DefaultNotificationManager implements NotificationManager {
 
     SetMultimap<String, NotificationChannel> recipients = HashMultimap.create();
     for (NotificationChannel channel : notificationChannels) {
-      addUsersToRecipientListForChannel(propertiesDao.findNotificationSubscribers(dispatcherKey, channel.getKey(), componentKey), recipients, channel);
+      addUsersToRecipientListForChannel(findNotificationSubscribers(dispatcherKey, channel.getKey(), componentKey), recipients, channel);
     }
 
     return recipients;
   }
 
+  /**
+   * Must be called when notification properties are changed
+   *
+   * @since 4.0
+   */
+  public void clearSubscribersCache() {
+    subscribersCache = new SubscribersCache(now());
+  }
+
+  private List<String> findUsersForNotification(String dispatcherKey, String channelKey, @Nullable Long resourceId) {
+    String cacheKey = "resourceId|" + dispatcherKey + "|" + channelKey + "|" + resourceId;
+    SubscribersCache cache = subscribersCache();
+    List<String> users = cache.subscribers.get(cacheKey);
+    if (users == null) {
+      users = propertiesDao.findUsersForNotification(dispatcherKey, channelKey, resourceId);
+      cache.subscribers.put(cacheKey, users);
+    }
+    return users;
+  }
+
+  private List<String> findNotificationSubscribers(String dispatcherKey, String channelKey, @Nullable String componentKey) {
+    String cacheKey = "componentKey|" + dispatcherKey + "|" + channelKey + "|" + componentKey;
+    SubscribersCache cache = subscribersCache();
+    List<String> users = cache.subscribers.get(cacheKey);
+    if (users == null) {
+      users = propertiesDao.findNotificationSubscribers(dispatcherKey, channelKey, componentKey);
+      cache.subscribers.put(cacheKey, users);
+    }
+    return users;
+  }
+
+  /**
+   * The returned cache must be used for both reading and writing, so that subscribers loaded while the cache is cleared
+   * are put in the discarded cache
+   */
+  private SubscribersCache subscribersCache() {
+    SubscribersCache cache = subscribersCache;
+    long now = now();
+    if (now - cache.createdAt >= SUBSCRIBERS_CACHE_TTL_MS) {
+      cache = new SubscribersCache(now);
+      subscribersCache = cache;
+    }
+    return cache;
+  }
+
+  @VisibleForTesting
+  long now() {
+    return System.currentTimeMillis();
+  }
+
   @VisibleForTesting
   protected List<NotificationChannel> getChannels() {
     return Arrays.asList(notificationChannels);
@@ -144,4 +217,13 @@ public class DefaultNotificationManager implements NotificationManager {
     }
   }
 
+  private static class SubscribersCache {
+    private final long createdAt;
+    private final ConcurrentMap<String, List<String>> subscribers = new ConcurrentHashMap<String, List<String>>();
+
+    SubscribersCache(long createdAt) {
+      this.createdAt = createdAt;
+    }
+  }
+
 }
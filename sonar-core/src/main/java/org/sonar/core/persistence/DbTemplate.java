@@ -40,6 +40,7 @@ import java.sql.Types;
 
 public class DbTemplate implements ServerComponent {
   private static final Logger LOG = LoggerFactory.getLogger(DbTemplate.class);
+  private static final int FETCH_SIZE = 1000;
 
   public DbTemplate copyTable(DataSource source, DataSource dest, String table) {
     String selectQuery = "SELECT * FROM " + table;
@@ -63,7 +64,10 @@ public class DbTemplate implements ServerComponent {
     int count = 0;
     try {
       sourceConnection = source.getConnection();
+      // Some drivers, for example PostgreSQL, use the fetch size only when auto-commit is disabled
+      sourceConnection.setAutoCommit(false);
       sourceStatement = sourceConnection.createStatement();
+      sourceStatement.setFetchSize(FETCH_SIZE);
       sourceResultSet = sourceStatement.executeQuery(selectQuery);
 
       if (sourceResultSet.next()) {
@@ -19,6 +19,9 @@
  */
 package org.sonar.core.persistence;
 
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.io.Files;
 import org.apache.commons.dbcp.BasicDataSource;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -31,7 +34,15 @@ import javax.annotation.Nullable;
 import javax.sql.DataSource;
 
 import java.io.File;
+import java.io.IOException;
 import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 public class DryRunDatabaseFactory implements ServerComponent {
   private static final Logger LOG = LoggerFactory.getLogger(DryRunDatabaseFactory.class);
@@ -42,6 +53,10 @@ public class DryRunDatabaseFactory implements ServerComponent {
   private static final String SONAR = "sonar";
   private static final String USER = SONAR;
   private static final String PASSWORD = SONAR;
+  private static final int EXPORT_THREADS = 4;
+  private static final String[] GLOBAL_TABLES = {"active_rules", "active_rule_parameters", "characteristics", "characteristic_edges",
+    "characteristic_properties", "metrics", "permission_templates", "perm_templates_users", "perm_templates_groups", "quality_models",
+    "rules", "rules_parameters", "rules_profiles", "alerts"};
 
   private final Database database;
 
@@ -57,93 +72,184 @@ public class DryRunDatabaseFactory implements ServerComponent {
     try {
       DataSource source = database.getDataSource();
       BasicDataSource destination = create(DIALECT, DRIVER, USER, PASSWORD, URL + h2Name);
-
-      copy(source, destination, projectId);
-      close(destination);
+      try {
+        Map<String, String> queries = globalTableQueries();
+        if (projectId != null) {
+          queries.putAll(projectTableQueries(projectId));
+        }
+        copyTables(source, destination, queries);
+      } finally {
+        close(destination);
+      }
 
       File dbFile = new File(h2Name + H2_FILE_SUFFIX);
-      if (LOG.isDebugEnabled()) {
-        long size = dbFile.length();
-        long duration = System.currentTimeMillis() - startup;
-        if (projectId == null) {
-          LOG.debug("Dry Run Database created in " + duration + " ms, size is " + size + " bytes");
-        } else {
-          LOG.debug("Dry Run Database for project " + projectId + " created in " + duration + " ms, size is " + size + " bytes");
-        }
+      log(projectId, dbFile, startup);
+      return dbFile;
+
+    } catch (SQLException e) {
+      throw new SonarException("Unable to create database for DryRun", e);
+    }
+  }
+
+  /**
+   * Creates the database of a project from the database generated without project, which already contains the global
+   * tables (rules, quality profiles, metrics...). Only the tables related to the project are exported, so the duration
+   * does not depend on the size of the rules catalogue.
+   *
+   * @param globalDbFile the file returned by {@link #createNewDatabaseForDryRun(Long, File, String)} with a null project
+   * @since 4.0
+   */
+  public File createNewDatabaseForDryRun(Long projectId, File globalDbFile, File destFolder, String dbFileName) {
+    long startup = System.currentTimeMillis();
+
+    String h2Name = destFolder.getAbsolutePath() + File.separator + dbFileName;
+    File dbFile = new File(h2Name + H2_FILE_SUFFIX);
+
+    try {
+      Files.copy(globalDbFile, dbFile);
+
+      DataSource source = database.getDataSource();
+      BasicDataSource destination = new DbTemplate().dataSource(DRIVER, USER, PASSWORD, URL + h2Name);
+      try {
+        copyTables(source, destination, projectTableQueries(projectId));
+      } finally {
+        close(destination);
       }
+
+      log(projectId, dbFile, startup);
       return dbFile;
 
+    } catch (IOException e) {
+      throw new SonarException("Unable to copy global database for DryRun", e);
     } catch (SQLException e) {
       throw new SonarException("Unable to create database for DryRun", e);
     }
+  }
+
+  private static void log(@Nullable Long projectId, File dbFile, long startup) {
+    if (LOG.isDebugEnabled()) {
+      long size = dbFile.length();
+      long duration = System.currentTimeMillis() - startup;
+      if (projectId == null) {
+        LOG.debug("Dry Run Database created in " + duration + " ms, size is " + size + " bytes");
+      } else {
+        LOG.debug("Dry Run Database for project " + projectId + " created in " + duration + " ms, size is " + size + " bytes");
+      }
+    }
+  }
+
+  private static Map<String, String> globalTableQueries() {
+    Map<String, String> queries = Maps.newLinkedHashMap();
+    for (String table : GLOBAL_TABLES) {
+      queries.put(table, "SELECT * FROM " + table);
+    }
+    return queries;
+  }
+
+  /**
+   * Largest tables are first, so that they start to be copied as soon as possible
+   */
+  private Map<String, String> projectTableQueries(Long projectId) {
+    Map<String, String> queries = Maps.newLinkedHashMap();
+
+    // All measures of snapshots of root project for alerts on differential periods
+    queries.put("project_measures", "SELECT m.* FROM project_measures m INNER JOIN snapshots s on m.snapshot_id=s.id "
+      + "WHERE s.project_id=" + projectId);
+
+    StringBuilder issueQuery = new StringBuilder()
+      .append("SELECT issues.* FROM issues")
+      .append(" INNER JOIN (")
+      .append(projectQuery(projectId, true))
+      .append(") resources")
+      .append(" ON issues.component_id=resources.id")
+      .append(" AND status <> '").append(Issue.STATUS_CLOSED).append("'");
+    queries.put("issues", issueQuery.toString());
+
+    StringBuilder snapshotDataQuery = new StringBuilder()
+      .append("SELECT data.* FROM snapshot_data data")
+      .append(" INNER JOIN snapshots s")
+      .append(" ON s.id=data.snapshot_id")
+      .append(" AND s.islast=").append(database.getDialect().getTrueSqlValue())
+      .append(" INNER JOIN (")
+      .append(projectQuery(projectId, true))
+      .append(") res")
+      .append(" ON data.resource_id=res.id")
+      .append(" AND data.data_type IN (").append(dataTypesQuery()).append(")");
+    queries.put("snapshot_data", snapshotDataQuery.toString());
+
+    StringBuilder snapshotQuery = new StringBuilder()
+      // All snapshots of root_project for alerts on differential periods
+      .append("SELECT * FROM snapshots WHERE project_id=")
+      .append(projectId)
+      // Plus all last snapshots of all modules and files having hash data for partial analysis and issue tracking
+      .append(" UNION SELECT snap.* FROM snapshots snap")
+      .append(" INNER JOIN (")
+      .append(projectQuery(projectId, true))
+      .append(") res")
+      .append(" ON snap.project_id=res.id")
+      .append(" INNER JOIN snapshot_data data")
+      .append(" ON snap.id=data.snapshot_id")
+      .append(" AND data.data_type IN (").append(dataTypesQuery()).append(")")
+      .append(" AND snap.islast=").append(database.getDialect().getTrueSqlValue());
+    queries.put("snapshots", snapshotQuery.toString());
 
+    queries.put("projects", projectQuery(projectId, false));
+    queries.put("events", "SELECT * FROM events WHERE resource_id=" + projectId);
+    return queries;
   }
 
-  private void copy(DataSource source, DataSource dest, @Nullable Long projectId) {
-    DbTemplate template = new DbTemplate();
-    template
-      .copyTable(source, dest, "active_rules")
-      .copyTable(source, dest, "active_rule_parameters")
-      .copyTable(source, dest, "characteristics")
-      .copyTable(source, dest, "characteristic_edges")
-      .copyTable(source, dest, "characteristic_properties")
-      .copyTable(source, dest, "metrics")
-      .copyTable(source, dest, "permission_templates")
-      .copyTable(source, dest, "perm_templates_users")
-      .copyTable(source, dest, "perm_templates_groups")
-      .copyTable(source, dest, "quality_models")
-      .copyTable(source, dest, "rules")
-      .copyTable(source, dest, "rules_parameters")
-      .copyTable(source, dest, "rules_profiles")
-      .copyTable(source, dest, "alerts");
-    if (projectId != null) {
-      template.copyTable(source, dest, "projects", projectQuery(projectId, false));
-
-      template.copyTable(source, dest, "events", "SELECT * FROM events WHERE resource_id=" + projectId);
-
-      StringBuilder snapshotQuery = new StringBuilder()
-        // All snapshots of root_project for alerts on differential periods
-        .append("SELECT * FROM snapshots WHERE project_id=")
-        .append(projectId)
-        // Plus all last snapshots of all modules having hash data for partial analysis
-        .append(" UNION SELECT snap.* FROM snapshots snap")
-        .append(" INNER JOIN (")
-        .append(projectQuery(projectId, true))
-        .append(") res")
-        .append(" ON snap.project_id=res.id")
-        .append(" INNER JOIN snapshot_data data")
-        .append(" ON snap.id=data.snapshot_id")
-        .append(" AND data.data_type='").append(SnapshotDataType.FILE_HASH.getValue()).append("'")
-        .append(" AND snap.islast=").append(database.getDialect().getTrueSqlValue());
-      template.copyTable(source, dest, "snapshots", snapshotQuery.toString());
-
-      StringBuilder snapshotDataQuery = new StringBuilder()
-        .append("SELECT data.* FROM snapshot_data data")
-        .append(" INNER JOIN snapshots s")
-        .append(" ON s.id=data.snapshot_id")
-        .append(" AND s.islast=").append(database.getDialect().getTrueSqlValue())
-        .append(" INNER JOIN (")
-        .append(projectQuery(projectId, true))
-        .append(") res")
-        .append(" ON data.resource_id=res.id")
-        .append(" AND data.data_type='").append(SnapshotDataType.FILE_HASH.getValue()).append("'");
-      template.copyTable(source, dest, "snapshot_data", snapshotDataQuery.toString());
-
-      // All measures of snapshots of root project for alerts on differential periods
-      template.copyTable(source, dest, "project_measures", "SELECT m.* FROM project_measures m INNER JOIN snapshots s on m.snapshot_id=s.id "
-        + "WHERE s.project_id=" + projectId);
-
-      StringBuilder issueQuery = new StringBuilder()
-        .append("SELECT issues.* FROM issues")
-        .append(" INNER JOIN (")
-        .append(projectQuery(projectId, true))
-        .append(") resources")
-        .append(" ON issues.component_id=resources.id")
-        .append(" AND status <> '").append(Issue.STATUS_CLOSED).append("'");
-      template.copyTable(source, dest, "issues", issueQuery.toString());
+  /**
+   * Tables are independent, so they are copied concurrently, each one on its own source and destination connections.
+   * The first failure cancels the other copies, and is rethrown once all of them are stopped, so that nothing is
+   * written in the database anymore when it is closed.
+   */
+  private void copyTables(final DataSource source, final DataSource dest, Map<String, String> selectQueryByTable) {
+    ExecutorService executor = Executors.newFixedThreadPool(Math.min(EXPORT_THREADS, selectQueryByTable.size()));
+    try {
+      List<Future<?>> copies = Lists.newArrayList();
+      for (final Map.Entry<String, String> entry : selectQueryByTable.entrySet()) {
+        copies.add(executor.submit(new Runnable() {
+          public void run() {
+            new DbTemplate().copyTable(source, dest, entry.getKey(), entry.getValue());
+          }
+        }));
+      }
+      for (Future<?> copy : copies) {
+        copy.get();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new SonarException("Interrupted during creation of database for DryRun", e);
+    } catch (ExecutionException e) {
+      throw new SonarException("Unable to create database for DryRun", e.getCause());
+    } finally {
+      executor.shutdownNow();
+      awaitTermination(executor);
+    }
+  }
+
+  private static void awaitTermination(ExecutorService executor) {
+    boolean interrupted = false;
+    while (!executor.isTerminated()) {
+      try {
+        executor.awaitTermination(1, TimeUnit.SECONDS);
+      } catch (InterruptedException e) {
+        // copies must be stopped before the database is closed
+        interrupted = true;
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
     }
   }
 
+  /**
+   * Snapshot data required by the batch: file hashes of modules for partial analysis and line hashes of files for issue tracking
+   */
+  private static String dataTypesQuery() {
+    return "'" + SnapshotDataType.FILE_HASH.getValue() + "','" + SnapshotDataType.LINE_HASHES.getValue() + "'";
+  }
+
   private String projectQuery(Long projectId, boolean returnOnlyIds) {
     return new StringBuilder()
       .append("SELECT p.").append(returnOnlyIds ? "id" : "*")
@@ -90,6 +90,7 @@ import org.sonar.core.rule.RuleDto;
 import org.sonar.core.rule.RuleMapper;
 import org.sonar.core.source.jdbc.SnapshotDataDto;
 import org.sonar.core.source.jdbc.SnapshotDataMapper;
+import org.sonar.core.source.jdbc.SnapshotSourceDto;
 import org.sonar.core.source.jdbc.SnapshotSourceMapper;
 import org.sonar.core.template.LoadedTemplateDto;
 import org.sonar.core.template.LoadedTemplateMapper;
@@ -160,6 +161,7 @@ public class MyBatis implements BatchComponent, ServerComponent {
     loadAlias(conf, "IssueFilter", IssueFilterDto.class);
     loadAlias(conf, "IssueFilterFavourite", IssueFilterFavouriteDto.class);
     loadAlias(conf, "SnapshotData", SnapshotDataDto.class);
+    loadAlias(conf, "SnapshotSource", SnapshotSourceDto.class);
     loadAlias(conf, "ActionPlanIssue", ActionPlanDto.class);
     loadAlias(conf, "ActionPlanStats", ActionPlanStatsDto.class);
     loadAlias(conf, "PermissionTemplate", PermissionTemplateDto.class);
@@ -200,6 +202,16 @@ public class MyBatis implements BatchComponent, ServerComponent {
     return new BatchSession(session);
   }
 
+  /**
+   * Same as {@link #openBatchSession()}, but statements are flushed and committed every {@code batchSize} statements.
+   *
+   * @since 4.0
+   */
+  public BatchSession openBatchSession(int batchSize) {
+    SqlSession session = sessionFactory.openSession(ExecutorType.BATCH);
+    return new BatchSession(session, batchSize);
+  }
+
   public static void closeQuietly(SqlSession session) {
     if (session != null) {
       try {
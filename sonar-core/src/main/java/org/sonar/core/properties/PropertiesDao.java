@@ -110,6 +110,21 @@ public class PropertiesDao implements BatchComponent, ServerComponent {
     }
   }
 
+  /**
+   * Values of the property on all the resources. Global and user properties are excluded.
+   *
+   * @since 4.0
+   */
+  public List<PropertyDto> selectResourcePropertiesByKey(String propertyKey) {
+    SqlSession session = mybatis.openSession();
+    PropertiesMapper mapper = session.getMapper(PropertiesMapper.class);
+    try {
+      return mapper.selectResourcePropertiesByKey(propertyKey);
+    } finally {
+      MyBatis.closeQuietly(session);
+    }
+  }
+
   public void setProperty(PropertyDto property) {
     SqlSession session = mybatis.openSession();
     PropertiesMapper mapper = session.getMapper(PropertiesMapper.class);
@@ -153,6 +168,21 @@ public class PropertiesDao implements BatchComponent, ServerComponent {
     }
   }
 
+  /**
+   * @since 4.0
+   */
+  public void deleteProjectProperty(String key, Long projectId) {
+    SqlSession session = mybatis.openSession();
+    PropertiesMapper mapper = session.getMapper(PropertiesMapper.class);
+    try {
+      mapper.deleteProjectProperty(key, projectId);
+      session.commit();
+
+    } finally {
+      MyBatis.closeQuietly(session);
+    }
+  }
+
   public void deleteAllProperties(String key) {
     SqlSession session = mybatis.openSession();
     PropertiesMapper mapper = session.getMapper(PropertiesMapper.class);
@@ -39,6 +39,8 @@ public interface PropertiesMapper {
 
   PropertyDto selectByKey(PropertyDto key);
 
+  List<PropertyDto> selectResourcePropertiesByKey(String key);
+
   void update(PropertyDto property);
 
   void insert(PropertyDto property);
@@ -47,6 +49,8 @@ public interface PropertiesMapper {
 
   void deleteAllProperties(String key);
 
+  void deleteProjectProperty(@Param("key") String key, @Param("rId") Long resourceId);
+
   void deleteGlobalProperties();
 
   void renamePropertyKey(@Param("oldKey") String oldKey, @Param("newKey") String newKey);
@@ -30,11 +30,32 @@ public class PurgeConfiguration {
   private final long rootProjectId;
   private final String[] scopesWithoutHistoricalData;
   private final int maxAgeInDaysOfClosedIssues;
+  private final int threads;
+  private final int maxSnapshotsPerSecond;
 
   public PurgeConfiguration(long rootProjectId, String[] scopesWithoutHistoricalData, int maxAgeInDaysOfClosedIssues) {
+    this(rootProjectId, scopesWithoutHistoricalData, maxAgeInDaysOfClosedIssues, 1);
+  }
+
+  /**
+   * @param threads number of groups of analyses purged concurrently, each one in its own database session
+   * @since 4.0
+   */
+  public PurgeConfiguration(long rootProjectId, String[] scopesWithoutHistoricalData, int maxAgeInDaysOfClosedIssues, int threads) {
+    this(rootProjectId, scopesWithoutHistoricalData, maxAgeInDaysOfClosedIssues, threads, 0);
+  }
+
+  /**
+   * @param maxSnapshotsPerSecond maximum number of snapshots deleted or purged per second, zero for no limit
+   * @since 4.0
+   */
+  public PurgeConfiguration(long rootProjectId, String[] scopesWithoutHistoricalData, int maxAgeInDaysOfClosedIssues, int threads,
+    int maxSnapshotsPerSecond) {
     this.rootProjectId = rootProjectId;
     this.scopesWithoutHistoricalData = scopesWithoutHistoricalData;
     this.maxAgeInDaysOfClosedIssues = maxAgeInDaysOfClosedIssues;
+    this.threads = Math.max(1, threads);
+    this.maxSnapshotsPerSecond = Math.max(0, maxSnapshotsPerSecond);
   }
 
   public long rootProjectId() {
@@ -45,6 +66,14 @@ public class PurgeConfiguration {
     return scopesWithoutHistoricalData;
   }
 
+  public int threads() {
+    return threads;
+  }
+
+  public int maxSnapshotsPerSecond() {
+    return maxSnapshotsPerSecond;
+  }
+
   @CheckForNull
   public Date maxLiveDateOfClosedIssues() {
     return maxLiveDateOfClosedIssues(new Date());
@@ -21,6 +21,7 @@ package org.sonar.core.purge;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
 import org.apache.commons.lang.ArrayUtils;
 import org.apache.ibatis.session.ResultContext;
 import org.apache.ibatis.session.ResultHandler;
@@ -35,6 +36,10 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * @since 2.14
@@ -43,6 +48,7 @@ public class PurgeDao {
   private final MyBatis mybatis;
   private final ResourceDao resourceDao;
   private static final Logger LOG = LoggerFactory.getLogger(PurgeDao.class);
+  private static final int MAX_SNAPSHOTS_PER_QUERY = 1000;
   private PurgeProfiler profiler;
 
   public PurgeDao(MyBatis mybatis, ResourceDao resourceDao, PurgeProfiler profiler) {
@@ -51,16 +57,26 @@ public class PurgeDao {
     this.profiler = profiler;
   }
 
+  /**
+   * Same DAO, but with its own profiler, so that concurrent purges do not mix their durations
+   *
+   * @since 4.0
+   */
+  public PurgeDao withProfiler(PurgeProfiler profiler) {
+    return new PurgeDao(mybatis, resourceDao, profiler);
+  }
+
   public PurgeDao purge(PurgeConfiguration conf) {
     SqlSession session = mybatis.openBatchSession();
     PurgeMapper mapper = session.getMapper(PurgeMapper.class);
     PurgeCommands commands = new PurgeCommands(session, mapper, profiler);
+    PurgeThrottle throttle = new PurgeThrottle(conf.maxSnapshotsPerSecond());
     try {
       List<ResourceDto> projects = getProjects(conf.rootProjectId(), session);
       for (ResourceDto project : projects) {
         LOG.info("-> Clean " + project.getLongName() + " [id=" + project.getId() + "]");
         deleteAbortedBuilds(project, commands);
-        purge(project, conf.scopesWithoutHistoricalData(), commands);
+        purge(project, conf, commands, throttle);
       }
       for (ResourceDto project : projects) {
         disableOrphanResources(project, session, mapper);
@@ -98,27 +114,93 @@ public class PurgeDao {
     return !commands.selectSnapshotIds(query).isEmpty();
   }
 
-  private void purge(ResourceDto project, String[] scopesWithoutHistoricalData, PurgeCommands purgeCommands) {
+  /**
+   * All the snapshots of the module are selected first, then each table is cleaned by a few statements on all of them,
+   * rather than by one set of statements per snapshot.
+   */
+  private void purge(ResourceDto project, PurgeConfiguration conf, PurgeCommands purgeCommands, PurgeThrottle throttle) {
     List<Long> projectSnapshotIds = purgeCommands.selectSnapshotIds(
         PurgeSnapshotQuery.create()
             .setResourceId(project.getId())
             .setIslast(false)
             .setNotPurged(true));
-    for (final Long projectSnapshotId : projectSnapshotIds) {
-      LOG.info("<- Clean snapshot " + projectSnapshotId);
+    if (projectSnapshotIds.isEmpty()) {
+      return;
+    }
+    LOG.info("<- Clean " + projectSnapshotIds.size() + " snapshot(s)");
+    int threads = Math.min(conf.threads(), projectSnapshotIds.size());
+    if (threads > 1) {
+      int partitionSize = (projectSnapshotIds.size() + threads - 1) / threads;
+      purgeConcurrently(Lists.partition(projectSnapshotIds, partitionSize), conf, throttle);
+    } else {
+      purgeSnapshots(projectSnapshotIds, conf.scopesWithoutHistoricalData(), purgeCommands, throttle);
+    }
+  }
+
+  /**
+   * Snapshots of modules, directories and files refer to the snapshot of the root project of their analysis, so analyses
+   * do not share any snapshot. The snapshots of the root project are split in disjoint groups of analyses, which are
+   * purged in parallel, each one in its own session.
+   */
+  private void purgeConcurrently(List<List<Long>> projectSnapshotIdGroups, final PurgeConfiguration conf, final PurgeThrottle throttle) {
+    ExecutorService executor = Executors.newFixedThreadPool(projectSnapshotIdGroups.size());
+    try {
+      List<Future<?>> purges = Lists.newArrayList();
+      for (final List<Long> projectSnapshotIds : projectSnapshotIdGroups) {
+        purges.add(executor.submit(new Runnable() {
+          public void run() {
+            SqlSession session = mybatis.openBatchSession();
+            try {
+              purgeSnapshots(projectSnapshotIds, conf.scopesWithoutHistoricalData(), new PurgeCommands(session, profiler), throttle);
+              session.commit();
+            } finally {
+              MyBatis.closeQuietly(session);
+            }
+          }
+        }));
+      }
+      for (Future<?> purge : purges) {
+        purge.get();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted during purge of project " + conf.rootProjectId(), e);
+    } catch (ExecutionException e) {
+      throw new IllegalStateException("Fail to purge project " + conf.rootProjectId(), e.getCause());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private void purgeSnapshots(List<Long> projectSnapshotIds, String[] scopesWithoutHistoricalData, PurgeCommands purgeCommands, PurgeThrottle throttle) {
+    List<Long> snapshotIdsToDelete = Lists.newArrayList();
+    List<Long> snapshotIdsToPurge = Lists.newArrayList();
+    for (List<Long> partProjectSnapshotIds : Lists.partition(projectSnapshotIds, MAX_SNAPSHOTS_PER_QUERY)) {
       if (!ArrayUtils.isEmpty(scopesWithoutHistoricalData)) {
-        PurgeSnapshotQuery query = PurgeSnapshotQuery.create()
+        snapshotIdsToDelete.addAll(purgeCommands.selectSnapshotIds(PurgeSnapshotQuery.create()
             .setIslast(false)
             .setScopes(scopesWithoutHistoricalData)
-            .setRootSnapshotId(projectSnapshotId);
-        purgeCommands.deleteSnapshots(query);
+            .setRootSnapshotIds(partProjectSnapshotIds)));
       }
+      snapshotIdsToPurge.addAll(purgeCommands.selectSnapshotIds(PurgeSnapshotQuery.create()
+          .setRootSnapshotIds(partProjectSnapshotIds)
+          .setNotPurged(true)));
+    }
+    snapshotIdsToPurge.removeAll(Sets.newHashSet(snapshotIdsToDelete));
 
-      PurgeSnapshotQuery query = PurgeSnapshotQuery.create().setRootSnapshotId(projectSnapshotId).setNotPurged(true);
-      purgeCommands.purgeSnapshots(query);
+    for (List<Long> snapshotIds : throttle.partition(snapshotIdsToDelete)) {
+      throttle.acquire(snapshotIds.size());
+      purgeCommands.deleteSnapshots(snapshotIds);
+    }
+    for (List<Long> snapshotIds : throttle.partition(snapshotIdsToPurge)) {
+      throttle.acquire(snapshotIds.size());
+      purgeCommands.purgeSnapshots(snapshotIds);
+    }
 
-      // must be executed at the end for reentrance
-      purgeCommands.purgeSnapshots(PurgeSnapshotQuery.create().setId(projectSnapshotId).setNotPurged(true));
+    // must be executed at the end for reentrance
+    for (List<Long> snapshotIds : throttle.partition(projectSnapshotIds)) {
+      throttle.acquire(snapshotIds.size());
+      purgeCommands.purgeSnapshots(snapshotIds);
     }
   }
 
@@ -177,6 +259,18 @@ public class PurgeDao {
     mapper.disableResource(resourceId);
   }
 
+  /**
+   * @since 4.0
+   */
+  public List<Long> selectSnapshotIds(PurgeSnapshotQuery query) {
+    SqlSession session = mybatis.openSession();
+    try {
+      return session.getMapper(PurgeMapper.class).selectSnapshotIds(query);
+    } finally {
+      MyBatis.closeQuietly(session);
+    }
+  }
+
   public PurgeDao deleteSnapshots(PurgeSnapshotQuery query) {
     final SqlSession session = mybatis.openBatchSession();
     try {
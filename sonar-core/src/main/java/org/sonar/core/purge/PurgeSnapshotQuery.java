@@ -19,10 +19,14 @@
  */
 package org.sonar.core.purge;
 
+import java.util.Date;
+import java.util.List;
+
 public final class PurgeSnapshotQuery {
   private Long id;
   private Long rootProjectId;
   private Long rootSnapshotId;
+  private List<Long> rootSnapshotIds;
   private Long resourceId;
   private String[] scopes;
   private String[] qualifiers;
@@ -30,6 +34,7 @@ public final class PurgeSnapshotQuery {
   private Boolean islast;
   private Boolean notPurged;
   private Boolean withVersionEvent;
+  private Date createdAfter;
 
   private PurgeSnapshotQuery() {
   }
@@ -110,6 +115,18 @@ public final class PurgeSnapshotQuery {
     return this;
   }
 
+  public List<Long> getRootSnapshotIds() {
+    return rootSnapshotIds;
+  }
+
+  /**
+   * @since 4.0
+   */
+  public PurgeSnapshotQuery setRootSnapshotIds(List<Long> rootSnapshotIds) {
+    this.rootSnapshotIds = rootSnapshotIds;
+    return this;
+  }
+
   public Long getResourceId() {
     return resourceId;
   }
@@ -127,4 +144,16 @@ public final class PurgeSnapshotQuery {
     this.withVersionEvent = withVersionEvent;
     return this;
   }
+
+  public Date getCreatedAfter() {
+    return createdAfter;
+  }
+
+  /**
+   * @since 4.0
+   */
+  public PurgeSnapshotQuery setCreatedAfter(Date createdAfter) {
+    this.createdAfter = createdAfter;
+    return this;
+  }
 }
@@ -0,0 +1,88 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2013 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.core.purge;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.Lists;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Limits the number of snapshots cleaned per second, so that a purge does not saturate the database. Shared by
+ * the threads purging the analyses of a project.
+ *
+ * @since 4.0
+ */
+class PurgeThrottle {
+
+  private final int maxSnapshotsPerSecond;
+  private long nextFreeTime = 0L;
+
+  PurgeThrottle(int maxSnapshotsPerSecond) {
+    this.maxSnapshotsPerSecond = maxSnapshotsPerSecond;
+  }
+
+  boolean isEnabled() {
+    return maxSnapshotsPerSecond > 0;
+  }
+
+  /**
+   * Splits the snapshots in groups which can be cleaned in one second, so that the limit is enforced between the
+   * statements of a purge. Snapshots are not split when there is no limit.
+   */
+  List<List<Long>> partition(List<Long> snapshotIds) {
+    if (snapshotIds.isEmpty()) {
+      return Collections.emptyList();
+    }
+    if (!isEnabled()) {
+      return Collections.singletonList(snapshotIds);
+    }
+    return Lists.partition(snapshotIds, maxSnapshotsPerSecond);
+  }
+
+  /**
+   * Blocks until the given number of snapshots can be cleaned without exceeding the limit.
+   */
+  void acquire(int snapshots) {
+    long wait = reserve(snapshots, System.currentTimeMillis());
+    if (wait > 0L) {
+      try {
+        Thread.sleep(wait);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IllegalStateException("Interrupted while waiting for the purge rate limit", e);
+      }
+    }
+  }
+
+  /**
+   * @return the number of milliseconds to wait before cleaning the snapshots
+   */
+  @VisibleForTesting
+  synchronized long reserve(int snapshots, long now) {
+    if (!isEnabled() || snapshots <= 0) {
+      return 0L;
+    }
+    long start = Math.max(now, nextFreeTime);
+    nextFreeTime = start + (snapshots * 1000L) / maxSnapshotsPerSecond;
+    return start - now;
+  }
+}
@@ -19,12 +19,16 @@
  */
 package org.sonar.core.resource;
 
+import java.util.List;
+
 public interface ResourceIndexerMapper {
 
   ResourceIndexDto selectMasterIndexByResourceId(long resourceId);
 
   ResourceDto selectResourceToIndex(long resourceId);
 
+  List<SnapshotDto> selectRootProjectLastSnapshots();
+
   void deleteByResourceId(long resourceId);
 
   void insert(ResourceIndexDto dto);
@@ -0,0 +1,467 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2013 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.core.resource;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import org.apache.ibatis.session.ResultContext;
+import org.apache.ibatis.session.ResultHandler;
+import org.apache.ibatis.session.SqlSession;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sonar.api.ServerComponent;
+import org.sonar.core.persistence.MyBatis;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory index of the names of the resources, used by the quick search of the web server. It matches the same
+ * resources than the table RESOURCE_INDEX, but names are split into trigrams instead of being stored as suffixes.
+ * <p/>
+ * The index is loaded at startup. Then the projects are indexed again each time their last snapshot changes, which is
+ * checked at most once per {@link #DEFAULT_REFRESH_INTERVAL_MS} by one of the searches. The other searches do not wait for
+ * this refresh and read the current state of the index.
+ *
+ * @since 4.0
+ */
+public class ResourceSearchIndex implements ServerComponent {
+
+  private static final Logger LOG = LoggerFactory.getLogger(ResourceSearchIndex.class);
+  private static final String SELECT_RESOURCES = "org.sonar.core.resource.ResourceIndexerMapper.selectResources";
+  private static final int[] EMPTY = new int[0];
+  static final long DEFAULT_REFRESH_INTERVAL_MS = 5000L;
+
+  private final MyBatis mybatis;
+  private final long refreshIntervalMs;
+  private final ReadWriteLock lock = new ReentrantReadWriteLock();
+  private final Lock refreshLock = new ReentrantLock();
+
+  // guarded by lock
+  private final Map<Long, ResourceIndexDto> entriesById = Maps.newHashMap();
+  private final Map<Long, Set<Long>> idsByRootProjectId = Maps.newHashMap();
+  private final NavigableMap<String, int[]> idsByTrigram = new TreeMap<String, int[]>();
+  private final Map<String, Set<Long>> idsByTwoLettersName = Maps.newHashMap();
+
+  // guarded by refreshLock
+  private Map<Long, Long> lastSnapshotIdByRootProjectId = Collections.emptyMap();
+
+  // written with refreshLock, read without lock by the searches
+  private volatile long refreshedAt = 0L;
+
+  public ResourceSearchIndex(MyBatis mybatis) {
+    this(mybatis, DEFAULT_REFRESH_INTERVAL_MS);
+  }
+
+  @VisibleForTesting
+  ResourceSearchIndex(MyBatis mybatis, long refreshIntervalMs) {
+    this.mybatis = mybatis;
+    this.refreshIntervalMs = refreshIntervalMs;
+  }
+
+  public void start() {
+    long start = System.currentTimeMillis();
+    indexProjects();
+    LOG.info("Resource search index loaded: " + size() + " resources in " + (System.currentTimeMillis() - start) + " ms");
+  }
+
+  /**
+   * Rebuilds the whole index
+   */
+  public ResourceSearchIndex indexProjects() {
+    refreshLock.lock();
+    SqlSession session = mybatis.openSession();
+    try {
+      Map<Long, Long> lastSnapshotIds = selectLastSnapshotIds(session);
+      final List<ResourceIndexDto> entries = Lists.newArrayList();
+      select(session, ResourceIndexerQuery.create(), entries);
+      lock.writeLock().lock();
+      try {
+        entriesById.clear();
+        idsByRootProjectId.clear();
+        idsByTrigram.clear();
+        idsByTwoLettersName.clear();
+        update(Collections.<Long>emptyList(), entries);
+      } finally {
+        lock.writeLock().unlock();
+      }
+      lastSnapshotIdByRootProjectId = lastSnapshotIds;
+      refreshedAt = System.currentTimeMillis();
+      return this;
+    } finally {
+      MyBatis.closeQuietly(session);
+      refreshLock.unlock();
+    }
+  }
+
+  /**
+   * Indexes again all the resources of a project, for example after an analysis
+   */
+  public ResourceSearchIndex indexProject(long rootProjectId) {
+    refreshLock.lock();
+    SqlSession session = mybatis.openSession();
+    try {
+      doIndexProjects(Arrays.asList(rootProjectId), session);
+      return this;
+    } finally {
+      MyBatis.closeQuietly(session);
+      refreshLock.unlock();
+    }
+  }
+
+  /**
+   * Indexes a resource that has no snapshot yet, for example a view that has just been created
+   */
+  public ResourceSearchIndex indexResource(long id) {
+    SqlSession session = mybatis.openSession();
+    try {
+      ResourceDto resource = session.getMapper(ResourceIndexerMapper.class).selectResourceToIndex(id);
+      lock.writeLock().lock();
+      try {
+        List<ResourceIndexDto> entries = Lists.newArrayList();
+        if (resource != null) {
+          ResourceIndexDto entry = toEntry(resource, resource.getRootId() != null ? resource.getRootId() : resource.getId());
+          if (entry != null) {
+            entries.add(entry);
+          }
+        }
+        update(Arrays.asList(id), entries);
+      } finally {
+        lock.writeLock().unlock();
+      }
+      return this;
+    } finally {
+      MyBatis.closeQuietly(session);
+    }
+  }
+
+  /**
+   * Search for the resources whose name contains the given text. As with the table RESOURCE_INDEX, the text must have
+   * at least two characters, and a text of two characters only matches names of two characters or names containing
+   * this text followed by at least one character.
+   *
+   * @return the matching resources, shortest names first. The field "key" is the lower-cased name
+   */
+  public List<ResourceIndexDto> search(@Nullable String text) {
+    String key = ResourceIndexerDao.nameToKey(text);
+    if (key.length() < ResourceIndexerDao.SINGLE_INDEX_SIZE) {
+      return Collections.emptyList();
+    }
+    refreshIfNeeded();
+
+    List<ResourceIndexDto> result = Lists.newArrayList();
+    lock.readLock().lock();
+    try {
+      for (Long id : candidates(key)) {
+        ResourceIndexDto entry = entriesById.get(id);
+        int position = entry != null ? entry.getKey().indexOf(key) : -1;
+        if (position >= 0) {
+          result.add(copy(entry).setPosition(position));
+        }
+      }
+    } finally {
+      lock.readLock().unlock();
+    }
+    Collections.sort(result, new Comparator<ResourceIndexDto>() {
+      public int compare(ResourceIndexDto o1, ResourceIndexDto o2) {
+        return o1.getNameSize() - o2.getNameSize();
+      }
+    });
+    return result;
+  }
+
+  public int size() {
+    lock.readLock().lock();
+    try {
+      return entriesById.size();
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  // must be called with the read lock
+  private Collection<Long> candidates(String key) {
+    Set<Long> ids = Sets.newHashSet();
+    if (key.length() == ResourceIndexerDao.SINGLE_INDEX_SIZE) {
+      Set<Long> twoLettersNames = idsByTwoLettersName.get(key);
+      if (twoLettersNames != null) {
+        ids.addAll(twoLettersNames);
+      }
+      // names containing the two letters followed by at least another character
+      for (int[] posting : idsByTrigram.subMap(key, true, key + Character.MAX_VALUE, true).values()) {
+        for (int id : posting) {
+          ids.add((long) id);
+        }
+      }
+      return ids;
+    }
+
+    int[] smallest = null;
+    for (String trigram : trigrams(key)) {
+      int[] posting = idsByTrigram.get(trigram);
+      if (posting == null) {
+        return Collections.emptyList();
+      }
+      if (smallest == null || posting.length < smallest.length) {
+        smallest = posting;
+      }
+    }
+    // other trigrams are checked by the verification of the whole key
+    for (int id : smallest) {
+      ids.add((long) id);
+    }
+    return ids;
+  }
+
+  /**
+   * Only one search refreshes the index, the concurrent searches do not wait for it
+   */
+  private void refreshIfNeeded() {
+    long now = System.currentTimeMillis();
+    if (now - refreshedAt < refreshIntervalMs || !refreshLock.tryLock()) {
+      return;
+    }
+    SqlSession session = null;
+    try {
+      if (now - refreshedAt < refreshIntervalMs) {
+        // refreshed by another thread in the meantime
+        return;
+      }
+      session = mybatis.openSession();
+      Map<Long, Long> lastSnapshotIds = selectLastSnapshotIds(session);
+      Set<Long> changedProjectIds = Sets.newHashSet();
+      for (Map.Entry<Long, Long> entry : lastSnapshotIds.entrySet()) {
+        if (!entry.getValue().equals(lastSnapshotIdByRootProjectId.get(entry.getKey()))) {
+          changedProjectIds.add(entry.getKey());
+        }
+      }
+      // projects that have been deleted
+      changedProjectIds.addAll(Sets.difference(lastSnapshotIdByRootProjectId.keySet(), lastSnapshotIds.keySet()));
+      if (!changedProjectIds.isEmpty()) {
+        doIndexProjects(changedProjectIds, session);
+      }
+      lastSnapshotIdByRootProjectId = lastSnapshotIds;
+      refreshedAt = now;
+    } finally {
+      MyBatis.closeQuietly(session);
+      refreshLock.unlock();
+    }
+  }
+
+  private void doIndexProjects(Collection<Long> rootProjectIds, SqlSession session) {
+    List<ResourceIndexDto> entries = Lists.newArrayList();
+    for (Long rootProjectId : rootProjectIds) {
+      select(session, ResourceIndexerQuery.create().setRootProjectId(rootProjectId.intValue()), entries);
+    }
+    lock.writeLock().lock();
+    try {
+      List<Long> removedIds = Lists.newArrayList();
+      for (Long rootProjectId : rootProjectIds) {
+        Set<Long> ids = idsByRootProjectId.get(rootProjectId);
+        if (ids != null) {
+          removedIds.addAll(ids);
+        }
+      }
+      update(removedIds, entries);
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  private Map<Long, Long> selectLastSnapshotIds(SqlSession session) {
+    Map<Long, Long> result = Maps.newHashMap();
+    for (SnapshotDto snapshot : session.getMapper(ResourceIndexerMapper.class).selectRootProjectLastSnapshots()) {
+      result.put(snapshot.getResourceId(), snapshot.getId());
+    }
+    return result;
+  }
+
+  private void select(SqlSession session, ResourceIndexerQuery query, final List<ResourceIndexDto> entries) {
+    ResultHandler handler = new ResultHandler() {
+      public void handleResult(ResultContext context) {
+        ResourceDto resource = (ResourceDto) context.getResultObject();
+        ResourceIndexDto entry = toEntry(resource, resource.getRootId());
+        if (entry != null) {
+          entries.add(entry);
+        }
+      }
+    };
+    session.select(SELECT_RESOURCES, copyQuery(query).setQualifiers(ResourceIndexerDao.NOT_RENAMABLE_QUALIFIERS)
+      .setScopes(ResourceIndexerDao.NOT_RENAMABLE_SCOPES), handler);
+    session.select(SELECT_RESOURCES, copyQuery(query).setQualifiers(ResourceIndexerDao.RENAMABLE_QUALIFIERS)
+      .setScopes(ResourceIndexerDao.RENAMABLE_SCOPES), handler);
+  }
+
+  private static ResourceIndexerQuery copyQuery(ResourceIndexerQuery query) {
+    return ResourceIndexerQuery.create().setRootProjectId(query.getRootProjectId());
+  }
+
+  @CheckForNull
+  private static ResourceIndexDto toEntry(ResourceDto resource, long rootProjectId) {
+    String key = ResourceIndexerDao.nameToKey(resource.getName());
+    if (key.length() >= ResourceIndexerDao.MINIMUM_KEY_SIZE || key.length() == ResourceIndexerDao.SINGLE_INDEX_SIZE) {
+      return new ResourceIndexDto()
+        .setKey(key)
+        .setResourceId(resource.getId())
+        .setRootProjectId(rootProjectId)
+        .setQualifier(resource.getQualifier())
+        .setNameSize(resource.getName().length());
+    }
+    return null;
+  }
+
+  private static ResourceIndexDto copy(ResourceIndexDto entry) {
+    return new ResourceIndexDto()
+      .setKey(entry.getKey())
+      .setResourceId(entry.getResourceId())
+      .setRootProjectId(entry.getRootProjectId())
+      .setQualifier(entry.getQualifier())
+      .setNameSize(entry.getNameSize());
+  }
+
+  /**
+   * Postings of the trigrams are sorted arrays, so each posting touched by the update is rebuilt only once.
+   * Must be called with the write lock.
+   */
+  private void update(Collection<Long> removedIds, Collection<ResourceIndexDto> addedEntries) {
+    Map<String, Set<Integer>> removalsByTrigram = Maps.newHashMap();
+    Map<String, List<Integer>> additionsByTrigram = Maps.newHashMap();
+
+    for (Long id : removedIds) {
+      remove(id, removalsByTrigram);
+    }
+    for (ResourceIndexDto entry : addedEntries) {
+      remove(entry.getResourceId(), removalsByTrigram);
+      entriesById.put(entry.getResourceId(), entry);
+      Set<Long> projectIds = idsByRootProjectId.get(entry.getRootProjectId());
+      if (projectIds == null) {
+        projectIds = Sets.newHashSet();
+        idsByRootProjectId.put(entry.getRootProjectId(), projectIds);
+      }
+      projectIds.add(entry.getResourceId());
+      if (entry.getKey().length() == ResourceIndexerDao.SINGLE_INDEX_SIZE) {
+        Set<Long> ids = idsByTwoLettersName.get(entry.getKey());
+        if (ids == null) {
+          ids = Sets.newHashSet();
+          idsByTwoLettersName.put(entry.getKey(), ids);
+        }
+        ids.add(entry.getResourceId());
+      }
+      for (String trigram : trigrams(entry.getKey())) {
+        List<Integer> additions = additionsByTrigram.get(trigram);
+        if (additions == null) {
+          additions = Lists.newArrayList();
+          additionsByTrigram.put(trigram, additions);
+        }
+        additions.add((int) entry.getResourceId());
+      }
+    }
+
+    Set<String> touchedTrigrams = Sets.union(removalsByTrigram.keySet(), additionsByTrigram.keySet()).immutableCopy();
+    for (String trigram : touchedTrigrams) {
+      int[] posting = merge(idsByTrigram.get(trigram), removalsByTrigram.get(trigram), additionsByTrigram.get(trigram));
+      if (posting.length == 0) {
+        idsByTrigram.remove(trigram);
+      } else {
+        idsByTrigram.put(trigram, posting);
+      }
+    }
+  }
+
+  private void remove(long id, Map<String, Set<Integer>> removalsByTrigram) {
+    ResourceIndexDto entry = entriesById.remove(id);
+    if (entry == null) {
+      return;
+    }
+    Set<Long> projectIds = idsByRootProjectId.get(entry.getRootProjectId());
+    if (projectIds != null) {
+      projectIds.remove(id);
+      if (projectIds.isEmpty()) {
+        idsByRootProjectId.remove(entry.getRootProjectId());
+      }
+    }
+    Set<Long> twoLettersNames = idsByTwoLettersName.get(entry.getKey());
+    if (twoLettersNames != null) {
+      twoLettersNames.remove(id);
+      if (twoLettersNames.isEmpty()) {
+        idsByTwoLettersName.remove(entry.getKey());
+      }
+    }
+    for (String trigram : trigrams(entry.getKey())) {
+      Set<Integer> removals = removalsByTrigram.get(trigram);
+      if (removals == null) {
+        removals = Sets.newHashSet();
+        removalsByTrigram.put(trigram, removals);
+      }
+      removals.add((int) id);
+    }
+  }
+
+  @VisibleForTesting
+  static int[] merge(@Nullable int[] posting, @Nullable Set<Integer> removals, @Nullable List<Integer> additions) {
+    int[] current = posting != null ? posting : EMPTY;
+    int[] result = new int[current.length + (additions != null ? additions.size() : 0)];
+    int size = 0;
+    for (int id : current) {
+      if (removals == null || !removals.contains(id)) {
+        result[size++] = id;
+      }
+    }
+    if (additions != null) {
+      for (Integer id : additions) {
+        result[size++] = id;
+      }
+    }
+    Arrays.sort(result, 0, size);
+    // remove duplicates
+    int distinct = 0;
+    for (int i = 0; i < size; i++) {
+      if (distinct == 0 || result[distinct - 1] != result[i]) {
+        result[distinct++] = result[i];
+      }
+    }
+    return Arrays.copyOf(result, distinct);
+  }
+
+  @VisibleForTesting
+  static Set<String> trigrams(String key) {
+    Set<String> trigrams = Sets.newHashSet();
+    for (int i = 0; i + ResourceIndexerDao.MINIMUM_KEY_SIZE <= key.length(); i++) {
+      trigrams.add(key.substring(i, i + ResourceIndexerDao.MINIMUM_KEY_SIZE));
+    }
+    return trigrams;
+  }
+}
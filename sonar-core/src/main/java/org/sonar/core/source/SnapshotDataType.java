@@ -24,7 +24,8 @@ public enum SnapshotDataType {
 
   SYNTAX_HIGHLIGHTING("highlight_syntax"),
   SYMBOL_HIGHLIGHTING("symbol"),
-  FILE_HASH("hash");
+  FILE_HASH("hash"),
+  LINE_HASHES("line_hashes");
 
   private SnapshotDataType(String value) {
     this.value = value;
@@ -20,6 +20,8 @@
 
 package org.sonar.core.source.jdbc;
 
+import com.google.common.collect.Maps;
+import org.apache.ibatis.session.ResultHandler;
 import org.apache.ibatis.session.SqlSession;
 import org.sonar.api.BatchComponent;
 import org.sonar.api.ServerComponent;
@@ -27,6 +29,7 @@ import org.sonar.core.persistence.MyBatis;
 
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 /**
  * @since 3.6
@@ -50,6 +53,24 @@ public class SnapshotDataDao implements BatchComponent, ServerComponent {
     }
   }
 
+  /**
+   * Streams the data of the given type attached to the last snapshots of all the resources of a project,
+   * including its modules. Results are {@link SnapshotDataDto}.
+   *
+   * @since 4.0
+   */
+  public void selectLastSnapshotDataOfProject(long projectId, String dataType, ResultHandler handler) {
+    Map<String, Object> params = Maps.newHashMap();
+    params.put("projectId", projectId);
+    params.put("dataType", dataType);
+    SqlSession session = mybatis.openSession();
+    try {
+      session.select("org.sonar.core.source.jdbc.SnapshotDataMapper.selectLastSnapshotDataOfProject", params, handler);
+    } finally {
+      MyBatis.closeQuietly(session);
+    }
+  }
+
   void insert(SnapshotDataDto snapshotData) {
     SqlSession session = mybatis.openSession();
     try {
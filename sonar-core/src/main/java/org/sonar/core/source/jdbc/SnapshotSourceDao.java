@@ -20,9 +20,15 @@
 
 package org.sonar.core.source.jdbc;
 
+import com.google.common.collect.Maps;
+import org.apache.ibatis.session.ResultHandler;
 import org.apache.ibatis.session.SqlSession;
 import org.sonar.core.persistence.MyBatis;
 
+import javax.annotation.Nullable;
+
+import java.util.Map;
+
 /**
  * @since 3.6
  */
@@ -46,4 +52,23 @@ public class SnapshotSourceDao {
       MyBatis.closeQuietly(session);
     }
   }
+
+  /**
+   * Streams the sources of the last snapshots of all the resources of a project, including its modules.
+   * Results are {@link SnapshotSourceDto}.
+   *
+   * @param excludedDataType if set, the resources having snapshot data of this type are ignored
+   * @since 4.0
+   */
+  public void selectLastSnapshotSourcesOfProject(long projectId, @Nullable String excludedDataType, ResultHandler handler) {
+    Map<String, Object> params = Maps.newHashMap();
+    params.put("projectId", projectId);
+    params.put("excludedDataType", excludedDataType);
+    SqlSession session = mybatis.openSession();
+    try {
+      session.select("org.sonar.core.source.jdbc.SnapshotSourceMapper.selectLastSnapshotSourcesOfProject", params, handler);
+    } finally {
+      MyBatis.closeQuietly(session);
+    }
+  }
 }
@@ -20,6 +20,7 @@
 package org.sonar.core.dryrun;
 
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
@@ -35,6 +36,8 @@ import org.sonar.core.resource.ResourceDto;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
 
 import static org.fest.assertions.Assertions.assertThat;
 import static org.mockito.Matchers.any;
@@ -76,7 +79,7 @@ public class DryRunCacheTest {
   }
 
   @Test
-  public void test_getDatabaseForDryRun_on_new_project() throws Exception {
+  public void test_openDatabaseForDryRun_on_new_project() throws Exception {
     when(dryRunDatabaseFactory.createNewDatabaseForDryRun(isNull(Long.class), any(File.class), anyString())).thenAnswer(new Answer<File>() {
       public File answer(InvocationOnMock invocation) throws IOException {
         Object[] args = invocation.getArguments();
@@ -85,37 +88,39 @@ public class DryRunCacheTest {
         return dbFile;
       }
     });
-    byte[] dbContent = dryRunCache.getDatabaseForDryRun(null);
-    assertThat(new String(dbContent)).isEqualTo("fake db content");
+    String dbContent = read(dryRunCache.openDatabaseForDryRun(null, false));
+    assertThat(dbContent).isEqualTo("fake db content");
 
-    dbContent = dryRunCache.getDatabaseForDryRun(null);
-    assertThat(new String(dbContent)).isEqualTo("fake db content");
+    dbContent = read(dryRunCache.openDatabaseForDryRun(null, false));
+    assertThat(dbContent).isEqualTo("fake db content");
 
     verify(dryRunDatabaseFactory, times(1)).createNewDatabaseForDryRun(anyLong(), any(File.class), anyString());
   }
 
   @Test
-  public void test_getDatabaseForDryRun_on_existing_project() throws Exception {
-    when(dryRunDatabaseFactory.createNewDatabaseForDryRun(eq(123L), any(File.class), anyString())).thenAnswer(new Answer<File>() {
+  public void test_openDatabaseForDryRun_on_existing_project() throws Exception {
+    mockGlobalDatabase();
+    when(dryRunDatabaseFactory.createNewDatabaseForDryRun(eq(123L), any(File.class), any(File.class), anyString())).thenAnswer(new Answer<File>() {
       public File answer(InvocationOnMock invocation) throws IOException {
         Object[] args = invocation.getArguments();
-        File dbFile = new File(new File(dryRunCacheLocation, "123"), (String) args[2] + ".h2.db");
+        File dbFile = new File(new File(dryRunCacheLocation, "123"), (String) args[3] + ".h2.db");
         FileUtils.write(dbFile, "fake db content");
         return dbFile;
       }
     });
     when(resourceDao.getRootProjectByComponentId(123L)).thenReturn(new ResourceDto().setId(123L));
-    byte[] dbContent = dryRunCache.getDatabaseForDryRun(123L);
-    assertThat(new String(dbContent)).isEqualTo("fake db content");
+    String dbContent = read(dryRunCache.openDatabaseForDryRun(123L, false));
+    assertThat(dbContent).isEqualTo("fake db content");
 
-    dbContent = dryRunCache.getDatabaseForDryRun(123L);
-    assertThat(new String(dbContent)).isEqualTo("fake db content");
+    dbContent = read(dryRunCache.openDatabaseForDryRun(123L, false));
+    assertThat(dbContent).isEqualTo("fake db content");
 
-    verify(dryRunDatabaseFactory, times(1)).createNewDatabaseForDryRun(anyLong(), any(File.class), anyString());
+    verify(dryRunDatabaseFactory, times(1)).createNewDatabaseForDryRun(isNull(Long.class), any(File.class), anyString());
+    verify(dryRunDatabaseFactory, times(1)).createNewDatabaseForDryRun(eq(123L), any(File.class), any(File.class), anyString());
   }
 
   @Test
-  public void test_getDatabaseForDryRun_global_invalidation() throws Exception {
+  public void test_openDatabaseForDryRun_global_invalidation() throws Exception {
     when(dryRunDatabaseFactory.createNewDatabaseForDryRun(isNull(Long.class), any(File.class), anyString()))
       .thenAnswer(new Answer<File>() {
         public File answer(InvocationOnMock invocation) throws IOException {
@@ -133,26 +138,27 @@ public class DryRunCacheTest {
           return dbFile;
         }
       });
-    byte[] dbContent = dryRunCache.getDatabaseForDryRun(null);
-    assertThat(new String(dbContent)).isEqualTo("fake db content 1");
+    String dbContent = read(dryRunCache.openDatabaseForDryRun(null, false));
+    assertThat(dbContent).isEqualTo("fake db content 1");
 
     // Emulate invalidation of cache
     Thread.sleep(100);
     when(propertiesDao.selectGlobalProperty(DryRunCache.SONAR_DRY_RUN_CACHE_LAST_UPDATE_KEY)).thenReturn(new PropertyDto().setValue("" + System.currentTimeMillis()));
 
-    dbContent = dryRunCache.getDatabaseForDryRun(null);
-    assertThat(new String(dbContent)).isEqualTo("fake db content 2");
+    dbContent = read(dryRunCache.openDatabaseForDryRun(null, false));
+    assertThat(dbContent).isEqualTo("fake db content 2");
 
     verify(dryRunDatabaseFactory, times(2)).createNewDatabaseForDryRun(anyLong(), any(File.class), anyString());
   }
 
   @Test
-  public void test_getDatabaseForDryRun_project_invalidation() throws Exception {
-    when(dryRunDatabaseFactory.createNewDatabaseForDryRun(eq(123L), any(File.class), anyString()))
+  public void test_openDatabaseForDryRun_project_invalidation() throws Exception {
+    mockGlobalDatabase();
+    when(dryRunDatabaseFactory.createNewDatabaseForDryRun(eq(123L), any(File.class), any(File.class), anyString()))
       .thenAnswer(new Answer<File>() {
         public File answer(InvocationOnMock invocation) throws IOException {
           Object[] args = invocation.getArguments();
-          File dbFile = new File(new File(dryRunCacheLocation, "123"), (String) args[2] + ".h2.db");
+          File dbFile = new File(new File(dryRunCacheLocation, "123"), (String) args[3] + ".h2.db");
           FileUtils.write(dbFile, "fake db content 1");
           return dbFile;
         }
@@ -160,24 +166,46 @@ public class DryRunCacheTest {
       .thenAnswer(new Answer<File>() {
         public File answer(InvocationOnMock invocation) throws IOException {
           Object[] args = invocation.getArguments();
-          File dbFile = new File(new File(dryRunCacheLocation, "123"), (String) args[2] + ".h2.db");
+          File dbFile = new File(new File(dryRunCacheLocation, "123"), (String) args[3] + ".h2.db");
           FileUtils.write(dbFile, "fake db content 2");
           return dbFile;
         }
       });
     when(resourceDao.getRootProjectByComponentId(123L)).thenReturn(new ResourceDto().setId(123L));
 
-    byte[] dbContent = dryRunCache.getDatabaseForDryRun(123L);
-    assertThat(new String(dbContent)).isEqualTo("fake db content 1");
+    String dbContent = read(dryRunCache.openDatabaseForDryRun(123L, false));
+    assertThat(dbContent).isEqualTo("fake db content 1");
 
     // Emulate invalidation of cache
     Thread.sleep(100);
     when(propertiesDao.selectProjectProperty(123L, DryRunCache.SONAR_DRY_RUN_CACHE_LAST_UPDATE_KEY)).thenReturn(new PropertyDto().setValue("" + System.currentTimeMillis()));
 
-    dbContent = dryRunCache.getDatabaseForDryRun(123L);
-    assertThat(new String(dbContent)).isEqualTo("fake db content 2");
+    dbContent = read(dryRunCache.openDatabaseForDryRun(123L, false));
+    assertThat(dbContent).isEqualTo("fake db content 2");
 
-    verify(dryRunDatabaseFactory, times(2)).createNewDatabaseForDryRun(anyLong(), any(File.class), anyString());
+    // global database is still valid
+    verify(dryRunDatabaseFactory, times(1)).createNewDatabaseForDryRun(isNull(Long.class), any(File.class), anyString());
+    verify(dryRunDatabaseFactory, times(2)).createNewDatabaseForDryRun(eq(123L), any(File.class), any(File.class), anyString());
+  }
+
+  @Test
+  public void test_openDatabaseForDryRun_gzip() throws Exception {
+    when(dryRunDatabaseFactory.createNewDatabaseForDryRun(isNull(Long.class), any(File.class), anyString())).thenAnswer(new Answer<File>() {
+      public File answer(InvocationOnMock invocation) throws IOException {
+        Object[] args = invocation.getArguments();
+        File dbFile = new File(new File(dryRunCacheLocation, "default"), (String) args[2] + ".h2.db");
+        FileUtils.write(dbFile, "fake db content");
+        return dbFile;
+      }
+    });
+
+    String dbContent = read(new GZIPInputStream(dryRunCache.openDatabaseForDryRun(null, true)));
+    assertThat(dbContent).isEqualTo("fake db content");
+
+    dbContent = read(dryRunCache.openDatabaseForDryRun(null, false));
+    assertThat(dbContent).isEqualTo("fake db content");
+
+    verify(dryRunDatabaseFactory, times(1)).createNewDatabaseForDryRun(anyLong(), any(File.class), anyString());
   }
 
   @Test
@@ -224,4 +252,23 @@ public class DryRunCacheTest {
         .setValue(anyString())
         .setResourceId(456L));
   }
+
+  private void mockGlobalDatabase() {
+    when(dryRunDatabaseFactory.createNewDatabaseForDryRun(isNull(Long.class), any(File.class), anyString())).thenAnswer(new Answer<File>() {
+      public File answer(InvocationOnMock invocation) throws IOException {
+        Object[] args = invocation.getArguments();
+        File dbFile = new File(new File(dryRunCacheLocation, "default"), (String) args[2] + ".h2.db");
+        FileUtils.write(dbFile, "fake global db content");
+        return dbFile;
+      }
+    });
+  }
+
+  private static String read(InputStream input) throws IOException {
+    try {
+      return IOUtils.toString(input);
+    } finally {
+      IOUtils.closeQuietly(input);
+    }
+  }
 }
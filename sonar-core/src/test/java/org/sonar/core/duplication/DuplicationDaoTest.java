@@ -19,9 +19,14 @@
  */
 package org.sonar.core.duplication;
 
+import com.google.common.collect.Lists;
+import org.apache.ibatis.session.ResultContext;
+import org.apache.ibatis.session.ResultHandler;
 import org.junit.Before;
 import org.junit.Test;
 import org.sonar.core.persistence.AbstractDaoTestCase;
+import org.sonar.core.persistence.BatchSession;
+import org.sonar.core.persistence.MyBatis;
 
 import java.util.Arrays;
 import java.util.List;
@@ -39,29 +44,46 @@ public class DuplicationDaoTest extends AbstractDaoTestCase {
   }
 
   @Test
-  public void shouldGetByHash() throws Exception {
+  public void should_select_candidates_of_project() throws Exception {
     setupData("shouldGetByHash");
 
-    List<DuplicationUnitDto> blocks = dao.selectCandidates(10, 7, "java");
+    List<DuplicationUnitDto> blocks = selectCandidatesOfProject(9, 7);
     assertThat(blocks.size(), is(1));
 
     DuplicationUnitDto block = blocks.get(0);
-    assertThat("block resourceId", block.getResourceKey(), is("bar-last"));
+    assertThat("block resourceId", block.getResourceId(), is(2));
+    assertThat("block resourceKey", block.getResourceKey(), is("bar-last"));
     assertThat("block hash", block.getHash(), is("aa"));
     assertThat("block index in file", block.getIndexInFile(), is(0));
     assertThat("block start line", block.getStartLine(), is(1));
     assertThat("block end line", block.getEndLine(), is(2));
 
     // check null for lastSnapshotId
-    blocks = dao.selectCandidates(10, null, "java");
+    blocks = selectCandidatesOfProject(9, null);
     assertThat(blocks.size(), is(2));
   }
 
+  private List<DuplicationUnitDto> selectCandidatesOfProject(int projectSnapshotId, Integer lastSnapshotId) {
+    final List<DuplicationUnitDto> blocks = Lists.newArrayList();
+    dao.selectCandidatesOfProject(projectSnapshotId, lastSnapshotId, "java", new ResultHandler() {
+      public void handleResult(ResultContext context) {
+        blocks.add((DuplicationUnitDto) context.getResultObject());
+      }
+    });
+    return blocks;
+  }
+
   @Test
-  public void shouldInsert() throws Exception {
+  public void should_insert_in_batch_session() throws Exception {
     setupData("shouldInsert");
 
-    dao.insert(Arrays.asList(new DuplicationUnitDto(1, 2, "bb", 0, 1, 2)));
+    BatchSession session = getMyBatis().openBatchSession(1);
+    try {
+      dao.insert(session, Arrays.asList(new DuplicationUnitDto(1, 2, "bb", 0, 1, 2)));
+      session.commit();
+    } finally {
+      MyBatis.closeQuietly(session);
+    }
 
     checkTables("shouldInsert", "duplications_index");
   }
@@ -23,12 +23,14 @@ package org.sonar.core.issue.db;
 import com.google.common.base.Function;
 import com.google.common.collect.Iterables;
 import org.apache.ibatis.executor.result.DefaultResultHandler;
+import org.apache.ibatis.session.SqlSession;
 import org.junit.Before;
 import org.junit.Test;
 import org.sonar.api.issue.IssueQuery;
 import org.sonar.api.rule.RuleKey;
 import org.sonar.api.utils.DateUtils;
 import org.sonar.core.persistence.AbstractDaoTestCase;
+import org.sonar.core.persistence.MyBatis;
 
 import java.util.List;
 
@@ -84,7 +86,7 @@ public class IssueDaoTest extends AbstractDaoTestCase {
 
     IssueQuery query = IssueQuery.builder().requiredRole("user").build();
 
-    List<IssueDto> results = dao.selectIssueIds(query);
+    List<IssueDto> results = dao.selectSortedIssueIds(query, 0, 100);
     assertThat(results).hasSize(3);
     IssueDto issue = results.get(0);
     assertThat(issue.getId()).isNotNull();
@@ -96,7 +98,7 @@ public class IssueDaoTest extends AbstractDaoTestCase {
 
     IssueQuery query = IssueQuery.builder().requiredRole(null).build();
 
-    List<IssueDto> results = dao.selectIssueIds(query);
+    List<IssueDto> results = dao.selectSortedIssueIds(query, 0, 100);
     assertThat(results).hasSize(3);
     IssueDto issue = results.get(0);
     assertThat(issue.getId()).isNotNull();
@@ -107,13 +109,13 @@ public class IssueDaoTest extends AbstractDaoTestCase {
     setupData("shared", "should_select_by_rules");
 
     IssueQuery query = IssueQuery.builder().rules(newArrayList(RuleKey.of("squid", "AvoidCycle"))).requiredRole("user").build();
-    assertThat(dao.selectIssueIds(query)).hasSize(2);
+    assertThat(dao.selectSortedIssueIds(query, 0, 100)).hasSize(2);
 
     query = IssueQuery.builder().rules(newArrayList(RuleKey.of("squid", "AvoidCycle"), RuleKey.of("squid", "NullRef"))).requiredRole("user").build();
-    assertThat(dao.selectIssueIds(query)).hasSize(3);
+    assertThat(dao.selectSortedIssueIds(query, 0, 100)).hasSize(3);
 
     query = IssueQuery.builder().rules(newArrayList(RuleKey.of("squid", "Other"))).requiredRole("user").build();
-    assertThat(dao.selectIssueIds(query)).isEmpty();
+    assertThat(dao.selectSortedIssueIds(query, 0, 100)).isEmpty();
   }
 
   @Test
@@ -122,29 +124,29 @@ public class IssueDaoTest extends AbstractDaoTestCase {
 
     // created after, strictly
     IssueQuery query = IssueQuery.builder().createdAfter(DateUtils.parseDate("2013-04-15")).build();
-    assertThat(dao.selectIssueIds(query)).hasSize(1);
-    assertThat(dao.selectIssueIds(query).get(0).getId()).isEqualTo(100L);
+    assertThat(dao.selectSortedIssueIds(query, 0, 100)).hasSize(1);
+    assertThat(dao.selectSortedIssueIds(query, 0, 100).get(0).getId()).isEqualTo(100L);
 
     query = IssueQuery.builder().createdAfter(DateUtils.parseDate("2022-01-01")).build();
-    assertThat(dao.selectIssueIds(query)).isEmpty();
+    assertThat(dao.selectSortedIssueIds(query, 0, 100)).isEmpty();
 
 
     // created at a given date
     query = IssueQuery.builder().createdAt(DateUtils.parseDate("2013-04-16")).build();
-    assertThat(dao.selectIssueIds(query)).hasSize(1);
-    assertThat(dao.selectIssueIds(query).get(0).getId()).isEqualTo(100L);
+    assertThat(dao.selectSortedIssueIds(query, 0, 100)).hasSize(1);
+    assertThat(dao.selectSortedIssueIds(query, 0, 100).get(0).getId()).isEqualTo(100L);
 
     query = IssueQuery.builder().createdAt(DateUtils.parseDate("2010-01-01")).build();
-    assertThat(dao.selectIssueIds(query)).isEmpty();
+    assertThat(dao.selectSortedIssueIds(query, 0, 100)).isEmpty();
 
 
     // created before
     query = IssueQuery.builder().createdBefore(DateUtils.parseDate("2013-04-14")).build();
-    assertThat(dao.selectIssueIds(query)).hasSize(1);
-    assertThat(dao.selectIssueIds(query).get(0).getId()).isEqualTo(101L);
+    assertThat(dao.selectSortedIssueIds(query, 0, 100)).hasSize(1);
+    assertThat(dao.selectSortedIssueIds(query, 0, 100).get(0).getId()).isEqualTo(101L);
 
     query = IssueQuery.builder().createdBefore(DateUtils.parseDate("2010-01-01")).build();
-    assertThat(dao.selectIssueIds(query)).isEmpty();
+    assertThat(dao.selectSortedIssueIds(query, 0, 100)).isEmpty();
   }
 
   @Test
@@ -152,21 +154,21 @@ public class IssueDaoTest extends AbstractDaoTestCase {
     setupData("shared", "should_select_by_component");
 
     IssueQuery query = IssueQuery.builder().components(newArrayList("Action.java")).requiredRole("user").build();
-    List<IssueDto> issues = newArrayList(dao.selectIssueIds(query));
+    List<IssueDto> issues = newArrayList(dao.selectSortedIssueIds(query, 0, 100));
     assertThat(issues).hasSize(1);
     assertThat(issues.get(0).getId()).isEqualTo(100);
 
     query = IssueQuery.builder().components(newArrayList("Filter.java")).requiredRole("user").build();
-    issues = newArrayList(dao.selectIssueIds(query));
+    issues = newArrayList(dao.selectSortedIssueIds(query, 0, 100));
     assertThat(issues).hasSize(1);
     assertThat(issues.get(0).getId()).isEqualTo(101);
 
     query = IssueQuery.builder().components(newArrayList("struts-core")).requiredRole("user").build();
-    issues = newArrayList(dao.selectIssueIds(query));
+    issues = newArrayList(dao.selectSortedIssueIds(query, 0, 100));
     assertThat(issues).isEmpty();
 
     query = IssueQuery.builder().components(newArrayList("struts")).requiredRole("user").build();
-    issues = newArrayList(dao.selectIssueIds(query));
+    issues = newArrayList(dao.selectSortedIssueIds(query, 0, 100));
     assertThat(issues).isEmpty();
   }
 
@@ -175,22 +177,22 @@ public class IssueDaoTest extends AbstractDaoTestCase {
     setupData("shared", "should_select_by_component_root");
 
     IssueQuery query = IssueQuery.builder().componentRoots(newArrayList("struts")).requiredRole("user").build();
-    List<IssueDto> issues = newArrayList(dao.selectIssueIds(query));
+    List<IssueDto> issues = newArrayList(dao.selectSortedIssueIds(query, 0, 100));
     assertThat(issues).hasSize(2);
     assertThat(getIssueIds(issues)).containsOnly(100l, 101l);
 
     query = IssueQuery.builder().componentRoots(newArrayList("struts-core")).requiredRole("user").build();
-    issues = newArrayList(dao.selectIssueIds(query));
+    issues = newArrayList(dao.selectSortedIssueIds(query, 0, 100));
     assertThat(issues).hasSize(2);
     assertThat(getIssueIds(issues)).containsOnly(100l, 101l);
 
     query = IssueQuery.builder().componentRoots(newArrayList("Filter.java")).requiredRole("user").build();
-    issues = newArrayList(dao.selectIssueIds(query));
+    issues = newArrayList(dao.selectSortedIssueIds(query, 0, 100));
     assertThat(issues).hasSize(1);
     assertThat(issues.get(0).getId()).isEqualTo(101);
 
     query = IssueQuery.builder().componentRoots(newArrayList("not-found")).requiredRole("user").build();
-    issues = newArrayList(dao.selectIssueIds(query));
+    issues = newArrayList(dao.selectSortedIssueIds(query, 0, 100));
     assertThat(issues).isEmpty();
   }
 
@@ -199,15 +201,15 @@ public class IssueDaoTest extends AbstractDaoTestCase {
     setupData("shared", "should_select_by_assigned");
 
     IssueQuery query = IssueQuery.builder().assigned(true).requiredRole("user").build();
-    List<IssueDto> issues = newArrayList(dao.selectIssueIds(query));
+    List<IssueDto> issues = newArrayList(dao.selectSortedIssueIds(query, 0, 100));
     assertThat(issues).hasSize(2);
 
     query = IssueQuery.builder().assigned(false).requiredRole("user").build();
-    issues = newArrayList(dao.selectIssueIds(query));
+    issues = newArrayList(dao.selectSortedIssueIds(query, 0, 100));
     assertThat(issues).hasSize(1);
 
     query = IssueQuery.builder().assigned(null).requiredRole("user").build();
-    issues = newArrayList(dao.selectIssueIds(query));
+    issues = newArrayList(dao.selectSortedIssueIds(query, 0, 100));
     assertThat(issues).hasSize(3);
   }
 
@@ -216,15 +218,15 @@ public class IssueDaoTest extends AbstractDaoTestCase {
     setupData("shared", "should_select_by_planned");
 
     IssueQuery query = IssueQuery.builder().planned(true).requiredRole("user").build();
-    List<IssueDto> issues = newArrayList(dao.selectIssueIds(query));
+    List<IssueDto> issues = newArrayList(dao.selectSortedIssueIds(query, 0, 100));
     assertThat(issues).hasSize(2);
 
     query = IssueQuery.builder().planned(false).requiredRole("user").build();
-    issues = newArrayList(dao.selectIssueIds(query));
+    issues = newArrayList(dao.selectSortedIssueIds(query, 0, 100));
     assertThat(issues).hasSize(1);
 
     query = IssueQuery.builder().planned(null).requiredRole("user").build();
-    issues = newArrayList(dao.selectIssueIds(query));
+    issues = newArrayList(dao.selectSortedIssueIds(query, 0, 100));
     assertThat(issues).hasSize(3);
   }
 
@@ -233,15 +235,15 @@ public class IssueDaoTest extends AbstractDaoTestCase {
     setupData("shared", "should_select_by_resolved");
 
     IssueQuery query = IssueQuery.builder().resolved(true).requiredRole("user").build();
-    List<IssueDto> issues = newArrayList(dao.selectIssueIds(query));
+    List<IssueDto> issues = newArrayList(dao.selectSortedIssueIds(query, 0, 100));
     assertThat(issues).hasSize(2);
 
     query = IssueQuery.builder().resolved(false).requiredRole("user").build();
-    issues = newArrayList(dao.selectIssueIds(query));
+    issues = newArrayList(dao.selectSortedIssueIds(query, 0, 100));
     assertThat(issues).hasSize(1);
 
     query = IssueQuery.builder().resolved(null).requiredRole("user").build();
-    issues = newArrayList(dao.selectIssueIds(query));
+    issues = newArrayList(dao.selectSortedIssueIds(query, 0, 100));
     assertThat(issues).hasSize(3);
   }
 
@@ -250,13 +252,13 @@ public class IssueDaoTest extends AbstractDaoTestCase {
     setupData("shared", "should_select_by_action_plans");
 
     IssueQuery query = IssueQuery.builder().actionPlans(newArrayList("ABC")).requiredRole("user").build();
-    assertThat(dao.selectIssueIds(query)).hasSize(2);
+    assertThat(dao.selectSortedIssueIds(query, 0, 100)).hasSize(2);
 
     query = IssueQuery.builder().actionPlans(newArrayList("ABC", "DEF")).requiredRole("user").build();
-    assertThat(dao.selectIssueIds(query)).hasSize(3);
+    assertThat(dao.selectSortedIssueIds(query, 0, 100)).hasSize(3);
 
     query = IssueQuery.builder().actionPlans(newArrayList("<Unkown>")).requiredRole("user").build();
-    assertThat(dao.selectIssueIds(query)).isEmpty();
+    assertThat(dao.selectSortedIssueIds(query, 0, 100)).isEmpty();
   }
 
   @Test
@@ -264,11 +266,16 @@ public class IssueDaoTest extends AbstractDaoTestCase {
     setupData("should_select_issues_for_authorized_projects");
 
     IssueQuery query = IssueQuery.builder().requiredRole("user").build();
-    List<IssueDto> results = dao.selectIssueIds(query, 100, 10);
-    assertThat(results).hasSize(2);
-
-    results = dao.selectIssueIds(query, null, 10);
-    assertThat(results).isEmpty();
+    SqlSession session = getMyBatis().openSession();
+    try {
+      List<IssueDto> results = dao.selectSortedIssueIds(query, 100, 0, 10, session);
+      assertThat(results).hasSize(2);
+
+      results = dao.selectSortedIssueIds(query, null, 0, 10, session);
+      assertThat(results).isEmpty();
+    } finally {
+      MyBatis.closeQuietly(session);
+    }
   }
 
   @Test
@@ -276,39 +283,10 @@ public class IssueDaoTest extends AbstractDaoTestCase {
     setupData("shared", "should_select_issues_return_limited_results");
 
     IssueQuery query = IssueQuery.builder().requiredRole("user").build();
-    List<IssueDto> results = dao.selectIssueIds(query, null, 2);
+    List<IssueDto> results = dao.selectSortedIssueIds(query, 0, 2);
     assertThat(results).hasSize(2);
   }
 
-  @Test
-  public void should_select_issues_with_sort_column() {
-    setupData("shared", "should_select_issues_with_sort_column");
-
-    IssueQuery query = IssueQuery.builder().sort(IssueQuery.SORT_BY_ASSIGNEE).requiredRole("user").build();
-    List<IssueDto> results = dao.selectIssueIds(query);
-    assertThat(results.get(0).getAssignee()).isNotNull();
-
-    query = IssueQuery.builder().sort(IssueQuery.SORT_BY_SEVERITY).requiredRole("user").build();
-    results = dao.selectIssueIds(query);
-    assertThat(results.get(0).getSeverity()).isNotNull();
-
-    query = IssueQuery.builder().sort(IssueQuery.SORT_BY_STATUS).requiredRole("user").build();
-    results = dao.selectIssueIds(query);
-    assertThat(results.get(0).getStatus()).isNotNull();
-
-    query = IssueQuery.builder().sort(IssueQuery.SORT_BY_CREATION_DATE).requiredRole("user").build();
-    results = dao.selectIssueIds(query);
-    assertThat(results.get(0).getIssueCreationDate()).isNotNull();
-
-    query = IssueQuery.builder().sort(IssueQuery.SORT_BY_UPDATE_DATE).requiredRole("user").build();
-    results = dao.selectIssueIds(query);
-    assertThat(results.get(0).getIssueUpdateDate()).isNotNull();
-
-    query = IssueQuery.builder().sort(IssueQuery.SORT_BY_CLOSE_DATE).requiredRole("user").build();
-    results = dao.selectIssueIds(query);
-    assertThat(results.get(0).getIssueCloseDate()).isNotNull();
-  }
-
   @Test
   public void should_select_non_closed_issues_by_module() {
     setupData("shared", "should_select_non_closed_issues_by_module");
@@ -322,6 +300,11 @@ public class IssueDaoTest extends AbstractDaoTestCase {
     assertThat(issue.getRuleRepo()).isNotNull();
     assertThat(issue.getRule()).isNotNull();
     assertThat(issue.getComponentKey()).isNotNull();
+    assertThat(issue.getKee()).isNotNull();
+    assertThat(issue.getStatus()).isNotNull();
+    // technical fields are not needed by issue tracking
+    assertThat(issue.getId()).isNull();
+    assertThat(issue.getCreatedAt()).isNull();
 
     // 399 is the root module, we should only find 1 issue on itself
     handler = new DefaultResultHandler();
@@ -388,6 +371,75 @@ public class IssueDaoTest extends AbstractDaoTestCase {
     assertThat(issue.getRootComponentKey()).isEqualTo("struts");
   }
 
+  @Test
+  public void should_count_issues() {
+    setupData("shared", "should_select_returned_sorted_result_by_assignee");
+
+    assertThat(dao.countIssues(IssueQuery.builder().requiredRole("user").build())).isEqualTo(3);
+    assertThat(dao.countIssues(IssueQuery.builder().components(newArrayList("Filter.java")).requiredRole("user").build())).isEqualTo(0);
+  }
+
+  @Test
+  public void should_select_sorted_issue_ids_by_assignee() {
+    setupData("shared", "should_select_returned_sorted_result_by_assignee");
+
+    IssueQuery query = IssueQuery.builder().sort(IssueQuery.SORT_BY_ASSIGNEE).asc(true).requiredRole("user").build();
+    assertThat(getIssueIds(dao.selectSortedIssueIds(query, 0, 10))).containsExactly(100l, 102l, 101l);
+
+    query = IssueQuery.builder().sort(IssueQuery.SORT_BY_ASSIGNEE).asc(false).requiredRole("user").build();
+    assertThat(getIssueIds(dao.selectSortedIssueIds(query, 0, 10))).containsExactly(101l, 102l, 100l);
+  }
+
+  @Test
+  public void should_select_sorted_issue_ids_by_severity() {
+    setupData("shared", "should_select_returned_sorted_result_by_severity");
+
+    IssueQuery query = IssueQuery.builder().sort(IssueQuery.SORT_BY_SEVERITY).asc(false).requiredRole("user").build();
+    assertThat(getIssueIds(dao.selectSortedIssueIds(query, 0, 10))).containsExactly(101l, 102l, 100l);
+  }
+
+  @Test
+  public void should_select_sorted_issue_ids_by_status() {
+    setupData("shared", "should_select_returned_sorted_result_by_status");
+
+    IssueQuery query = IssueQuery.builder().sort(IssueQuery.SORT_BY_STATUS).asc(true).requiredRole("user").build();
+    assertThat(getIssueIds(dao.selectSortedIssueIds(query, 0, 10))).containsExactly(101l, 100l, 102l);
+  }
+
+  @Test
+  public void should_select_sorted_issue_ids_by_creation_date() {
+    setupData("shared", "should_select_returned_sorted_result_by_creation_date");
+
+    IssueQuery query = IssueQuery.builder().sort(IssueQuery.SORT_BY_CREATION_DATE).asc(true).requiredRole("user").build();
+    assertThat(getIssueIds(dao.selectSortedIssueIds(query, 0, 10))).containsExactly(101l, 100l, 102l);
+  }
+
+  @Test
+  public void should_select_sorted_issue_ids_by_update_date() {
+    setupData("shared", "should_select_returned_sorted_result_by_update_date");
+
+    IssueQuery query = IssueQuery.builder().sort(IssueQuery.SORT_BY_UPDATE_DATE).asc(false).requiredRole("user").build();
+    assertThat(getIssueIds(dao.selectSortedIssueIds(query, 0, 10))).containsExactly(102l, 100l, 101l);
+  }
+
+  @Test
+  public void should_select_sorted_issue_ids_by_close_date() {
+    setupData("shared", "should_select_returned_sorted_result_by_close_date");
+
+    IssueQuery query = IssueQuery.builder().sort(IssueQuery.SORT_BY_CLOSE_DATE).asc(true).requiredRole("user").build();
+    assertThat(getIssueIds(dao.selectSortedIssueIds(query, 0, 10))).containsExactly(101l, 100l, 102l);
+  }
+
+  @Test
+  public void should_select_page_of_sorted_issue_ids() {
+    setupData("shared", "should_select_returned_sorted_result_by_assignee");
+
+    IssueQuery query = IssueQuery.builder().sort(IssueQuery.SORT_BY_ASSIGNEE).asc(true).requiredRole("user").build();
+    assertThat(getIssueIds(dao.selectSortedIssueIds(query, 0, 2))).containsExactly(100l, 102l);
+    assertThat(getIssueIds(dao.selectSortedIssueIds(query, 2, 2))).containsExactly(101l);
+    assertThat(dao.selectSortedIssueIds(query, 4, 2)).isEmpty();
+  }
+
   private List<Long> getIssueIds(List<IssueDto> issues) {
     return newArrayList(Iterables.transform(issues, new Function<IssueDto, Long>() {
       @Override
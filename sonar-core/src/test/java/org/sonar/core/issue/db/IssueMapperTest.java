@@ -27,6 +27,8 @@ import org.sonar.api.utils.DateUtils;
 import org.sonar.core.persistence.AbstractDaoTestCase;
 import org.sonar.core.persistence.MyBatis;
 
+import java.util.Arrays;
+
 import static org.fest.assertions.Assertions.assertThat;
 
 public class IssueMapperTest extends AbstractDaoTestCase {
@@ -188,4 +190,16 @@ public class IssueMapperTest extends AbstractDaoTestCase {
 
     checkTables("updateBeforeSelectedDate_with_conflict", new String[]{"id"}, "issues");
   }
+
+  @Test
+  public void selectKeysNotUpdatedBetween() throws Exception {
+    setupData("testUpdate");
+
+    assertThat(mapper.selectKeysNotUpdatedBetween(Arrays.asList("ABCDE", "UNKNOWN"),
+      DateUtils.parseDate("2013-05-22"), DateUtils.parseDate("2013-05-23"))).containsOnly("ABCDE");
+    assertThat(mapper.selectKeysNotUpdatedBetween(Arrays.asList("ABCDE", "UNKNOWN"),
+      DateUtils.parseDate("2009-01-01"), DateUtils.parseDate("2009-01-02"))).isEmpty();
+    assertThat(mapper.selectKeysNotUpdatedBetween(Arrays.asList("ABCDE", "UNKNOWN"),
+      DateUtils.parseDate("2008-12-31"), DateUtils.parseDate("2009-01-01"))).isEmpty();
+  }
 }
@@ -0,0 +1,130 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2013 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.core.measure;
+
+import com.google.common.collect.ImmutableMap;
+import org.junit.Before;
+import org.junit.Test;
+import org.sonar.api.CoreProperties;
+import org.sonar.api.config.Settings;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class MeasureFilterCacheTest {
+
+  MeasureFilterDao dao = mock(MeasureFilterDao.class);
+  List<MeasureFilterRow> rows = Arrays.asList(new MeasureFilterRow(1L, 2L, 2L));
+
+  @Before
+  public void before() {
+    when(dao.selectLastAnalysesVersion()).thenReturn("10-1");
+  }
+
+  @Test
+  public void should_get_cached_rows() {
+    MeasureFilterCache cache = new MeasureFilterCache(dao, 10, 0L);
+
+    assertThat(cache.get("foo")).isNull();
+    cache.put("foo", rows);
+
+    assertThat(cache.get("foo")).isEqualTo(rows);
+    assertThat(cache.statistics().hits()).isEqualTo(1L);
+    assertThat(cache.statistics().misses()).isEqualTo(1L);
+  }
+
+  @Test
+  public void should_clear_on_new_analysis() {
+    MeasureFilterCache cache = new MeasureFilterCache(dao, 10, 0L);
+    cache.put("foo", rows);
+
+    when(dao.selectLastAnalysesVersion()).thenReturn("12-2");
+
+    assertThat(cache.get("foo")).isNull();
+    assertThat(cache.statistics().invalidations()).isEqualTo(1L);
+  }
+
+  @Test
+  public void should_not_check_version_before_interval() {
+    MeasureFilterCache cache = new MeasureFilterCache(dao, 10, 60000L);
+    cache.put("foo", rows);
+    when(dao.selectLastAnalysesVersion()).thenReturn("12-2");
+
+    assertThat(cache.get("foo")).isEqualTo(rows);
+    verify(dao, times(1)).selectLastAnalysesVersion();
+  }
+
+  @Test
+  public void should_evict_least_recently_used_entries() {
+    MeasureFilterCache cache = new MeasureFilterCache(dao, 2, 0L);
+    cache.put("foo", rows);
+    cache.put("bar", rows);
+    cache.get("foo");
+    cache.put("baz", rows);
+
+    assertThat(cache.size()).isEqualTo(2);
+    assertThat(cache.get("bar")).isNull();
+    assertThat(cache.get("foo")).isEqualTo(rows);
+    assertThat(cache.statistics().evictions()).isEqualTo(1L);
+  }
+
+  @Test
+  public void should_be_disabled() {
+    Settings settings = new Settings().setProperty(CoreProperties.MEASURE_FILTER_CACHE_SIZE, 0);
+    MeasureFilterCache cache = new MeasureFilterCache(settings, dao);
+    cache.put("foo", rows);
+
+    assertThat(cache.get("foo")).isNull();
+    assertThat(cache.size()).isEqualTo(0);
+  }
+
+  @Test
+  public void should_not_cache_favourites() {
+    Map<String, Object> filterMap = ImmutableMap.of("onFavourites", (Object) "true");
+
+    assertThat(MeasureFilterCache.key(filterMap, new MeasureFilter().setUserFavourites(true))).isNull();
+  }
+
+  @Test
+  public void key_should_not_depend_on_property_order() {
+    Map<String, Object> filterMap1 = ImmutableMap.of("qualifiers", (Object) "TRK", "sort", "name");
+    Map<String, Object> filterMap2 = ImmutableMap.of("sort", (Object) "name", "qualifiers", "TRK");
+
+    assertThat(MeasureFilterCache.key(filterMap1, new MeasureFilter())).isEqualTo(MeasureFilterCache.key(filterMap2, new MeasureFilter()));
+  }
+
+  @Test
+  public void key_should_contain_dates() {
+    Map<String, Object> filterMap = ImmutableMap.of("ageMaxDays", (Object) "3");
+
+    String key = MeasureFilterCache.key(filterMap, new MeasureFilter().setFromDate(new Date(1000L)));
+    String nextDayKey = MeasureFilterCache.key(filterMap, new MeasureFilter().setFromDate(new Date(2000L)));
+
+    assertThat(key).isNotEqualTo(nextDayKey);
+  }
+}
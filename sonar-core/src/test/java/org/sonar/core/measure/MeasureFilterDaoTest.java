@@ -65,4 +65,11 @@ public class MeasureFilterDaoTest extends AbstractDaoTestCase {
 
     checkTables("shouldInsert", new String[]{"created_at", "updated_at"}, "measure_filters");
   }
+
+  @Test
+  public void should_select_last_analyses_version() {
+    setupData("last_analyses");
+
+    assertThat(dao.selectLastAnalysesVersion()).isEqualTo("20-2");
+  }
 }
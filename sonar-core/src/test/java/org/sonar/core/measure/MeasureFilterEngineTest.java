@@ -25,6 +25,8 @@ import org.hamcrest.Description;
 import org.junit.Test;
 import org.slf4j.Logger;
 
+import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
 
 import static org.fest.assertions.Assertions.assertThat;
@@ -43,7 +45,7 @@ public class MeasureFilterEngineTest {
     Logger logger = mock(Logger.class);
     when(logger.isDebugEnabled()).thenReturn(true);
 
-    MeasureFilterEngine engine = new MeasureFilterEngine(factory, executor);
+    MeasureFilterEngine engine = new MeasureFilterEngine(factory, executor, disabledCache());
 
     final long userId = 50L;
     engine.execute(filterMap, userId, logger);
@@ -66,11 +68,36 @@ public class MeasureFilterEngineTest {
     when(factory.create(filterMap)).thenThrow(new IllegalArgumentException());
     MeasureFilterExecutor executor = mock(MeasureFilterExecutor.class);
 
-    MeasureFilterEngine engine = new MeasureFilterEngine(factory, executor);
+    MeasureFilterEngine engine = new MeasureFilterEngine(factory, executor, disabledCache());
     MeasureFilterResult result = engine.execute(filterMap, 50L);
 
     assertThat(result.isSuccess()).isFalse();
     assertThat(result.getError()).isEqualTo(MeasureFilterResult.Error.UNKNOWN);
     assertThat(result.getRows()).isNull();
   }
+
+  @Test
+  public void should_execute_filter_once_until_new_analysis() throws Exception {
+    Map<String, Object> filterMap = ImmutableMap.of("qualifiers", (Object) "TRK");
+    MeasureFilterFactory factory = mock(MeasureFilterFactory.class);
+    when(factory.create(filterMap)).thenReturn(new MeasureFilter().setResourceQualifiers(Arrays.asList("TRK")));
+    MeasureFilterExecutor executor = mock(MeasureFilterExecutor.class);
+    List<MeasureFilterRow> rows = Arrays.asList(new MeasureFilterRow(1L, 2L, 2L));
+    when(executor.execute(any(MeasureFilter.class), any(MeasureFilterContext.class))).thenReturn(rows);
+    MeasureFilterDao dao = mock(MeasureFilterDao.class);
+    when(dao.selectLastAnalysesVersion()).thenReturn("10-1");
+
+    MeasureFilterEngine engine = new MeasureFilterEngine(factory, executor, new MeasureFilterCache(dao, 10, 0L));
+    assertThat(engine.execute(filterMap, 50L).getRows()).hasSize(1);
+    assertThat(engine.execute(filterMap, 51L).getRows()).hasSize(1);
+    verify(executor, times(1)).execute(any(MeasureFilter.class), any(MeasureFilterContext.class));
+
+    when(dao.selectLastAnalysesVersion()).thenReturn("20-2");
+    assertThat(engine.execute(filterMap, 50L).getRows()).hasSize(1);
+    verify(executor, times(2)).execute(any(MeasureFilter.class), any(MeasureFilterContext.class));
+  }
+
+  private static MeasureFilterCache disabledCache() {
+    return new MeasureFilterCache(mock(MeasureFilterDao.class), 0, 0L);
+  }
 }
@@ -26,6 +26,8 @@ import org.junit.Test;
 import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 import org.sonar.api.notifications.Notification;
 import org.sonar.api.notifications.NotificationChannel;
 import org.sonar.api.notifications.NotificationDispatcher;
@@ -36,13 +38,17 @@ import org.sonar.jpa.test.AbstractDbUnitTestCase;
 
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
 import static org.fest.assertions.Assertions.assertThat;
 import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.only;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -105,6 +111,32 @@ public class DefaultNotificationManagerTest extends AbstractDbUnitTestCase {
     inOrder.verify(notificationQueueDao).delete(dtos);
   }
 
+  @Test
+  public void should_get_batch_from_queue_and_delete() throws Exception {
+    List<NotificationQueueDto> dtos = Arrays.asList(
+      NotificationQueueDto.toNotificationQueueDto(new Notification("first")),
+      NotificationQueueDto.toNotificationQueueDto(new Notification("second")));
+    when(notificationQueueDao.findOldest(10)).thenReturn(dtos);
+
+    List<Notification> notifications = manager.getFromQueue(10);
+
+    assertThat(notifications).hasSize(2);
+    assertThat(notifications.get(0).getType()).isEqualTo("first");
+    assertThat(notifications.get(1).getType()).isEqualTo("second");
+    InOrder inOrder = inOrder(notificationQueueDao);
+    inOrder.verify(notificationQueueDao).findOldest(10);
+    inOrder.verify(notificationQueueDao).delete(dtos);
+  }
+
+  @Test
+  public void should_not_delete_if_queue_is_empty() throws Exception {
+    when(notificationQueueDao.findOldest(10)).thenReturn(Collections.<NotificationQueueDto>emptyList());
+
+    assertThat(manager.getFromQueue(10)).isEmpty();
+    assertThat(manager.getFromQueue()).isNull();
+    verify(notificationQueueDao, never()).delete(any(List.class));
+  }
+
   @Test
   public void shouldFindNoRecipient() {
     assertThat(manager.findSubscribedRecipientsForDispatcher(dispatcher, 45).asMap().entrySet()).hasSize(0);
@@ -159,4 +191,70 @@ public class DefaultNotificationManagerTest extends AbstractDbUnitTestCase {
     assertThat(map.get("user2")).containsOnly(emailChannel, twitterChannel);
     assertThat(map.get("other")).isNull();
   }
+
+  @Test
+  public void should_cache_subscribers() {
+    when(propertiesDao.findUsersForNotification("NewViolations", "Email", 45L)).thenReturn(Lists.newArrayList("user1"));
+
+    manager.findSubscribedRecipientsForDispatcher(dispatcher, 45);
+    Multimap<String, NotificationChannel> multiMap = manager.findSubscribedRecipientsForDispatcher(dispatcher, 45);
+
+    assertThat(multiMap.get("user1")).containsOnly(emailChannel);
+    verify(propertiesDao, times(1)).findUsersForNotification("NewViolations", "Email", 45L);
+    verify(propertiesDao, times(1)).findUsersForNotification("NewViolations", "Email", null);
+  }
+
+  @Test
+  public void should_cache_subscribers_by_component_key() {
+    when(propertiesDao.findNotificationSubscribers("NewViolations", "Email", "struts")).thenReturn(Lists.newArrayList("user1"));
+
+    manager.findNotificationSubscribers(dispatcher, "struts");
+    manager.findNotificationSubscribers(dispatcher, "struts");
+    manager.findNotificationSubscribers(dispatcher, "other");
+
+    verify(propertiesDao, times(1)).findNotificationSubscribers("NewViolations", "Email", "struts");
+    verify(propertiesDao, times(1)).findNotificationSubscribers("NewViolations", "Email", "other");
+  }
+
+  @Test
+  public void should_reload_subscribers_when_cache_is_cleared() {
+    when(propertiesDao.findUsersForNotification("NewViolations", "Email", 45L)).thenReturn(Lists.newArrayList("user1"));
+    manager.findSubscribedRecipientsForDispatcher(dispatcher, 45);
+
+    when(propertiesDao.findUsersForNotification("NewViolations", "Email", 45L)).thenReturn(Lists.newArrayList("user2"));
+    manager.clearSubscribersCache();
+    Multimap<String, NotificationChannel> multiMap = manager.findSubscribedRecipientsForDispatcher(dispatcher, 45);
+
+    assertThat(multiMap.keySet()).containsOnly("user2");
+    verify(propertiesDao, times(2)).findUsersForNotification("NewViolations", "Email", 45L);
+  }
+
+  @Test
+  public void should_not_cache_subscribers_loaded_while_cache_is_cleared() {
+    // the notification properties are changed while the subscribers are being loaded
+    when(propertiesDao.findUsersForNotification("NewViolations", "Email", 45L)).thenAnswer(new Answer<List<String>>() {
+      public List<String> answer(InvocationOnMock invocation) {
+        manager.clearSubscribersCache();
+        return Lists.newArrayList("user1");
+      }
+    }).thenReturn(Lists.newArrayList("user2"));
+
+    manager.findSubscribedRecipientsForDispatcher(dispatcher, 45);
+    Multimap<String, NotificationChannel> multiMap = manager.findSubscribedRecipientsForDispatcher(dispatcher, 45);
+
+    assertThat(multiMap.keySet()).containsOnly("user2");
+  }
+
+  @Test
+  public void should_reload_subscribers_when_cache_expires() {
+    manager = spy(manager);
+    when(manager.now()).thenReturn(1000000L);
+    manager.findSubscribedRecipientsForDispatcher(dispatcher, 45);
+    manager.findSubscribedRecipientsForDispatcher(dispatcher, 45);
+    verify(propertiesDao, times(1)).findUsersForNotification("NewViolations", "Email", 45L);
+
+    when(manager.now()).thenReturn(1000000L + DefaultNotificationManager.SUBSCRIBERS_CACHE_TTL_MS);
+    manager.findSubscribedRecipientsForDispatcher(dispatcher, 45);
+    verify(propertiesDao, times(2)).findUsersForNotification("NewViolations", "Email", 45L);
+  }
 }
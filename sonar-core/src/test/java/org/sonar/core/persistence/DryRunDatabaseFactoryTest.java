@@ -84,6 +84,22 @@ public class DryRunDatabaseFactoryTest extends AbstractDaoTestCase {
     assertThat(rowCount("events")).isEqualTo(2);
   }
 
+  @Test
+  public void should_create_database_of_project_from_global_database() throws IOException, SQLException {
+    setupData("should_create_database");
+
+    File globalDb = localDatabaseFactory.createNewDatabaseForDryRun(null, temporaryFolder.newFolder(), "global");
+    File projectDb = localDatabaseFactory.createNewDatabaseForDryRun(123L, globalDb, temporaryFolder.newFolder(), "foo");
+    dataSource = createDatabase(FileUtils.readFileToByteArray(projectDb));
+
+    assertThat(rowCount("metrics")).isEqualTo(2);
+    assertThat(rowCount("alerts")).isEqualTo(1);
+    assertThat(rowCount("projects")).isEqualTo(1);
+    assertThat(rowCount("snapshots")).isEqualTo(1);
+    assertThat(rowCount("project_measures")).isEqualTo(1);
+    assertThat(rowCount("events")).isEqualTo(2);
+  }
+
   @Test
   public void should_create_database_with_issues() throws IOException, SQLException {
     setupData("should_create_database_with_issues");
@@ -103,8 +119,8 @@ public class DryRunDatabaseFactoryTest extends AbstractDaoTestCase {
     dataSource = createDatabase(database);
     assertThat(rowCount("issues")).isEqualTo(1);
     assertThat(rowCount("projects")).isEqualTo(4);
-    assertThat(rowCount("snapshots")).isEqualTo(4);
-    assertThat(rowCount("snapshot_data")).isEqualTo(2);
+    assertThat(rowCount("snapshots")).isEqualTo(5);
+    assertThat(rowCount("snapshot_data")).isEqualTo(3);
     assertThat(rowCount("project_measures")).isEqualTo(4);
   }
 
@@ -117,7 +133,8 @@ public class DryRunDatabaseFactoryTest extends AbstractDaoTestCase {
     dataSource = createDatabase(database);
     assertThat(rowCount("issues")).isEqualTo(1);
     assertThat(rowCount("projects")).isEqualTo(2);
-    assertThat(rowCount("snapshots")).isEqualTo(2);
+    // snapshots of the sub module, plus the last snapshot of its file having line hashes
+    assertThat(rowCount("snapshots")).isEqualTo(3);
     assertThat(rowCount("project_measures")).isEqualTo(4);
   }
 
@@ -192,6 +192,25 @@ public class PropertiesDaoTest extends AbstractDaoTestCase {
     checkTables("deleteAllProperties", "properties");
   }
 
+  @Test
+  public void deleteProjectProperty() {
+    setupData("deleteProjectProperty");
+
+    dao.deleteProjectProperty("to_be_deleted", 10L);
+
+    checkTables("deleteProjectProperty", "properties");
+  }
+
+  @Test
+  public void selectResourcePropertiesByKey() {
+    setupData("deleteProjectProperty");
+
+    List<PropertyDto> properties = dao.selectResourcePropertiesByKey("to_be_deleted");
+
+    assertThat(properties).hasSize(2);
+    assertThat(properties).onProperty("resourceId").containsOnly(10L, 11L);
+  }
+
   @Test
   public void insertGlobalProperties() {
     setupData("insertGlobalProperties");
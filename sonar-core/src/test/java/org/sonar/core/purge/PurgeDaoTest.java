@@ -63,6 +63,20 @@ public class PurgeDaoTest extends AbstractDaoTestCase {
     checkTables("shouldDeleteHistoricalDataOfDirectoriesAndFiles", "projects", "snapshots");
   }
 
+  @Test
+  public void should_purge_analyses_concurrently() {
+    setupData("should_purge_analyses_concurrently");
+    dao.purge(new PurgeConfiguration(1L, new String[]{Scopes.DIRECTORY, Scopes.FILE}, 30, 4));
+    checkTables("should_purge_analyses_concurrently", "projects", "snapshots");
+  }
+
+  @Test
+  public void should_purge_with_rate_limit() {
+    setupData("shouldDeleteHistoricalDataOfDirectoriesAndFiles");
+    dao.purge(new PurgeConfiguration(1L, new String[]{Scopes.DIRECTORY, Scopes.FILE}, 30, 1, 10000));
+    checkTables("shouldDeleteHistoricalDataOfDirectoriesAndFiles", "projects", "snapshots");
+  }
+
   @Test
   public void shouldDisableResourcesWithoutLastSnapshot() {
     setupData("shouldDisableResourcesWithoutLastSnapshot");
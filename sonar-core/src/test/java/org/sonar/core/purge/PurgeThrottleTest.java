@@ -0,0 +1,89 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2013 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.core.purge;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class PurgeThrottleTest {
+  @Test
+  public void should_not_wait_if_disabled() {
+    PurgeThrottle throttle = new PurgeThrottle(0);
+
+    assertThat(throttle.isEnabled()).isFalse();
+    assertThat(throttle.reserve(1000, 0L)).isEqualTo(0L);
+    assertThat(throttle.reserve(1000, 0L)).isEqualTo(0L);
+  }
+
+  @Test
+  public void should_spread_snapshots_over_time() {
+    PurgeThrottle throttle = new PurgeThrottle(100);
+
+    // first request is immediate, next ones wait for the previous ones
+    assertThat(throttle.reserve(200, 10000L)).isEqualTo(0L);
+    assertThat(throttle.reserve(50, 10000L)).isEqualTo(2000L);
+    assertThat(throttle.reserve(10, 11000L)).isEqualTo(1500L);
+  }
+
+  @Test
+  public void should_not_accumulate_credit_when_idle() {
+    PurgeThrottle throttle = new PurgeThrottle(100);
+
+    assertThat(throttle.reserve(100, 10000L)).isEqualTo(0L);
+    assertThat(throttle.reserve(100, 60000L)).isEqualTo(0L);
+    assertThat(throttle.reserve(100, 60000L)).isEqualTo(1000L);
+  }
+
+  @Test
+  public void should_ignore_empty_requests() {
+    PurgeThrottle throttle = new PurgeThrottle(10);
+
+    assertThat(throttle.reserve(0, 10000L)).isEqualTo(0L);
+    assertThat(throttle.reserve(10, 10000L)).isEqualTo(0L);
+  }
+
+  @Test
+  public void should_split_snapshots_in_groups_of_one_second() {
+    PurgeThrottle throttle = new PurgeThrottle(2);
+
+    List<List<Long>> groups = throttle.partition(Arrays.asList(1L, 2L, 3L, 4L, 5L));
+
+    assertThat(groups).hasSize(3);
+    assertThat(groups.get(0)).containsExactly(1L, 2L);
+    assertThat(groups.get(1)).containsExactly(3L, 4L);
+    assertThat(groups.get(2)).containsExactly(5L);
+    assertThat(throttle.partition(Collections.<Long>emptyList())).isEmpty();
+  }
+
+  @Test
+  public void should_not_split_snapshots_if_disabled() {
+    PurgeThrottle throttle = new PurgeThrottle(0);
+
+    List<List<Long>> groups = throttle.partition(Arrays.asList(1L, 2L, 3L));
+
+    assertThat(groups).hasSize(1);
+    assertThat(groups.get(0)).containsExactly(1L, 2L, 3L);
+  }
+}
@@ -0,0 +1,141 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2013 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.core.resource;
+
+import com.google.common.collect.Sets;
+import org.junit.Before;
+import org.junit.Test;
+import org.sonar.core.persistence.AbstractDaoTestCase;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class ResourceSearchIndexTest extends AbstractDaoTestCase {
+
+  ResourceSearchIndex index;
+
+  @Before
+  public void setUp() {
+    index = new ResourceSearchIndex(getMyBatis(), 0L);
+  }
+
+  @Test
+  public void should_load_index_at_startup() {
+    setupData("shared");
+
+    index.start();
+
+    // packages and resources without snapshot are not indexed
+    assertThat(index.size()).isEqualTo(6);
+  }
+
+  @Test
+  public void should_search_names_containing_text() {
+    setupData("shared");
+    index.start();
+
+    List<ResourceIndexDto> results = index.search("Struts");
+    assertThat(results).onProperty("resourceId").containsExactly(1L, 2L);
+    assertThat(results.get(1).getRootProjectId()).isEqualTo(1L);
+    assertThat(results.get(1).getQualifier()).isEqualTo("BRC");
+    assertThat(results.get(1).getNameSize()).isEqualTo(11);
+
+    results = index.search("CONTEXT");
+    assertThat(results).onProperty("resourceId").containsExactly(4L);
+    assertThat(results.get(0).getKey()).isEqualTo("requestcontext");
+    assertThat(results.get(0).getPosition()).isEqualTo(7);
+
+    assertThat(index.search("org.struts")).isEmpty();
+    assertThat(index.search("unknown")).isEmpty();
+  }
+
+  @Test
+  public void should_search_two_letters() {
+    setupData("shared");
+    index.start();
+
+    assertThat(index.search("ab")).onProperty("resourceId").containsExactly(5L);
+    // like with the table RESOURCE_INDEX, two letters at the end of the name do not match
+    assertThat(index.search("ts")).onProperty("resourceId").containsExactly(2L);
+  }
+
+  @Test
+  public void should_not_search_less_than_two_letters() {
+    setupData("shared");
+    index.start();
+
+    assertThat(index.search("a")).isEmpty();
+    assertThat(index.search("")).isEmpty();
+    assertThat(index.search(null)).isEmpty();
+  }
+
+  @Test
+  public void should_index_again_projects_with_new_analyses() {
+    setupData("shared");
+    index.start();
+
+    setupData("after_analysis");
+
+    assertThat(index.search("struts")).isEmpty();
+    assertThat(index.search("stringutils")).isEmpty();
+    assertThat(index.search("stringhelper")).onProperty("resourceId").containsExactly(11L);
+    assertThat(index.size()).isEqualTo(2);
+  }
+
+  @Test
+  public void should_index_resource() {
+    setupData("shared");
+    index.start();
+    assertThat(index.search("view")).isEmpty();
+
+    index.indexResource(20L);
+
+    assertThat(index.search("view")).onProperty("resourceId").containsExactly(20L);
+  }
+
+  @Test
+  public void should_index_project() {
+    index = new ResourceSearchIndex(getMyBatis(), Long.MAX_VALUE);
+    setupData("shared");
+    index.start();
+    setupData("after_analysis");
+
+    index.indexProject(1L);
+
+    assertThat(index.search("struts")).isEmpty();
+    assertThat(index.search("stringutils")).onProperty("resourceId").containsExactly(11L);
+  }
+
+  @Test
+  public void should_split_trigrams() {
+    assertThat(ResourceSearchIndex.trigrams("struts")).containsOnly("str", "tru", "rut", "uts");
+    assertThat(ResourceSearchIndex.trigrams("aaaa")).containsOnly("aaa");
+    assertThat(ResourceSearchIndex.trigrams("ab")).isEmpty();
+  }
+
+  @Test
+  public void should_merge_postings() {
+    assertThat(ResourceSearchIndex.merge(null, null, Arrays.asList(5, 1, 3))).isEqualTo(new int[] {1, 3, 5});
+    assertThat(ResourceSearchIndex.merge(new int[] {1, 3, 5}, Sets.newHashSet(3), Arrays.asList(2, 5))).isEqualTo(new int[] {1, 2, 5});
+    assertThat(ResourceSearchIndex.merge(new int[] {1}, Sets.newHashSet(1), null)).isEmpty();
+  }
+}
@@ -21,11 +21,14 @@
 package org.sonar.core.source.jdbc;
 
 import com.google.common.collect.Lists;
+import org.apache.ibatis.session.ResultContext;
+import org.apache.ibatis.session.ResultHandler;
 import org.junit.Before;
 import org.junit.Test;
 import org.sonar.core.persistence.AbstractDaoTestCase;
 
 import java.util.Collection;
+import java.util.List;
 
 import static org.fest.assertions.Assertions.assertThat;
 
@@ -69,4 +72,20 @@ public class SnapshotDataDaoTest extends AbstractDaoTestCase {
     assertThat(serializedData).onProperty("dataType").containsOnly(dataType);
     assertThat(serializedData).onProperty("data").containsOnly(data);
   }
+
+  @Test
+  public void should_stream_last_snapshot_data_of_project() throws Exception {
+    final List<SnapshotDataDto> data = Lists.newArrayList();
+
+    dao.selectLastSnapshotDataOfProject(1L, "line_hashes", new ResultHandler() {
+      public void handleResult(ResultContext context) {
+        data.add((SnapshotDataDto) context.getResultObject());
+      }
+    });
+
+    assertThat(data).hasSize(1);
+    assertThat(data.get(0).getResourceId()).isEqualTo(2L);
+    assertThat(data.get(0).getSnapshotId()).isEqualTo(21L);
+    assertThat(data.get(0).getData()).isEqualTo("a,b,c");
+  }
 }
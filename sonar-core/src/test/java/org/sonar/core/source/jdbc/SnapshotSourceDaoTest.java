@@ -20,10 +20,17 @@
 
 package org.sonar.core.source.jdbc;
 
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.apache.ibatis.session.ResultContext;
+import org.apache.ibatis.session.ResultHandler;
 import org.junit.Before;
 import org.junit.Test;
 import org.sonar.core.persistence.AbstractDaoTestCase;
 
+import java.util.List;
+import java.util.Map;
+
 import static org.fest.assertions.Assertions.assertThat;
 
 public class SnapshotSourceDaoTest extends AbstractDaoTestCase {
@@ -31,16 +38,47 @@ public class SnapshotSourceDaoTest extends AbstractDaoTestCase {
   private SnapshotSourceDao dao;
 
   @Before
-  public void setUpTestData() {
+  public void setUp() {
     dao = new SnapshotSourceDao(getMyBatis());
-    setupData("shared");
   }
 
   @Test
   public void should_retrieve_snapshot_source() throws Exception {
+    setupData("shared");
 
     String snapshotSource = dao.selectSnapshotSource(10L);
 
     assertThat(snapshotSource).isEqualTo("public class Foo {public Foo(){}}");
   }
+
+  @Test
+  public void should_stream_last_sources_of_project() throws Exception {
+    setupData("last_snapshot_sources");
+    final Map<String, String> sources = Maps.newHashMap();
+
+    dao.selectLastSnapshotSourcesOfProject(1L, null, new ResultHandler() {
+      public void handleResult(ResultContext context) {
+        SnapshotSourceDto dto = (SnapshotSourceDto) context.getResultObject();
+        sources.put(dto.getResourceKey(), dto.getData());
+      }
+    });
+
+    assertThat(sources).hasSize(2);
+    assertThat(sources.get("struts:Foo.java")).isEqualTo("foo");
+    assertThat(sources.get("struts:Bar.java")).isEqualTo("bar");
+  }
+
+  @Test
+  public void should_not_stream_sources_of_resources_having_data() throws Exception {
+    setupData("last_snapshot_sources");
+    final List<String> keys = Lists.newArrayList();
+
+    dao.selectLastSnapshotSourcesOfProject(1L, "line_hashes", new ResultHandler() {
+      public void handleResult(ResultContext context) {
+        keys.add(((SnapshotSourceDto) context.getResultObject()).getResourceKey());
+      }
+    });
+
+    assertThat(keys).containsOnly("struts:Bar.java");
+  }
 }
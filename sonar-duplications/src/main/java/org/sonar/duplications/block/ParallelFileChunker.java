@@ -0,0 +1,157 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2013 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.duplications.block;
+
+import com.google.common.io.Closeables;
+import org.sonar.duplications.DuplicationsException;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Chunks files into blocks on a pool of threads.
+ * <p>
+ * Files are read and chunked by the workers, each worker using its own {@link Chunker}, because chunkers are not thread-safe.
+ * Blocks are handed over to the {@link Callback} on the calling thread and in the order of files, so that insertion
+ * into an index does not need to be thread-safe. The number of files which are chunked, but not yet consumed,
+ * is bounded in order to limit memory consumption.
+ * </p>
+ *
+ * @since 4.0
+ */
+public class ParallelFileChunker {
+
+  public interface Chunker {
+    List<Block> chunk(String resourceId, Reader reader);
+  }
+
+  public interface ChunkerFactory {
+    Chunker create();
+  }
+
+  public interface Callback {
+    /**
+     * Executed on the calling thread before the file is submitted to the workers.
+     */
+    String getResourceId(File file);
+
+    /**
+     * Executed on the calling thread, in the order of files.
+     */
+    void onBlocks(File file, List<Block> blocks);
+  }
+
+  private final ChunkerFactory chunkerFactory;
+  private final Charset charset;
+  private final int threads;
+
+  private final ThreadLocal<Chunker> chunkers = new ThreadLocal<Chunker>() {
+    @Override
+    protected Chunker initialValue() {
+      return chunkerFactory.create();
+    }
+  };
+
+  public ParallelFileChunker(ChunkerFactory chunkerFactory, Charset charset, int threads) {
+    this.chunkerFactory = chunkerFactory;
+    this.charset = charset;
+    this.threads = Math.max(1, threads);
+  }
+
+  public void chunk(List<File> files, Callback callback) {
+    ExecutorService executorService = Executors.newFixedThreadPool(threads);
+    try {
+      Deque<Chunking> pending = new ArrayDeque<Chunking>();
+      for (File file : files) {
+        String resourceId = callback.getResourceId(file);
+        pending.addLast(new Chunking(file, executorService.submit(new Task(file, resourceId))));
+        if (pending.size() >= 2 * threads) {
+          consume(pending.removeFirst(), callback);
+        }
+      }
+      while (!pending.isEmpty()) {
+        consume(pending.removeFirst(), callback);
+      }
+    } finally {
+      executorService.shutdownNow();
+    }
+  }
+
+  private static void consume(Chunking chunking, Callback callback) {
+    List<Block> blocks;
+    try {
+      blocks = chunking.blocks.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new DuplicationsException("Interrupted during chunking of " + chunking.file, e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new DuplicationsException("Fail to chunk " + chunking.file, e.getCause());
+    }
+    callback.onBlocks(chunking.file, blocks);
+  }
+
+  private class Task implements Callable<List<Block>> {
+    private final File file;
+    private final String resourceId;
+
+    Task(File file, String resourceId) {
+      this.file = file;
+      this.resourceId = resourceId;
+    }
+
+    public List<Block> call() {
+      Reader reader = null;
+      try {
+        reader = new InputStreamReader(new FileInputStream(file), charset);
+        return chunkers.get().chunk(resourceId, reader);
+      } catch (FileNotFoundException e) {
+        throw new DuplicationsException("Cannot find file " + file, e);
+      } finally {
+        Closeables.closeQuietly(reader);
+      }
+    }
+  }
+
+  private static class Chunking {
+    private final File file;
+    private final Future<List<Block>> blocks;
+
+    Chunking(File file, Future<List<Block>> blocks) {
+      this.file = file;
+      this.blocks = blocks;
+    }
+  }
+
+}
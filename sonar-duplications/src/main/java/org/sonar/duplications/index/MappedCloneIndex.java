@@ -0,0 +1,369 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2013 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.duplications.index;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.io.Closeables;
+import org.sonar.duplications.DuplicationsException;
+import org.sonar.duplications.block.Block;
+import org.sonar.duplications.block.ByteArray;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Same as {@link PackedMemoryCloneIndex}, but blocks are stored outside of the Java heap, in a memory-mapped file.
+ * Only the list of resource ids is kept on heap.
+ * <p>
+ * The file contains the blocks, followed by the positions of blocks sorted by resource. As blocks are stored at the
+ * beginning of the file, there is no need to copy them when capacity is increased: a larger region of the file is mapped.
+ * </p>
+ * <p>
+ * Queries do not modify the index, so they can be executed concurrently once all blocks have been inserted.
+ * The file is deleted by {@link #close()}.
+ * </p>
+ *
+ * @since 4.0
+ */
+public class MappedCloneIndex extends AbstractCloneIndex implements Closeable {
+
+  private static final int DEFAULT_INITIAL_CAPACITY = 16384;
+
+  /**
+   * Resource, index in file, first line, last line, start unit and end unit.
+   */
+  private static final int BLOCK_INTS = 6;
+
+  private final int hashInts;
+
+  private final int blockInts;
+
+  private final File file;
+  private final RandomAccessFile randomAccessFile;
+
+  private volatile boolean sorted;
+
+  private int size;
+  private int capacity;
+
+  private IntBuffer blockData;
+  private IntBuffer resourceIdsIndex;
+
+  private final List<String> resourceIds = Lists.newArrayList();
+  private final Map<String, Integer> resourceIndexes = Maps.newHashMap();
+
+  public MappedCloneIndex(File file) {
+    this(file, 8, DEFAULT_INITIAL_CAPACITY);
+  }
+
+  /**
+   * @param file the file to map, which is created if it does not exist
+   * @param hashBytes size of hash in bytes
+   * @param initialCapacity the initial capacity
+   */
+  public MappedCloneIndex(File file, int hashBytes, int initialCapacity) {
+    this.file = file;
+    this.hashInts = hashBytes / 4;
+    this.blockInts = hashInts + BLOCK_INTS;
+    try {
+      File dir = file.getAbsoluteFile().getParentFile();
+      if (!dir.isDirectory() && !dir.mkdirs()) {
+        throw new IOException("Unable to create directory " + dir);
+      }
+      this.randomAccessFile = new RandomAccessFile(file, "rw");
+    } catch (IOException e) {
+      throw new DuplicationsException("Unable to create index file " + file, e);
+    }
+    map(Math.max(1, initialCapacity));
+  }
+
+  /**
+   * {@inheritDoc}
+   * <p>
+   * <strong>Note that this implementation does not guarantee that blocks would be sorted by index.</strong>
+   * </p>
+   */
+  public Collection<Block> getByResourceId(String resourceId) {
+    ensureSorted();
+
+    Integer resourceIndex = resourceIndexes.get(resourceId);
+    if (resourceIndex == null) {
+      return Collections.emptyList();
+    }
+    int index = searchByResource(resourceIndex);
+
+    Block.Builder blockBuilder = Block.builder();
+    List<Block> result = Lists.newArrayList();
+    while (index < size && resourceOf(resourceIdsIndex.get(index)) == resourceIndex) {
+      int offset = resourceIdsIndex.get(index) * blockInts;
+      int[] hash = new int[hashInts];
+      for (int j = 0; j < hashInts; j++) {
+        hash[j] = blockData.get(offset++);
+      }
+      result.add(readBlock(blockBuilder, offset + 1, resourceId, new ByteArray(hash)));
+      index++;
+    }
+    return result;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  public Collection<Block> getBySequenceHash(ByteArray sequenceHash) {
+    ensureSorted();
+
+    int[] hash = sequenceHash.toIntArray();
+    if (hash.length != hashInts) {
+      throw new IllegalArgumentException("Expected " + hashInts + " ints in hash, but got " + hash.length);
+    }
+    int index = searchByHash(hash);
+
+    Block.Builder blockBuilder = Block.builder();
+    List<Block> result = Lists.newArrayList();
+    while (index < size && compareHash(index, hash) == 0) {
+      String resourceId = resourceIds.get(resourceOf(index));
+      result.add(readBlock(blockBuilder, index * blockInts + hashInts + 1, resourceId, sequenceHash));
+      index++;
+    }
+    return result;
+  }
+
+  private Block readBlock(Block.Builder blockBuilder, int offset, String resourceId, ByteArray hash) {
+    int indexInFile = blockData.get(offset++);
+    int firstLineNumber = blockData.get(offset++);
+    int lastLineNumber = blockData.get(offset++);
+    int startUnit = blockData.get(offset++);
+    int endUnit = blockData.get(offset);
+    return blockBuilder
+        .setResourceId(resourceId)
+        .setBlockHash(hash)
+        .setIndexInFile(indexInFile)
+        .setLines(firstLineNumber, lastLineNumber)
+        .setUnit(startUnit, endUnit)
+        .build();
+  }
+
+  /**
+   * {@inheritDoc}
+   * <p>
+   * <strong>Note that this implementation allows insertion of two blocks with same index for one resource.</strong>
+   * </p>
+   */
+  public synchronized void insert(Block block) {
+    sorted = false;
+    if (size == capacity) {
+      map((capacity * 3) / 2 + 1);
+    }
+
+    int[] hash = block.getBlockHash().toIntArray();
+    if (hash.length != hashInts) {
+      throw new IllegalArgumentException("Expected " + hashInts + " ints in hash, but got " + hash.length);
+    }
+    int offset = size * blockInts;
+    for (int i = 0; i < hashInts; i++) {
+      blockData.put(offset++, hash[i]);
+    }
+    blockData.put(offset++, resourceIndex(block.getResourceId()));
+    blockData.put(offset++, block.getIndexInFile());
+    blockData.put(offset++, block.getStartLine());
+    blockData.put(offset++, block.getEndLine());
+    blockData.put(offset++, block.getStartUnit());
+    blockData.put(offset, block.getEndUnit());
+
+    size++;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Releases the file. Index can not be used anymore.
+   */
+  public synchronized void close() {
+    blockData = null;
+    resourceIdsIndex = null;
+    Closeables.closeQuietly(randomAccessFile);
+    if (!file.delete()) {
+      // the mapping is released only when buffer is garbage collected, which can prevent deletion on some platforms
+      file.deleteOnExit();
+    }
+  }
+
+  private int resourceIndex(String resourceId) {
+    Integer index = resourceIndexes.get(resourceId);
+    if (index == null) {
+      index = resourceIds.size();
+      resourceIds.add(resourceId);
+      resourceIndexes.put(resourceId, index);
+    }
+    return index;
+  }
+
+  private void map(int newCapacity) {
+    try {
+      long blocksBytes = (long) newCapacity * blockInts * 4;
+      long bytes = blocksBytes + (long) newCapacity * 4;
+      if (bytes > Integer.MAX_VALUE) {
+        throw new DuplicationsException("Index file " + file + " can not contain more than " + (Integer.MAX_VALUE / ((blockInts + 1) * 4)) + " blocks");
+      }
+      ByteBuffer buffer = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, bytes);
+      buffer.limit((int) blocksBytes);
+      blockData = buffer.slice().order(ByteOrder.nativeOrder()).asIntBuffer();
+      buffer.limit((int) bytes).position((int) blocksBytes);
+      resourceIdsIndex = buffer.slice().order(ByteOrder.nativeOrder()).asIntBuffer();
+      capacity = newCapacity;
+      sorted = false;
+    } catch (IOException e) {
+      throw new DuplicationsException("Unable to map index file " + file, e);
+    }
+  }
+
+  /**
+   * Performs sorting, if necessary.
+   */
+  private void ensureSorted() {
+    if (!sorted) {
+      sort();
+    }
+  }
+
+  private synchronized void sort() {
+    if (sorted) {
+      return;
+    }
+    DataUtils.sort(byBlockHash);
+    for (int i = 0; i < size; i++) {
+      resourceIdsIndex.put(i, i);
+    }
+    DataUtils.sort(byResourceId);
+    sorted = true;
+  }
+
+  private int resourceOf(int i) {
+    return blockData.get(i * blockInts + hashInts);
+  }
+
+  private int searchByResource(int resourceIndex) {
+    int lower = 0;
+    int upper = size;
+    while (lower < upper) {
+      int mid = (lower + upper) >>> 1;
+      if (resourceOf(resourceIdsIndex.get(mid)) < resourceIndex) {
+        lower = mid + 1;
+      } else {
+        upper = mid;
+      }
+    }
+    return lower;
+  }
+
+  private int searchByHash(int[] hash) {
+    int lower = 0;
+    int upper = size;
+    while (lower < upper) {
+      int mid = (lower + upper) >>> 1;
+      if (compareHash(mid, hash) < 0) {
+        lower = mid + 1;
+      } else {
+        upper = mid;
+      }
+    }
+    return lower;
+  }
+
+  private int compareHash(int i, int[] hash) {
+    int offset = i * blockInts;
+    for (int k = 0; k < hashInts; k++, offset++) {
+      int value = blockData.get(offset);
+      if (value < hash[k]) {
+        return -1;
+      }
+      if (value > hash[k]) {
+        return 1;
+      }
+    }
+    return 0;
+  }
+
+  private boolean isLessByHash(int i, int j) {
+    i *= blockInts;
+    j *= blockInts;
+    for (int k = 0; k < hashInts; k++, i++, j++) {
+      int x = blockData.get(i);
+      int y = blockData.get(j);
+      if (x < y) {
+        return true;
+      }
+      if (x > y) {
+        return false;
+      }
+    }
+    return false;
+  }
+
+  private final DataUtils.Sortable byBlockHash = new DataUtils.Sortable() {
+    public void swap(int i, int j) {
+      i *= blockInts;
+      j *= blockInts;
+      for (int k = 0; k < blockInts; k++, i++, j++) {
+        int x = blockData.get(i);
+        blockData.put(i, blockData.get(j));
+        blockData.put(j, x);
+      }
+    }
+
+    public boolean isLess(int i, int j) {
+      return isLessByHash(i, j);
+    }
+
+    public int size() {
+      return size;
+    }
+  };
+
+  private final DataUtils.Sortable byResourceId = new DataUtils.Sortable() {
+    public void swap(int i, int j) {
+      int tmp = resourceIdsIndex.get(i);
+      resourceIdsIndex.put(i, resourceIdsIndex.get(j));
+      resourceIdsIndex.put(j, tmp);
+    }
+
+    public boolean isLess(int i, int j) {
+      return resourceOf(resourceIdsIndex.get(i)) < resourceOf(resourceIdsIndex.get(j));
+    }
+
+    public int size() {
+      return size;
+    }
+  };
+
+}
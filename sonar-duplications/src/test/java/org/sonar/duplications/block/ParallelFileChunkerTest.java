@@ -0,0 +1,92 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2013 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.duplications.block;
+
+import com.google.common.collect.Lists;
+import org.junit.Test;
+import org.sonar.duplications.DuplicationsException;
+import org.sonar.duplications.java.JavaStatementBuilder;
+import org.sonar.duplications.java.JavaTokenProducer;
+import org.sonar.duplications.statement.StatementChunker;
+import org.sonar.duplications.token.TokenChunker;
+
+import java.io.File;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class ParallelFileChunkerTest {
+
+  private static final Charset UTF8 = Charset.forName("UTF-8");
+
+  @Test
+  public void should_consume_blocks_in_order_of_files() {
+    List<File> files = Lists.newArrayList();
+    for (int i = 0; i < 20; i++) {
+      files.add(new File("src/test/files/java/MessageResources.java"));
+      files.add(new File("src/test/files/java/RequestUtils.java"));
+    }
+    RecordingCallback sequential = new RecordingCallback();
+    new ParallelFileChunker(new JavaChunkerFactory(), UTF8, 1).chunk(files, sequential);
+    RecordingCallback parallel = new RecordingCallback();
+    new ParallelFileChunker(new JavaChunkerFactory(), UTF8, 4).chunk(files, parallel);
+
+    assertThat(parallel.files).isEqualTo(files);
+    assertThat(parallel.blocks).hasSize(files.size());
+    assertThat(parallel.blocks.get(0)).isNotEmpty();
+    assertThat(parallel.blocks).isEqualTo(sequential.blocks);
+  }
+
+  @Test(expected = DuplicationsException.class)
+  public void should_fail_if_file_does_not_exist() {
+    new ParallelFileChunker(new JavaChunkerFactory(), UTF8, 2).chunk(Arrays.asList(new File("src/test/files/java/Unknown.java")), new RecordingCallback());
+  }
+
+  static class JavaChunkerFactory implements ParallelFileChunker.ChunkerFactory {
+    public ParallelFileChunker.Chunker create() {
+      final TokenChunker tokenChunker = JavaTokenProducer.build();
+      final StatementChunker statementChunker = JavaStatementBuilder.build();
+      final BlockChunker blockChunker = new BlockChunker(10);
+      return new ParallelFileChunker.Chunker() {
+        public List<Block> chunk(String resourceId, Reader reader) {
+          return blockChunker.chunk(resourceId, statementChunker.chunk(tokenChunker.chunk(reader)));
+        }
+      };
+    }
+  }
+
+  static class RecordingCallback implements ParallelFileChunker.Callback {
+    List<File> files = Lists.newArrayList();
+    List<List<Block>> blocks = Lists.newArrayList();
+
+    public String getResourceId(File file) {
+      return file.getName();
+    }
+
+    public void onBlocks(File file, List<Block> fileBlocks) {
+      files.add(file);
+      blocks.add(fileBlocks);
+    }
+  }
+
+}
@@ -0,0 +1,130 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2013 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.duplications.index;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sonar.duplications.block.Block;
+import org.sonar.duplications.block.ByteArray;
+
+import java.io.File;
+import java.util.Collection;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class MappedCloneIndexTest {
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  private File file;
+  private MappedCloneIndex index;
+
+  @Before
+  public void setUp() throws Exception {
+    file = new File(temp.getRoot(), "cpd.idx");
+    index = new MappedCloneIndex(file, 8, 2);
+  }
+
+  @After
+  public void tearDown() {
+    index.close();
+  }
+
+  @Test
+  public void should_find_blocks_by_hash_and_by_resource() {
+    index.insert(newBlock("a", 1, 1));
+    index.insert(newBlock("a", 2, 2));
+    index.insert(newBlock("b", 1, 1));
+    index.insert(newBlock("c", 1, 1));
+    index.insert(newBlock("d", 1, 1));
+    index.insert(newBlock("e", 1, 1));
+    index.insert(newBlock("e", 2, 2));
+    index.insert(newBlock("e", 3, 3));
+
+    assertThat(index.size()).isEqualTo(8);
+    assertThat(index.getBySequenceHash(new ByteArray(1L))).hasSize(5);
+    assertThat(index.getBySequenceHash(new ByteArray(2L))).hasSize(2);
+    assertThat(index.getBySequenceHash(new ByteArray(3L))).hasSize(1);
+    assertThat(index.getBySequenceHash(new ByteArray(4L))).isEmpty();
+    assertThat(index.getByResourceId("a")).hasSize(2);
+    assertThat(index.getByResourceId("b")).hasSize(1);
+    assertThat(index.getByResourceId("e")).hasSize(3);
+    assertThat(index.getByResourceId("does not exist")).isEmpty();
+  }
+
+  @Test
+  public void should_return_same_blocks_as_heap_index() {
+    PackedMemoryCloneIndex heap = new PackedMemoryCloneIndex();
+    for (int i = 0; i < 1000; i++) {
+      Block block = newBlock("r" + (i % 7), i % 13, i);
+      index.insert(block);
+      heap.insert(block);
+    }
+
+    for (int hash = 0; hash < 14; hash++) {
+      ByteArray requestedHash = new ByteArray((long) hash);
+      Collection<Block> blocks = index.getBySequenceHash(requestedHash);
+      assertThat(blocks).hasSize(heap.getBySequenceHash(requestedHash).size());
+      assertThat(blocks).containsOnly(heap.getBySequenceHash(requestedHash).toArray());
+      for (Block block : blocks) {
+        assertThat(block.getBlockHash()).isSameAs(requestedHash);
+      }
+    }
+    for (int resource = 0; resource < 7; resource++) {
+      Collection<Block> blocks = index.getByResourceId("r" + resource);
+      assertThat(blocks).hasSize(heap.getByResourceId("r" + resource).size());
+      assertThat(blocks).containsOnly(heap.getByResourceId("r" + resource).toArray());
+    }
+  }
+
+  @Test
+  public void should_delete_file_on_close() {
+    index.insert(newBlock("a", 1, 1));
+    assertThat(file).exists();
+
+    index.close();
+    assertThat(file).doesNotExist();
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void attempt_to_insert_hash_of_incorrect_size() {
+    MappedCloneIndex index = new MappedCloneIndex(new File(temp.getRoot(), "other.idx"), 4, 1);
+    try {
+      index.insert(newBlock("a", 1, 1));
+    } finally {
+      index.close();
+    }
+  }
+
+  private static Block newBlock(String resourceId, long hash, int indexInFile) {
+    return Block.builder()
+        .setResourceId(resourceId)
+        .setBlockHash(new ByteArray(hash))
+        .setIndexInFile(indexInFile)
+        .setLines(1, 2)
+        .setUnit(indexInFile, indexInFile + 3)
+        .build();
+  }
+
+}
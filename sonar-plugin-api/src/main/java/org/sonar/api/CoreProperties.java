@@ -348,6 +348,46 @@ public interface CoreProperties {
    */
   String CPD_EXCLUSIONS = "sonar.cpd.exclusions";
 
+  /**
+   * Number of threads used to index files and to detect duplications.
+   *
+   * @since 4.0
+   */
+  String CPD_THREADS = "sonar.cpd.threads";
+
+  /**
+   * @see #CPD_THREADS
+   * @since 4.0
+   */
+  int CPD_THREADS_DEFAULT_VALUE = 1;
+
+  /**
+   * Whether the blocks of the analysed module are stored in a memory-mapped file of the working directory
+   * instead of the heap.
+   *
+   * @since 4.0
+   */
+  String CPD_MAPPED_INDEX = "sonar.cpd.mappedIndex";
+
+  /**
+   * @see #CPD_MAPPED_INDEX
+   * @since 4.0
+   */
+  boolean CPD_MAPPED_INDEX_DEFAULT_VALUE = false;
+
+  /**
+   * Number of blocks sent to the database in a single JDBC batch when cross-project detection is enabled.
+   *
+   * @since 4.0
+   */
+  String CPD_FLUSH_SIZE = "sonar.cpd.flushSize";
+
+  /**
+   * @see #CPD_FLUSH_SIZE
+   * @since 4.0
+   */
+  int CPD_FLUSH_SIZE_DEFAULT_VALUE = 1000;
+
   /* Design */
 
   /**
@@ -474,4 +514,54 @@ public interface CoreProperties {
    * @since 4.0
    */
   String PARTIAL_ANALYSIS = "sonar.partialAnalysis";
+
+  /**
+   * Number of threads used to execute decorators. Values lower than 2 disable the parallel decoration.
+   *
+   * @see org.sonar.api.batch.ConcurrentDecorator
+   * @since 4.0
+   */
+  String DECORATORS_THREADS = "sonar.decorators.threads";
+
+  /**
+   * Whether the numeric measures without rule, characteristic nor person are stored as primitive values during analysis.
+   * In that case, measures returned by the index are new objects which must be saved again when they are modified.
+   *
+   * @since 4.0
+   */
+  String INDEX_COMPACT_MEASURES = "sonar.index.compactMeasures";
+
+  /**
+   * Size in megabytes of the memory used by the batch caches before swapping to disk. By default it is
+   * a fraction of the maximum heap, see {@link #BATCH_CACHE_MEMORY_DEFAULT_HEAP_RATIO}.
+   *
+   * @since 4.0
+   */
+  String BATCH_CACHE_MEMORY = "sonar.batch.cache.memory";
+
+  /**
+   * The default memory of batch caches is the maximum heap divided by this value.
+   *
+   * @since 4.0
+   */
+  int BATCH_CACHE_MEMORY_DEFAULT_HEAP_RATIO = 16;
+
+  /**
+   * Maximum size in megabytes of the temporary files of the batch caches. Not limited by default.
+   *
+   * @since 4.0
+   */
+  String BATCH_CACHE_MAX_SIZE = "sonar.batch.cache.maxSize";
+
+  /**
+   * Maximum number of measure filter results kept in memory by the server. The cache is disabled when the value is 0.
+   *
+   * @since 4.0
+   */
+  String MEASURE_FILTER_CACHE_SIZE = "sonar.measureFilter.cache.size";
+
+  /**
+   * @since 4.0
+   */
+  int MEASURE_FILTER_CACHE_SIZE_DEFAULT_VALUE = 500;
 }
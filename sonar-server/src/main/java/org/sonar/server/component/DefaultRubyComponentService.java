@@ -26,6 +26,7 @@ import org.sonar.core.component.ComponentDto;
 import org.sonar.core.resource.ResourceDao;
 import org.sonar.core.resource.ResourceDto;
 import org.sonar.core.resource.ResourceIndexerDao;
+import org.sonar.core.resource.ResourceSearchIndex;
 import org.sonar.server.exceptions.BadRequestException;
 import org.sonar.server.exceptions.NotFoundException;
 import org.sonar.server.util.RubyUtils;
@@ -39,11 +40,14 @@ public class DefaultRubyComponentService implements RubyComponentService {
   private final ResourceDao resourceDao;
   private final DefaultComponentFinder finder;
   private final ResourceIndexerDao resourceIndexerDao;
+  private final ResourceSearchIndex searchIndex;
 
-  public DefaultRubyComponentService(ResourceDao resourceDao, DefaultComponentFinder finder, ResourceIndexerDao resourceIndexerDao) {
+  public DefaultRubyComponentService(ResourceDao resourceDao, DefaultComponentFinder finder, ResourceIndexerDao resourceIndexerDao,
+    ResourceSearchIndex searchIndex) {
     this.resourceDao = resourceDao;
     this.finder = finder;
     this.resourceIndexerDao = resourceIndexerDao;
+    this.searchIndex = searchIndex;
   }
 
   @Override
@@ -70,6 +74,7 @@ public class DefaultRubyComponentService implements RubyComponentService {
       throw new BadRequestException("Resource not created: "+kee);
     }
     resourceIndexerDao.indexResource(component.getId());
+    searchIndex.indexResource(component.getId());
   }
 
   public void updateComponent(Long id, String key, String name) {
@@ -78,6 +83,7 @@ public class DefaultRubyComponentService implements RubyComponentService {
       throw new NotFoundException();
     }
     resourceDao.insertOrUpdate(resource.setKey(key).setName(name));
+    searchIndex.indexResource(id);
   }
 
   public DefaultComponentQueryResult find(Map<String, Object> params) {
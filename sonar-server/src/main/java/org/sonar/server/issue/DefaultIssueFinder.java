@@ -43,6 +43,7 @@ import org.sonar.core.user.AuthorizationDao;
 import org.sonar.server.user.UserSession;
 
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -99,19 +100,19 @@ public class DefaultIssueFinder implements IssueFinder {
     long start = System.currentTimeMillis();
     SqlSession sqlSession = myBatis.openSession();
     try {
-      // 1. Select the authorized ids of all the issues that match the query
-      List<IssueDto> authorizedIssues = issueDao.selectIssueIds(query, UserSession.get().userId(), sqlSession);
-
-      // 2. Sort all authorized issues
-      List<IssueDto> authorizedSortedIssues = sort(authorizedIssues, query, authorizedIssues.size());
-
-      // 3. Apply pagination
-      Paging paging = Paging.create(query.pageSize(), query.pageIndex(), authorizedSortedIssues.size());
-      Set<Long> pagedIssueIds = pagedIssueIds(authorizedSortedIssues, paging);
+      // 1. Count the authorized issues that match the query
+      Integer userId = UserSession.get().userId();
+      int total = issueDao.countIssues(query, userId, sqlSession);
+      Paging paging = Paging.create(query.pageSize(), query.pageIndex(), Math.min(total, query.maxResults()));
+
+      // 2. Select the ids of the requested page. Sort, authorization and pagination are done by the database
+      List<IssueDto> pagedIssueIds = Collections.emptyList();
+      if (paging.offset() < paging.total()) {
+        pagedIssueIds = issueDao.selectSortedIssueIds(query, userId, paging.offset(), paging.pageSize(), sqlSession);
+      }
 
-      // 4. Load issues and their related data (rules, components, projects, comments, action plans, ...) and sort then again
-      List<IssueDto> pagedIssues = issueDao.selectByIds(pagedIssueIds, sqlSession);
-      List<IssueDto> pagedSortedIssues = sort(pagedIssues, query, authorizedIssues.size());
+      // 3. Load issues and their related data (rules, components, projects, comments, action plans, ...), in the order of the page
+      List<IssueDto> pagedSortedIssues = sortAsIds(issueDao.selectByIds(issueIds(pagedIssueIds), sqlSession), pagedIssueIds);
 
       Map<String, DefaultIssue> issuesByKey = newHashMap();
       List<Issue> issues = newArrayList();
@@ -145,7 +146,7 @@ public class DefaultIssueFinder implements IssueFinder {
       }
 
       return new DefaultIssueQueryResult(issues)
-        .setMaxResultsReached(authorizedIssues.size() == query.maxResults())
+        .setMaxResultsReached(total >= query.maxResults())
         .addRules(findRules(ruleIds))
         .addComponents(findComponents(componentIds))
         .addProjects(findComponents(projectIds))
@@ -158,25 +159,27 @@ public class DefaultIssueFinder implements IssueFinder {
     }
   }
 
-  private List<IssueDto> sort(List<IssueDto> issues, IssueQuery query, int allIssuesSize) {
-    if (allIssuesSize < query.maxResults()) {
-      return new IssuesFinderSort(issues, query).sort();
+  private static List<Long> issueIds(List<IssueDto> issues) {
+    List<Long> ids = Lists.newArrayListWithCapacity(issues.size());
+    for (IssueDto issue : issues) {
+      ids.add(issue.getId());
     }
-    return issues;
+    return ids;
   }
 
-  private Set<Long> pagedIssueIds(Collection<IssueDto> issues, Paging paging) {
-    Set<Long> issueIds = Sets.newLinkedHashSet();
-    int index = 0;
+  private static List<IssueDto> sortAsIds(List<IssueDto> issues, List<IssueDto> sortedIds) {
+    Map<Long, IssueDto> issuesById = newHashMap();
     for (IssueDto issue : issues) {
-      if (index >= paging.offset() && issueIds.size() < paging.pageSize()) {
-        issueIds.add(issue.getId());
-      } else if (issueIds.size() >= paging.pageSize()) {
-        break;
+      issuesById.put(issue.getId(), issue);
+    }
+    List<IssueDto> sortedIssues = Lists.newArrayListWithCapacity(sortedIds.size());
+    for (IssueDto sortedId : sortedIds) {
+      IssueDto issue = issuesById.get(sortedId.getId());
+      if (issue != null) {
+        sortedIssues.add(issue);
       }
-      index++;
     }
-    return issueIds;
+    return sortedIssues;
   }
 
   private Collection<Rule> findRules(Set<Integer> ruleIds) {
@@ -20,7 +20,10 @@
 package org.sonar.server.notifications;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.HashMultimap;
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Lists;
 import com.google.common.collect.SetMultimap;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -34,15 +37,31 @@ import org.sonar.api.notifications.NotificationDispatcher;
 import org.sonar.api.utils.TimeProfiler;
 import org.sonar.core.notification.DefaultNotificationManager;
 
+import javax.annotation.CheckForNull;
+
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
+ * Notifications are dequeued by batches. The dispatchers of the notifications of a batch are executed by a pool of threads,
+ * then each channel delivers its messages with its own threads, so that a slow channel does not delay the other ones.
+ * The next batch is dequeued only when all the notifications of the current batch are delivered, so the number of
+ * notifications loaded in memory is bounded. When the service is stopped, the notifications of the current batch which
+ * are not delivered yet are put back in the queue.
+ *
  * @since 2.10
  */
 @Properties({
@@ -57,6 +76,24 @@ import java.util.concurrent.TimeUnit;
     defaultValue = "600",
     name = "Delay before reporting notification status, in seconds",
     project = false,
+    global = false),
+  @Property(
+    key = NotificationService.PROPERTY_BATCH_SIZE,
+    defaultValue = "100",
+    name = "Number of notifications dequeued at once",
+    project = false,
+    global = false),
+  @Property(
+    key = NotificationService.PROPERTY_DISPATCH_THREADS,
+    defaultValue = "2",
+    name = "Number of threads executing the notification dispatchers",
+    project = false,
+    global = false),
+  @Property(
+    key = NotificationService.PROPERTY_THREADS_PER_CHANNEL,
+    defaultValue = "1",
+    name = "Number of threads delivering the notifications of each channel",
+    project = false,
     global = false)
 })
 public class NotificationService implements ServerComponent {
@@ -66,15 +103,40 @@ public class NotificationService implements ServerComponent {
   public static final String PROPERTY_DELAY = "sonar.notifications.delay";
   public static final String PROPERTY_DELAY_BEFORE_REPORTING_STATUS = "sonar.notifications.runningDelayBeforeReportingStatus";
 
+  /**
+   * @since 4.0
+   */
+  public static final String PROPERTY_BATCH_SIZE = "sonar.notifications.batchSize";
+
+  /**
+   * @since 4.0
+   */
+  public static final String PROPERTY_DISPATCH_THREADS = "sonar.notifications.dispatchThreads";
+
+  /**
+   * @since 4.0
+   */
+  public static final String PROPERTY_THREADS_PER_CHANNEL = "sonar.notifications.threadsPerChannel";
+
+  static final int DEFAULT_BATCH_SIZE = 100;
+  static final int DEFAULT_DISPATCH_THREADS = 2;
+  static final int DEFAULT_THREADS_PER_CHANNEL = 1;
+
   private static final TimeProfiler TIME_PROFILER = new TimeProfiler(LOG).setLevelToDebug();
 
   private final long delayInSeconds;
   private final long delayBeforeReportingStatusInSeconds;
+  private final int batchSize;
+  private final int dispatchThreads;
+  private final int threadsPerChannel;
   private final DefaultNotificationManager manager;
   private final NotificationDispatcher[] dispatchers;
+  private final ConcurrentMap<String, ExecutorService> deliveryExecutors = new ConcurrentHashMap<String, ExecutorService>();
+  private final Statistics statistics = new Statistics();
 
   private ScheduledExecutorService executorService;
-  private boolean stopping = false;
+  private ExecutorService dispatchExecutor;
+  private volatile boolean stopping = false;
 
   /**
    * Constructor for {@link NotificationService}
@@ -82,6 +144,9 @@ public class NotificationService implements ServerComponent {
   public NotificationService(Settings settings, DefaultNotificationManager manager, NotificationDispatcher[] dispatchers) {
     delayInSeconds = settings.getLong(PROPERTY_DELAY);
     delayBeforeReportingStatusInSeconds = settings.getLong(PROPERTY_DELAY_BEFORE_REPORTING_STATUS);
+    batchSize = positiveInt(settings, PROPERTY_BATCH_SIZE, DEFAULT_BATCH_SIZE);
+    dispatchThreads = positiveInt(settings, PROPERTY_DISPATCH_THREADS, DEFAULT_DISPATCH_THREADS);
+    threadsPerChannel = positiveInt(settings, PROPERTY_THREADS_PER_CHANNEL, DEFAULT_THREADS_PER_CHANNEL);
     this.manager = manager;
     this.dispatchers = dispatchers;
   }
@@ -94,7 +159,15 @@ public class NotificationService implements ServerComponent {
     LOG.warn("There is no dispatcher - all notifications will be ignored!");
   }
 
+  private static int positiveInt(Settings settings, String key, int defaultValue) {
+    if (settings.hasKey(key)) {
+      return Math.max(1, settings.getInt(key));
+    }
+    return defaultValue;
+  }
+
   public void start() {
+    dispatchExecutor = Executors.newFixedThreadPool(dispatchThreads);
     executorService = Executors.newSingleThreadScheduledExecutor();
     executorService.scheduleWithFixedDelay(new Runnable() {
       public void run() {
@@ -105,20 +178,47 @@ public class NotificationService implements ServerComponent {
         }
       }
     }, 0, delayInSeconds, TimeUnit.SECONDS);
-    LOG.info("Notification service started (delay {} sec.)", delayInSeconds);
+    LOG.info("Notification service started (delay {} sec., batch size {})", delayInSeconds, batchSize);
   }
 
   public void stop() {
     try {
       stopping = true;
       executorService.shutdown();
-      executorService.awaitTermination(5, TimeUnit.SECONDS);
+      if (!executorService.awaitTermination(5, TimeUnit.SECONDS)) {
+        // the pending dispatches and deliveries are cancelled, so that the current batch ends and puts them back in the queue
+        shutdownNow(dispatchExecutor);
+        for (ExecutorService deliveryExecutor : deliveryExecutors.values()) {
+          shutdownNow(deliveryExecutor);
+        }
+        if (!executorService.awaitTermination(5, TimeUnit.SECONDS)) {
+          executorService.shutdownNow();
+        }
+      }
     } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
       LOG.error("Error during stop of notification service", e);
     }
+    shutdownNow(dispatchExecutor);
+    for (ExecutorService deliveryExecutor : deliveryExecutors.values()) {
+      shutdownNow(deliveryExecutor);
+    }
+    deliveryExecutors.clear();
     LOG.info("Notification service stopped");
   }
 
+  /**
+   * Unlike {@link ExecutorService#shutdownNow()} alone, the futures of the tasks which never started are cancelled,
+   * so that no thread waits for them.
+   */
+  private static void shutdownNow(ExecutorService executor) {
+    for (Runnable task : executor.shutdownNow()) {
+      if (task instanceof Future) {
+        ((Future<?>) task).cancel(false);
+      }
+    }
+  }
+
   @VisibleForTesting
   synchronized void processQueue() {
     TIME_PROFILER.start("Processing notifications queue");
@@ -126,21 +226,24 @@ public class NotificationService implements ServerComponent {
     long lastLog = start;
     long notifSentCount = 0;
 
-    Notification notifToSend = manager.getFromQueue();
-    while (notifToSend != null) {
-      deliver(notifToSend);
-      notifSentCount++;
+    List<Notification> notifsToSend = manager.getFromQueue(batchSize);
+    while (!notifsToSend.isEmpty()) {
+      statistics.dequeued.addAndGet(notifsToSend.size());
+      statistics.queueSize.set(manager.count());
+      notifSentCount += deliver(notifsToSend);
       if (stopping) {
         break;
       }
       long now = now();
       if (now - lastLog > delayBeforeReportingStatusInSeconds * 1000) {
-        long remainingNotifCount = manager.count();
         lastLog = now;
         long spentTimeInMinutes = (now - start) / (60 * 1000);
-        log(notifSentCount, remainingNotifCount, spentTimeInMinutes);
+        log(notifSentCount, statistics.queueSize(), spentTimeInMinutes);
       }
-      notifToSend = manager.getFromQueue();
+      notifsToSend = manager.getFromQueue(batchSize);
+    }
+    if (!stopping) {
+      statistics.queueSize.set(0L);
     }
 
     TIME_PROFILER.stop();
@@ -149,6 +252,7 @@ public class NotificationService implements ServerComponent {
   @VisibleForTesting
   void log(long notifSentCount, long remainingNotifCount, long spentTimeInMinutes) {
     LOG.info("{} notifications sent during the past {} minutes and {} still waiting to be sent", new Object[] {notifSentCount, spentTimeInMinutes, remainingNotifCount});
+    LOG.info("Notification statistics: {}", statistics);
   }
 
   @VisibleForTesting
@@ -156,7 +260,56 @@ public class NotificationService implements ServerComponent {
     return System.currentTimeMillis();
   }
 
-  private void deliver(Notification notification) {
+  /**
+   * @return the number of notifications processed. The other ones are put back in the queue.
+   */
+  private int deliver(List<Notification> notifications) {
+    List<Future<SetMultimap<String, NotificationChannel>>> dispatches = Lists.newArrayList();
+    for (final Notification notification : notifications) {
+      dispatches.add(dispatchExecutor.submit(new Callable<SetMultimap<String, NotificationChannel>>() {
+        public SetMultimap<String, NotificationChannel> call() {
+          return dispatch(notification);
+        }
+      }));
+    }
+
+    List<Notification> undelivered = Lists.newArrayList();
+    ListMultimap<Integer, Future<?>> deliveries = ArrayListMultimap.create();
+    for (int i = 0; i < notifications.size(); i++) {
+      Future<SetMultimap<String, NotificationChannel>> dispatch = dispatches.get(i);
+      if (!await(dispatch)) {
+        undelivered.add(notifications.get(i));
+      } else {
+        SetMultimap<String, NotificationChannel> recipients = recipients(dispatch);
+        if (recipients != null) {
+          deliveries.putAll(i, deliver(notifications.get(i), recipients));
+        }
+      }
+    }
+
+    // back-pressure: the next batch is not dequeued before the end of all the deliveries of this batch
+    for (Integer i : deliveries.keySet()) {
+      int executed = 0;
+      for (Future<?> delivery : deliveries.get(i)) {
+        if (await(delivery)) {
+          executed++;
+        }
+      }
+      if (executed == 0) {
+        undelivered.add(notifications.get(i));
+      } else if (executed < deliveries.get(i).size()) {
+        LOG.warn("Notification " + notifications.get(i) + " is not delivered to all its recipients");
+      }
+    }
+
+    if (!undelivered.isEmpty()) {
+      LOG.info("{} notifications put back in the queue", undelivered.size());
+      manager.scheduleForSending(undelivered);
+    }
+    return notifications.size() - undelivered.size();
+  }
+
+  private SetMultimap<String, NotificationChannel> dispatch(Notification notification) {
     LOG.debug("Delivering notification " + notification);
     final SetMultimap<String, NotificationChannel> recipients = HashMultimap.create();
     for (NotificationDispatcher dispatcher : dispatchers) {
@@ -178,23 +331,88 @@ public class NotificationService implements ServerComponent {
         LOG.warn("Unable to dispatch notification " + notification + " using " + dispatcher, e);
       }
     }
-    dispatch(notification, recipients);
+    return recipients;
   }
 
-  private void dispatch(Notification notification, SetMultimap<String, NotificationChannel> recipients) {
+  private List<Future<?>> deliver(final Notification notification, SetMultimap<String, NotificationChannel> recipients) {
+    List<Future<?>> deliveries = Lists.newArrayList();
     for (Map.Entry<String, Collection<NotificationChannel>> entry : recipients.asMap().entrySet()) {
-      String username = entry.getKey();
+      final String username = entry.getKey();
       Collection<NotificationChannel> userChannels = entry.getValue();
       LOG.debug("For user {} via {}", username, userChannels);
-      for (NotificationChannel channel : userChannels) {
-        try {
-          channel.deliver(notification, username);
-        } catch (Exception e) {
-          // catch all exceptions in order to deliver via other channels
-          LOG.warn("Unable to deliver notification " + notification + " for user " + username + " via " + channel, e);
-        }
+      for (final NotificationChannel channel : userChannels) {
+        deliveries.add(deliveryExecutor(channel).submit(new Runnable() {
+          public void run() {
+            long start = System.currentTimeMillis();
+            try {
+              channel.deliver(notification, username);
+              statistics.delivered.incrementAndGet();
+            } catch (Exception e) {
+              // catch all exceptions in order to deliver via other channels
+              statistics.failures.incrementAndGet();
+              LOG.warn("Unable to deliver notification " + notification + " for user " + username + " via " + channel, e);
+            } finally {
+              statistics.addDeliveryTime(System.currentTimeMillis() - start);
+            }
+          }
+        }));
+      }
+    }
+    return deliveries;
+  }
+
+  private ExecutorService deliveryExecutor(NotificationChannel channel) {
+    String key = channel.getKey();
+    ExecutorService deliveryExecutor = deliveryExecutors.get(key);
+    if (deliveryExecutor == null) {
+      deliveryExecutor = Executors.newFixedThreadPool(threadsPerChannel);
+      ExecutorService existing = deliveryExecutors.putIfAbsent(key, deliveryExecutor);
+      if (existing != null) {
+        deliveryExecutor.shutdown();
+        deliveryExecutor = existing;
       }
     }
+    return deliveryExecutor;
+  }
+
+  /**
+   * @return false if the task was cancelled, or if the thread was interrupted while waiting for it, for example when
+   * the service is stopped
+   */
+  private static boolean await(Future<?> future) {
+    try {
+      future.get();
+      return true;
+    } catch (CancellationException e) {
+      return false;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      future.cancel(true);
+      return false;
+    } catch (ExecutionException e) {
+      LOG.warn("Unable to deliver notification", e.getCause());
+      return true;
+    }
+  }
+
+  /**
+   * @return the recipients of a dispatch which is done, null if it failed
+   */
+  @CheckForNull
+  private static SetMultimap<String, NotificationChannel> recipients(Future<SetMultimap<String, NotificationChannel>> dispatch) {
+    try {
+      return dispatch.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return null;
+    } catch (ExecutionException e) {
+      // already logged
+      return null;
+    }
+  }
+
+  public Statistics statistics() {
+    return statistics;
   }
 
   @VisibleForTesting
@@ -202,4 +420,57 @@ public class NotificationService implements ServerComponent {
     return Arrays.asList(dispatchers);
   }
 
+  /**
+   * @since 4.0
+   */
+  public static class Statistics {
+    private final AtomicLong dequeued = new AtomicLong();
+    private final AtomicLong delivered = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong queueSize = new AtomicLong();
+    private final AtomicLong totalDeliveryTimeMs = new AtomicLong();
+    private final AtomicLong maxDeliveryTimeMs = new AtomicLong();
+
+    public long dequeued() {
+      return dequeued.get();
+    }
+
+    public long delivered() {
+      return delivered.get();
+    }
+
+    public long failures() {
+      return failures.get();
+    }
+
+    /**
+     * Number of notifications waiting in the queue, as observed when the current batch was dequeued
+     */
+    public long queueSize() {
+      return queueSize.get();
+    }
+
+    public long averageDeliveryTimeMs() {
+      long count = delivered() + failures();
+      return count == 0 ? 0L : totalDeliveryTimeMs.get() / count;
+    }
+
+    public long maxDeliveryTimeMs() {
+      return maxDeliveryTimeMs.get();
+    }
+
+    private void addDeliveryTime(long durationMs) {
+      totalDeliveryTimeMs.addAndGet(durationMs);
+      long max = maxDeliveryTimeMs.get();
+      while (durationMs > max && !maxDeliveryTimeMs.compareAndSet(max, durationMs)) {
+        max = maxDeliveryTimeMs.get();
+      }
+    }
+
+    @Override
+    public String toString() {
+      return String.format("dequeued=%d, delivered=%d, failures=%d, queueSize=%d, averageDeliveryTimeMs=%d, maxDeliveryTimeMs=%d",
+        dequeued(), delivered(), failures(), queueSize(), averageDeliveryTimeMs(), maxDeliveryTimeMs());
+    }
+  }
 }
@@ -46,6 +46,7 @@ import org.sonar.core.issue.IssueNotifications;
 import org.sonar.core.issue.IssueUpdater;
 import org.sonar.core.issue.workflow.FunctionExecutor;
 import org.sonar.core.issue.workflow.IssueWorkflow;
+import org.sonar.core.measure.MeasureFilterCache;
 import org.sonar.core.measure.MeasureFilterEngine;
 import org.sonar.core.measure.MeasureFilterExecutor;
 import org.sonar.core.measure.MeasureFilterFactory;
@@ -56,6 +57,7 @@ import org.sonar.core.persistence.*;
 import org.sonar.core.purge.PurgeProfiler;
 import org.sonar.core.qualitymodel.DefaultModelFinder;
 import org.sonar.core.resource.DefaultResourcePermissions;
+import org.sonar.core.resource.ResourceSearchIndex;
 import org.sonar.core.rule.DefaultRuleFinder;
 import org.sonar.core.source.HtmlSourceDecorator;
 import org.sonar.core.test.TestPlanPerspectiveLoader;
@@ -262,6 +264,7 @@ public final class Platform {
     servicesContainer.addSingleton(PageDecorations.class);
     servicesContainer.addSingleton(MeasureFilterFactory.class);
     servicesContainer.addSingleton(MeasureFilterExecutor.class);
+    servicesContainer.addSingleton(MeasureFilterCache.class);
     servicesContainer.addSingleton(MeasureFilterEngine.class);
     servicesContainer.addSingleton(DryRunDatabaseFactory.class);
     servicesContainer.addSingleton(DryRunCache.class);
@@ -280,6 +283,7 @@ public final class Platform {
     // components
     servicesContainer.addSingleton(DefaultComponentFinder.class);
     servicesContainer.addSingleton(DefaultRubyComponentService.class);
+    servicesContainer.addSingleton(ResourceSearchIndex.class);
 
     // issues
     servicesContainer.addSingleton(ServerIssueStorage.class);
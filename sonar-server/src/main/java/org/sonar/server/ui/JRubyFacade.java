@@ -50,10 +50,13 @@ import org.sonar.core.dryrun.DryRunCache;
 import org.sonar.core.i18n.RuleI18nManager;
 import org.sonar.core.measure.MeasureFilterEngine;
 import org.sonar.core.measure.MeasureFilterResult;
+import org.sonar.core.notification.DefaultNotificationManager;
 import org.sonar.core.persistence.Database;
 import org.sonar.core.purge.PurgeDao;
+import org.sonar.core.resource.ResourceIndexDto;
 import org.sonar.core.resource.ResourceIndexerDao;
 import org.sonar.core.resource.ResourceKeyUpdaterDao;
+import org.sonar.core.resource.ResourceSearchIndex;
 import org.sonar.core.timemachine.Periods;
 import org.sonar.server.configuration.Backup;
 import org.sonar.server.configuration.ProfilesManager;
@@ -76,6 +79,7 @@ import org.sonar.updatecenter.common.Version;
 
 import javax.annotation.Nullable;
 
+import java.io.InputStream;
 import java.net.InetAddress;
 import java.sql.Connection;
 import java.util.Collection;
@@ -427,10 +431,26 @@ public final class JRubyFacade {
 
   public void indexProjects() {
     get(ResourceIndexerDao.class).indexProjects();
+    get(ResourceSearchIndex.class).indexProjects();
   }
 
   public void indexResource(long resourceId) {
     get(ResourceIndexerDao.class).indexResource(resourceId);
+    get(ResourceSearchIndex.class).indexResource(resourceId);
+  }
+
+  /**
+   * @since 4.0
+   */
+  public List<ResourceIndexDto> searchResources(String text) {
+    return get(ResourceSearchIndex.class).search(text);
+  }
+
+  /**
+   * @since 4.0
+   */
+  public void clearNotificationSubscribersCache() {
+    get(DefaultNotificationManager.class).clearSubscribersCache();
   }
 
   public void deleteResourceTree(long rootProjectId) {
@@ -496,8 +516,8 @@ public final class JRubyFacade {
     }
   }
 
-  public byte[] createDatabaseForDryRun(@Nullable Long projectId) {
-    return get(DryRunCache.class).getDatabaseForDryRun(projectId);
+  public InputStream openDatabaseForDryRun(@Nullable Long projectId, boolean gzip) {
+    return get(DryRunCache.class).openDatabaseForDryRun(projectId, gzip);
   }
 
   public String getPeriodLabel(int periodIndex) {
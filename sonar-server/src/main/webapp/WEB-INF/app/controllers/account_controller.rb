@@ -80,6 +80,7 @@ class AccountController < ApplicationController
         end
       end
     end
+    java_facade.clearNotificationSubscribersCache()
     
     # New project added
     new_params = {}
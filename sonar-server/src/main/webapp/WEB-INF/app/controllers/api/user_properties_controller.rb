@@ -67,6 +67,7 @@ class Api::UserPropertiesController < Api::ApiController
       begin
         Property.clear(key, nil, current_user.id)
         property=Property.create(:prop_key => key, :text_value => value, :user_id => current_user.id)
+        java_facade.clearNotificationSubscribersCache() if key.start_with?('notification.')
         respond_to do |format|
           format.json { render :json => jsonp(properties_to_json([property])) }
           format.xml  { render :xml => properties_to_xml([property]) }
@@ -89,6 +90,7 @@ class Api::UserPropertiesController < Api::ApiController
     begin
       if params[:id]
         Property.clear(params[:id], nil, current_user.id)
+        java_facade.clearNotificationSubscribersCache() if params[:id].start_with?('notification.')
       end
       render_success("Property deleted")
     rescue Exception => e
@@ -30,9 +30,22 @@ class BatchBootstrapController < Api::ApiController
     return render_unauthorized("You're not authorized to execute a dry run analysis. Please contact your SonarQube administrator.") if !has_dryrun_role
     project = load_project()
     return render_unauthorized("You're not authorized to access to project '" + project.name + "', please contact your SonarQube administrator") if project && !has_role?(:user, project)
-    db_content = java_facade.createDatabaseForDryRun(project && project.id)
-
-    send_data String.from_java_bytes(db_content)
+    gzip = request.env['HTTP_ACCEPT_ENCODING'].to_s.include?('gzip')
+    db_stream = java_facade.openDatabaseForDryRun(project && project.id, gzip)
+
+    # the database can weigh hundreds of Mb, so it is streamed by chunks rather than loaded in memory
+    response.headers['Content-Type'] = 'application/octet-stream'
+    response.headers['Content-Encoding'] = 'gzip' if gzip
+    render :text => Proc.new { |resp, output|
+      begin
+        buffer = Java::byte[64 * 1024].new
+        while (count = db_stream.read(buffer)) > 0
+          output.write(String.from_java_bytes(java.util.Arrays.copyOf(buffer, count)))
+        end
+      ensure
+        db_stream.close
+      end
+    }
   end
 
   # PUT /batch_bootstrap/evict?project=<key or id>
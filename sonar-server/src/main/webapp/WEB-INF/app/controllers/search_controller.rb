@@ -31,12 +31,10 @@ class SearchController < ApplicationController
     search = params[:s]
     bad_request("Minimum search is #{ResourceIndex::MIN_SEARCH_SIZE} characters") if search.empty? || search.to_s.size<ResourceIndex::MIN_SEARCH_SIZE
 
-    key = escape_like(search).downcase
-    results = ResourceIndex.all(:select => 'distinct(resource_id),root_project_id,qualifier,name_size', # optimization to not load unused columns like 'kee'
-                                 :conditions => ["kee like ?", key + '%'],
-                                 :order => 'name_size')
+    # in-memory index, sorted by name size
+    results = java_facade.searchResources(search).to_a
 
-    results = select_authorized(:user, results)
+    results = select_authorized(:user, results, :root_project_id)
     @total = results.size
 
     resource_ids=[]
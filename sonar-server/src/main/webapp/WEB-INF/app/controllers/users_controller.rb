@@ -122,6 +122,7 @@ class UsersController < ApplicationController
     if user
       user.reactivate!(java_facade.getSettings().getString('sonar.defaultGroup'))
       user.notify_creation_handlers
+      java_facade.clearNotificationSubscribersCache()
       flash[:notice] = 'User was successfully reactivated.'
     else
       flash[:error] = "A user with login #{params[:user][:login]} does not exist."
@@ -133,6 +134,7 @@ class UsersController < ApplicationController
     begin
       user = User.find(params[:id])
       Api.users.deactivate(user.login)
+      java_facade.clearNotificationSubscribersCache()
       flash[:notice] = 'User is deleted.'
     rescue NativeException => exception
       if exception.cause.java_kind_of? Java::OrgSonarServerExceptions::HttpException
@@ -29,6 +29,7 @@ import org.sonar.api.resources.Qualifiers;
 import org.sonar.api.resources.Scopes;
 import org.sonar.core.component.ComponentDto;
 import org.sonar.core.resource.ResourceIndexerDao;
+import org.sonar.core.resource.ResourceSearchIndex;
 import org.junit.Before;
 import org.junit.Test;
 import org.sonar.api.component.Component;
@@ -48,6 +49,7 @@ public class DefaultRubyComponentServiceTest {
   private ResourceDao resourceDao;
   private DefaultComponentFinder finder;
   private ResourceIndexerDao resourceIndexerDao;
+  private ResourceSearchIndex searchIndex;
   private DefaultRubyComponentService componentService;
 
   @Before
@@ -55,7 +57,8 @@ public class DefaultRubyComponentServiceTest {
     resourceDao = mock(ResourceDao.class);
     finder = mock(DefaultComponentFinder.class);
     resourceIndexerDao = mock(ResourceIndexerDao.class);
-    componentService = new DefaultRubyComponentService(resourceDao, finder, resourceIndexerDao);
+    searchIndex = mock(ResourceSearchIndex.class);
+    componentService = new DefaultRubyComponentService(resourceDao, finder, resourceIndexerDao, searchIndex);
   }
 
   @Test
@@ -89,6 +92,7 @@ public class DefaultRubyComponentServiceTest {
     assertThat(created.getQualifier()).isEqualTo(qualifier);
     verify(resourceDao, times(2)).findByKey(componentKey);
     verify(resourceIndexerDao).indexResource(componentId);
+    verify(searchIndex).indexResource(componentId);
   }
 
   @Test(expected = BadRequestException.class)
@@ -133,6 +137,7 @@ public class DefaultRubyComponentServiceTest {
     verify(resource).setKey(newKey);
     verify(resource).setName(newName);
     verify(resourceDao).insertOrUpdate(resource);
+    verify(searchIndex).indexResource(componentId);
   }
 
   @Test
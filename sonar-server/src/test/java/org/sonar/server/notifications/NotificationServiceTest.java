@@ -28,11 +28,18 @@ import org.sonar.api.notifications.NotificationChannel;
 import org.sonar.api.notifications.NotificationDispatcher;
 import org.sonar.core.notification.DefaultNotificationManager;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
 import static org.fest.assertions.Assertions.assertThat;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.same;
+import static org.mockito.Mockito.atLeastOnce;
 import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.spy;
@@ -44,6 +51,7 @@ public class NotificationServiceTest {
   private static String CREATOR_SIMON = "simon";
   private static String CREATOR_EVGENY = "evgeny";
   private static String ASSIGNEE_SIMON = "simon";
+  private static final List<Notification> NO_NOTIFICATIONS = Collections.emptyList();
 
   private final DefaultNotificationManager manager = mock(DefaultNotificationManager.class);
   private final Notification notification = mock(Notification.class);
@@ -59,7 +67,7 @@ public class NotificationServiceTest {
     when(gtalkChannel.getKey()).thenReturn("gtalk");
     when(commentOnReviewAssignedToMe.getKey()).thenReturn("comment on review assigned to me");
     when(commentOnReviewCreatedByMe.getKey()).thenReturn("comment on review created by me");
-    when(manager.getFromQueue()).thenReturn(notification).thenReturn(null);
+    when(manager.getFromQueue(anyInt())).thenReturn(Arrays.asList(notification)).thenReturn(NO_NOTIFICATIONS);
 
     Settings settings = new Settings().setProperty("sonar.notifications.delay", 1L);
 
@@ -166,7 +174,7 @@ public class NotificationServiceTest {
   @Test
   public void shouldNotStopWhenException() {
     setUpMocks(CREATOR_SIMON, ASSIGNEE_SIMON);
-    when(manager.getFromQueue()).thenThrow(new RuntimeException("Unexpected exception")).thenReturn(notification).thenReturn(null);
+    when(manager.getFromQueue(anyInt())).thenThrow(new RuntimeException("Unexpected exception")).thenReturn(Arrays.asList(notification)).thenReturn(NO_NOTIFICATIONS);
     doAnswer(addUser(ASSIGNEE_SIMON, emailChannel)).when(commentOnReviewAssignedToMe).dispatch(same(notification), any(NotificationDispatcher.Context.class));
     doAnswer(addUser(CREATOR_SIMON, emailChannel)).when(commentOnReviewCreatedByMe).dispatch(same(notification), any(NotificationDispatcher.Context.class));
 
@@ -189,6 +197,62 @@ public class NotificationServiceTest {
     verify(gtalkChannel, never()).deliver(any(Notification.class), anyString());
   }
 
+  @Test
+  public void should_deliver_notifications_by_batches() {
+    setUpMocks(CREATOR_SIMON, ASSIGNEE_SIMON);
+    Notification other = mock(Notification.class);
+    when(manager.getFromQueue(anyInt())).thenReturn(Arrays.asList(notification, other)).thenReturn(NO_NOTIFICATIONS);
+    doAnswer(addUser(ASSIGNEE_SIMON, emailChannel)).when(commentOnReviewAssignedToMe).dispatch(any(Notification.class), any(NotificationDispatcher.Context.class));
+    doAnswer(addUser(CREATOR_EVGENY, gtalkChannel)).when(commentOnReviewCreatedByMe).dispatch(same(other), any(NotificationDispatcher.Context.class));
+    doThrow(new IllegalStateException("Network error")).when(gtalkChannel).deliver(other, CREATOR_EVGENY);
+
+    service.start();
+    verify(emailChannel, timeout(2000)).deliver(notification, ASSIGNEE_SIMON);
+    verify(emailChannel, timeout(2000)).deliver(other, ASSIGNEE_SIMON);
+    verify(gtalkChannel, timeout(2000)).deliver(other, CREATOR_EVGENY);
+    service.stop();
+
+    verify(manager, atLeastOnce()).getFromQueue(NotificationService.DEFAULT_BATCH_SIZE);
+    assertThat(service.statistics().dequeued()).isEqualTo(2);
+    assertThat(service.statistics().delivered()).isEqualTo(2);
+    assertThat(service.statistics().failures()).isEqualTo(1);
+  }
+
+  @Test
+  public void should_put_back_in_queue_notifications_not_delivered_before_stop() {
+    setUpMocks(CREATOR_SIMON, ASSIGNEE_SIMON);
+    Notification other = mock(Notification.class);
+    when(manager.getFromQueue(anyInt())).thenReturn(Arrays.asList(notification, other)).thenReturn(NO_NOTIFICATIONS);
+    doAnswer(addUser(ASSIGNEE_SIMON, emailChannel)).when(commentOnReviewAssignedToMe).dispatch(any(Notification.class), any(NotificationDispatcher.Context.class));
+    // the single delivery thread is blocked by the first notification, so the second one is never delivered
+    doAnswer(new Answer<Object>() {
+      public Object answer(InvocationOnMock invocation) throws Throwable {
+        Thread.sleep(Long.MAX_VALUE);
+        return null;
+      }
+    }).when(emailChannel).deliver(notification, ASSIGNEE_SIMON);
+
+    service.start();
+    verify(emailChannel, timeout(2000)).deliver(notification, ASSIGNEE_SIMON);
+    service.stop();
+
+    verify(manager, timeout(2000)).scheduleForSending(Arrays.asList(other));
+    verify(emailChannel, never()).deliver(other, ASSIGNEE_SIMON);
+  }
+
+  @Test
+  public void should_configure_batch_size() {
+    setUpMocks(CREATOR_SIMON, ASSIGNEE_SIMON);
+    Settings settings = new Settings()
+      .setProperty(NotificationService.PROPERTY_DELAY, 1L)
+      .setProperty(NotificationService.PROPERTY_BATCH_SIZE, 10);
+    service = new NotificationService(settings, manager, new NotificationDispatcher[] {commentOnReviewAssignedToMe});
+
+    service.start();
+    verify(manager, timeout(2000)).getFromQueue(10);
+    service.stop();
+  }
+
   @Test
   public void shouldReturnDispatcherList() {
     setUpMocks(CREATOR_SIMON, ASSIGNEE_SIMON);
@@ -208,7 +272,7 @@ public class NotificationServiceTest {
   public void shouldLogEvery10Minutes() throws InterruptedException {
     setUpMocks(CREATOR_EVGENY, ASSIGNEE_SIMON);
     // Emulate 2 notifications in DB
-    when(manager.getFromQueue()).thenReturn(notification).thenReturn(notification).thenReturn(null);
+    when(manager.getFromQueue(anyInt())).thenReturn(Arrays.asList(notification)).thenReturn(Arrays.asList(notification)).thenReturn(NO_NOTIFICATIONS);
     when(manager.count()).thenReturn(1L).thenReturn(0L);
     service = spy(service);
     // Emulate processing of each notification take 10 min to have a log each time